@@ -18,16 +18,23 @@ package com.clust4j.algo;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveTask;
 
 import org.apache.commons.math3.exception.DimensionMismatchException;
 import org.apache.commons.math3.linear.RealMatrix;
 import org.apache.commons.math3.util.FastMath;
 
+import com.clust4j.GlobalState;
 import com.clust4j.NamedEntity;
+import com.clust4j.data.CSRMatrix;
 import com.clust4j.kernel.Kernel;
 import com.clust4j.log.LogTimer;
 import com.clust4j.metrics.pairwise.Distance;
 import com.clust4j.metrics.pairwise.GeometricallySeparable;
+import com.clust4j.metrics.pairwise.PrecomputedRowStatistics;
 import com.clust4j.metrics.scoring.SupervisedMetric;
 import com.clust4j.utils.MatUtils;
 import com.clust4j.utils.VecUtils;
@@ -41,6 +48,7 @@ public abstract class AbstractCentroidClusterer extends AbstractPartitionalClust
 	final public static double DEF_CONVERGENCE_TOLERANCE = 0.005; // Not same as Convergeable.DEF_TOL
 	final public static int DEF_K = BaseNeighborsModel.DEF_K;
 	final public static InitializationStrategy DEF_INIT = InitializationStrategy.AUTO;
+	final public static int DEF_N_INIT = 1;
 	final public static HashSet<Class<? extends GeometricallySeparable>> UNSUPPORTED_METRICS;
 	
 	static {
@@ -75,8 +83,12 @@ public abstract class AbstractCentroidClusterer extends AbstractPartitionalClust
 	protected InitializationStrategy init;
 	final protected int maxIter;
 	final protected double tolerance;
-	final protected int[] init_centroid_indices;
+	volatile protected int[] init_centroid_indices;
 	final protected int m;
+	/** Whether the initial centroids were given rather than selected */
+	final protected boolean warm_start;
+	/** The iterations the warm-started model took to fit, or -1 if unknown */
+	final protected int prior_iter;
 	
 	volatile protected boolean converged = false;
 	volatile protected double tss = 0.0;
@@ -90,13 +102,14 @@ public abstract class AbstractCentroidClusterer extends AbstractPartitionalClust
 	volatile protected ArrayList<double[]> centroids = new ArrayList<double[]>();
 
 	
-	static interface Initializer { int[] getInitialCentroidSeeds(AbstractCentroidClusterer model, double[][] X, int k, final Random seed); }
+	static interface Initializer { int[] getInitialCentroidSeeds(AbstractCentroidClusterer model, int k, final Random seed); }
+	static interface RestartFactory<T extends AbstractCentroidClusterer> { T restart(int i, final Random seed); }
 	public static enum InitializationStrategy implements java.io.Serializable, Initializer, NamedEntity {
 		AUTO {
-			@Override public int[] getInitialCentroidSeeds(AbstractCentroidClusterer model, double[][] X, int k, final Random seed) {
+			@Override public int[] getInitialCentroidSeeds(AbstractCentroidClusterer model, int k, final Random seed) {
 				if(model.dist_metric instanceof Kernel)
-					return RANDOM.getInitialCentroidSeeds(model, X, k, seed);
-				return KM_AUGMENTED.getInitialCentroidSeeds(model, X, k, seed);
+					return RANDOM.getInitialCentroidSeeds(model, k, seed);
+				return KM_AUGMENTED.getInitialCentroidSeeds(model, k, seed);
 			}
 			
 			@Override public String getName() {
@@ -111,9 +124,9 @@ public abstract class AbstractCentroidClusterer extends AbstractPartitionalClust
 		 * worse than using {@link InitializationStrategy#KM_AUGMENTED}
 		 */
 		RANDOM {
-			@Override public int[] getInitialCentroidSeeds(AbstractCentroidClusterer model, double[][] X, int k, final Random seed) {
+			@Override public int[] getInitialCentroidSeeds(AbstractCentroidClusterer model, int k, final Random seed) {
 				model.init = this;
-				final int m = X.length;
+				final int m = model.m;
 				
 				// Corner case: k = m
 				if(m == k)
@@ -139,12 +152,11 @@ public abstract class AbstractCentroidClusterer extends AbstractPartitionalClust
 		 * @see <a href="http://ilpubs.stanford.edu:8090/778/1/2006-13.pdf">k-means++ paper</a>
 		 */
 		KM_AUGMENTED {
-			@Override public int[] getInitialCentroidSeeds(AbstractCentroidClusterer model, double[][] X, int k, final Random seed) {
+			@Override public int[] getInitialCentroidSeeds(AbstractCentroidClusterer model, int k, final Random seed) {
 				model.init = this;
 				
-				final int m = X.length, n = X[0].length;
+				final int m = model.m;
 				final int[] range = VecUtils.arange(k);
-				final double[][] centers = new double[k][n];
 				final int[] centerIdcs = new int[k];
 				
 				
@@ -152,31 +164,23 @@ public abstract class AbstractCentroidClusterer extends AbstractPartitionalClust
 				if(m == k)
 					return range;
 				
-				// First need to get row norms, which is equal to X * X => row sums
-				// True Euclidean norm would sqrt each term, but no need...
-				final double[] norms = new double[m];
-				for(int i = 0; i < m; i++)
-					for(int j = 0; j < X[i].length; j++)
-						norms[i] += X[i][j] * X[i][j];
-				
 				// Arthur and Vassilvitskii reported that this helped
 				final int numTrials = FastMath.max(2 * (int)FastMath.log(k), 1);
 				
 				
 				// Start with a random center
 				int center_id = seed.nextInt(m);
-				centers[0] = X[center_id];
 				centerIdcs[0] = center_id;
 				
 				// Initialize list of closest distances
-				double[][] closest = eucDists(new double[][]{centers[0]}, X);
+				double[][] closest = model.eucDists(new int[]{center_id});
 				double currentPotential = MatUtils.sum(closest);
 				
 				
 				// Pick the rest of the cluster starting points
 				double[] randomVals, cumSum;
 				int[] candidateIdcs;
-				double[][] candidateRows, distsToCandidates, bestDistSq;
+				double[][] distsToCandidates, bestDistSq;
 				int bestCandidate;
 				double bestPotential;
 				
@@ -197,13 +201,8 @@ public abstract class AbstractCentroidClusterer extends AbstractPartitionalClust
 					cumSum = MatUtils.cumSum(closest); // always will be sorted
 					candidateIdcs = searchSortedCumSum(cumSum, randomVals);
 					
-					// Identify the candidates
-					candidateRows = new double[candidateIdcs.length][];
-					for(int j = 0; j < candidateRows.length; j++)
-						candidateRows[j] = X[candidateIdcs[j]];
-					
 					// dists to candidates
-					distsToCandidates = eucDists(candidateRows, X);
+					distsToCandidates = model.eucDists(candidateIdcs);
 					
 					
 					// Identify best candidate...
@@ -234,7 +233,6 @@ public abstract class AbstractCentroidClusterer extends AbstractPartitionalClust
 					
 					
 					// Add the record...
-					centers[i] 		= X[bestCandidate];
 					centerIdcs[i] 	= bestCandidate;
 					
 					// update vars outside loop
@@ -249,6 +247,31 @@ public abstract class AbstractCentroidClusterer extends AbstractPartitionalClust
 			@Override public String getName() {
 				return "k-means++";
 			}
+		},
+		
+		/**
+		 * Proposed in 2012 by Bahmani et al., this scalable variant of {@link #KM_AUGMENTED}
+		 * (<i>k</i>-means||) makes a few rounds over the data rather than <i>k</i>. Each round
+		 * oversamples about <tt>2k</tt> candidates, each point independently with probability 
+		 * proportional to its squared distance from the nearest candidate, and updates the distances
+		 * in parallel (if the model is parallel). The candidates are then weighted by the number of
+		 * points nearest to them and reclustered into <i>k</i> seeds with a weighted <i>k</i>-means++.
+		 * @see <a href="http://theory.stanford.edu/~sergei/papers/vldb12-kmpar.pdf">Scalable K-Means++</a>
+		 */
+		KMEANS_PARALLEL {
+			@Override public int[] getInitialCentroidSeeds(AbstractCentroidClusterer model, int k, final Random seed) {
+				model.init = this;
+				
+				// Corner case: k = m
+				if(model.m == k)
+					return VecUtils.arange(k);
+				
+				return new ScalableSeeder(model, k, seed).seed();
+			}
+			
+			@Override public String getName() {
+				return "k-means||";
+			}
 		}
 	}
 	
@@ -279,12 +302,45 @@ public abstract class AbstractCentroidClusterer extends AbstractPartitionalClust
 		if(n != centers[0].length)
 			throw new DimensionMismatchException(n, centers[0].length);
 		
-		int next = 0;
+		return eucDists(VecUtils.arange(centers.length),
+			new PrecomputedRowStatistics(centers), new PrecomputedRowStatistics(X));
+	}
+	
+	/** 
+	 * Internal method for computing distances from the given rows of the model's data to 
+	 * each of its rows. Dense data shares its row norms with the model such that each 
+	 * distance costs a single inner product, while sparse data only visits the non-zeros.
+	 */
+	double[][] eucDists(int[] centers) {
+		return isSparse() ? 
+			eucDists(centers, sparse_data) : 
+				eucDists(centers, getRowStatistics());
+	}
+	
+	/** Internal method for computing distances from rows of X to other rows of X */
+	static double[][] eucDists(int[] centers, PrecomputedRowStatistics X) {
+		return eucDists(centers, X, X);
+	}
+	
+	/** Internal method for computing distances from rows of sparse X to other rows of X */
+	static double[][] eucDists(int[] centers, CSRMatrix X) {
+		final int m = X.getRowDimension();
+		final double[][] dists = new double[centers.length][m];
+		for(int c = 0; c < centers.length; c++) {
+			for(int i = 0; i < m; i++)
+				dists[c][i] = Distance.EUCLIDEAN.getPartialDistance(X, centers[c], X, i);
+		}
+		
+		return dists;
+	}
+	
+	/** Internal method for computing distances from the given rows of centers to each row of X */
+	static double[][] eucDists(int[] centers, PrecomputedRowStatistics C, PrecomputedRowStatistics X) {
+		final int m = X.getRowDimension();
 		final double[][] dists = new double[centers.length][m];
-		for(double[] d: centers) {
+		for(int c = 0; c < centers.length; c++) {
 			for(int i = 0; i < m; i++)
-				dists[next][i] = Distance.EUCLIDEAN.getPartialDistance(d, X[i]);
-			next++;
+				dists[c][i] = Distance.EUCLIDEAN.getPartialDistance(C, centers[c], X, i);
 		}
 		
 		return dists;
@@ -292,6 +348,272 @@ public abstract class AbstractCentroidClusterer extends AbstractPartitionalClust
 	
 	
 	
+	/**
+	 * Selects the seeds for {@link InitializationStrategy#KMEANS_PARALLEL}. Only the squared
+	 * distance from each point to its nearest candidate and the index of that candidate are
+	 * kept across the rounds, so memory is linear in the number of rows, and each round only
+	 * computes the distances to the newly sampled candidates.
+	 * @author Taylor G Smith
+	 */
+	static class ScalableSeeder {
+		/** Bahmani et al. found five rounds sufficient */
+		final static int NUM_ROUNDS = 5;
+		
+		final AbstractCentroidClusterer model;
+		final PrecomputedRowStatistics stats;
+		final CSRMatrix sparse;
+		final Random seed;
+		final int m, k;
+		
+		/** The row indices of the candidates */
+		final ArrayList<Integer> candidates = new ArrayList<>();
+		/** The squared distance from each point to its nearest candidate */
+		final double[] closest;
+		/** The position in the candidates of each point's nearest candidate */
+		final int[] nearest;
+		
+		ScalableSeeder(final AbstractCentroidClusterer model, final int k, final Random seed) {
+			this.model = model;
+			this.sparse = model.sparse_data;
+			this.stats = model.isSparse() ? null : model.getRowStatistics();
+			this.seed = seed;
+			this.m = model.m;
+			this.k = k;
+			this.closest = VecUtils.rep(Double.POSITIVE_INFINITY, m);
+			this.nearest = new int[m];
+		}
+		
+		/** The squared Euclidean distance between two rows of the model's data */
+		double sqDist(final int a, final int b) {
+			return null != sparse ?
+				Distance.EUCLIDEAN.getPartialDistance(sparse, a, sparse, b) :
+					Distance.EUCLIDEAN.getPartialDistance(stats, a, stats, b);
+		}
+		
+		int[] seed() {
+			final double oversampling = 2.0 * k;
+			addCandidates(new int[]{seed.nextInt(m)});
+			
+			for(int round = 0; round < NUM_ROUNDS; round++) {
+				final double potential = VecUtils.sum(closest);
+				if(potential <= 0) // every point sits on a candidate
+					break;
+				
+				// Points already on a candidate have no chance of being sampled
+				final ArrayList<Integer> sampled = new ArrayList<>();
+				for(int i = 0; i < m; i++)
+					if(closest[i] > 0 && seed.nextDouble() * potential < oversampling * closest[i])
+						sampled.add(i);
+				
+				final int[] rows = new int[sampled.size()];
+				for(int i = 0; i < rows.length; i++)
+					rows[i] = sampled.get(i);
+				addCandidates(rows);
+			}
+			
+			// Weight each candidate by the number of points nearest to it
+			final double[] weights = new double[candidates.size()];
+			for(int i = 0; i < m; i++)
+				weights[nearest[i]]++;
+			
+			return recluster(weights);
+		}
+		
+		/**
+		 * Add the new candidates, updating the nearest candidate of each point
+		 * @param rows - the row indices of the new candidates
+		 */
+		void addCandidates(final int[] rows) {
+			final int offset = candidates.size();
+			for(int row: rows)
+				candidates.add(row);
+			
+			if(model.parallel)
+				SeedingTask.doAll(this, rows, offset);
+			else
+				update(rows, offset, 0, m);
+		}
+		
+		/**
+		 * Update the nearest candidate of points <tt>from</tt> through <tt>to - 1</tt>
+		 * with the new candidates, the first of which is at <tt>offset</tt>
+		 */
+		void update(final int[] rows, final int offset, final int from, final int to) {
+			double d;
+			for(int i = from; i < to; i++) {
+				for(int c = 0; c < rows.length; c++) {
+					d = sqDist(rows[c], i);
+					if(d < closest[i]) {
+						closest[i] = d;
+						nearest[i] = offset + c;
+					}
+				}
+			}
+		}
+		
+		/**
+		 * Select the <i>k</i> seeds from the weighted candidates with k-means++, using the
+		 * same greedy trials as {@link InitializationStrategy#KM_AUGMENTED}. If there are too
+		 * few distinct candidates, the rest of the seeds are drawn at random.
+		 * @param weights - the number of points nearest each candidate
+		 * @return the row indices of the seeds
+		 */
+		int[] recluster(final double[] weights) {
+			final int c = candidates.size();
+			final int[] rows = new int[c];
+			for(int j = 0; j < c; j++)
+				rows[j] = candidates.get(j);
+			
+			final int[] seeds = new int[k];
+			int found = 0;
+			
+			if(c <= k) {
+				for(int row: rows)
+					seeds[found++] = row;
+			} else {
+				final int numTrials = FastMath.max(2 * (int)FastMath.log(k), 1);
+				
+				// Start with a candidate chosen in proportion to its weight
+				int chosen = sample(weights, null, VecUtils.sum(weights));
+				seeds[found++] = rows[chosen];
+				
+				double[] cand_closest = distances(rows, rows[chosen]);
+				double potential = weightedSum(weights, cand_closest);
+				
+				while(found < k && potential > 0) {
+					int bestCandidate = -1;
+					double bestPotential = Double.POSITIVE_INFINITY;
+					double[] bestDists = null;
+					
+					for(int trial = 0; trial < numTrials; trial++) {
+						final int candidate = sample(weights, cand_closest, potential);
+						final double[] dists = distances(rows, rows[candidate]);
+						
+						double newPotential = 0.0;
+						for(int j = 0; j < c; j++) {
+							dists[j] = FastMath.min(cand_closest[j], dists[j]);
+							newPotential += weights[j] * dists[j];
+						}
+						
+						if(-1 == bestCandidate || newPotential < bestPotential) {
+							bestCandidate = candidate;
+							bestPotential = newPotential;
+							bestDists = dists;
+						}
+					}
+					
+					seeds[found++] = rows[bestCandidate];
+					cand_closest = bestDists;
+					potential = bestPotential;
+				}
+			}
+			
+			// Too few distinct candidates -- fill with unused rows
+			if(found < k) {
+				final HashSet<Integer> used = new HashSet<>();
+				for(int i = 0; i < found; i++)
+					used.add(seeds[i]);
+				
+				while(found < k) {
+					final int row = seed.nextInt(m);
+					if(used.add(row))
+						seeds[found++] = row;
+				}
+			}
+			
+			return seeds;
+		}
+		
+		/** The squared distances from the given row to each of the candidates */
+		private double[] distances(final int[] rows, final int row) {
+			final double[] d = new double[rows.length];
+			for(int j = 0; j < rows.length; j++)
+				d[j] = sqDist(row, rows[j]);
+			return d;
+		}
+		
+		private static double weightedSum(final double[] weights, final double[] d) {
+			double sum = 0.0;
+			for(int j = 0; j < d.length; j++)
+				sum += weights[j] * d[j];
+			return sum;
+		}
+		
+		/**
+		 * Sample an index with probability proportional to its weight times its
+		 * distance (or just its weight, if the distances are null)
+		 */
+		private int sample(final double[] weights, final double[] d, final double total) {
+			double cut = seed.nextDouble() * total, w;
+			int last = -1;
+			
+			for(int j = 0; j < weights.length; j++) {
+				w = null == d ? weights[j] : weights[j] * d[j];
+				if(w > 0) {
+					last = j;
+					if((cut -= w) <= 0)
+						return j;
+				}
+			}
+			
+			// rounding can leave a sliver of the total
+			return last;
+		}
+	}
+	
+	/**
+	 * Updates the nearest candidate of each point in {@link ScalableSeeder} in parallel. 
+	 * Each range of rows is updated in place, and nothing is reduced, so the result is
+	 * identical to the serial update.
+	 * @author Taylor G Smith
+	 */
+	static class SeedingTask extends RecursiveTask<Void> {
+		private static final long serialVersionUID = 5018261773528103849L;
+		final transient ScalableSeeder seeder;
+		final int[] rows;
+		final int offset;
+		final int lo, hi, grain;
+		
+		SeedingTask(final ScalableSeeder seeder, final int[] rows, final int offset) {
+			this(seeder, rows, offset, 0, seeder.m, 
+				FastMath.max(1, seeder.m / (8 * GlobalState.ParallelismConf.NUM_CORES)));
+		}
+		
+		private SeedingTask(final ScalableSeeder seeder, final int[] rows, final int offset, 
+				final int lo, final int hi, final int grain) {
+			this.seeder = seeder;
+			this.rows = rows;
+			this.offset = offset;
+			this.lo = lo;
+			this.hi = hi;
+			this.grain = grain;
+		}
+		
+		@Override
+		protected Void compute() {
+			if(hi - lo <= grain) {
+				seeder.update(rows, offset, lo, hi);
+			} else {
+				int mid = lo + (hi - lo) / 2;
+				SeedingTask left  = new SeedingTask(seeder, rows, offset, lo, mid, grain);
+				SeedingTask right = new SeedingTask(seeder, rows, offset, mid, hi, grain);
+				
+				// These ops happen in place
+				left.fork();
+				right.compute();
+				left.join();
+			}
+			
+			return null;
+		}
+		
+		static void doAll(final ScalableSeeder seeder, final int[] rows, final int offset) {
+			ParallelChunkingTask.getThreadPool().invoke(new SeedingTask(seeder, rows, offset));
+		}
+	}
+	
+	
+	
 	public AbstractCentroidClusterer(RealMatrix data,
 			CentroidClustererParameters<? extends AbstractCentroidClusterer> planner) {
 		super(data, planner, planner.getK());
@@ -320,25 +642,75 @@ public abstract class AbstractCentroidClusterer extends AbstractPartitionalClust
 		
 		// set centroids
 		final LogTimer centTimer = new LogTimer();
-		this.init_centroid_indices = init.getInitialCentroidSeeds(
-			this, this.data.getData(), k, getSeed());
-		for(int i: this.init_centroid_indices)
-			centroids.add(this.data.getRow(i));
+		final double[][] initial = planner.getInitialCentroids();
+		final int[] indices = planner.getInitialIndices();
 		
+		if(null != indices || null != initial) {
+			final int given = null != indices ? indices.length : initial.length;
+			
+			// Only if k was coerced to 1 for singular data
+			if(given != k) {
+				warn("cannot warm start from " + given + " centroids with k=" + k + "; "
+					+ "selecting centroid centers via " + init.getName());
+				this.warm_start = false;
+			} else {
+				this.warm_start = true;
+			}
+		} else {
+			this.warm_start = false;
+		}
+		
+		this.prior_iter = warm_start ? planner.getPriorIterations() : -1;
+		if(!warm_start) {
+			this.init_centroid_indices = init.getInitialCentroidSeeds(this, k, getSeed());
+			for(int i: this.init_centroid_indices)
+				centroids.add(getDataRef().getRow(i));
+			
+			info("selected centroid centers via " + init.getName() + " in " + centTimer.toString());
+		} else if(null != indices) {
+			for(int i: indices)
+				if(i < 0 || i >= m)
+					error(new IllegalArgumentException("initial centroid index out of range: " + i));
+			if(VecUtils.unique(indices).size() != k)
+				error(new IllegalArgumentException("initial centroid indices must be unique"));
+			
+			this.init_centroid_indices = indices.clone();
+			for(int i: this.init_centroid_indices)
+				centroids.add(getDataRef().getRow(i));
+			
+			info("warm started from " + k + " given records");
+		} else {
+			final int n = data.getColumnDimension();
+			for(double[] c: initial) {
+				if(c.length != n)
+					error(new DimensionMismatchException(c.length, n));
+				for(double d: c)
+					if(Double.isNaN(d))
+						error(new IllegalArgumentException("NaN in initial centroids"));
+				
+				centroids.add(c.clone());
+			}
+			
+			this.init_centroid_indices = nearestRecords(initial);
+			info("warm started from " + k + " given centroids in " + centTimer.toString());
+		}
 		
-		info("selected centroid centers via " + init.getName() + " in " + centTimer.toString());
 		logModelSummary();
 		
 		/*
 		 * The TSS will always be the same -- the sum of squared distances from the mean record.
 		 * We can just compute this here quick and easy.
 		 */
-		final double[][] X = this.data.getDataRef();
-		final double[] mean_record = MatUtils.meanRecord(X);
-		for(int i = 0; i < m; i++) {
-			for(int j = 0; j < mean_record.length; j++){
-				double diff = X[i][j] - mean_record[j];
-				tss += (diff * diff);
+		if(isSparse()) {
+			tss = sparseTSS(sparse_data);
+		} else {
+			final double[][] X = this.data.getDataRef();
+			final double[] mean_record = MatUtils.meanRecord(X);
+			for(int i = 0; i < m; i++) {
+				for(int j = 0; j < mean_record.length; j++){
+					double diff = X[i][j] - mean_record[j];
+					tss += (diff * diff);
+				}
 			}
 		}
 		
@@ -346,6 +718,235 @@ public abstract class AbstractCentroidClusterer extends AbstractPartitionalClust
 		wss = VecUtils.rep(Double.NaN, k);
 	}
 	
+	/**
+	 * Build a restart of the caller, sharing its validated data, row statistics, metric
+	 * and TSS. If the seeds are null, they are selected with the planner's
+	 * initialization strategy and seed.
+	 * @param caller
+	 * @param planner
+	 * @param seeds - the row indices of the initial centroids, or null
+	 */
+	protected AbstractCentroidClusterer(AbstractCentroidClusterer caller,
+			CentroidClustererParameters<? extends AbstractCentroidClusterer> planner,
+			int[] seeds) {
+		super(caller, planner, caller.k);
+		
+		this.init = planner.getInitializationStrategy();
+		this.maxIter = planner.getMaxIter();
+		this.tolerance = planner.getConvergenceTolerance();
+		this.m = caller.m;
+		this.tss = caller.tss;
+		this.warm_start = false;
+		this.prior_iter = -1;
+		
+		this.init_centroid_indices = null == seeds ? 
+			init.getInitialCentroidSeeds(this, k, getSeed()) : seeds;
+		for(int i: this.init_centroid_indices)
+			centroids.add(getDataRef().getRow(i));
+		
+		wss = VecUtils.rep(Double.NaN, k);
+	}
+	
+	/**
+	 * Validate the number of restarts. A warm start is only fit once,
+	 * as the restarts would all start from the same centroids.
+	 * @param nInit
+	 * @return the number of restarts to fit
+	 */
+	protected int warmStartNInit(final int nInit) {
+		if(nInit < 1)
+			error(new IllegalArgumentException("nInit must be positive"));
+		if(warm_start && nInit > 1) {
+			warn("warm started from the given centroids; fitting once rather than " + nInit + " times");
+			return 1;
+		}
+		
+		return nInit;
+	}
+	
+	/**
+	 * For each of the given centroids in turn, find the nearest record not already
+	 * taken by a previous centroid
+	 * @param C - the centroids
+	 * @return the row indices of the records
+	 */
+	protected int[] nearestRecords(final double[][] C) {
+		final boolean[] taken = new boolean[m];
+		final int[] nearest = new int[C.length];
+		final double[][] X = isSparse() ? null : data.getDataRef();
+		final PrecomputedRowStatistics centroid_stats = isSparse() ? new PrecomputedRowStatistics(C) : null;
+		
+		double minDist, dist;
+		for(int c = 0; c < C.length; c++) {
+			minDist = Double.POSITIVE_INFINITY;
+			nearest[c] = -1;
+			
+			for(int i = 0; i < m; i++) {
+				if(taken[i])
+					continue;
+				
+				dist = isSparse() ? dist_metric.getPartialDistance(sparse_data, i, centroid_stats, c) :
+					dist_metric.getPartialDistance(C[c], X[i]);
+				if(dist < minDist || -1 == nearest[c]) {
+					minDist = dist;
+					nearest[c] = i;
+				}
+			}
+			
+			taken[nearest[c]] = true;
+		}
+		
+		return nearest;
+	}
+	
+	/**
+	 * The iterations saved by a warm start relative to the fit of the
+	 * model the initial centroids were taken from
+	 * @return the iterations saved, or -1 if not warm started from a fit model
+	 */
+	public int getIterationsSaved() {
+		synchronized(fitLock) {
+			return prior_iter < 0 || null == labels ? -1 : prior_iter - iter;
+		}
+	}
+	
+	/**
+	 * Also reports the iterations saved by a warm start
+	 */
+	@Override
+	public void sayBye(final LogTimer timer) {
+		if(warm_start && prior_iter >= 0 && null != labels)
+			info("warm start fit in " + iter + " iteration(s) against " + prior_iter + 
+				" in the previous fit; saved " + (prior_iter - iter) + " iteration(s)");
+		super.sayBye(timer);
+	}
+	
+	/**
+	 * Build and fit the restarts, concurrently on the shared pool if this model is
+	 * parallel, and return the one with the lowest total WSS. Each restart is given its
+	 * own seed, derived from this model's seed. The last row of each restart's fit 
+	 * summary is added to this model's fit summary, in order.
+	 * @param nInit - the number of restarts
+	 * @param factory - builds the i<sup>th</sup> restart from its seed
+	 * @return the best restart
+	 */
+	protected <T extends AbstractCentroidClusterer> T fitRestarts(final int nInit, final RestartFactory<T> factory) {
+		final Random seed = getSeed();
+		final long[] seeds = new long[nInit];
+		for(int i = 0; i < nInit; i++)
+			seeds[i] = seed.nextLong();
+		
+		// Computed once here rather than racing in each restart
+		if(!isSparse())
+			getRowStatistics();
+		
+		final ArrayList<Callable<T>> tasks = new ArrayList<>(nInit);
+		for(int i = 0; i < nInit; i++) {
+			final int restart = i;
+			tasks.add(new Callable<T>() {
+				@Override public T call() {
+					final T model = factory.restart(restart, new Random(seeds[restart]));
+					model.fit();
+					return model;
+				}
+			});
+		}
+		
+		final ArrayList<T> restarts = invokeAll(tasks);
+		
+		T best = null;
+		double bestWSS = Double.POSITIVE_INFINITY;
+		for(int i = 0; i < nInit; i++) {
+			final T model = restarts.get(i);
+			final double total = model.totalWSS();
+			
+			if(model.fitSummary.size() > 1) // the first row is the header
+				fitSummary.add(model.fitSummary.get(model.fitSummary.size() - 1));
+			info("restart " + (i + 1) + " of " + nInit + " finished after " + 
+				model.iter + " iteration(s) with a WSS of " + total);
+			
+			if(null == best || total < bestWSS) {
+				best = model;
+				bestWSS = total;
+			}
+		}
+		
+		return best;
+	}
+	
+	/**
+	 * Run the tasks, concurrently on the shared pool if this model is parallel
+	 * @param tasks
+	 * @return the results, in the order of the tasks
+	 */
+	protected <T> ArrayList<T> invokeAll(final ArrayList<Callable<T>> tasks) {
+		final ArrayList<T> results = new ArrayList<>(tasks.size());
+		
+		try {
+			if(parallel) {
+				for(Future<T> future: ParallelChunkingTask.getThreadPool().invokeAll(tasks))
+					results.add(future.get());
+			} else {
+				for(Callable<T> task: tasks)
+					results.add(task.call());
+			}
+		} catch(InterruptedException | ExecutionException e) {
+			final Throwable cause = e.getCause();
+			if(cause instanceof RuntimeException)
+				throw (RuntimeException)cause;
+			throw new IllegalStateException("task failed", e);
+		} catch(RuntimeException e) {
+			throw e;
+		} catch(Exception e) {
+			throw new IllegalStateException("task failed", e);
+		}
+		
+		return results;
+	}
+	
+	/** The total WSS of a fit model, used to rank restarts */
+	double totalWSS() {
+		final double total = Double.isNaN(bss) ? VecUtils.sum(wss) : tss - bss;
+		return Double.isNaN(total) ? Double.POSITIVE_INFINITY : total;
+	}
+	
+	/**
+	 * Adopt the solution of a fit restart
+	 * @param best
+	 */
+	protected void adopt(final AbstractCentroidClusterer best) {
+		this.k = best.k;
+		this.init_centroid_indices = best.init_centroid_indices;
+		this.labels = best.labels;
+		this.centroids = best.centroids;
+		this.wss = best.wss;
+		this.bss = best.bss;
+		this.iter = best.iter;
+		this.converged = best.converged;
+	}
+	
+	/**
+	 * The sum of squared distances from the mean record, only visiting
+	 * the non-zeros: ||x - mu||^2 = ||mu||^2 + sum over the non-zeros of x(x - 2mu)
+	 */
+	static double sparseTSS(final CSRMatrix X) {
+		final int m = X.getRowDimension();
+		final int[] indices = X.getIndicesRef();
+		final double[] values = X.getValuesRef();
+		
+		final double[] mean_record = new double[X.getColumnDimension()];
+		for(int p = 0; p < values.length; p++)
+			mean_record[indices[p]] += values[p];
+		for(int j = 0; j < mean_record.length; j++)
+			mean_record[j] /= (double)m;
+		
+		double tss = m * VecUtils.innerProduct(mean_record, mean_record);
+		for(int p = 0; p < values.length; p++)
+			tss += values[p] * (values[p] - 2.0 * mean_record[indices[p]]);
+		
+		return tss;
+	}
+	
 	@Override
 	final public boolean isValidMetric(GeometricallySeparable geo) {
 		return !UNSUPPORTED_METRICS.contains(geo.getClass());
@@ -356,7 +957,7 @@ public abstract class AbstractCentroidClusterer extends AbstractPartitionalClust
 		return new ModelSummary(new Object[]{
 				"Num Rows","Num Cols","Metric","K","Allow Par.","Max Iter","Tolerance","Init."
 			}, new Object[]{
-				m,data.getColumnDimension(),getSeparabilityMetric(),k,
+				m,getDataRef().getColumnDimension(),getSeparabilityMetric(),k,
 				parallel,
 				maxIter, tolerance, init.toString()
 			});
@@ -28,6 +28,7 @@ import org.apache.commons.math3.util.FastMath;
 
 import com.clust4j.GlobalState;
 import com.clust4j.NamedEntity;
+import com.clust4j.data.CSRMatrix;
 import com.clust4j.except.ModelNotFitException;
 import com.clust4j.except.NaNException;
 import com.clust4j.kernel.Kernel;
@@ -37,6 +38,7 @@ import com.clust4j.log.Loggable;
 import com.clust4j.metrics.pairwise.Distance;
 import com.clust4j.metrics.pairwise.DistanceMetric;
 import com.clust4j.metrics.pairwise.GeometricallySeparable;
+import com.clust4j.metrics.pairwise.PrecomputedRowStatistics;
 import com.clust4j.metrics.pairwise.SimilarityMetric;
 import com.clust4j.utils.MatUtils;
 import com.clust4j.utils.TableFormatter.Table;
@@ -68,8 +70,10 @@ public abstract class AbstractClusterer
 	
 	
 	
-	/** Underlying data */
+	/** Underlying data -- null if the model holds {@link #sparse_data} instead */
 	final protected Array2DRowRealMatrix data;
+	/** Underlying sparse data -- only non-null for a {@link SparseLearner} fit with a {@link CSRMatrix} */
+	final protected CSRMatrix sparse_data;
 	/** Similarity metric */
 	protected GeometricallySeparable dist_metric;
 	/** Seed for any shuffles */
@@ -80,6 +84,8 @@ public abstract class AbstractClusterer
 	protected final boolean parallel;
 	/** Whether the entire matrix is comprised of only one unique value */
 	protected boolean singular_value;
+	/** Lazily computed row norms -- shared with models built from this one */
+	transient volatile private PrecomputedRowStatistics row_stats = null;
 	
 	
 	
@@ -108,9 +114,11 @@ public abstract class AbstractClusterer
 		this.modelKey 		= getName() + "_" + UUID.randomUUID();
 		this.random_state 	= null == planner ? caller.random_state : planner.getSeed();
 		this.data 			= caller.data; // Use the reference
+		this.sparse_data	= caller.sparse_data;
 		this.parallel 		= caller.parallel;
 		this.fitSummary 	= new ModelSummary(getModelFitSummaryHeaders());
 		this.singular_value = caller.singular_value;
+		this.row_stats		= caller.row_stats; // same data, same stats
 	}
 	
 	protected AbstractClusterer(RealMatrix data, BaseClustererParameters planner, boolean as_is) {
@@ -133,9 +141,18 @@ public abstract class AbstractClusterer
 			warn("running " + getName() + " in Kernel mode can be an expensive option");
 		
 		// Handle data, now...
-		this.data = as_is ? 
-			(Array2DRowRealMatrix)data : // internally, always 2d...
-				initData(data);
+		if(data instanceof CSRMatrix && this instanceof SparseLearner) {
+			this.data = null;
+			this.sparse_data = as_is ? 
+				(CSRMatrix)data : 
+					initSparseData((CSRMatrix)data);
+		} else {
+			this.sparse_data = null;
+			this.data = as_is ? 
+				(Array2DRowRealMatrix)data : // internally, always 2d...
+					initData(data);
+		}
+		
 		if(singular_value)
 			warn("all elements in input matrix are equal ("+data.getEntry(0, 0)+")");
 			
@@ -154,6 +171,22 @@ public abstract class AbstractClusterer
 	
 	
 	
+	/**
+	 * Get the precomputed row norms of the data, computing them on
+	 * the first call. Since models constructed from another share its
+	 * data reference, they share its statistics as well.
+	 * @return the row statistics
+	 */
+	protected PrecomputedRowStatistics getRowStatistics() {
+		if(isSparse())
+			throw new IllegalStateException("row statistics are only available for dense data");
+		
+		PrecomputedRowStatistics stats = row_stats;
+		if(null == stats) // benign race -- at worst computed twice
+			row_stats = stats = new PrecomputedRowStatistics(data.getDataRef());
+		return stats;
+	}
+	
 	final private Array2DRowRealMatrix initData(final RealMatrix data) {
 		final int m = data.getRowDimension(), n = data.getColumnDimension();
 		final double[][] ref = new double[m][n];
@@ -165,18 +198,16 @@ public abstract class AbstractClusterer
 		double[] maxes = VecUtils.rep(Double.NEGATIVE_INFINITY, n);
 		double[] mins  = VecUtils.rep(Double.POSITIVE_INFINITY, n);
 		
-		// This will store summaries for each column + a header
-		ModelSummary summaries = new ModelSummary(new Object[]{
-			"Feature #","Variance","Std. Dev","Mean","Max","Min"
-		});
-		
 		/*
 		 * Internally performs the copy
 		 */
 		double entry;
 		for(int i = 0; i < m; i++) {
+			// a CSRMatrix would have to search for each entry...
+			final double[] row = data instanceof CSRMatrix ? data.getRow(i) : null;
+			
 			for(int j = 0; j < n; j++) {
-				entry = data.getEntry(i, j);
+				entry = null == row ? data.getEntry(i, j) : row[j];
 						
 				if(Double.isNaN(entry)) {
 					error(new NaNException("NaN in input data. "
@@ -192,30 +223,11 @@ public abstract class AbstractClusterer
 					sum[j]   += entry;
 					maxes[j]  = FastMath.max(entry, maxes[j]);
 					mins[j]   = FastMath.min(entry, mins[j]);
-					
-					// if it's the last row, we can compute these:
-					if(i == m - 1) {
-						double var = (sumSq[j] - (sum[j]*sum[j])/(double)m ) / ((double)m - 1.0);
-						if(var == 0) {
-							warn("zero variance in feature " + j);
-						}
-						
-						summaries.add(new Object[]{
-							j, // feature num
-							var, // var
-							m < 2 ? Double.NaN : FastMath.sqrt(var), // std dev
-							sum[j] / (double)m, // mean
-							maxes[j], // max
-							mins[j] // min
-						});
-					}
 				}
 			}
 		}
 		
-		// Log the summaries
-		summaryLogger(formatter.format(summaries));
-		
+		summarizeFeatures(m, sum, sumSq, maxes, mins);
 		if(unique.size() == 1)
 			this.singular_value = true;
 
@@ -225,6 +237,88 @@ public abstract class AbstractClusterer
 		return new Array2DRowRealMatrix(ref, false);
 	}
 	
+	/**
+	 * The sparse analogue of {@link #initData(RealMatrix)}, which only
+	 * visits the non-zero entries. Any column with fewer than m stored
+	 * values contains an implicit zero.
+	 */
+	final private CSRMatrix initSparseData(final CSRMatrix data) {
+		final int m = data.getRowDimension(), n = data.getColumnDimension();
+		final int[] indices = data.getIndicesRef();
+		final double[] values = data.getValuesRef();
+		final HashSet<Double> unique = new HashSet<>();
+		
+		double[] sum   = new double[n];
+		double[] sumSq = new double[n];
+		double[] maxes = VecUtils.rep(Double.NEGATIVE_INFINITY, n);
+		double[] mins  = VecUtils.rep(Double.POSITIVE_INFINITY, n);
+		int[] counts   = new int[n];
+		
+		double entry;
+		for(int p = 0, j; p < values.length; p++) {
+			entry = values[p];
+			j = indices[p];
+			
+			if(Double.isNaN(entry)) {
+				error(new NaNException("NaN in input data. "
+					+ "Select a matrix imputation method for "
+					+ "incomplete records"));
+			} else {
+				unique.add(entry);
+				counts[j]++;
+				
+				sumSq[j] += entry * entry;
+				sum[j]   += entry;
+				maxes[j]  = FastMath.max(entry, maxes[j]);
+				mins[j]   = FastMath.min(entry, mins[j]);
+			}
+		}
+		
+		// Account for the implicit zeros
+		for(int j = 0; j < n; j++) {
+			if(counts[j] < m) {
+				unique.add(0.0);
+				maxes[j] = FastMath.max(0.0, maxes[j]);
+				mins[j]  = FastMath.min(0.0, mins[j]);
+			}
+		}
+		
+		summarizeFeatures(m, sum, sumSq, maxes, mins);
+		if(unique.size() == 1)
+			this.singular_value = true;
+		
+		return data.copy();
+	}
+	
+	/**
+	 * Log the summaries for each feature, warning for any with zero variance
+	 */
+	final private void summarizeFeatures(int m, double[] sum, double[] sumSq, double[] maxes, double[] mins) {
+		// This will store summaries for each column + a header
+		ModelSummary summaries = new ModelSummary(new Object[]{
+			"Feature #","Variance","Std. Dev","Mean","Max","Min"
+		});
+		
+		for(int j = 0; j < sum.length; j++) {
+			double var = (sumSq[j] - (sum[j]*sum[j])/(double)m ) / ((double)m - 1.0);
+			if(var == 0) {
+				warn("zero variance in feature " + j);
+			}
+			
+			summaries.add(new Object[]{
+				j, // feature num
+				var, // var
+				m < 2 ? Double.NaN : FastMath.sqrt(var), // std dev
+				sum[j] / (double)m, // mean
+				maxes[j], // max
+				mins[j] // min
+			});
+		}
+		
+		// Log the summaries
+		summaryLogger(formatter.format(summaries));
+	}
+	
 	
 	/**
 	 * A model must have the same key, data and class name
@@ -242,7 +336,11 @@ public abstract class AbstractClusterer
 			if(!this.getKey().equals(a.getKey()))
 				return false;
 			
-			return MatUtils.equalsExactly(this.data.getDataRef(), a.data.getDataRef())
+			if(this.isSparse() != a.isSparse())
+				return false;
+			
+			return (isSparse() ? this.sparse_data.equals(a.sparse_data) :
+					MatUtils.equalsExactly(this.data.getDataRef(), a.data.getDataRef()))
 				&& this.getClass().equals(a.getClass())
 				//&& this.hashCode() == a.hashCode()
 				;
@@ -274,7 +372,25 @@ public abstract class AbstractClusterer
 	 * @return copy of data
 	 */
 	public RealMatrix getData() {
-		return data.copy();
+		return getDataRef().copy();
+	}
+	
+	/**
+	 * Whether the model holds a {@link CSRMatrix} rather than dense data.
+	 * This is only ever the case for a {@link SparseLearner} fit with a CSRMatrix.
+	 * @return whether the model's data is sparse
+	 */
+	public boolean isSparse() {
+		return null != sparse_data;
+	}
+	
+	/**
+	 * The internal reference to whichever of {@link #data} or
+	 * {@link #sparse_data} the model holds -- for internal use
+	 * @return the data reference
+	 */
+	protected RealMatrix getDataRef() {
+		return isSparse() ? sparse_data : data;
 	}
 	
 	
@@ -314,7 +430,7 @@ public abstract class AbstractClusterer
 				dist_metric instanceof SimilarityMetric ? 53 : 1)
 			// ^ (hasWarnings ? 1 : 0) // removed because forces state dependency
 			^ random_state.hashCode()
-			^ data.hashCode();
+			^ getDataRef().hashCode();
 	}
 	
 	
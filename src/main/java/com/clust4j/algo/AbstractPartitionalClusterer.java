@@ -46,6 +46,21 @@ public abstract class AbstractPartitionalClusterer extends AbstractClusterer {
 		}
 	} // End constructor
 	
+	/**
+	 * Build a new instance from another caller, sharing its (already validated) data
+	 * @param caller
+	 * @param planner
+	 * @param k
+	 */
+	protected AbstractPartitionalClusterer(
+			AbstractClusterer caller,
+			BaseClustererParameters planner,
+			final int k)
+	{
+		super(caller, planner);
+		this.k = k;
+	}
+	
 	public int getK() {
 		return k;
 	}
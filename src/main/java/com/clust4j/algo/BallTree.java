@@ -105,6 +105,10 @@ public class BallTree extends NearestNeighborHeapSearch {
 		super(X, leaf_size, dist, logger);
 	}
 	
+	protected BallTree(final BallTree tree) {
+		super(tree);
+	}
+	
 	
 	
 	@Override
@@ -150,6 +154,11 @@ public class BallTree extends NearestNeighborHeapSearch {
 	final BallTree newInstance(double[][] arr, int leaf, DistanceMetric dist, Loggable logger) {
 		return new BallTree(new Array2DRowRealMatrix(arr, false), leaf, dist, logger);
 	}
+	
+	@Override
+	final BallTree newReader() {
+		return new BallTree(this);
+	}
 
 	@Override
 	double minDist(NearestNeighborHeapSearch tree, int i_node, double[] pt) {
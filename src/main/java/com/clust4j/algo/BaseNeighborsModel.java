@@ -15,15 +15,18 @@
  *******************************************************************************/
 package com.clust4j.algo;
 
+import java.util.Arrays;
+
 import org.apache.commons.math3.linear.RealMatrix;
 
 import com.clust4j.GlobalState;
 import com.clust4j.algo.Neighborhood;
+import com.clust4j.data.CSRMatrix;
 import com.clust4j.except.ModelNotFitException;
 import com.clust4j.metrics.pairwise.DistanceMetric;
 import com.clust4j.metrics.pairwise.GeometricallySeparable;
 
-abstract public class BaseNeighborsModel extends AbstractClusterer {
+abstract public class BaseNeighborsModel extends AbstractClusterer implements SparseLearner {
 	private static final long serialVersionUID = 1054047329248586585L;
 	
 	public static final NeighborsAlgorithm DEF_ALGO = NeighborsAlgorithm.AUTO;
@@ -116,7 +119,8 @@ abstract public class BaseNeighborsModel extends AbstractClusterer {
 	}
 	
 	@Override final public boolean isValidMetric(GeometricallySeparable g) {
-		return this.alg.isValidMetric(g);
+		// brute force search over sparse data builds no tree
+		return null == this.alg ? g instanceof DistanceMetric : this.alg.isValidMetric(g);
 	}
 	
 	
@@ -153,6 +157,21 @@ abstract public class BaseNeighborsModel extends AbstractClusterer {
 		if(leafSize < 1)
 			throw new IllegalArgumentException("leafsize must be positive");
 		
+		/*
+		 * Neither tree can index sparse data, so sparse models
+		 * answer all queries via brute force over the non-zeros
+		 */
+		if(isSparse()) {
+			if(!isValidMetric(dist_metric)) {
+				warn(dist_metric.getName() + " is not a valid metric for brute force search. "
+					+ "Falling back to default Euclidean");
+				setSeparabilityMetric(DEF_DIST);
+			}
+			
+			this.m = sparse_data.getRowDimension();
+			return;
+		}
+		
 		/*
 		 * Internally handles metric validation...
 		 */
@@ -186,6 +205,79 @@ abstract public class BaseNeighborsModel extends AbstractClusterer {
 		return res.copy();
 	}
 	
+	/**
+	 * The search algorithm used to answer queries
+	 * @return the tree algorithm, or brute force for sparse data
+	 */
+	Object searchAlgorithm() {
+		return isSparse() ? "BRUTE_FORCE" : alg;
+	}
+	
+	static CSRMatrix asSparse(RealMatrix X) {
+		return X instanceof CSRMatrix ? (CSRMatrix)X : new CSRMatrix(X);
+	}
+	
+	/**
+	 * Brute force search of the sparse fit data for the k nearest neighbors
+	 * of each row in X, sorted ascending by distance. Each distance computation
+	 * only visits the non-zero entries of the two rows.
+	 * @param X
+	 * @param k
+	 * @return the neighborhood
+	 */
+	Neighborhood sparseQuery(final CSRMatrix X, final int k) {
+		final int mq = X.getRowDimension();
+		final NearestNeighborHeapSearch.NeighborsHeap heap = 
+			new NearestNeighborHeapSearch.NeighborsHeap(mq, k);
+		
+		for(int i = 0; i < mq; i++)
+			for(int j = 0; j < m; j++)
+				heap.push(i, dist_metric.getPartialDistance(X, i, sparse_data, j), j);
+		
+		heap.sort();
+		for(double[] row: heap.distances)
+			for(int j = 0; j < row.length; j++)
+				row[j] = dist_metric.partialDistanceToDistance(row[j]);
+		
+		return heap.getArrays(false);
+	}
+	
+	/**
+	 * Brute force search of the sparse fit data for the neighbors within
+	 * the radius of each row in X, in ascending index order. Each distance 
+	 * computation only visits the non-zero entries of the two rows.
+	 * @param X
+	 * @param radius
+	 * @return the neighborhood
+	 */
+	Neighborhood sparseQueryRadius(final CSRMatrix X, final double radius) {
+		final int mq = X.getRowDimension();
+		final double reduced_r = dist_metric.distanceToPartialDistance(radius);
+		final double[][] dists = new double[mq][];
+		final int[][] indices = new int[mq][];
+		
+		// Buffers reused across the rows, then trimmed
+		final double[] d_buf = new double[m];
+		final int[] i_buf = new int[m];
+		
+		double dist_pt;
+		for(int i = 0; i < mq; i++) {
+			int count = 0;
+			for(int j = 0; j < m; j++) {
+				dist_pt = dist_metric.getPartialDistance(X, i, sparse_data, j);
+				if(dist_pt <= reduced_r) {
+					d_buf[count] = dist_metric.partialDistanceToDistance(dist_pt);
+					i_buf[count++] = j;
+				}
+			}
+			
+			dists[i] = Arrays.copyOf(d_buf, count);
+			indices[i] = Arrays.copyOf(i_buf, count);
+		}
+		
+		return new Neighborhood(dists, indices);
+	}
+	
 	/**
 	 * A class to query the tree for neighborhoods in parallel
 	 * @author Taylor G Smith
@@ -229,7 +321,8 @@ abstract public class BaseNeighborsModel extends AbstractClusterer {
 
 		@Override
 		public Neighborhood reduce(Chunk chunk) {
-			Neighborhood n = query(model.tree, chunk.get());
+			// Each chunk gets its own reader so concurrent searches don't share counters
+			Neighborhood n = query(model.tree.newReader(), chunk.get());
 			
 			// assign to low index, since that's how we retrieved the chunk...
 			final int start = chunk.start , end = start + chunk.size();
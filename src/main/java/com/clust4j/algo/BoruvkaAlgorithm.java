@@ -15,9 +15,12 @@
  *******************************************************************************/
 package com.clust4j.algo;
 
+import java.util.concurrent.RecursiveTask;
+
 import org.apache.commons.math3.linear.Array2DRowRealMatrix;
 import org.apache.commons.math3.util.FastMath;
 
+import com.clust4j.GlobalState;
 import com.clust4j.algo.Neighborhood;
 import com.clust4j.algo.NearestNeighborHeapSearch.NodeData;
 import com.clust4j.log.LogTimer;
@@ -47,10 +50,14 @@ class BoruvkaAlgorithm implements java.io.Serializable {
 	private final int leafSize;
 	private final Loggable logger;
 	private final double alpha;
+	/** Whether the core distance queries are split across the ForkJoin pool */
+	private final boolean parallel;
+	/** Whether each round's dual tree traversal is forked over query subtrees */
+	private final boolean forkTraversal;
 	
 	protected BoruvkaAlgorithm(NearestNeighborHeapSearch tree, int min_samples, 
 			DistanceMetric metric, int leafSize, boolean approx_min_span_tree,
-			double alpha, Loggable logger) {
+			double alpha, boolean parallel, boolean forkTraversal, Loggable logger) {
 		
 		this.outer_tree = tree;
 		this.minSamples = min_samples;
@@ -59,6 +66,8 @@ class BoruvkaAlgorithm implements java.io.Serializable {
 		this.approxMinSpanTree = approx_min_span_tree;
 		this.alpha = alpha;
 		this.logger = logger;
+		this.parallel = parallel;
+		this.forkTraversal = forkTraversal;
 		
 		
 		// Create the actual solver -- if using logger,
@@ -69,6 +78,78 @@ class BoruvkaAlgorithm implements java.io.Serializable {
 	}
 	
 	
+	/**
+	 * The closest edge found out of each component, indexed by the component
+	 * @author Taylor G Smith
+	 */
+	static class Candidates {
+		final int[] point;
+		final int[] neighbor;
+		final double[] distance;
+		
+		Candidates(int n) {
+			this(new int[n], new int[n], new double[n]);
+		}
+		
+		Candidates(int[] point, int[] neighbor, double[] distance) {
+			this.point = point;
+			this.neighbor = neighbor;
+			this.distance = distance;
+		}
+		
+		void copy(Candidates other, int[] components) {
+			for(int c: components) {
+				point[c] = other.point[c];
+				neighbor[c] = other.neighbor[c];
+				distance[c] = other.distance[c];
+			}
+		}
+		
+		void merge(Candidates other, int[] components) {
+			for(int c: components) {
+				if(other.distance[c] < distance[c]) {
+					point[c] = other.point[c];
+					neighbor[c] = other.neighbor[c];
+					distance[c] = other.distance[c];
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Splits the query subtrees of a {@link Boruvka#forkDualTreeTraversal()}
+	 * and searches each in parallel
+	 * @author Taylor G Smith
+	 */
+	static class TraversalTask extends RecursiveTask<Void> {
+		private static final long serialVersionUID = -4404117863524913412L;
+		final transient Boruvka alg;
+		final int lo, hi;
+		
+		TraversalTask(Boruvka alg, int lo, int hi) {
+			this.alg = alg;
+			this.lo = lo;
+			this.hi = hi;
+		}
+		
+		@Override
+		protected Void compute() {
+			if(hi - lo <= 1) {
+				alg.traverseSubtree(lo);
+			} else {
+				int mid = lo + (hi - lo) / 2;
+				TraversalTask left  = new TraversalTask(alg, lo, mid);
+				TraversalTask right = new TraversalTask(alg, mid, hi);
+				
+				left.fork();
+				right.compute();
+				left.join();
+			}
+			
+			return null;
+		}
+	}
+	
 	protected static class BoruvkaUnionFind extends HDBSCAN.TreeUnionFind {
 		BoruvkaUnionFind(int N) {
 			super(N);
@@ -146,6 +227,12 @@ class BoruvkaAlgorithm implements java.io.Serializable {
 		double[][] edges;
 		double[] coreDistance;
 		
+		/** Views the candidate arrays for the serial traversal */
+		final Candidates candidates;
+		/** The subtrees searched by the forked traversal, and their candidates */
+		int firstRoot;
+		Candidates[] subtreeCandidates;
+		
 		Boruvka(boolean partialTrans, NearestNeighborHeapSearch TREE){
 			this.TREE 			= TREE;
 			this.tree_data_ref 	= TREE.getDataRef();
@@ -166,6 +253,7 @@ class BoruvkaAlgorithm implements java.io.Serializable {
 			this.candidateDistance 	= new double[numPoints];
 			this.edges 				= new double[numPoints - 1][3];
 			this.componentUnionFind = new BoruvkaUnionFind(numPoints);
+			this.candidates = new Candidates(candidatePoint, candidateNeighbors, candidateDistance);
 			
 			LogTimer s = new LogTimer();
 			this.partialDistTransform = partialTrans;
@@ -195,13 +283,52 @@ class BoruvkaAlgorithm implements java.io.Serializable {
 			int numComponents = this.tree_data_ref.length;
 			
 			while(numComponents > 1) {
-				this.dualTreeTraversal(0, 0);
+				if(forkTraversal)
+					this.forkDualTreeTraversal();
+				else
+					this.dualTreeTraversal(0, 0, candidates, 0);
+				
 				numComponents = this.updateComponents();
 			}
 			
 			return this.edges;
 		}
 		
+		/**
+		 * Searches each query subtree at a fixed depth against the whole tree in the
+		 * ForkJoin pool. Each subtree keeps its own candidates and bounds, so the
+		 * searches share nothing they write. The subtrees' candidates are then merged
+		 * in order, keeping the strictly closest edge for each component.
+		 */
+		final void forkDualTreeTraversal() {
+			if(null == subtreeCandidates) {
+				final int target = 4 * GlobalState.ParallelismConf.NUM_CORES;
+				
+				// The nodes at depth d are 2^d - 1 through 2^(d+1) - 2
+				int depth = 0;
+				while((1 << depth) < target && (4 << depth) - 1 <= numNodes)
+					depth++;
+				
+				this.firstRoot = (1 << depth) - 1;
+				this.subtreeCandidates = new Candidates[1 << depth];
+				for(int t = 0; t < subtreeCandidates.length; t++)
+					subtreeCandidates[t] = new Candidates(numPoints);
+			}
+			
+			ParallelChunkingTask.getThreadPool().invoke(
+				new TraversalTask(this, 0, subtreeCandidates.length));
+			
+			for(Candidates c: subtreeCandidates)
+				candidates.merge(c, components);
+		}
+		
+		final void traverseSubtree(int t) {
+			final Candidates local = subtreeCandidates[t];
+			local.copy(candidates, components);
+			
+			this.dualTreeTraversal(firstRoot + t, 0, local, firstRoot + t);
+		}
+		
 		final int updateComponents() {
 			int source, sink, c, component, n, i, p, currentComponent,
 				currentSrcComponent, currentSinkComponent, child1, child2,
@@ -316,7 +443,13 @@ class BoruvkaAlgorithm implements java.io.Serializable {
 		}
 
 		abstract void computeBounds();
-		abstract int dualTreeTraversal(int node1, int node2);
+		
+		/**
+		 * Searches the query subtree under <tt>node1</tt> against the reference subtree
+		 * under <tt>node2</tt>, recording the closest edge out of each component in
+		 * <tt>c</tt> and propagating tightened bounds no higher than <tt>root</tt>
+		 */
+		abstract int dualTreeTraversal(int node1, int node2, Candidates c, int root);
 	}
 	
 	protected class KDTreeBoruvAlg extends Boruvka {
@@ -334,7 +467,7 @@ class BoruvkaAlgorithm implements java.io.Serializable {
 			// we eliminated the breadth-first option in favor of depth-first
 			// for all cases for the time being.
 			Neighborhood queryResult =
-				TREE.query(tree_data_ref, minSamples + 1, true, true);
+				TREE.query(tree_data_ref, minSamples + 1, true, true, parallel);
 		
 			double[][] knnDist = queryResult.getDistances();
 			int[][] knnIndices = queryResult.getIndices();
@@ -365,7 +498,7 @@ class BoruvkaAlgorithm implements java.io.Serializable {
 		}
 
 		@Override
-		int dualTreeTraversal(int node1, int node2) {
+		int dualTreeTraversal(int node1, int node2, Candidates c, int root) {
 			int[] pointIndices1, pointIndices2;
 			int i, j, p, q, parent;
 			
@@ -419,14 +552,14 @@ class BoruvkaAlgorithm implements java.io.Serializable {
 					p = pointIndices1[i];
 					component1 = this.componentOfPoint[p];
 					
-					if(this.coreDistance[p] > this.candidateDistance[component1])
+					if(this.coreDistance[p] > c.distance[component1])
 						continue;
 					
 					for(j = 0; j < pointIndices2.length; j++) {
 						q = pointIndices2[j];
 						component2 = this.componentOfPoint[q];
 						
-						if(this.coreDistance[q] > this.candidateDistance[component1])
+						if(this.coreDistance[q] > c.distance[component1])
 							continue;
 						
 						
@@ -443,16 +576,16 @@ class BoruvkaAlgorithm implements java.io.Serializable {
 									FastMath.max(this.coreDistance[p], 
 										this.coreDistance[q]));
 							
-							if(mrDist < this.candidateDistance[component1]) {
-								this.candidateDistance[component1]	= mrDist;
-								this.candidateNeighbors[component1]	= q;
-								this.candidatePoint[component1]		= p;
+							if(mrDist < c.distance[component1]) {
+								c.distance[component1]	= mrDist;
+								c.neighbor[component1]	= q;
+								c.point[component1]		= p;
 							}
 						}
 					} // end for j
 					
-					newUpperBound = FastMath.max(newUpperBound, this.candidateDistance[component1]);
-					newLowerBound = FastMath.min(newLowerBound, this.candidateDistance[component1]);
+					newUpperBound = FastMath.max(newUpperBound, c.distance[component1]);
+					newLowerBound = FastMath.min(newLowerBound, c.distance[component1]);
 				} // end for i
 				
 				// Calc new bound
@@ -463,7 +596,7 @@ class BoruvkaAlgorithm implements java.io.Serializable {
 					this.bounds[node1] = newBound;
 					
 					// propagate bounds up...
-					while(node1 > 0) {
+					while(node1 > root) {
 						parent = (node1 - 1) / 2;
 						left = 2 * parent + 1;
 						right = 2 * parent + 2;
@@ -495,12 +628,12 @@ class BoruvkaAlgorithm implements java.io.Serializable {
 						node1, right,node_bounds, this.numFeatures);
 				
 				if(leftDist < rightDist) {
-					this.dualTreeTraversal(node1, left);
-					this.dualTreeTraversal(node1, right);
+					this.dualTreeTraversal(node1, left, c, root);
+					this.dualTreeTraversal(node1, right, c, root);
 					
 				} else { // Navigate in opposite order
-					this.dualTreeTraversal(node1, right);
-					this.dualTreeTraversal(node1, left);
+					this.dualTreeTraversal(node1, right, c, root);
+					this.dualTreeTraversal(node1, left, c, root);
 				}
 			} // end case 2 if
 			
@@ -519,12 +652,12 @@ class BoruvkaAlgorithm implements java.io.Serializable {
 						right,node2, node_bounds, this.numFeatures);
 				
 				if(leftDist < rightDist) {
-					this.dualTreeTraversal(left, node2);
-					this.dualTreeTraversal(right, node2);
+					this.dualTreeTraversal(left, node2, c, root);
+					this.dualTreeTraversal(right, node2, c, root);
 					
 				} else {
-					this.dualTreeTraversal(right, node2);
-					this.dualTreeTraversal(left, node2);
+					this.dualTreeTraversal(right, node2, c, root);
+					this.dualTreeTraversal(left, node2, c, root);
 				}
 			}
 			
@@ -551,7 +684,7 @@ class BoruvkaAlgorithm implements java.io.Serializable {
 			
 			// No longer doing breadth-first searches
 			Neighborhood queryResult =
-				TREE.query(tree_data_ref, minSamples, true, true);
+				TREE.query(tree_data_ref, minSamples, true, true, parallel);
 		
 			double[][] knnDist = queryResult.getDistances();
 			int[][] knnIndices = queryResult.getIndices();
@@ -580,7 +713,7 @@ class BoruvkaAlgorithm implements java.io.Serializable {
 		}
 
 		@Override
-		int dualTreeTraversal(int node1, int node2) {
+		int dualTreeTraversal(int node1, int node2, Candidates c, int root) {
 			int[] pointIndices1, pointIndices2;
 			int i, j, p, q, parent //,child1, child2
 			;
@@ -640,14 +773,14 @@ class BoruvkaAlgorithm implements java.io.Serializable {
 					p = pointIndices1[i];
 					component1 = this.componentOfPoint[p];
 					
-					if(this.coreDistance[p] > this.candidateDistance[component1])
+					if(this.coreDistance[p] > c.distance[component1])
 						continue;
 					
 					for(j = 0; j < pointIndices2.length; j++) {
 						q = pointIndices2[j];
 						component2 = this.componentOfPoint[q];
 						
-						if(this.coreDistance[q] > this.candidateDistance[component1])
+						if(this.coreDistance[q] > c.distance[component1])
 							continue;
 						
 						// They belong to different components
@@ -662,16 +795,16 @@ class BoruvkaAlgorithm implements java.io.Serializable {
 									FastMath.max(this.coreDistance[p], 
 										this.coreDistance[q]));
 							
-							if(mrDist < this.candidateDistance[component1]) {
-								this.candidateDistance[component1]	= mrDist;
-								this.candidateNeighbors[component1]	= q;
-								this.candidatePoint[component1]		= p;
+							if(mrDist < c.distance[component1]) {
+								c.distance[component1]	= mrDist;
+								c.neighbor[component1]	= q;
+								c.point[component1]		= p;
 							}
 						}
 					} // end for j
 					
-					newUpperBound = FastMath.max(newUpperBound, this.candidateDistance[component1]);
-					newLowerBound = FastMath.min(newLowerBound, this.candidateDistance[component1]);
+					newUpperBound = FastMath.max(newUpperBound, c.distance[component1]);
+					newLowerBound = FastMath.min(newLowerBound, c.distance[component1]);
 				} // end for i
 				
 				// Calc new bound
@@ -682,7 +815,7 @@ class BoruvkaAlgorithm implements java.io.Serializable {
 					this.bounds[node1] = newBound;
 					
 					// propagate bounds up...
-					while(node1 > 0) {
+					while(node1 > root) {
 						parent = (node1 - 1) / 2;
 						left = 2 * parent + 1;
 						right = 2 * parent + 2;
@@ -725,12 +858,12 @@ class BoruvkaAlgorithm implements java.io.Serializable {
 						node2Info.radius(), node1, right, this.centroidDistances);
 				
 				if(leftDist < rightDist) {
-					this.dualTreeTraversal(node1, left);
-					this.dualTreeTraversal(node1, right);
+					this.dualTreeTraversal(node1, left, c, root);
+					this.dualTreeTraversal(node1, right, c, root);
 					
 				} else { // Navigate in opposite order
-					this.dualTreeTraversal(node1, right);
-					this.dualTreeTraversal(node1, left);
+					this.dualTreeTraversal(node1, right, c, root);
+					this.dualTreeTraversal(node1, left, c, root);
 				}
 			} // end case 2 if
 			
@@ -749,12 +882,12 @@ class BoruvkaAlgorithm implements java.io.Serializable {
 						node2Info.radius(), right, node2, this.centroidDistances);
 				
 				if(leftDist < rightDist) {
-					this.dualTreeTraversal(left, node2);
-					this.dualTreeTraversal(right, node2);
+					this.dualTreeTraversal(left, node2, c, root);
+					this.dualTreeTraversal(right, node2, c, root);
 					
 				} else {
-					this.dualTreeTraversal(right, node2);
-					this.dualTreeTraversal(left, node2);
+					this.dualTreeTraversal(right, node2, c, root);
+					this.dualTreeTraversal(left, node2, c, root);
 				}
 			}
 			
@@ -766,4 +899,27 @@ class BoruvkaAlgorithm implements java.io.Serializable {
 	protected final double[][] spanningTree() {
 		return alg.spanningTree();
 	}
+	
+	/**
+	 * The core distance of each point
+	 * @return the core distances
+	 */
+	protected final double[] coreDistances() {
+		final double[] core = VecUtils.copy(alg.coreDistance);
+		
+		// The KD tree's are held as reduced distances
+		if(alg.partialDistTransform)
+			for(int i = 0; i < core.length; i++)
+				core[i] = metric.partialDistanceToDistance(core[i]);
+		
+		return core;
+	}
+	
+	/**
+	 * The number of neighbors, counting the point itself, the core distances span
+	 * @return the number of neighbors
+	 */
+	protected final int coreNeighbors() {
+		return alg.partialDistTransform ? minSamples + 1 : minSamples;
+	}
 }
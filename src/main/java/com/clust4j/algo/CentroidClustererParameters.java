@@ -16,9 +16,12 @@
 
 package com.clust4j.algo;
 
+import java.util.Collection;
+
 import org.apache.commons.math3.linear.RealMatrix;
 
 import com.clust4j.algo.AbstractCentroidClusterer.InitializationStrategy;
+import com.clust4j.except.ModelNotFitException;
 
 public abstract class CentroidClustererParameters<T extends AbstractCentroidClusterer> extends BaseClustererParameters
 		implements UnsupervisedClassifierParameters<T>, ConvergeablePlanner {
@@ -26,6 +29,12 @@ public abstract class CentroidClustererParameters<T extends AbstractCentroidClus
 	private static final long serialVersionUID = -1984508955251863189L;
 	protected int k = AbstractCentroidClusterer.DEF_K;
 	protected double minChange = AbstractCentroidClusterer.DEF_CONVERGENCE_TOLERANCE;
+	/** The initial centroids, or null to select them with the initialization strategy */
+	protected double[][] initialCentroids = null;
+	/** The row indices of the initial centroids, which take precedence over {@link #initialCentroids} */
+	protected int[] initialIndices = null;
+	/** The iterations elapsed in the model the initial centroids were taken from, or -1 */
+	protected int priorIter = -1;
 
 	@Override abstract public T fitNewModel(RealMatrix mat);
 	@Override abstract public int getMaxIter();
@@ -36,6 +45,78 @@ public abstract class CentroidClustererParameters<T extends AbstractCentroidClus
 	final public int getK() {
 		return k;
 	}
+	
+	/**
+	 * The initial centroids, if warm starting from centroids
+	 * @return the initial centroids, or null
+	 */
+	final public double[][] getInitialCentroids() {
+		return initialCentroids;
+	}
+	
+	/**
+	 * The row indices of the initial centroids, if warm starting from records
+	 * @return the row indices, or null
+	 */
+	final public int[] getInitialIndices() {
+		return initialIndices;
+	}
+	
+	/**
+	 * The number of iterations the warm-started model took to fit, against which the
+	 * iterations saved by the warm start are reported
+	 * @return the prior iterations, or -1 if unknown
+	 */
+	final public int getPriorIterations() {
+		return priorIter;
+	}
+	
+	/**
+	 * Start from the given centroids rather than those selected by the {@link InitializationStrategy},
+	 * and set <tt>k</tt> to their number. Useful for refitting a model to data that has drifted.
+	 * @param centroids
+	 * @return this
+	 */
+	public CentroidClustererParameters<T> setInitialCentroids(final Collection<double[]> centroids) {
+		final double[][] c = new double[centroids.size()][];
+		int i = 0;
+		for(double[] centroid: centroids)
+			c[i++] = centroid.clone();
+		
+		this.k = c.length;
+		this.initialCentroids = c;
+		this.initialIndices = null;
+		this.priorIter = -1;
+		return this;
+	}
+	
+	/**
+	 * Start from the centroids of a previously fit model, and report the iterations
+	 * saved relative to that model's fit
+	 * @param model - a fit model
+	 * @throws ModelNotFitException if the model is not fit
+	 * @return this
+	 */
+	public CentroidClustererParameters<T> setWarmStart(final AbstractCentroidClusterer model) {
+		if(null == model.labels)
+			throw new ModelNotFitException("cannot warm start from a model that is not fit");
+		
+		setInitialCentroids(model.getCentroids());
+		this.priorIter = model.itersElapsed();
+		return this;
+	}
+	
+	/**
+	 * Copy the initial centroids of this planner into another
+	 * @param copy
+	 * @return the copy
+	 */
+	final protected <P extends CentroidClustererParameters<T>> P copyInitialCentroidsTo(final P copy) {
+		copy.initialCentroids = initialCentroids;
+		copy.initialIndices = initialIndices;
+		copy.priorIter = priorIter;
+		return copy;
+	}
 
 	@Override
 	final public double getConvergenceTolerance() {
@@ -44,7 +44,7 @@ import com.clust4j.utils.MatUtils;
  * @author Taylor G Smith &lt;tgsmith61591@gmail.com&gt;, adapted from sklearn implementation by Lars Buitinck
  *
  */
-final public class DBSCAN extends AbstractDBSCAN {
+final public class DBSCAN extends AbstractDBSCAN implements SparseLearner {
 	/**
 	 * 
 	 */
@@ -121,7 +121,7 @@ final public class DBSCAN extends AbstractDBSCAN {
 		return new ModelSummary(new Object[]{
 				"Num Rows","Num Cols","Metric","Epsilon","Min Pts.","Allow Par."
 			}, new Object[]{
-				m,data.getColumnDimension(),getSeparabilityMetric(),
+				m,getDataRef().getColumnDimension(),getSeparabilityMetric(),
 				eps, minPts,
 				parallel
 			});
@@ -145,7 +145,7 @@ final public class DBSCAN extends AbstractDBSCAN {
 				return false;
 			
 			return super.equals(o) // tests for UUID
-				&& MatUtils.equalsExactly(this.data.getDataRef(), d.data.getDataRef())
+				&& (isSparse() || MatUtils.equalsExactly(this.data.getDataRef(), d.data.getDataRef()))
 				&& this.eps == d.eps;
 		}
 		
@@ -186,7 +186,7 @@ final public class DBSCAN extends AbstractDBSCAN {
 			
 			// Fit the nearest neighbor model...
 			final LogTimer rnTimer = new LogTimer();
-			final RadiusNeighbors rnModel = new RadiusNeighbors(data,
+			final RadiusNeighbors rnModel = new RadiusNeighbors(getDataRef(),
 				new RadiusNeighborsParameters(eps)
 					.setSeed(getSeed())
 					.setMetric(getSeparabilityMetric())
@@ -327,15 +327,15 @@ final public class DBSCAN extends AbstractDBSCAN {
 		final int n = newData.getColumnDimension();
 		
 		// Make sure matches dimensionally
-		if(n != this.data.getColumnDimension())
-			throw new DimensionMismatchException(n, data.getColumnDimension());
+		if(n != getDataRef().getColumnDimension())
+			throw new DimensionMismatchException(n, getDataRef().getColumnDimension());
 		
 		// Fit a radius model
 		RadiusNeighbors radiusModel = 
 			new RadiusNeighborsParameters(eps) // no scale necessary; may already have been done
 				.setMetric(dist_metric)
 				.setSeed(getSeed())
-				.fitNewModel(data);
+				.fitNewModel(getDataRef());
 		
 		final int[] newLabels = new int[newData.getRowDimension()];
 		Neighborhood theHood = radiusModel.getNeighbors(newData);
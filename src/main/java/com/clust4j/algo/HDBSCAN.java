@@ -18,12 +18,9 @@ package com.clust4j.algo;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashSet;
-import java.util.Map;
 import java.util.Set;
-import java.util.TreeMap;
+import java.util.concurrent.RecursiveTask;
 
 import org.apache.commons.math3.exception.DimensionMismatchException;
 import org.apache.commons.math3.linear.RealMatrix;
@@ -31,19 +28,20 @@ import org.apache.commons.math3.util.FastMath;
 import org.apache.commons.math3.util.Precision;
 
 import com.clust4j.GlobalState;
+import com.clust4j.utils.EntryPair;
 import com.clust4j.utils.QuadTup;
 import com.clust4j.algo.Neighborhood;
 import com.clust4j.log.LogTimer;
 import com.clust4j.log.Loggable;
 import com.clust4j.log.Log.Tag.Algo;
+import com.clust4j.metrics.pairwise.CondensedDistanceMatrix;
+import com.clust4j.metrics.pairwise.CondensedDistanceMatrix.Storage;
 import com.clust4j.metrics.pairwise.Distance;
 import com.clust4j.metrics.pairwise.DistanceMetric;
 import com.clust4j.metrics.pairwise.GeometricallySeparable;
 import com.clust4j.metrics.pairwise.Pairwise;
-import com.clust4j.utils.EntryPair;
 import com.clust4j.utils.Series.Inequality;
 import com.clust4j.utils.MatUtils;
-import com.clust4j.utils.MatUtils.MatSeries;
 import com.clust4j.utils.VecUtils;
 import com.clust4j.utils.VecUtils.DoubleSeries;
 
@@ -66,6 +64,7 @@ final public class HDBSCAN extends AbstractDBSCAN {
 	public static final boolean DEF_APPROX_MIN_SPAN = true;
 	public static final int DEF_LEAF_SIZE = 40;
 	public static final int DEF_MIN_CLUST_SIZE = 5;
+	public static final Storage DEF_STORAGE = Storage.HEAP;
 	/** The number of features that should trigger a boruvka implementation */
 	static final int boruvka_n_features_ = 60;
 	static final Set<Class<? extends GeometricallySeparable>> fast_metrics_;
@@ -76,14 +75,21 @@ final public class HDBSCAN extends AbstractDBSCAN {
 	private final boolean approxMinSpanTree;
 	private final int min_cluster_size;
 	private final int leafSize;
+	private final Storage storage;
 
 	private volatile HDBSCANLinkageTree tree = null;
-	private volatile double[][] dist_mat = null;
+	private volatile CondensedDistanceMatrix dist_mat = null;
 	private volatile int[] labels = null;
 	private volatile int numClusters = -1;
 	private volatile int numNoisey = -1;
 	/** A copy of the data array inside the data matrix */
 	private volatile double[][] dataData = null;
+	/** The search tree and core distances of the fit, while fitting */
+	private volatile NearestNeighborHeapSearch searchTree = null;
+	private volatile double[] coreDistances = null;
+	private volatile int coreNeighbors = -1;
+	/** What the fit model keeps to {@link #predict(RealMatrix) predict} new points */
+	volatile PredictionData prediction = null;
 	
 
 	private interface HInitializer extends MetricValidator { 
@@ -214,7 +220,7 @@ final public class HDBSCAN extends AbstractDBSCAN {
 				// we set this in case it was called by auto
 				h.algo = this;
 				ensureMetric(h, this);
-				return h.new BoruvkaKDTree(h.leafSize);
+				return h.new BoruvkaKDTree(h.leafSize, false);
 			}
 			
 			@Override
@@ -236,7 +242,7 @@ final public class HDBSCAN extends AbstractDBSCAN {
 				// we set this in case it was called by auto
 				h.algo = this;
 				ensureMetric(h, this);
-				return h.new BoruvkaBallTree(h.leafSize);
+				return h.new BoruvkaBallTree(h.leafSize, false);
 			}
 			
 			@Override
@@ -246,6 +252,36 @@ final public class HDBSCAN extends AbstractDBSCAN {
 					&& !g.equals(Distance.CANBERRA)
 					;
 			}
+		},
+		
+		/**
+		 * Uses Boruvka's algorithm to find a minimum spanning
+		 * tree, forking each round's dual tree traversal over
+		 * subtrees of the query points in the ForkJoin pool. Uses
+		 * a {@link KDTree} if the metric allows it, and a {@link BallTree}
+		 * otherwise. When the minimum spanning tree is not
+		 * {@link HDBSCANParameters#setApprox(boolean) approximated}, 
+		 * the tree has the same total weight as the serial algorithms', 
+		 * though edges of equal weight may be chosen differently.
+		 * @see BoruvkaAlgorithm
+		 */
+		PARALLEL_BORUVKA {
+			@Override
+			public HeapSearchAlgorithm initTree(HDBSCAN h) {
+				// we set this in case it was called by auto
+				h.algo = this;
+				ensureMetric(h, this);
+				
+				return KDTree.VALID_METRICS.contains(h.dist_metric.getClass()) ?
+					h.new BoruvkaKDTree(h.leafSize, true) :
+						h.new BoruvkaBallTree(h.leafSize, true);
+			}
+			
+			@Override
+			public boolean isValidMetric(GeometricallySeparable g) {
+				return KDTree.VALID_METRICS.contains(g.getClass())
+					|| BORUVKA_BALLTREE.isValidMetric(g);
+			}
 		};
 		
 		private static void ensureMetric(HDBSCAN h, HDBSCAN_Algorithm a) {
@@ -306,6 +342,7 @@ final public class HDBSCAN extends AbstractDBSCAN {
 		this.approxMinSpanTree = planner.getApprox();
 		this.min_cluster_size = planner.getMinClusterSize();
 		this.leafSize = planner.getLeafSize();
+		this.storage = planner.getMatrixStorage();
 		
 		if(alpha <= 0.0) throw new IllegalArgumentException("alpha must be greater than 0");
 		if(leafSize < 1) throw new IllegalArgumentException("leafsize must be greater than 0");
@@ -424,9 +461,97 @@ final public class HDBSCAN extends AbstractDBSCAN {
 	
 	
 	
+	/**
+	 * The condensed cluster tree, held as parallel primitive arrays of its
+	 * edges (<tt>[parent, child, lambda, childSize]</tt>) rather than as a
+	 * list of boxed tuples, so condensing the tree of a large dataset
+	 * allocates a handful of arrays rather than several objects per edge.
+	 * Each node of the tree is the child of exactly one edge, and the root,
+	 * whose label is one greater than the largest point, of none.
+	 * @author Taylor G Smith
+	 */
+	protected final static class CondensedTree {
+		int[] parent, child, childSize;
+		double[] lambda;
+		int size = 0;
+		
+		CondensedTree(int capacity) {
+			capacity = FastMath.max(capacity, 1);
+			parent = new int[capacity];
+			child = new int[capacity];
+			childSize = new int[capacity];
+			lambda = new double[capacity];
+		}
+		
+		void add(final int p, final int c, final double l, final int s) {
+			if(size == parent.length) {
+				final int capacity = size + (size >> 1) + 1;
+				parent = Arrays.copyOf(parent, capacity);
+				child = Arrays.copyOf(child, capacity);
+				childSize = Arrays.copyOf(childSize, capacity);
+				lambda = Arrays.copyOf(lambda, capacity);
+			}
+			
+			parent[size] = p;
+			child[size] = c;
+			lambda[size] = l;
+			childSize[size] = s;
+			size++;
+		}
+		
+		int size() {
+			return size;
+		}
+		
+		/** The label of the root, which is the smallest parent */
+		int root() {
+			int min = Integer.MAX_VALUE;
+			for(int i = 0; i < size; i++)
+				min = FastMath.min(min, parent[i]);
+			return min;
+		}
+		
+		int maxParent() {
+			int max = Integer.MIN_VALUE;
+			for(int i = 0; i < size; i++)
+				max = FastMath.max(max, parent[i]);
+			return max;
+		}
+		
+		int maxChild() {
+			int max = Integer.MIN_VALUE;
+			for(int i = 0; i < size; i++)
+				max = FastMath.max(max, child[i]);
+			return max;
+		}
+		
+		/**
+		 * The row of each child, or -1 for labels that are no child, so the
+		 * edges may be visited in ascending order of their children
+		 */
+		int[] rowsByChild() {
+			final int[] rows = VecUtils.repInt(-1, maxChild() + 1);
+			for(int i = 0; i < size; i++)
+				rows[child[i]] = i;
+			return rows;
+		}
+		
+		/*
+		 * For testing
+		 */
+		CompQuadTup<Integer, Integer, Double, Integer> get(final int i) {
+			if(i >= size)
+				throw new IndexOutOfBoundsException(i + " out of bounds for " + size + " edges");
+			return new CompQuadTup<Integer, Integer, Double, Integer>(parent[i], child[i], lambda[i], childSize[i]);
+		}
+	}
+	
+	
+	
+	
 	/** Classes that will explicitly need to define 
 	 *  reachability will have to implement this interface */
-	interface ExplicitMutualReachability { double[][] mutualReachability(); }
+	interface ExplicitMutualReachability { CondensedDistanceMatrix mutualReachability(); }
 	/**
 	 * Mutual reachability is implicit when using 
 	 * {@link BoruvkaAlgorithm},
@@ -451,179 +576,101 @@ final public class HDBSCAN extends AbstractDBSCAN {
 		 * Perform a breadth first search on a tree
 		 * @param hierarchy
 		 * @param root
-		 * @return
+		 * @return the nodes of the subtree, in breadth first order from the root
 		 */
 		// Tested: passing
-		static ArrayList<Integer> breadthFirstSearch(final double[][] hierarchy, final int root) {
-			ArrayList<Integer> toProcess = new ArrayList<>(), tmp;
-			int dim = hierarchy.length, maxNode = 2*dim, numPoints = maxNode - dim+1;
-			
-			toProcess.add(root);
-			ArrayList<Integer> result = new ArrayList<>();
-			while(!toProcess.isEmpty()) {
-				result.addAll(toProcess);
-				
-				tmp = new ArrayList<>();
-				for(Integer x: toProcess)
-					if(x >= numPoints)
-						tmp.add(x - numPoints);
-				toProcess = tmp;
-				
-				tmp = new ArrayList<>();
-				if(!toProcess.isEmpty()) {
-					for(Integer row: toProcess)
-						for(int i = 0; i < 2; i++)
-							tmp.add((int) hierarchy[row][wraparoundIdxGet(hierarchy[row].length, i)]);
-					
-					toProcess = tmp;
+		static int[] breadthFirstSearch(final double[][] hierarchy, final int root) {
+			final int[] queue = new int[2 * hierarchy.length + 1];
+			return Arrays.copyOf(queue, breadthFirstSearch(hierarchy, root, queue));
+		}
+		
+		/**
+		 * Perform a breadth first search on a tree, using the buffer as the queue
+		 * @param hierarchy
+		 * @param root
+		 * @param queue - at least <tt>2 * hierarchy.length + 1</tt> long; holds
+		 * the nodes of the subtree in breadth first order on return
+		 * @return the number of nodes in the subtree
+		 */
+		static int breadthFirstSearch(final double[][] hierarchy, final int root, final int[] queue) {
+			final int numPoints = hierarchy.length + 1;
+			int head = 0, tail = 0, x;
+			
+			queue[tail++] = root;
+			while(head < tail) {
+				if((x = queue[head++]) >= numPoints) {
+					final double[] row = hierarchy[x - numPoints];
+					queue[tail++] = (int)row[0];
+					queue[tail++] = (int)row[1];
 				}
 			}
 			
-			return result;
+			return tail;
 		}
 		
+		/**
+		 * Compute the stability of each cluster of the condensed tree: the sum over
+		 * its edges of <tt>(lambda - birth) * childSize</tt>, where the birth of a
+		 * cluster is the lambda at which it split from its parent
+		 * @param condensed
+		 * @return the stabilities, indexed by cluster label less the root's
+		 */
 		// Tested: passing
-		static TreeMap<Integer, Double> computeStability(ArrayList<CompQuadTup<Integer, Integer, Double, Integer>> condensed) {
-			double[] resultArr, births, lambdas = new double[condensed.size()];
-			int[] sizes = new int[condensed.size()], parents = new int[condensed.size()];
-			int child, parent, childSize, resultIdx, currentChild = -1, idx = 0, row = 0;
-			double lambda, minLambda = 0;
-			
-			
-			/* Populate parents, sizes and lambdas pre-sort and get min/max parent info
-			 * ['parent', 'child', 'lambda', 'childSize']
-			 */
-			int largestChild = Integer.MIN_VALUE,
-				minParent = Integer.MAX_VALUE,
-				maxParent = Integer.MIN_VALUE;
-			for(CompQuadTup<Integer, Integer, Double, Integer> q: condensed) {
-				parent= q.getFirst();
-				child = q.getSecond();
-				lambda= q.getThird();
-				childSize= q.getFourth();
-				
-				if(child > largestChild)
-					largestChild = child;
-				if(parent < minParent)
-					minParent = parent;
-				if(parent > maxParent)
-					maxParent = parent;
-				
-				parents[idx] = parent;
-				sizes  [idx] = childSize;
-				lambdas[idx] = lambda;
-				idx++;
-			}
-
-			int numClusters = maxParent - minParent + 1;
-			births = VecUtils.rep(Double.NaN, largestChild + 1);
-			
-			/*
-			 * Perform sort, then get sorted lambdas and children
-			 */
-			Collections.sort(condensed, new Comparator<QuadTup<Integer, Integer, Double, Integer>>(){
-				@Override
-				public int compare(QuadTup<Integer, Integer, Double, Integer> q1, 
-						QuadTup<Integer, Integer, Double, Integer> q2) {
-					int cmp = q1.getSecond().compareTo(q2.getSecond());
-					
-					if(cmp == 0) {
-						cmp = q1.getThird().compareTo(q2.getThird());
-						return cmp;
-					}
-					
-					return cmp;
-				}
-			});
-			
-			
-			/*
-			 * Go through sorted list...
-			 */
-			for(row = 0; row < condensed.size(); row++) {
-				CompQuadTup<Integer, Integer, Double, Integer> q = condensed.get(row);
-				child = q.getSecond();
-				lambda= q.getThird();
-				
-				if(child == currentChild)
-					minLambda = FastMath.min(minLambda, lambda);
-				else if(currentChild != -1) {
-					// Already been initialized
-					births[currentChild] = minLambda;
-					currentChild = child;
-					minLambda = lambda;
-				} else {
-					// Initialize
-					currentChild = child;
-					minLambda = lambda;
-				}
-			}
-
-			resultArr = new double[numClusters];
-			
-			
-			// Second loop
+		static double[] computeStability(final CondensedTree condensed) {
+			final int n = condensed.size(), minParent = condensed.root(), largestChild = condensed.maxChild();
+			final int[] parents = condensed.parent, children = condensed.child, sizes = condensed.childSize;
+			final double[] lambdas = condensed.lambda;
+			
+			// Each node is the child of one edge, so its birth is that edge's lambda. The
+			// birth of the largest child is left unset, as in the Python implementation 
+			// (which only records a child's birth once it moves to the next child), so the 
+			// root's and the largest child's stabilities are NaN
+			final double[] births = VecUtils.rep(Double.NaN, largestChild + 1);
+			for(int i = 0; i < n; i++)
+				if(children[i] != largestChild)
+					births[children[i]] = Double.isNaN(births[children[i]]) ? 
+						lambdas[i] : FastMath.min(births[children[i]], lambdas[i]);
+			
+			final double[] result = new double[condensed.maxParent() - minParent + 1];
 			double birthParent;
-			for(idx = 0; idx < condensed.size(); idx++) {
-				parent = parents[idx];
-				lambda = lambdas[idx];
-				childSize= sizes[idx];
-				resultIdx = parent - minParent;
-				
-				// the Cython exploits the C contiguous pointer array's
+			for(int i = 0; i < n; i++) {
+				// the cython exploits the C contiguous pointer array's
 				// out of bounds allowance (2.12325E-314), but we have to
 				// do a check for that...
-				birthParent = parent >= births.length ? GlobalState.Mathematics.TINY : births[parent];
-				resultArr[resultIdx] += (lambda - birthParent) * childSize;
+				birthParent = parents[i] >= births.length ? GlobalState.Mathematics.TINY : births[parents[i]];
+				result[parents[i] - minParent] += (lambdas[i] - birthParent) * sizes[i];
 			}
 			
-			
-			double[] top = VecUtils.asDouble(VecUtils.arange(minParent, maxParent + 1));
-			double[][] mat = MatUtils.transpose(VecUtils.vstack(top, resultArr));
-			
-			TreeMap<Integer, Double> result = new TreeMap<>();
-			for(idx = 0; idx < mat.length; idx++)
-				result.put( (int)mat[idx][0], mat[idx][1]);
-			
 			return result;
 		}
 		
 		// Tested: passing
-		static ArrayList<CompQuadTup<Integer, Integer, Double, Integer>> condenseTree(final double[][] hierarchy, final int minSize) {
+		static CondensedTree condenseTree(final double[][] hierarchy, final int minSize) {
 			final int m = hierarchy.length;
-			int root = 2 * m, 
-					numPoints = root/2 + 1 /*Integer division*/, 
-					nextLabel = numPoints+1;
-			
-			// Get node list from BFS
-			ArrayList<Integer> nodeList = breadthFirstSearch(hierarchy, root), tmpList;
-			ArrayList<CompQuadTup<Integer, Integer, Double, Integer>> resultList = new ArrayList<>();
-			
-			// Indices needing relabeling -- cython code assigns this to nodeList.size()
-			// but often times this is way too small and causes out of bounds exceptions...
-			// Changed to root + 1 on 02/01/2016; this should be the max node ever in the resultList
-			int[] relabel = new int[root + 1]; //nodeList.size()
-			boolean[] ignore = new boolean[root + 1];
-			double[] children;
+			final int root = 2 * m, numPoints = m + 1;
+			int nextLabel = numPoints + 1;
 			
-			double lambda;
-			int left, right, leftCount, rightCount;
+			// Get node list from BFS, and a queue for the subtrees that fall out of clusters
+			final int[] nodeList = new int[root + 1], subtree = new int[root + 1];
+			final int numNodes = breadthFirstSearch(hierarchy, root, nodeList);
 			
-			// Sanity check
-			// System.out.println("Root: " + root + ", Relabel length: " + relabel.length + ", m: " + m + ", Relabel array: " + Arrays.toString(relabel));
+			// Every point is the child of one edge, as is every cluster but the root
+			final CondensedTree result = new CondensedTree(numPoints + 16);
 			
-			// The cython code doesn't check for bounds and sloppily 
-			// assigns this even if root > relabel.length. 
+			// The root + 1 is one more than the max node ever in the result
+			final int[] relabel = new int[root + 1];
+			final boolean[] ignore = new boolean[root + 1];
 			relabel[root] = numPoints;
 			
-			
-			
-			for(Integer node: nodeList) {
-				
+			double lambda;
+			double[] children;
+			int node, left, right, leftCount, rightCount;
+			for(int i = 0; i < numNodes; i++) {
+				node = nodeList[i];
 				if(ignore[node] || node < numPoints)
 					continue;
 				
-				children = hierarchy[wraparoundIdxGet(hierarchy.length, node-numPoints)];
+				children = hierarchy[node - numPoints];
 				left = (int) children[0];
 				right= (int) children[1];
 				
@@ -631,87 +678,70 @@ final public class HDBSCAN extends AbstractDBSCAN {
 					lambda = 1.0 / children[2];
 				else lambda = Double.POSITIVE_INFINITY;
 				
-				if(left >= numPoints)
-					leftCount = (int) (hierarchy[wraparoundIdxGet(hierarchy.length, left-numPoints)][3]);
-				else leftCount = 1;
-				
-				if(right >= numPoints)
-					rightCount = (int)(hierarchy[wraparoundIdxGet(hierarchy.length,right-numPoints)][3]);
-				else rightCount = 1;
-				
-				
+				leftCount = left >= numPoints ? (int) hierarchy[left - numPoints][3] : 1;
+				rightCount = right >= numPoints ? (int) hierarchy[right - numPoints][3] : 1;
 				
 				if(leftCount >= minSize && rightCount >= minSize) {
 					relabel[left] = nextLabel++;
-					resultList.add(new CompQuadTup<Integer, Integer, Double, Integer>(
-						relabel[wraparoundIdxGet(relabel.length, node)],
-						relabel[wraparoundIdxGet(relabel.length, left)],
-						lambda, leftCount ));
-					
-					relabel[wraparoundIdxGet(relabel.length, right)] = nextLabel++;
-					resultList.add(new CompQuadTup<Integer, Integer, Double, Integer>(
-						relabel[wraparoundIdxGet(relabel.length, node)],
-						relabel[wraparoundIdxGet(relabel.length,right)],
-						lambda, rightCount ));
+					result.add(relabel[node], relabel[left], lambda, leftCount);
 					
+					relabel[right] = nextLabel++;
+					result.add(relabel[node], relabel[right], lambda, rightCount);
 					
 				} else if(leftCount < minSize && rightCount < minSize) {
-					tmpList = breadthFirstSearch(hierarchy, left);
-					for(Integer subnode: tmpList) {
-						if(subnode < numPoints)
-							resultList.add(new CompQuadTup<Integer, Integer, Double, Integer>(
-								relabel[wraparoundIdxGet(relabel.length, node)], subnode,
-								lambda, 1));
-						ignore[subnode] = true;
-					}
-					
-					tmpList = breadthFirstSearch(hierarchy, right);
-					for(Integer subnode: tmpList) {
-						if(subnode < numPoints)
-							resultList.add(new CompQuadTup<Integer, Integer, Double, Integer>(
-								relabel[wraparoundIdxGet(relabel.length, node)], subnode,
-								lambda, 1));
-						ignore[subnode] = true;
-					}
+					fallOut(hierarchy, left, relabel[node], lambda, subtree, ignore, result);
+					fallOut(hierarchy, right, relabel[node], lambda, subtree, ignore, result);
 					
+				} else if(leftCount < minSize) {
+					relabel[right] = relabel[node];
+					fallOut(hierarchy, left, relabel[node], lambda, subtree, ignore, result);
 					
- 				} else if(leftCount < minSize) {
- 					relabel[right] = relabel[node];
- 					tmpList = breadthFirstSearch(hierarchy, left);
- 					
- 					for(Integer subnode: tmpList) {
-						if(subnode < numPoints)
-							resultList.add(new CompQuadTup<Integer, Integer, Double, Integer>(
-								relabel[wraparoundIdxGet(relabel.length, node)], subnode,
-								lambda, 1));
-						ignore[subnode] = true;
-					}
- 				}
-				
-				
- 				else {
- 					relabel[left] = relabel[node];
- 					tmpList = breadthFirstSearch(hierarchy, right);
- 					for(Integer subnode: tmpList) {
-						if(subnode < numPoints)
-							resultList.add(new CompQuadTup<Integer, Integer, Double, Integer>(
-								relabel[wraparoundIdxGet(relabel.length, node)], subnode,
-								lambda, 1));
-						ignore[subnode] = true;
-					}
- 				}
+				} else {
+					relabel[left] = relabel[node];
+					fallOut(hierarchy, right, relabel[node], lambda, subtree, ignore, result);
+				}
 			}
 			
-			return resultList;
+			return result;
 		}
 		
 		/**
-		 * Generic linkage core method
+		 * Add the points of a subtree too small to be a cluster as
+		 * children of the cluster they fall out of, and ignore its nodes
+		 */
+		private static void fallOut(final double[][] hierarchy, final int subtreeRoot, 
+				final int cluster, final double lambda, final int[] queue, 
+				final boolean[] ignore, final CondensedTree result) {
+			final int numPoints = hierarchy.length + 1;
+			final int size = breadthFirstSearch(hierarchy, subtreeRoot, queue);
+			
+			int subnode;
+			for(int i = 0; i < size; i++) {
+				subnode = queue[i];
+				if(subnode < numPoints)
+					result.add(cluster, subnode, lambda, 1);
+				ignore[subnode] = true;
+			}
+		}
+		
+		/**
+		 * Generic linkage core method. X is assumed to be
+		 * symmetric; only its upper triangle is read.
 		 * @param X
 		 * @param m
 		 * @return
 		 */
 		static double[][] minSpanTreeLinkageCore(final double[][] X, final int m) { // Tested: passing
+			return minSpanTreeLinkageCore(new CondensedDistanceMatrix(X), m);
+		}
+		
+		/**
+		 * Generic linkage core method
+		 * @param X - the condensed mutual reachability matrix
+		 * @param m
+		 * @return
+		 */
+		static double[][] minSpanTreeLinkageCore(final CondensedDistanceMatrix X, final int m) {
 			int[] node_labels, current_labels, tmp_labels; 
 			double[] current_distances, left, right;
 			boolean[] label_filter;
@@ -757,7 +787,7 @@ final public class HDBSCAN extends AbstractDBSCAN {
 				current_labels = tmp_labels;
 				right = new double[current_labels.length];
 				for(j = 0; j < right.length; j++)
-					right[j] = X[current_node][current_labels[j]];
+					right[j] = X.get(current_node, current_labels[j]);
 				
 				// Build the current_distances vector
 				series = new DoubleSeries(left, Inequality.LESS_THAN, right);
@@ -872,24 +902,190 @@ final public class HDBSCAN extends AbstractDBSCAN {
 		}
 		
 		static double[][] mutualReachability(double[][] dist_mat, int minPts, double alpha) {
-			final int size = dist_mat.length;
+			return mutualReachability(new CondensedDistanceMatrix(dist_mat), minPts, alpha).toArray(false);
+		}
+		
+		static CondensedDistanceMatrix mutualReachability(CondensedDistanceMatrix dist_mat, int minPts, double alpha) {
+			return mutualReachability(dist_mat, minPts, alpha, false);
+		}
+		
+		/**
+		 * Compute the mutual reachability between each pair of points,
+		 * <tt>max(core(a), core(b), dist(a, b) / alpha)</tt>, where the
+		 * core distance of a point is the distance to its
+		 * <tt>minPts</tt><sup>th</sup> nearest neighbor (including itself).
+		 * The core distances are selected from each row rather than sorted,
+		 * and the mutual reachability overwrites the distances in place.
+		 * @param dist_mat - the condensed distance matrix, including the diagonal,
+		 * which is overwritten
+		 * @param minPts
+		 * @param alpha
+		 * @param parallel - whether to split the rows across the ForkJoin pool
+		 * @return the condensed mutual reachability matrix, which is dist_mat
+		 */
+		static CondensedDistanceMatrix mutualReachability(CondensedDistanceMatrix dist_mat, int minPts, double alpha, boolean parallel) {
+			return mutualReachability(dist_mat, minPts, alpha, parallel, new double[dist_mat.getRowDimension()]);
+		}
+		
+		/**
+		 * As {@link #mutualReachability(CondensedDistanceMatrix, int, double, boolean)}, 
+		 * keeping the core distances
+		 * @param dist_mat - the condensed distance matrix, including the diagonal,
+		 * which is overwritten
+		 * @param minPts
+		 * @param alpha
+		 * @param parallel - whether to split the rows across the ForkJoin pool
+		 * @param core_distances - an array of length m, which is overwritten with the core distances
+		 * @return the condensed mutual reachability matrix, which is dist_mat
+		 */
+		static CondensedDistanceMatrix mutualReachability(CondensedDistanceMatrix dist_mat, int minPts, 
+				double alpha, boolean parallel, double[] core_distances) {
+			final int size = dist_mat.getRowDimension();
 			minPts = FastMath.min(size - 1, minPts);
 			
-			final double[] core_distances = MatUtils
-				.sortColsAsc(dist_mat)[minPts];
+			if(parallel) {
+				ParallelChunkingTask.getThreadPool().invoke(new ReachabilityTask(dist_mat, core_distances, minPts, alpha, true, 0, size));
+			} else {
+				coreDistances(dist_mat, core_distances, minPts, 0, size);
+			}
 			
-			if(alpha != 1.0)
-				dist_mat = MatUtils.scalarDivide(dist_mat, alpha);
+			// The diagonal is allocated lazily, so it's never written concurrently
+			for(int i = 0; i < size; i++)
+				dist_mat.setDiagonal(i, FastMath.max(core_distances[i], dist_mat.getDiagonal(i) / alpha));
 			
+			if(parallel) {
+				ParallelChunkingTask.getThreadPool().invoke(new ReachabilityTask(dist_mat, core_distances, minPts, alpha, false, 0, size));
+			} else {
+				reachability(dist_mat, core_distances, alpha, 0, size);
+			}
+			
+			return dist_mat;
+		}
+		
+		/**
+		 * Select the core distance of each of the rows in <tt>[lo, hi)</tt>
+		 */
+		static void coreDistances(CondensedDistanceMatrix dist_mat, double[] core_distances, int minPts, int lo, int hi) {
+			final double[] row = new double[dist_mat.getRowDimension()];
+			for(int i = lo; i < hi; i++)
+				core_distances[i] = select(dist_mat.getRow(i, row), minPts);
+		}
+		
+		/**
+		 * Overwrite the distances to the right of the diagonal in the rows in 
+		 * <tt>[lo, hi)</tt> with their mutual reachability
+		 */
+		static void reachability(CondensedDistanceMatrix dist_mat, double[] core_distances, double alpha, int lo, int hi) {
+			final int size = dist_mat.getRowDimension();
+			double core;
+			
+			for(int i = lo; i < hi && i < size - 1; i++) {
+				long idx = CondensedDistanceMatrix.index(size, i, i + 1);
+				core = core_distances[i];
+				
+				for(int j = i + 1; j < size; j++, idx++) {
+					dist_mat.set(idx, FastMath.max(
+						FastMath.max(core, core_distances[j]), 
+						dist_mat.get(idx) / alpha));
+				}
+			}
+		}
+		
+		/**
+		 * Find the k<sup>th</sup> smallest value of the array (counting from zero)
+		 * by quickselect, partially reordering the array in place
+		 * @param a
+		 * @param k
+		 * @return the value that would be at index k were the array sorted
+		 */
+		static double select(final double[] a, final int k) {
+			int lo = 0, hi = a.length - 1, i, j;
+			double pivot, tmp;
+			
+			while(lo < hi) {
+				// Median of three, so sorted rows don't degrade it
+				final int mid = (lo + hi) >>> 1;
+				if(a[mid] < a[lo]) { tmp = a[mid]; a[mid] = a[lo]; a[lo] = tmp; }
+				if(a[hi] < a[lo])  { tmp = a[hi];  a[hi] = a[lo];  a[lo] = tmp; }
+				if(a[hi] < a[mid]) { tmp = a[hi];  a[hi] = a[mid]; a[mid] = tmp; }
+				pivot = a[mid];
+				
+				i = lo;
+				j = hi;
+				while(i <= j) {
+					while(a[i] < pivot) i++;
+					while(a[j] > pivot) j--;
+					if(i <= j) {
+						tmp = a[i]; a[i] = a[j]; a[j] = tmp;
+						i++;
+						j--;
+					}
+				}
+				
+				// a[lo..j] <= pivot <= a[i..hi], and a[j+1..i-1] == pivot
+				if(k <= j)
+					hi = j;
+				else if(k >= i)
+					lo = i;
+				else
+					return a[k];
+			}
 			
-			final MatSeries ser1 = new MatSeries(core_distances, Inequality.GREATER_THAN, dist_mat);
-			double[][] stage1 = MatUtils.where(ser1, core_distances, dist_mat);
+			return a[k];
+		}
+		
+		/**
+		 * Splits the rows of {@link LinkageTreeUtils#mutualReachability(CondensedDistanceMatrix, int, double, boolean)}
+		 * across the ForkJoin pool, either selecting their core distances or overwriting 
+		 * them with the mutual reachability. Each row's writes are disjoint from the others'.
+		 * @author Taylor G Smith
+		 */
+		static class ReachabilityTask extends RecursiveTask<Void> {
+			private static final long serialVersionUID = 5071370469163393185L;
+			final CondensedDistanceMatrix dist_mat;
+			final double[] core_distances;
+			final int minPts;
+			final double alpha;
+			final boolean selectCore;
+			final int lo, hi, grain;
+			
+			ReachabilityTask(CondensedDistanceMatrix dist_mat, double[] core_distances, 
+					int minPts, double alpha, boolean selectCore, int lo, int hi) {
+				this(dist_mat, core_distances, minPts, alpha, selectCore, lo, hi,
+					FastMath.max(1, (hi - lo) / (8 * GlobalState.ParallelismConf.NUM_CORES)));
+			}
 			
-			stage1 = MatUtils.transpose(stage1);
-			final MatSeries ser2 = new MatSeries(core_distances, Inequality.GREATER_THAN, stage1);
-			final double[][] result = MatUtils.where(ser2, core_distances, stage1);
+			private ReachabilityTask(CondensedDistanceMatrix dist_mat, double[] core_distances, 
+					int minPts, double alpha, boolean selectCore, int lo, int hi, int grain) {
+				this.dist_mat = dist_mat;
+				this.core_distances = core_distances;
+				this.minPts = minPts;
+				this.alpha = alpha;
+				this.selectCore = selectCore;
+				this.lo = lo;
+				this.hi = hi;
+				this.grain = grain;
+			}
 			
-			return MatUtils.transpose(result);
+			@Override
+			protected Void compute() {
+				if(hi - lo <= grain) {
+					if(selectCore)
+						coreDistances(dist_mat, core_distances, minPts, lo, hi);
+					else
+						reachability(dist_mat, core_distances, alpha, lo, hi);
+				} else {
+					int mid = lo + (hi - lo) / 2;
+					ReachabilityTask left  = new ReachabilityTask(dist_mat, core_distances, minPts, alpha, selectCore, lo, mid, grain);
+					ReachabilityTask right = new ReachabilityTask(dist_mat, core_distances, minPts, alpha, selectCore, mid, hi, grain);
+					
+					left.fork();
+					right.compute();
+					left.join();
+				}
+				
+				return null;
+			}
 		}
 	}
 	
@@ -930,6 +1126,18 @@ final public class HDBSCAN extends AbstractDBSCAN {
 		abstract NearestNeighborHeapSearch getTree(double[][] X);
 		abstract String getTreeName();
 		
+		/**
+		 * Keep the search tree and core distances for {@link HDBSCAN#predict(RealMatrix)}
+		 * @param tree
+		 * @param core
+		 * @param k - the number of neighbors, counting the point itself, the core distances span
+		 */
+		final void keepSearchTree(NearestNeighborHeapSearch tree, double[] core, int k) {
+			model.searchTree = tree;
+			model.coreDistances = core;
+			model.coreNeighbors = k;
+		}
+		
 		/**
 		 * The linkage function to be used for any classes
 		 * implementing the {@link Prim} interface.
@@ -946,9 +1154,10 @@ final public class HDBSCAN extends AbstractDBSCAN {
 			
 			
 			// Query for dists to k nearest neighbors -- no longer use breadth first!
-			Neighborhood query = tree.query(dt, min_points, true, true);
+			Neighborhood query = tree.query(dt, min_points, true, true, parallel);
 			double[][] dists = query.getDistances();
 			double[] coreDistances = MatUtils.getColumn(dists, dists[0].length - 1);
+			keepSearchTree(tree, coreDistances, min_points);
 			
 			double[][] minSpanningTree = LinkageTreeUtils
 				.minSpanTreeLinkageCore_cdist(dt, 
@@ -961,9 +1170,10 @@ final public class HDBSCAN extends AbstractDBSCAN {
 		 * The linkage function to be used for any classes
 		 * implementing the {@link Boruvka} interface.
 		 * @param dt
+		 * @param forkTraversal whether to fork each round's traversal over query subtrees
 		 * @return
 		 */
-		final double[][] boruvkaTreeLinkageFunction(double[][] dt) {
+		final double[][] boruvkaTreeLinkageFunction(double[][] dt, boolean forkTraversal) {
 			final int min_points = FastMath.min(m - 1, minPts);
 			int ls = FastMath.max(leafSize, 3);
 
@@ -976,9 +1186,10 @@ final public class HDBSCAN extends AbstractDBSCAN {
 			// We can safely cast the metric to DistanceMetric at this point
 			final BoruvkaAlgorithm alg = new BoruvkaAlgorithm(tree, min_points, 
 					(DistanceMetric)metric, ls / 3, approxMinSpanTree, 
-					alpha, model);
+					alpha, parallel, forkTraversal, model);
 			
 			double[][] minSpanningTree = alg.spanningTree();
+			keepSearchTree(tree, alg.coreDistances(), alg.coreNeighbors());
 			return label(MatUtils.sortAscByCol(minSpanningTree, 2));
 		}
 	}
@@ -1033,13 +1244,13 @@ final public class HDBSCAN extends AbstractDBSCAN {
 			
 			// The generic implementation requires the computation of an UT dist mat
 			final LogTimer s = new LogTimer();
-			dist_mat = Pairwise.getDistance(data, getSeparabilityMetric(), false, false);
+			dist_mat = Pairwise.getCondensedDistance(data.getData(), getSeparabilityMetric(), true, false, storage);
 			info("completed distance matrix computation in " + s.toString());
 		}
 		
 		@Override
 		double[][] link() {
-			final double[][] mutual_reachability = mutualReachability();
+			final CondensedDistanceMatrix mutual_reachability = mutualReachability();
 			double[][] min_spanning_tree = LinkageTreeUtils
 					.minSpanTreeLinkageCore(mutual_reachability, m);
 			
@@ -1049,7 +1260,7 @@ final public class HDBSCAN extends AbstractDBSCAN {
 		}
 		
 		@Override
-		public double[][] mutualReachability() {
+		public CondensedDistanceMatrix mutualReachability() {
 			/*// this shouldn't be able to happen...
 			if(null == dist_mat)
 				throw new IllegalClusterStateException("dist matrix is null; "
@@ -1058,7 +1269,15 @@ final public class HDBSCAN extends AbstractDBSCAN {
 					+ "or after the model has already been fit.");
 			*/
 			
-			return LinkageTreeUtils.mutualReachability(dist_mat, minPts, alpha);
+			// Keep the core distances for predict... each is the distance to the
+			// minPts-th neighbor not counting the point itself
+			final double[] core = new double[m];
+			final CondensedDistanceMatrix mutual_reachability = LinkageTreeUtils
+				.mutualReachability(dist_mat, minPts, alpha, parallel, core);
+			
+			coreDistances = core;
+			coreNeighbors = FastMath.min(m - 1, minPts) + 1;
+			return mutual_reachability;
 		}
 	}
 	
@@ -1095,24 +1314,30 @@ final public class HDBSCAN extends AbstractDBSCAN {
 	}
 	
 	class BoruvkaKDTree extends KDTreeAlgorithm implements Boruvka {
-		BoruvkaKDTree(int leafSize) {
+		final boolean forkTraversal;
+		
+		BoruvkaKDTree(int leafSize, boolean forkTraversal) {
 			super(leafSize);
+			this.forkTraversal = forkTraversal;
 		}
 
 		@Override
 		double[][] link() {
-			return boruvkaTreeLinkageFunction(dataData);
+			return boruvkaTreeLinkageFunction(dataData, forkTraversal);
 		}
 	}
 	
 	class BoruvkaBallTree extends BallTreeAlgorithm implements Boruvka {
-		BoruvkaBallTree(int leafSize) {
+		final boolean forkTraversal;
+		
+		BoruvkaBallTree(int leafSize, boolean forkTraversal) {
 			super(leafSize);
+			this.forkTraversal = forkTraversal;
 		}
 
 		@Override
 		double[][] link() {
-			return boruvkaTreeLinkageFunction(dataData);
+			return boruvkaTreeLinkageFunction(dataData, forkTraversal);
 		}
 	}
 	
@@ -1286,47 +1511,47 @@ final public class HDBSCAN extends AbstractDBSCAN {
 	
 
 
-	protected static int[] doLabeling(ArrayList<CompQuadTup<Integer, Integer, Double, Integer>> tree,
-			ArrayList<Integer> clusters, TreeMap<Integer, Integer> clusterMap) {
-		
-		CompQuadTup<Integer, Integer, Double, Integer> quad;
-		int rootCluster, parent, child, n = tree.size(), cluster, i;
-		int[] resultArr, parentArr = new int[n], childArr = new int[n];
-		UnifiedFinder unionFind;
-		
-		// [parent, child, lambda, size]
-		int maxParent = Integer.MIN_VALUE;
-		int minParent = Integer.MAX_VALUE;
-		for(i = 0; i < n; i++) {
-			quad = tree.get(i);
-			parentArr[i]= quad.getFirst();
-			childArr[i] = quad.getSecond();
-			
-			if(quad.getFirst() < minParent)
-				minParent = quad.getFirst();
-			if(quad.getFirst() > maxParent)
-				maxParent = quad.getFirst();
-		}
-		
-		rootCluster = minParent;
-		resultArr = new int[rootCluster];
-		unionFind = new TreeUnionFind(maxParent + 1);
-		
-		for(i = 0; i < n; i++) {
-			child = childArr[i];
-			parent= parentArr[i];
-			if(!clusters.contains(child))
-				unionFind.union(parent, child);
-		}
-		
-		for(i = 0; i < rootCluster; i++) {
-			cluster = unionFind.find(i);
-			if(cluster <= rootCluster)
-				resultArr[i] = NOISE_CLASS;
-			else
-				resultArr[i] = clusterMap.get(cluster);
+	/**
+	 * The label of the nearest of each cluster's ancestors, or itself, that is a
+	 * selected cluster, or noise if none is. Cluster labels grow with depth, so
+	 * visiting the edges in ascending order of their children visits each
+	 * cluster after its parent.
+	 * @param tree
+	 * @param rows - the row of each child in the tree, from {@link CondensedTree#rowsByChild()}
+	 * @param clusterMap - the label of each cluster, by label less the root's, or noise 
+	 * if it isn't selected
+	 * @return the label of each cluster, by label less the root's
+	 */
+	protected static int[] clusterLabels(final CondensedTree tree, final int[] rows, final int[] clusterMap) {
+		final int rootCluster = tree.root(), numNodes = clusterMap.length;
+		
+		final int[] nodeLabels = new int[numNodes];
+		nodeLabels[0] = NOISE_CLASS;
+		for(int node = 1; node < numNodes; node++) {
+			final int row = rootCluster + node < rows.length ? rows[rootCluster + node] : -1;
+			nodeLabels[node] = NOISE_CLASS != clusterMap[node] || -1 == row ? clusterMap[node] : 
+				nodeLabels[tree.parent[row] - rootCluster];
 		}
 		
+		return nodeLabels;
+	}
+	
+	/**
+	 * Label each point with the label of the cluster it falls out of
+	 * @param tree
+	 * @param rows - the row of each child in the tree, from {@link CondensedTree#rowsByChild()}
+	 * @param nodeLabels - the label of each cluster, from {@link #clusterLabels(CondensedTree, int[], int[])}
+	 * @return the labels
+	 */
+	protected static int[] doLabeling(final CondensedTree tree, final int[] rows, final int[] nodeLabels) {
+		final int rootCluster = tree.root();
+		
+		// A point that is relabeled as a cluster of its own is never selected
+		final int[] resultArr = new int[rootCluster];
+		for(int i = 0; i < rootCluster; i++)
+			resultArr[i] = i >= rows.length || -1 == rows[i] ? NOISE_CLASS : 
+				nodeLabels[tree.parent[rows[i]] - rootCluster];
+		
 		return resultArr;
 	}
 	
@@ -1353,7 +1578,11 @@ final public class HDBSCAN extends AbstractDBSCAN {
 
 			info("converting tree to labels ("+lab_tree.length+" x "+lab_tree[0].length+")");
 			LogTimer labTimer = new LogTimer();
-			labels = treeToLabels(dataData, lab_tree, min_cluster_size, this);
+			final CondensedTree condensed = LinkageTreeUtils.condenseTree(lab_tree, min_cluster_size);
+			final int[] rows = condensed.rowsByChild();
+			final int[] nodeLabels = clusterLabels(condensed, rows, 
+				selectClusters(condensed, LinkageTreeUtils.computeStability(condensed)));
+			labels = doLabeling(condensed, rows, nodeLabels);
 			
 			
 			// Wrap up...
@@ -1374,6 +1603,16 @@ final public class HDBSCAN extends AbstractDBSCAN {
 			final NoiseyLabelEncoder encoder = new NoiseyLabelEncoder(labels).fit();
 			labels = encoder.getEncodedLabels();
 			
+			// Keep what we need to place new points in the condensed tree
+			if(null == searchTree)
+				buildSearchTree();
+			if(null != searchTree)
+				prediction = new PredictionData(searchTree, coreDistances, coreNeighbors, 
+					alpha, condensed, rows, nodeLabels, encoder);
+			else
+				warn(getSeparabilityMetric().getName() + " is not supported by "
+					+ "KDTree or BallTree; the model will not support predictions");
+			
 			
 			
 			/*
@@ -1409,6 +1648,8 @@ final public class HDBSCAN extends AbstractDBSCAN {
 			dataData = null;
 			dist_mat = null;
 			tree = null;
+			searchTree = null;
+			coreDistances = null;
 			
 			return this;
 		}
@@ -1441,155 +1682,82 @@ final public class HDBSCAN extends AbstractDBSCAN {
 	}
 	
 	/**
-	 * Break up the getLabels method 
-	 * into numerous smaller ones.
-	 * @author Taylor G Smith
+	 * Select the clusters from the condensed tree that maximize the total stability,
+	 * and label the points by them. Each cluster is selected unless the stabilities 
+	 * of its child clusters sum to more than its own, in which case its stability
+	 * becomes that sum.
+	 * @param condensed
+	 * @param stability - the stability of each cluster, by label less the root's,
+	 * which is updated as the clusters are selected
+	 * @return the labels
 	 */
-	abstract static class GetLabelUtils {
-		/**
-		 * Descendingly sort the keys of the map and return
-		 * them in order, but eliminate the very smallest key
-		 * @param stability
-		 * @return
-		 */
-		protected static <T,P> ArrayList<T> descSortedKeySet(TreeMap<T,P> stability) {
-			int ct = 0;
-			ArrayList<T> nodeList = new ArrayList<>();
-			for(T d: stability.descendingKeySet())
-				if(++ct < stability.size()) // exclude the root...
-					nodeList.add(d);
-			
-			return nodeList;
-		}
-		
-		/**
-		 * Get tuples where child size is over one
-		 * @param tree
-		 * @return
-		 */
-		protected static EntryPair<ArrayList<double[]>, Integer> childSizeGtOneAndMaxChild(ArrayList<CompQuadTup<Integer, Integer, Double, Integer>> tree) {
-			ArrayList<double[]> out = new ArrayList<>();
-			int max = Integer.MIN_VALUE;
-			
-			// [parent, child, lambda, size]
-			for(CompQuadTup<Integer, Integer, Double, Integer> tup: tree) {
-				if(tup.getFourth() > 1)
-					out.add(new double[]{
-						tup.getFirst(),
-						tup.getSecond(),
-						tup.getThird(),
-						tup.getFourth()
-					});
-				else if(tup.getFourth() == 1)
-					max = FastMath.max(max, tup.getSecond());
-			}
-			
-			return new EntryPair<>(out, max + 1);
-		}
-		
-		protected static TreeMap<Integer, Boolean> initNodeMap(ArrayList<Integer> nodes) {
-			TreeMap<Integer, Boolean> out = new TreeMap<>();
-			for(Integer i: nodes)
-				out.put(i, true);
-			return out;
-		}
-		
-		protected static double subTreeStability(ArrayList<double[]> clusterTree, 
-				int node, TreeMap<Integer, Double> stability) {
-			double sum = 0;
-			
-			// [parent, child, lambda, size]
-			for(double[] d: clusterTree)
-				if((int)d[0] == node)
-					sum += stability.get((int)d[1]);
-			
-			return sum;
-		}
-		
-		protected static ArrayList<Integer> breadthFirstSearchFromClusterTree(ArrayList<double[]> tree, Integer bfsRoot) {
-			int child, parent;
-			ArrayList<Integer> result = new ArrayList<>();
-			ArrayList<Integer> toProcess = new ArrayList<Integer>();
-			ArrayList<Integer> tmp;
-			
-			toProcess.add(bfsRoot);
-			
-			// [parent, child, lambda, size]
-			while(toProcess.size() > 0) {
-				result.addAll(toProcess);
-				
-				// python code: 
-				// to_process = tree['child'][np.in1d(tree['parent'], to_process)]
-				// For all tuples, if the parent is in toProcess, then
-				// add the child to the new list
-				tmp = new ArrayList<Integer>();
-				for(double[] d: tree) {
-					parent	= (int)d[0];
-					child	= (int)d[1];
-					
-					if(toProcess.contains(parent))
-						tmp.add(child);
-				}
-				
-				toProcess = tmp;
-			}
-			
-			return result;
-		}
+	protected static int[] getLabels(final CondensedTree condensed, final double[] stability) {
+		final int[] rows = condensed.rowsByChild();
+		return doLabeling(condensed, rows, clusterLabels(condensed, rows, selectClusters(condensed, stability)));
 	}
 	
-	protected static int[] getLabels(ArrayList<CompQuadTup<Integer, Integer, Double, Integer>> condensed,
-									TreeMap<Integer, Double> stability) {
-		
+	/**
+	 * Select the clusters from the condensed tree that maximize the total stability,
+	 * as in {@link #getLabels(CondensedTree, double[])}
+	 * @param condensed
+	 * @param stability - the stability of each cluster, by label less the root's,
+	 * which is updated as the clusters are selected
+	 * @return the label of each selected cluster, by label less the root's, and
+	 * {@link #NOISE_CLASS} for the others. The selected clusters are numbered in 
+	 * ascending order.
+	 */
+	protected static int[] selectClusters(final CondensedTree condensed, final double[] stability) {
+		final int root = condensed.root(), numNodes = stability.length, n = condensed.size();
+		final int[] rows = condensed.rowsByChild();
+		
+		// The child clusters of each cluster in ascending order, by label less the root's
+		final int[] start = new int[numNodes + 1], children = new int[n];
+		for(int i = 0; i < n; i++)
+			if(condensed.childSize[i] > 1)
+				start[condensed.parent[i] - root + 1]++;
+		for(int i = 0; i < numNodes; i++)
+			start[i + 1] += start[i];
+		
+		final int[] next = Arrays.copyOf(start, numNodes);
+		for(int child = 0; child < rows.length; child++)
+			if(-1 != rows[child] && condensed.childSize[rows[child]] > 1)
+				children[next[condensed.parent[rows[child]] - root]++] = child;
+		
+		// Every cluster but the root is a candidate
+		final boolean[] isCluster = new boolean[numNodes];
+		Arrays.fill(isCluster, 1, numNodes, true);
+		
+		final int[] queue = new int[numNodes];
 		double subTreeStability;
-		ArrayList<Integer> clusters = new ArrayList<Integer>();
-		HSet<Integer> clusterSet;
-		TreeMap<Integer, Integer> clusterMap = new TreeMap<>(), 
-				reverseClusterMap = new TreeMap<>();
-		
-		// Get descending sorted key set
-		ArrayList<Integer> nodeList = GetLabelUtils.descSortedKeySet(stability);
-		
-		// Get tuples where child size > 1
-		EntryPair<ArrayList<double[]>, Integer> entry = GetLabelUtils.childSizeGtOneAndMaxChild(condensed);
-		ArrayList<double[]> clusterTree = entry.getKey();
-		
-		// Map of nodes to whether it's a cluster
-		TreeMap<Integer, Boolean> isCluster = GetLabelUtils.initNodeMap(nodeList);
-		
-		// Get num points
-		//int numPoints = entry.getValue();
-		
-		// Iter over nodes
-		for(Integer node: nodeList) {
-			subTreeStability = GetLabelUtils.subTreeStability(clusterTree, node, stability);
-			
-			if(subTreeStability > stability.get(node)) {
-				isCluster.put(node, false);
-				stability.put(node, subTreeStability);
+		for(int node = numNodes - 1; node > 0; node--) {
+			subTreeStability = 0;
+			for(int c = start[node]; c < start[node + 1]; c++)
+				subTreeStability += stability[children[c] - root];
+			
+			if(subTreeStability > stability[node]) {
+				isCluster[node] = false;
+				stability[node] = subTreeStability;
 			} else {
-				for(Integer subNode: GetLabelUtils.breadthFirstSearchFromClusterTree(clusterTree, node))
-					if(subNode.intValue() != node)
-						isCluster.put(subNode, false);
+				// Deselect all of its descendants
+				int head = 0, tail = 0, x;
+				queue[tail++] = node;
+				while(head < tail) {
+					x = queue[head++];
+					for(int c = start[x]; c < start[x + 1]; c++) {
+						isCluster[children[c] - root] = false;
+						queue[tail++] = children[c] - root;
+					}
+				}
 			}
-			
 		}
 		
-		// Now add to clusters
-		for(Map.Entry<Integer, Boolean> c: isCluster.entrySet())
-			if(c.getValue())
-				clusters.add(c.getKey());
-		clusterSet = new HSet<Integer>(clusters);
+		// Number the selected clusters in ascending order
+		final int[] clusterMap = VecUtils.repInt(NOISE_CLASS, numNodes);
+		for(int node = 0, label = 0; node < numNodes; node++)
+			if(isCluster[node])
+				clusterMap[node] = label++;
 		
-		// Build cluster map
-		int n = 0;
-		for(Integer clust: clusterSet) {
-			clusterMap.put(clust, n);
-			reverseClusterMap.put(n, clust);
-			n++;
-		}
-
-		return doLabeling(condensed, clusters, clusterMap);
+		return clusterMap;
 	}
 	
 	// Tested: passing
@@ -1637,9 +1805,8 @@ final public class HDBSCAN extends AbstractDBSCAN {
 	protected static int[] treeToLabels(final double[][] X, 
 			final double[][] single_linkage_tree, final int min_size, Loggable logger) {
 		
-		final ArrayList<CompQuadTup<Integer, Integer, Double, Integer>> condensed = 
-				LinkageTreeUtils.condenseTree(single_linkage_tree, min_size);
-		final TreeMap<Integer, Double> stability = LinkageTreeUtils.computeStability(condensed);
+		final CondensedTree condensed = LinkageTreeUtils.condenseTree(single_linkage_tree, min_size);
+		final double[] stability = LinkageTreeUtils.computeStability(condensed);
 		return getLabels(condensed, stability);
 	}
 	
@@ -1650,16 +1817,196 @@ final public class HDBSCAN extends AbstractDBSCAN {
 		};
 	}
 	
+	/**
+	 * Build a search tree for {@link #predict(RealMatrix)} when the algorithm
+	 * didn't use one, if the metric supports one. The core distances are
+	 * those the algorithm computed.
+	 */
+	private void buildSearchTree() {
+		final Class<? extends GeometricallySeparable> clz = dist_metric.getClass();
+		if(null == coreDistances)
+			return;
+		
+		NearestNeighborHeapSearch t;
+		if(KDTree.VALID_METRICS.contains(clz))
+			t = new KDTree(dataData, leafSize, (DistanceMetric)dist_metric, this);
+		else if(BallTree.VALID_METRICS.contains(clz))
+			t = new BallTree(dataData, leafSize, (DistanceMetric)dist_metric, this);
+		else
+			return;
+		
+		searchTree = t;
+	}
+	
+	/**
+	 * The compact structure a fit model keeps to place new points in its condensed
+	 * tree: the search tree and core distances of the fit, and the condensed tree's
+	 * clusters as primitive arrays indexed by cluster label less the root's.
+	 * It's never modified after construction, and queries go through a
+	 * {@link NearestNeighborHeapSearch#newReader() reader} of the tree, so
+	 * it can be used from many threads at once.
+	 * @author Taylor G Smith
+	 */
+	static final class PredictionData implements java.io.Serializable {
+		private static final long serialVersionUID = 2915366745094178207L;
+		
+		final NearestNeighborHeapSearch tree;
+		final double[] coreDistances;
+		/** The number of neighbors, counting the point itself, the core distances span */
+		final int coreNeighbors;
+		final double alpha;
+		
+		/** The cluster each fit point falls out of, and the lambda at which it does */
+		final int[] pointCluster;
+		final double[] pointLambda;
+		
+		/** The parent of each cluster, and the lambda at which it splits from it */
+		final int[] clusterParent;
+		final double[] clusterLambda;
+		
+		/** The encoded label of each cluster, and the largest lambda of its selected cluster's points */
+		final int[] clusterLabel;
+		final double[] maxLambda;
+		
+		PredictionData(NearestNeighborHeapSearch tree, double[] coreDistances, int coreNeighbors, 
+				double alpha, CondensedTree condensed, int[] rows, int[] nodeLabels, LabelEncoder encoder) {
+			this.tree = tree;
+			this.coreDistances = coreDistances;
+			this.coreNeighbors = coreNeighbors;
+			this.alpha = alpha;
+			
+			final int root = condensed.root(), numNodes = nodeLabels.length;
+			
+			// The clusters... the root is its own parent
+			this.clusterParent = new int[numNodes];
+			this.clusterLambda = new double[numNodes];
+			this.clusterLabel = new int[numNodes];
+			for(int node = 0; node < numNodes; node++) {
+				final int row = node > 0 && root + node < rows.length ? rows[root + node] : -1;
+				clusterParent[node] = -1 == row ? 0 : condensed.parent[row] - root;
+				clusterLambda[node] = -1 == row ? 0.0 : condensed.lambda[row];
+				clusterLabel[node] = NOISE_CLASS == nodeLabels[node] ? 
+					NOISE_CLASS : encoder.encodeOrNull(nodeLabels[node]);
+			}
+			
+			// The points... a point missing from the tree falls out of the root
+			this.pointCluster = new int[root];
+			this.pointLambda = new double[root];
+			final double[] labelMax = new double[numNodes];
+			for(int i = 0; i < root; i++) {
+				final int row = i < rows.length ? rows[i] : -1;
+				pointCluster[i] = -1 == row ? 0 : condensed.parent[row] - root;
+				pointLambda[i] = -1 == row ? 0.0 : condensed.lambda[row];
+				
+				final int label = nodeLabels[pointCluster[i]];
+				if(NOISE_CLASS != label)
+					labelMax[label] = FastMath.max(labelMax[label], pointLambda[i]);
+			}
+			
+			this.maxLambda = new double[numNodes];
+			for(int node = 0; node < numNodes; node++)
+				if(NOISE_CLASS != nodeLabels[node])
+					maxLambda[node] = labelMax[nodeLabels[node]];
+		}
+		
+		/**
+		 * Place each new point in the condensed tree by its nearest neighbor in
+		 * mutual reachability, among the nearest neighbors of the fit data
+		 * @param X
+		 * @param parallel - whether to split the neighbor query across the ForkJoin pool
+		 * @return the labels and membership probabilities
+		 */
+		EntryPair<int[], double[]> predict(final double[][] X, final boolean parallel) {
+			final int k = coreNeighbors, kq = FastMath.min(2 * k, coreDistances.length);
+			final Neighborhood neighbors = tree.newReader().query(X, kq, false, true, parallel);
+			final double[][] dists = neighbors.getDistances();
+			final int[][] indices = neighbors.getIndices();
+			
+			final int[] labels = new int[X.length];
+			final double[] probabilities = new double[X.length];
+			
+			int nearest, cluster, j;
+			double core, mr, best, lambda, d;
+			for(int i = 0; i < X.length; i++) {
+				core = dists[i][k - 1];
+				
+				// The nearest neighbor in mutual reachability
+				nearest = indices[i][0];
+				best = Double.POSITIVE_INFINITY;
+				for(j = 0; j < kq; j++) {
+					d = alpha == 1.0 ? dists[i][j] : dists[i][j] / alpha;
+					mr = FastMath.max(d, FastMath.max(core, coreDistances[indices[i][j]]));
+					
+					if(mr < best) {
+						best = mr;
+						nearest = indices[i][j];
+					}
+				}
+				
+				// A point can't be denser than the neighbor it joins, but a sparser
+				// point joins the cluster its neighbor was in at the point's lambda
+				lambda = best > 0 ? 1.0 / best : Double.MAX_VALUE;
+				cluster = pointCluster[nearest];
+				if(pointLambda[nearest] <= lambda) {
+					lambda = pointLambda[nearest];
+				} else {
+					while(cluster > 0 && clusterLambda[cluster] >= lambda)
+						cluster = clusterParent[cluster];
+				}
+				
+				labels[i] = clusterLabel[cluster];
+				if(NOISE_CLASS == labels[i])
+					probabilities[i] = 0.0;
+				else if(maxLambda[cluster] > 0)
+					probabilities[i] = FastMath.min(lambda, maxLambda[cluster]) / maxLambda[cluster];
+				else
+					probabilities[i] = 1.0;
+			}
+			
+			return new EntryPair<>(labels, probabilities);
+		}
+	}
+	
+	/**
+	 * Predict the labels of new points. Each is placed in the condensed tree of the
+	 * fit by its nearest neighbor in mutual reachability, as in
+	 * {@link #approximatePredict(RealMatrix)}, without refitting the model.
+	 * @param newData
+	 * @throws DimensionMismatchException if the number of columns differs from the fit data
+	 * @throws UnsupportedOperationException if neither {@link KDTree} nor {@link BallTree}
+	 * supports the model's metric
+	 * @return the predicted labels
+	 */
 	@Override
 	public int[] predict(RealMatrix newData) {
+		return approximatePredict(newData).getKey();
+	}
+	
+	/**
+	 * Approximately place new points in the condensed tree of the fit. Each point's
+	 * nearest neighbor in mutual reachability is found among its nearest neighbors
+	 * in the fit data. The point joins that neighbor's cluster at the lambda of their
+	 * mutual reachability distance, or an ancestor cluster if the point is sparser than
+	 * that cluster. The point's probability is its lambda relative to the largest lambda 
+	 * of its cluster's points, or zero if it is noise. The model may be used to predict
+	 * from many threads at once.
+	 * @param newData
+	 * @throws DimensionMismatchException if the number of columns differs from the fit data
+	 * @throws UnsupportedOperationException if neither {@link KDTree} nor {@link BallTree}
+	 * supports the model's metric
+	 * @return the predicted labels and their membership probabilities
+	 */
+	public EntryPair<int[], double[]> approximatePredict(RealMatrix newData) {
 		@SuppressWarnings("unused")
 		final int[] fit_labels = getLabels(); // throws the exception if not fit
 		final int n = newData.getColumnDimension();
 		
 		if(n != this.data.getColumnDimension())
-			throw new DimensionMismatchException(n, newData.getColumnDimension());
+			throw new DimensionMismatchException(n, this.data.getColumnDimension());
+		if(null == prediction)
+			throw new UnsupportedOperationException("HDBSCAN does not support predictions with "
+				+ getSeparabilityMetric().getName());
 		
-		// TODO: how to predict these???
-		throw new UnsupportedOperationException("HDBSCAN does not currently support predictions");
+		return prediction.predict(newData.getData(), parallel);
 	}
 }
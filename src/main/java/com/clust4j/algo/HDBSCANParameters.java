@@ -23,6 +23,7 @@ import org.apache.commons.math3.linear.RealMatrix;
 import com.clust4j.algo.AbstractDBSCAN.AbstractDBSCANParameters;
 import com.clust4j.algo.HDBSCAN.HDBSCAN_Algorithm;
 import com.clust4j.metrics.pairwise.GeometricallySeparable;
+import com.clust4j.metrics.pairwise.CondensedDistanceMatrix.Storage;
 
 /**
  * A builder class to provide an easier constructing
@@ -37,6 +38,7 @@ final public class HDBSCANParameters extends AbstractDBSCANParameters<HDBSCAN> {
 	private boolean approxMinSpanTree = HDBSCAN.DEF_APPROX_MIN_SPAN;
 	private int min_cluster_size = HDBSCAN.DEF_MIN_CLUST_SIZE;
 	private int leafSize = HDBSCAN.DEF_LEAF_SIZE;
+	private Storage storage = HDBSCAN.DEF_STORAGE;
 	
 	
 	public HDBSCANParameters() { this(HDBSCAN.DEF_MIN_PTS); }
@@ -58,6 +60,7 @@ final public class HDBSCANParameters extends AbstractDBSCANParameters<HDBSCAN> {
 			.setApprox(approxMinSpanTree)
 			.setLeafSize(leafSize)
 			.setMinClustSize(min_cluster_size)
+			.setMatrixStorage(storage)
 			.setMinPts(minPts)
 			.setMetric(metric)
 			.setSeed(seed)
@@ -105,6 +108,23 @@ final public class HDBSCANParameters extends AbstractDBSCANParameters<HDBSCAN> {
 		return min_cluster_size;
 	}
 	
+	public Storage getMatrixStorage() {
+		return storage;
+	}
+	
+	/**
+	 * Set where the distance and mutual reachability matrices of the
+	 * {@link HDBSCAN_Algorithm#GENERIC} algorithm should be kept.
+	 * {@link Storage#DIRECT} and {@link Storage#MAPPED} keep them
+	 * off of the Java heap.
+	 * @param storage
+	 * @return this
+	 */
+	public HDBSCANParameters setMatrixStorage(final Storage storage) {
+		this.storage = storage;
+		return this;
+	}
+	
 	public HDBSCANParameters setMinClustSize(final int min) {
 		this.min_cluster_size = min;
 		return this;
@@ -27,8 +27,11 @@ import com.clust4j.kernel.CircularKernel;
 import com.clust4j.kernel.LogKernel;
 import com.clust4j.log.LogTimer;
 import com.clust4j.log.Log.Tag.Algo;
+import com.clust4j.metrics.pairwise.CondensedDistanceMatrix;
+import com.clust4j.metrics.pairwise.CondensedDistanceMatrix.Storage;
 import com.clust4j.metrics.pairwise.Distance;
 import com.clust4j.metrics.pairwise.GeometricallySeparable;
+import com.clust4j.metrics.pairwise.Pairwise;
 import com.clust4j.metrics.scoring.SupervisedMetric;
 import com.clust4j.utils.SimpleHeap;
 import com.clust4j.utils.MatUtils;
@@ -58,6 +61,7 @@ final public class HierarchicalAgglomerative extends AbstractPartitionalClustere
 	 */
 	private static final long serialVersionUID = 7563413590708853735L;
 	public static final Linkage DEF_LINKAGE = Linkage.WARD;
+	public static final Storage DEF_STORAGE = Storage.HEAP;
 	final static HashSet<Class<? extends GeometricallySeparable>> comp_avg_unsupported;
 	static {
 		comp_avg_unsupported = new HashSet<>();
@@ -130,6 +134,11 @@ final public class HierarchicalAgglomerative extends AbstractPartitionalClustere
 	 */
 	final private int m;
 	
+	/**
+	 * Where to keep the distance matrix
+	 */
+	final private Storage storage;
+	
 	
 	/**
 	 * The labels for the clusters
@@ -138,7 +147,7 @@ final public class HierarchicalAgglomerative extends AbstractPartitionalClustere
 	/**
 	 * The flattened distance vector
 	 */
-	volatile private EfficientDistanceMatrix dist_vec = null;
+	volatile private CondensedDistanceMatrix dist_vec = null;
 	volatile HierarchicalDendrogram tree = null;
 	/** 
 	 * Volatile because if null will later change during build
@@ -158,6 +167,7 @@ final public class HierarchicalAgglomerative extends AbstractPartitionalClustere
 			HierarchicalAgglomerativeParameters planner) {
 		super(data, planner, planner.getNumClusters());
 		this.linkage = planner.getLinkage();
+		this.storage = planner.getMatrixStorage();
 		
 		if(!isValidMetric(this.dist_metric)) {
 			warn(this.dist_metric.getName() + " is invalid for " + this.linkage + 
@@ -189,120 +199,6 @@ final public class HierarchicalAgglomerative extends AbstractPartitionalClustere
 	
 	
 	
-	/**
-	 * Computes a flattened upper triangular distance matrix in a much more space efficient manner,
-	 * however traversing it requires intermittent calculations using {@link #navigate(int, int, int)}
-	 * @author Taylor G Smith
-	 */
-	protected static class EfficientDistanceMatrix implements java.io.Serializable {
-		private static final long serialVersionUID = -7329893729526766664L;
-		final protected double[] dists;
-		
-		EfficientDistanceMatrix(final RealMatrix data, GeometricallySeparable dist, boolean partial) {
-			this.dists = build(data.getData(), dist, partial);
-		}
-		
-		/**
-		 * Copy constructor
-		 */
-		/*// not needed right now...
-		private EfficientDistanceMatrix(EfficientDistanceMatrix other) {
-			this.dists = VecUtils.copy(other.dists);
-		}
-		*/
-		
-		/**
-		 * Computes a flattened upper triangular distance matrix in a much more space efficient manner,
-		 * however traversing it requires intermittent calculations using {@link #navigateFlattenedMatrix(double[], int, int, int)}
-		 * @param data
-		 * @param dist
-		 * @param partial -- use the partial distance?
-		 * @return a flattened distance vector
-		 */
-		static double[] build(final double[][] data, GeometricallySeparable dist, boolean partial) {
-			final int m = data.length;
-			final int s = m*(m-1)/2; // The shape of the flattened upper triangular matrix (m choose 2)
-			final double[] vec = new double[s];
-			for(int i = 0, r = 0; i < m - 1; i++)
-				for(int j = i + 1; j < m; j++, r++)
-					vec[r] = partial ? dist.getPartialDistance(data[i], data[j]) : 
-						dist.getDistance(data[i], data[j]);
-			
-			return vec;
-		}
-		
-		/**
-		 * For a flattened upper triangular matrix...
-		 * 
-		 * <p>
-		 * Original:
-		 * <p>
-		 * <table>
-		 * <tr><td>0 </td><td>1 </td><td>2 </td><td>3</td></tr>
-		 * <tr><td>0 </td><td>0 </td><td>1 </td><td>2</td></tr>
-		 * <tr><td>0 </td><td>0 </td><td>0 </td><td>1</td></tr>
-		 * <tr><td>0 </td><td>0 </td><td>0 </td><td>0</td></tr>
-		 * </table>
-		 * 
-		 * <p>
-		 * Flattened:
-		 * <p>
-		 * &lt;1 2 3 1 2 1&gt;
-		 * 
-		 * <p>
-		 * ...and the parameters <tt>m</tt>, the original row dimension,
-		 * <tt>i</tt> and <tt>j</tt>, will identify the corresponding index
-		 * in the flattened vector such that mat[0][3] corresponds to vec[2];
-		 * this method, then, would return 2 (the index in the vector 
-		 * corresponding to mat[0][3]) in this case.
-		 * 
-		 * @param m
-		 * @param i
-		 * @param j
-		 * @return the corresponding vector index
-		 */
-		static int getIndexFromFlattenedVec(final int m, final int i, final int j) {
-			if(i < j)
-				return m * i - (i * (i + 1) / 2) + (j - i - 1);
-			else if(i > j)
-				return m * j - (j * (j + 1) / 2) + (i - j - 1);
-			throw new IllegalArgumentException(i+", "+j+"; i should not equal j");
-		}
-		
-		/**
-		 * For a flattened upper triangular matrix...
-		 * 
-		 * <p>
-		 * Original:
-		 * <p>
-		 * <table>
-		 * <tr><td>0 </td><td>1 </td><td>2 </td><td>3</td></tr>
-		 * <tr><td>0 </td><td>0 </td><td>1 </td><td>2</td></tr>
-		 * <tr><td>0 </td><td>0 </td><td>0 </td><td>1</td></tr>
-		 * <tr><td>0 </td><td>0 </td><td>0 </td><td>0</td></tr>
-		 * </table>
-		 * 
-		 * <p>
-		 * Flattened:
-		 * <p>
-		 * &lt;1 2 3 1 2 1&gt;
-		 * 
-		 * <p>
-		 * ...and the parameters <tt>m</tt>, the original row dimension,
-		 * <tt>i</tt> and <tt>j</tt>, will identify the corresponding value
-		 * in the flattened vector such that mat[0][3] corresponds to vec[2];
-		 * this method, then, would return 3, the value at index 2, in this case.
-		 * 
-		 * @param m
-		 * @param i
-		 * @param j
-		 * @return the corresponding vector index
-		 */
-		double navigate(final int m, final int i, final int j) {
-			return dists[getIndexFromFlattenedVec(m,i,j)];
-		}
-	}
-	
 	abstract class HierarchicalDendrogram implements java.io.Serializable, NamedEntity {
 		private static final long serialVersionUID = 5295537901834851676L;
 		public final HierarchicalAgglomerative ref;
@@ -313,12 +209,12 @@ final public class HierarchicalAgglomerative extends AbstractPartitionalClustere
 			dist = ref.getSeparabilityMetric();
 			
 			if(null == dist_vec) // why would this happen?
-				dist_vec = new EfficientDistanceMatrix(data, dist, true);
+				dist_vec = Pairwise.getCondensedDistance(data.getData(), dist, false, true, storage);
 		}
 		
 		double[][] linkage() {
 			// Perform the linkage logic in the tree
-			//EfficientDistanceMatrix y = dist_vec.copy(); // Copy the dist_vec
+			//CondensedDistanceMatrix y = dist_vec.copy(); // Copy the dist_vec
 			
 			double[][] Z = new double[m - 1][4];  // Holding matrix
 			link(dist_vec, Z, m); // Immutabily change Z
@@ -327,12 +223,13 @@ final public class HierarchicalAgglomerative extends AbstractPartitionalClustere
 			return MatUtils.getColumns(Z, new int[]{0,1});
 		}
 		
-		private void link(final EfficientDistanceMatrix dists, final double[][] Z, final int n) {
-			int i, j, k, x = -1, y = -1, i_start, nx, ny, ni, id_x, id_y, id_i, c_idx;
-			double current_min;
+		private void link(final CondensedDistanceMatrix dists, final double[][] Z, final int n) {
+			int i, j, k, x = -1, y = -1, nx, ny, ni, id_x, id_y, id_i;
+			long i_start, c_idx;
+			double current_min, d;
 			
 			// Inter cluster dists
-			EfficientDistanceMatrix D = dists; //VecUtils.copy(dists);
+			CondensedDistanceMatrix D = dists; //VecUtils.copy(dists);
 			
 			// Map the indices to node ids
 			ref.info("initializing node mappings ("+getClass().getName().split("\\$")[1]+")");
@@ -356,10 +253,11 @@ final public class HierarchicalAgglomerative extends AbstractPartitionalClustere
 						continue;
 					
 					
-					i_start = EfficientDistanceMatrix.getIndexFromFlattenedVec(n, i, i + 1);
+					i_start = CondensedDistanceMatrix.index(n, i, i + 1);
 					for(j = 0; j < n - i - 1; j++) {
-						if(D.dists[i_start + j] < current_min) {
-							current_min = D.dists[i_start + j];
+						d = D.get(i_start + j);
+						if(d < current_min) {
+							current_min = d;
 							x = i;
 							y = i + j + 1;
 						}
@@ -391,11 +289,11 @@ final public class HierarchicalAgglomerative extends AbstractPartitionalClustere
 					}
 					
 					ni = id_i < n ? 1 : (int)Z[id_i - n][3];
-					c_idx = EfficientDistanceMatrix.getIndexFromFlattenedVec(n, i, y);
-					D.dists[c_idx] = getDist(D.navigate(n, i, x), D.dists[c_idx], current_min, nx, ny, ni);
+					c_idx = CondensedDistanceMatrix.index(n, i, y);
+					D.set(c_idx, getDist(D.get(i, x), D.get(c_idx), current_min, nx, ny, ni));
 					
 					if(i < x)
-						D.dists[EfficientDistanceMatrix.getIndexFromFlattenedVec(n,i,x)] = Double.POSITIVE_INFINITY;
+						D.set(CondensedDistanceMatrix.index(n, i, x), Double.POSITIVE_INFINITY);
 				}
 				
 				fitSummary.add(new Object[]{
@@ -503,7 +401,7 @@ final public class HierarchicalAgglomerative extends AbstractPartitionalClustere
 				return this;
 			}
 			
-			dist_vec = new EfficientDistanceMatrix(data, getSeparabilityMetric(), true);
+			dist_vec = Pairwise.getCondensedDistance(data.getData(), getSeparabilityMetric(), false, true, storage);
 			
 			// Log info...
 			info("computed distance matrix in " + timer.toString());
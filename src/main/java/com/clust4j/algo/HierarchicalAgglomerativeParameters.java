@@ -22,6 +22,7 @@ import org.apache.commons.math3.linear.RealMatrix;
 
 import com.clust4j.algo.HierarchicalAgglomerative.Linkage;
 import com.clust4j.metrics.pairwise.GeometricallySeparable;
+import com.clust4j.metrics.pairwise.CondensedDistanceMatrix.Storage;
 
 final public class HierarchicalAgglomerativeParameters 
 		extends BaseClustererParameters 
@@ -31,6 +32,7 @@ final public class HierarchicalAgglomerativeParameters
 	private static int DEF_K = 2;
 	private Linkage linkage = HierarchicalAgglomerative.DEF_LINKAGE;
 	private int num_clusters = DEF_K;
+	private Storage storage = HierarchicalAgglomerative.DEF_STORAGE;
 
 	public HierarchicalAgglomerativeParameters() { this(DEF_K); }
 	public HierarchicalAgglomerativeParameters(int k) { this.num_clusters = k; }
@@ -51,6 +53,7 @@ final public class HierarchicalAgglomerativeParameters
 			.setSeed(seed)
 			.setVerbose(verbose)
 			.setNumClusters(num_clusters)
+			.setMatrixStorage(storage)
 			.setForceParallel(parallel);
 	}
 
@@ -71,6 +74,21 @@ final public class HierarchicalAgglomerativeParameters
 		this.num_clusters = d;
 		return this;
 	}
+	
+	public Storage getMatrixStorage() {
+		return storage;
+	}
+	
+	/**
+	 * Set where the distance matrix should be kept. {@link Storage#DIRECT}
+	 * and {@link Storage#MAPPED} keep it off of the Java heap.
+	 * @param storage
+	 * @return this
+	 */
+	public HierarchicalAgglomerativeParameters setMatrixStorage(final Storage storage) {
+		this.storage = storage;
+		return this;
+	}
 
 	@Override
 	public HierarchicalAgglomerativeParameters setForceParallel(boolean b) {
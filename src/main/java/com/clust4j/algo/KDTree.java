@@ -83,6 +83,10 @@ public class KDTree extends NearestNeighborHeapSearch {
 		super(X, leaf_size, dist, logger);
 	}
 	
+	protected KDTree(final KDTree tree) {
+		super(tree);
+	}
+	
 	/**
 	 * Constructor with logger and distance metric
 	 * @param X
@@ -150,6 +154,11 @@ public class KDTree extends NearestNeighborHeapSearch {
 		return new KDTree(new Array2DRowRealMatrix(arr, false), leaf, dist, logger);
 	}
 	
+	@Override
+	final KDTree newReader() {
+		return new KDTree(this);
+	}
+	
 	@Override
 	double minDist(NearestNeighborHeapSearch tree, int i_node, double[] pt) {
 		double d = minRDist(tree, i_node, pt);
@@ -16,18 +16,21 @@
 package com.clust4j.algo;
 
 import java.util.ArrayList;
+import java.util.Random;
 import java.util.TreeMap;
+import java.util.concurrent.RecursiveTask;
 
 import org.apache.commons.math3.linear.RealMatrix;
 import org.apache.commons.math3.util.FastMath;
 
-import com.clust4j.algo.NearestCentroidParameters;
-import com.clust4j.except.NaNException;
+import com.clust4j.GlobalState;
+import com.clust4j.data.CSRMatrix;
 import com.clust4j.log.Log.Tag.Algo;
 import com.clust4j.log.LogTimer;
 import com.clust4j.metrics.pairwise.Distance;
 import com.clust4j.metrics.pairwise.GeometricallySeparable;
-import com.clust4j.utils.EntryPair;
+import com.clust4j.metrics.pairwise.PrecomputedRowStatistics;
+import com.clust4j.metrics.pairwise.SimilarityMetric;
 import com.clust4j.utils.VecUtils;
 
 /**
@@ -40,10 +43,79 @@ import com.clust4j.utils.VecUtils;
  * 
  * @author Taylor G Smith &lt;tgsmith61591@gmail.com&gt;
  */
-final public class KMeans extends AbstractCentroidClusterer {
+final public class KMeans extends AbstractCentroidClusterer implements SparseLearner {
 	private static final long serialVersionUID = 1102324012006818767L;
 	final public static GeometricallySeparable DEF_DIST = Distance.EUCLIDEAN;
 	final public static int DEF_MAX_ITER = 100;
+	final public static KMeansAlgorithm DEF_ALGORITHM = KMeansAlgorithm.LLOYD;
+	
+	/**
+	 * How each point is assigned to its nearest centroid in each iteration.
+	 * All produce identical labels and centroids; {@link #ELKAN} and {@link #HAMERLY}
+	 * keep bounds on the point-to-centroid distances such that, by the triangle
+	 * inequality, most distance computations can be skipped once the centroids 
+	 * stop moving much. They are only valid for dense data and for metrics satisfying
+	 * the triangle inequality (see {@link KDTree#VALID_METRICS}), and {@link #FILTERING}
+	 * only for {@link Distance#EUCLIDEAN}; otherwise {@link #LLOYD} is used.
+	 * @author Taylor G Smith
+	 */
+	public static enum KMeansAlgorithm implements MetricValidator {
+		/**
+		 * Computes the distance from every point to every centroid in each iteration
+		 */
+		LLOYD {
+			@Override
+			public boolean isValidMetric(GeometricallySeparable geo) {
+				return true;
+			}
+		},
+		
+		/**
+		 * Elkan (2003) keeps an upper bound on the distance from each point to its
+		 * centroid and a lower bound on the distance to every other centroid, and uses
+		 * the distances between centroids. Skips the most computations, but needs
+		 * <tt>O(mk)</tt> memory for the bounds.
+		 */
+		ELKAN,
+		
+		/**
+		 * Hamerly (2010) keeps an upper bound on the distance from each point to its
+		 * centroid and a single lower bound on the distance to its second-closest centroid.
+		 * Needs only <tt>O(m)</tt> memory for the bounds, and tends to outperform
+		 * {@link #ELKAN} in low dimensions.
+		 */
+		HAMERLY,
+		
+		/**
+		 * Kanungo et al. (2002) build a {@link KDTree} over the data once, and in each
+		 * iteration filter the candidate centroids down each node of the tree, pruning those
+		 * that are farther than another candidate from every point in the node's bounding box.
+		 * Once a single candidate remains, the whole subtree is assigned to it using its cached
+		 * sum, count and scatter. Best suited to low-dimensional data, and only valid for 
+		 * {@link Distance#EUCLIDEAN}, for which the points closer to one centroid than to 
+		 * another lie in a half-space.
+		 */
+		FILTERING {
+			@Override
+			public boolean isValidMetric(GeometricallySeparable geo) {
+				return Distance.EUCLIDEAN.equals(geo);
+			}
+		},
+		;
+		
+		@Override
+		public boolean isValidMetric(GeometricallySeparable geo) {
+			return KDTree.VALID_METRICS.contains(geo.getClass());
+		}
+	}
+	
+	
+	
+	final private KMeansAlgorithm algorithm;
+	/** The number of independently seeded restarts */
+	final private int nInit;
+	/** The number of distances computed in the assignment steps */
+	private long distance_computations = 0;
 	
 	
 	
@@ -57,6 +129,32 @@ final public class KMeans extends AbstractCentroidClusterer {
 	
 	protected KMeans(final RealMatrix data, final KMeansParameters planner) {
 		super(data, planner);
+		
+		KMeansAlgorithm algo = planner.getAlgorithm();
+		if(KMeansAlgorithm.LLOYD != algo) {
+			if(isSparse()) {
+				warn(algo + " is not supported for sparse data; falling back to " + KMeansAlgorithm.LLOYD);
+				algo = KMeansAlgorithm.LLOYD;
+			} else if(!algo.isValidMetric(dist_metric)) {
+				warn(algo + " does not support the " + dist_metric.getName() + " metric; falling back to " + KMeansAlgorithm.LLOYD);
+				algo = KMeansAlgorithm.LLOYD;
+			}
+		}
+		
+		this.algorithm = algo;
+		this.nInit = warmStartNInit(planner.getNInit());
+	}
+	
+	/**
+	 * A restart of the caller, sharing its data
+	 * @param caller
+	 * @param planner
+	 * @param seeds - the initial centroid indices, or null to select them
+	 */
+	private KMeans(final KMeans caller, final KMeansParameters planner, final int[] seeds) {
+		super(caller, planner, seeds);
+		this.algorithm = caller.algorithm;
+		this.nInit = 1;
 	}
 	
 	
@@ -76,8 +174,8 @@ final public class KMeans extends AbstractCentroidClusterer {
 			
 
 			final LogTimer timer = new LogTimer();
-			final double[][] X = data.getData();
-			final int n = data.getColumnDimension();
+			final double[][] X = isSparse() ? null : data.getData(); // sparse data is never densified
+			final int n = getDataRef().getColumnDimension();
 			final double nan = Double.NaN;
 			
 			
@@ -89,27 +187,36 @@ final public class KMeans extends AbstractCentroidClusterer {
 				return this;
 			}
 			
+			if(nInit > 1)
+				return fitBestOfRestarts(timer);
+			
 			
 			
-			// Nearest centroid model to predict labels
-			NearestCentroid model = null;
-			EntryPair<int[], double[]> label_dist;
+			// Row norms are computed once and reused in each iteration
+			final PrecomputedRowStatistics stats = isSparse() ? null : getRowStatistics();
 			
+			// Bounds are carried across iterations for the accelerated algorithms
+			final BoundedAssigner bounds = 
+				KMeansAlgorithm.ELKAN == algorithm ? new ElkanAssigner(X, getSeparabilityMetric(), k) :
+				KMeansAlgorithm.HAMERLY == algorithm ? new HamerlyAssigner(X, getSeparabilityMetric(), k) : null;
+			
+			// The tree and its node statistics are built once and reused in each iteration
+			final FilteringStep filter = KMeansAlgorithm.FILTERING == algorithm ? 
+				new FilteringStep(X, getSeparabilityMetric(), k) : null;
+			
+			// Same fallback as NearestCentroid, so the labels are unchanged
+			final GeometricallySeparable assign_metric = 
+				NearestCentroid.UNSUPPORTED_METRICS.contains(dist_metric.getClass()) ?
+					NearestCentroid.DEF_DIST : getSeparabilityMetric();
 			
 			// Keep track of TSS (sum of barycentric distances)
 			double last_wss_sum = Double.POSITIVE_INFINITY, wss_sum = 0;
 			ArrayList<double[]> new_centroids;
+			LloydAccumulator acc;
 			
 			for(iter = 0; iter < maxIter; iter++) {
 				
-				// Get labels for nearest centroids
-				try {
-					model = new NearestCentroid(CentroidUtils.centroidsToMatrix(centroids, false), 
-						VecUtils.arange(k), new NearestCentroidParameters()
-							.setSeed(getSeed())
-							.setMetric(getSeparabilityMetric())
-							.setVerbose(false)).fit();
-				} catch(NaNException NaN) {
+				if(containsNaN(centroids)) {
 					/*
 					 * If they metric used produces lots of infs or -infs, it 
 					 * makes it hard if not impossible to effectively segment the
@@ -131,36 +238,27 @@ final public class KMeans extends AbstractCentroidClusterer {
 					return this;
 				}
 				
-				label_dist = model.predict(X);
-				
-				// unpack the EntryPair
-				labels = label_dist.getKey();
-				new_centroids = new ArrayList<>(k);
-				
-				
-				int label;
-				wss = new double[k];
-				int[] centroid_counts = new int[k];
-				double[] centroid;
-				double[][] new_centroid_arrays = new double[k][n];
-				for(int i = 0; i < m; i++) {
-					label = labels[i];
-					centroid = centroids.get(label);
-					
-					// increment count for this centroid
-					double this_cost = 0;
-					centroid_counts[label]++;
-					for(int j = 0; j < centroid.length; j++) {
-						double diff = X[i][j] - centroid[j];
-						this_cost += (diff * diff);
-						
-						// Add the the centroid sums
-						new_centroid_arrays[label][j] += X[i][j];
+				if(null != filter) {
+					labels = new int[m];
+					acc = filter.accumulate(centroids, labels);
+					distance_computations = filter.computations;
+				} else {
+					// The Lloyd assignment is fused with the accumulation of the new centroids
+					final LloydStep step;
+					if(null == bounds) {
+						labels = new int[m];
+						step = new LloydStep(this, X, stats, centroids, assign_metric, labels, true);
+						distance_computations += (long)m * k;
+					} else {
+						labels = bounds.assign(centroids);
+						step = new LloydStep(this, X, stats, centroids, assign_metric, labels, false);
+						distance_computations = bounds.computations;
 					}
 					
-					// add this cost to the WSS
-					wss[label] += this_cost;
+					acc = parallel ? LloydTask.doAll(step) : step.accumulate(0, m);
 				}
+				new_centroids = new ArrayList<>(k);
+				wss = acc.wss;
 				
 				// one pass of K for some consolidation
 				wss_sum = 0;
@@ -168,9 +266,9 @@ final public class KMeans extends AbstractCentroidClusterer {
 					wss_sum += wss[i];
 					
 					for(int j = 0; j < n; j++) // meanify
-						new_centroid_arrays[i][j] /= (double)centroid_counts[i];
+						acc.sums[i][j] /= (double)acc.counts[i];
 					
-					new_centroids.add(new_centroid_arrays[i]);
+					new_centroids.add(acc.sums[i]);
 				}
 				
 				// update the BSS
@@ -207,6 +305,7 @@ final public class KMeans extends AbstractCentroidClusterer {
 			
 			if(!converged)
 				warn("algorithm did not converge");
+			info(algorithm + " computed " + distance_computations + " distances in the assignment steps");
 				
 			
 			// wrap things up, create summary..
@@ -218,6 +317,793 @@ final public class KMeans extends AbstractCentroidClusterer {
 			
 	}
 	
+	/**
+	 * Fit {@link #nInit} restarts sharing this model's data, and adopt the one with
+	 * the lowest WSS. The first restart uses this model's own initial centroids.
+	 */
+	private KMeans fitBestOfRestarts(final LogTimer timer) {
+		final KMeansParameters planner = new KMeansParameters(k)
+			.setMaxIter(maxIter)
+			.setConvergenceCriteria(tolerance)
+			.setMetric(getSeparabilityMetric())
+			.setInitializationStrategy(init)
+			.setAlgorithm(algorithm)
+			.setVerbose(false);
+		
+		final KMeans best = fitRestarts(nInit, new RestartFactory<KMeans>() {
+			@Override public KMeans restart(int i, Random seed) {
+				return new KMeans(KMeans.this, planner.copy().setSeed(seed), 
+					0 == i ? init_centroid_indices : null);
+			}
+		});
+		
+		adopt(best);
+		distance_computations = best.distance_computations;
+		
+		if(!converged)
+			warn("algorithm did not converge");
+		sayBye(timer);
+		
+		return this;
+	}
+	
+	/**
+	 * Whether any of the centroids contains a NaN, which happens when
+	 * a cluster is emptied and its mean divides by zero
+	 */
+	static boolean containsNaN(final ArrayList<double[]> centroids) {
+		for(double[] centroid: centroids)
+			for(double d: centroid)
+				if(Double.isNaN(d))
+					return true;
+		return false;
+	}
+	
+	
+	
+	/**
+	 * The per-centroid sums, counts and costs of a range of rows
+	 * @author Taylor G Smith
+	 */
+	static class LloydAccumulator {
+		final double[][] sums;
+		final int[] counts;
+		final double[] wss;
+		
+		LloydAccumulator(final int k, final int n) {
+			this.sums = new double[k][n];
+			this.counts = new int[k];
+			this.wss = new double[k];
+		}
+		
+		/**
+		 * Add the other accumulator into this one
+		 * @param other
+		 * @return this
+		 */
+		LloydAccumulator merge(final LloydAccumulator other) {
+			for(int c = 0; c < counts.length; c++) {
+				counts[c] += other.counts[c];
+				wss[c] += other.wss[c];
+				
+				final double[] s = sums[c], o = other.sums[c];
+				for(int j = 0; j < s.length; j++)
+					s[j] += o[j];
+			}
+			
+			return this;
+		}
+	}
+	
+	/**
+	 * One iteration of the Lloyd update over a range of rows, fusing the assignment of each
+	 * row to its nearest centroid with the accumulation of the new centroid sums, counts
+	 * and costs. The assignment is that of {@link NearestCentroid#predict(PrecomputedRowStatistics)}
+	 * (or {@link NearestCentroid#predict(CSRMatrix)}), without building a model in each iteration.
+	 * Disjoint ranges write disjoint labels and return their own accumulators, so
+	 * they can be computed concurrently.
+	 * @author Taylor G Smith
+	 */
+	static class LloydStep {
+		final double[][] X;
+		final CSRMatrix sparse;
+		final PrecomputedRowStatistics stats;
+		final PrecomputedRowStatistics centroid_stats;
+		final double[][] centroids;
+		final GeometricallySeparable metric;
+		final boolean useStats;
+		/** Whether to assign the labels, or to use those already assigned */
+		final boolean assign;
+		final int[] labels;
+		final int m, n, k;
+		
+		LloydStep(final KMeans model, final double[][] X, final PrecomputedRowStatistics stats,
+				final ArrayList<double[]> centroids, final GeometricallySeparable metric,
+				final int[] labels, final boolean assign) {
+			
+			this.X = X;
+			this.sparse = model.sparse_data;
+			this.stats = stats;
+			this.centroids = centroids.toArray(new double[centroids.size()][]);
+			this.centroid_stats = new PrecomputedRowStatistics(this.centroids);
+			this.metric = metric;
+			this.useStats = metric instanceof SimilarityMetric;
+			this.labels = labels;
+			this.assign = assign;
+			this.m = labels.length;
+			this.n = this.centroids[0].length;
+			this.k = this.centroids.length;
+		}
+		
+		/**
+		 * Assign (if needed) and accumulate rows <tt>from</tt> through <tt>to - 1</tt>
+		 * @param from - the first row, inclusive
+		 * @param to - the last row, exclusive
+		 * @return the accumulated sums, counts and costs
+		 */
+		LloydAccumulator accumulate(final int from, final int to) {
+			final LloydAccumulator acc = new LloydAccumulator(k, n);
+			final double[] block = useStats && null == sparse ? new double[k] : null;
+			
+			int label;
+			double[] centroid;
+			for(int i = from; i < to; i++) {
+				if(assign)
+					labels[i] = null == sparse ? nearest(i, block) : nearestSparse(i);
+				
+				label = labels[i];
+				centroid = centroids[label];
+				acc.counts[label]++;
+				
+				if(null != sparse) {
+					acc.wss[label] += sparseCost(i, centroid, 
+						centroid_stats.getSquaredNorm(label), acc.sums[label]);
+				} else {
+					final double[] row = X[i], sums = acc.sums[label];
+					double cost = 0, diff;
+					for(int j = 0; j < n; j++) {
+						diff = row[j] - centroid[j];
+						cost += (diff * diff);
+						
+						// Add the the centroid sums
+						sums[j] += row[j];
+					}
+					
+					acc.wss[label] += cost;
+				}
+			}
+			
+			return acc;
+		}
+		
+		private int nearest(final int i, final double[] block) {
+			double minDist = Double.POSITIVE_INFINITY, dist;
+			int nearestLabel = 0; // should not equal -1, because dist could be infinity
+			
+			// Kernels are evaluated against all of the centroids in one batch call
+			if(useStats)
+				metric.partialDistanceBlock(stats, i, centroid_stats, 0, k, block);
+			
+			final double[] row = stats.getRow(i);
+			for(int j = 0; j < k; j++) {
+				dist = useStats ? block[j] :
+					metric.getPartialDistance(centroids[j], row, minDist);
+				
+				if(dist < minDist) {
+					minDist = dist;
+					nearestLabel = j;
+				}
+			}
+			
+			return nearestLabel;
+		}
+		
+		private int nearestSparse(final int i) {
+			double minDist = Double.POSITIVE_INFINITY, dist;
+			int nearestLabel = 0;
+			
+			for(int j = 0; j < k; j++) {
+				dist = metric.getPartialDistance(sparse, i, centroid_stats, j);
+				
+				if(dist < minDist) {
+					minDist = dist;
+					nearestLabel = j;
+				}
+			}
+			
+			return nearestLabel;
+		}
+		
+		/**
+		 * Compute the squared distance from the i<sup>th</sup> sparse row to the centroid and
+		 * add the row to the centroid sums, only visiting the non-zeros:
+		 * ||x - c||^2 = ||c||^2 + sum over the non-zeros of x(x - 2c)
+		 */
+		private double sparseCost(final int i, final double[] centroid, final double centroid_sq, final double[] sums) {
+			final int[] indptr = sparse.getIndptrRef(), indices = sparse.getIndicesRef();
+			final double[] values = sparse.getValuesRef();
+			
+			double cost = centroid_sq, v;
+			for(int p = indptr[i]; p < indptr[i + 1]; p++) {
+				v = values[p];
+				cost += v * (v - 2.0 * centroid[indices[p]]);
+				sums[indices[p]] += v;
+			}
+			
+			// the expansion can fall slightly below zero for near points
+			return FastMath.max(cost, 0.0);
+		}
+	}
+	
+	/**
+	 * Computes a {@link LloydStep} over chunks of rows in parallel, merging
+	 * the accumulators of the chunks as the tasks are joined. Since the sums
+	 * are added in a different order, the centroids may differ from the serial
+	 * computation in the last few bits.
+	 * @author Taylor G Smith
+	 */
+	static class LloydTask extends RecursiveTask<LloydAccumulator> {
+		private static final long serialVersionUID = -2284761253108736394L;
+		final transient LloydStep step;
+		final int lo, hi, grain;
+		
+		LloydTask(final LloydStep step) {
+			this(step, 0, step.m, 
+				FastMath.max(1, step.m / (8 * GlobalState.ParallelismConf.NUM_CORES)));
+		}
+		
+		private LloydTask(final LloydStep step, final int lo, final int hi, final int grain) {
+			this.step = step;
+			this.lo = lo;
+			this.hi = hi;
+			this.grain = grain;
+		}
+		
+		@Override
+		protected LloydAccumulator compute() {
+			if(hi - lo <= grain)
+				return step.accumulate(lo, hi);
+			
+			int mid = lo + (hi - lo) / 2;
+			LloydTask left  = new LloydTask(step, lo, mid, grain);
+			LloydTask right = new LloydTask(step, mid, hi, grain);
+			
+			left.fork();
+			LloydAccumulator r = right.compute();
+			LloydAccumulator l = left.join();
+			
+			return l.merge(r);
+		}
+		
+		static LloydAccumulator doAll(final LloydStep step) {
+			return ParallelChunkingTask.getThreadPool().invoke(new LloydTask(step));
+		}
+	}
+	
+	
+	
+	/**
+	 * The algorithm used to assign points to centroids
+	 * @return the algorithm
+	 */
+	public KMeansAlgorithm getAlgorithm() {
+		return algorithm;
+	}
+	
+	/**
+	 * The number of point-to-centroid (and, for the bounded algorithms,
+	 * centroid-to-centroid) distances computed in the assignment steps
+	 * @return the number of distances computed
+	 */
+	long getDistanceComputations() {
+		return distance_computations;
+	}
+	
+	
+	
+	/**
+	 * Assigns each point to its nearest centroid while carrying bounds on the
+	 * distances between them across iterations. The labels are identical to those
+	 * of {@link NearestCentroid#predict(PrecomputedRowStatistics)}: the exact partial
+	 * distances are compared, and ties resolve to the lowest centroid index.
+	 * @author Taylor G Smith
+	 */
+	abstract static class BoundedAssigner {
+		/** Relative slack that keeps the bounds valid despite rounding */
+		static final double SLACK = 1e-9;
+		
+		final double[][] X;
+		final GeometricallySeparable metric;
+		final int m, k;
+		final int[] labels;
+		/** Upper bound on the distance from each point to its centroid */
+		final double[] upper;
+		/** The centroids of the last call, or null before the first */
+		double[][] last = null;
+		long computations = 0;
+		
+		BoundedAssigner(final double[][] X, final GeometricallySeparable metric, final int k) {
+			this.X = X;
+			this.metric = metric;
+			this.m = X.length;
+			this.k = k;
+			this.labels = new int[m];
+			this.upper = new double[m];
+		}
+		
+		/**
+		 * Assign each point to its nearest centroid
+		 * @param centroids
+		 * @return the labels
+		 */
+		final int[] assign(final ArrayList<double[]> centroids) {
+			final double[][] C = centroids.toArray(new double[k][]);
+			if(null == last) {
+				for(int i = 0; i < m; i++)
+					nearest(C, i);
+			} else {
+				final double[] drift = new double[k];
+				for(int c = 0; c < k; c++)
+					drift[c] = distance(last[c], C[c]);
+				update(C, drift, halfCentroidDistances(C));
+			}
+			
+			last = C;
+			return labels.clone();
+		}
+		
+		/** Same argument order as {@link NearestCentroid}, so the values are identical */
+		final double partial(final double[] centroid, final double[] row) {
+			computations++;
+			return metric.getPartialDistance(centroid, row);
+		}
+		
+		final double distance(final double[] a, final double[] b) {
+			return metric.partialDistanceToDistance(partial(a, b));
+		}
+		
+		/**
+		 * Half the distance between each pair of centroids, shrunk by the slack
+		 */
+		final double[][] halfCentroidDistances(final double[][] C) {
+			final double[][] half = new double[k][k];
+			for(int a = 0; a < k; a++) {
+				for(int c = a + 1; c < k; c++) {
+					half[a][c] = half[c][a] = 0.5 * distance(C[a], C[c]) * (1 - SLACK);
+				}
+			}
+			
+			return half;
+		}
+		
+		/**
+		 * Half the distance from each centroid to the closest other centroid.
+		 * A point closer than this to its centroid cannot be closer to any other.
+		 */
+		final double[] closestHalf(final double[][] half) {
+			final double[] s = new double[k];
+			for(int a = 0; a < k; a++) {
+				s[a] = Double.POSITIVE_INFINITY;
+				for(int c = 0; c < k; c++)
+					if(c != a && half[a][c] < s[a])
+						s[a] = half[a][c];
+			}
+			
+			return s;
+		}
+		
+		static double shrink(final double lower) {
+			return FastMath.max(0.0, lower) * (1 - SLACK);
+		}
+		
+		static double grow(final double upper) {
+			return upper * (1 + SLACK);
+		}
+		
+		/**
+		 * Compute the distance from the point to every centroid and
+		 * assign it to the nearest, initializing its bounds
+		 */
+		abstract void nearest(double[][] C, int i);
+		
+		/**
+		 * Loosen the bounds by how far the centroids moved, and reassign
+		 * the points whose bounds can no longer rule out a closer centroid
+		 */
+		abstract void update(double[][] C, double[] drift, double[][] half);
+	}
+	
+	/**
+	 * Elkan's algorithm, with a lower bound per point and centroid
+	 * @author Taylor G Smith
+	 */
+	static class ElkanAssigner extends BoundedAssigner {
+		final double[][] lower;
+		
+		ElkanAssigner(final double[][] X, final GeometricallySeparable metric, final int k) {
+			super(X, metric, k);
+			this.lower = new double[m][k];
+		}
+		
+		@Override
+		void nearest(final double[][] C, final int i) {
+			final double[] low = lower[i];
+			double minDist = Double.POSITIVE_INFINITY, p;
+			int nearest = 0;
+			
+			for(int c = 0; c < k; c++) {
+				p = partial(C[c], X[i]);
+				low[c] = metric.partialDistanceToDistance(p);
+				if(p < minDist) {
+					minDist = p;
+					nearest = c;
+				}
+			}
+			
+			labels[i] = nearest;
+			upper[i] = low[nearest];
+		}
+		
+		@Override
+		void update(final double[][] C, final double[] drift, final double[][] half) {
+			final double[] s = closestHalf(half);
+			
+			for(int i = 0; i < m; i++) {
+				final double[] low = lower[i];
+				for(int c = 0; c < k; c++)
+					low[c] = shrink(low[c] - drift[c]);
+				
+				int a = labels[i];
+				double u = grow(upper[i] + drift[a]), pa = Double.NaN, pc;
+				boolean tight = false;
+				
+				if(u < s[a]) {
+					upper[i] = u;
+					continue;
+				}
+				
+				for(int c = 0; c < k; c++) {
+					if(c == a || u < low[c] || u < half[a][c])
+						continue;
+					
+					if(!tight) {
+						pa = partial(C[a], X[i]);
+						u = low[a] = metric.partialDistanceToDistance(pa);
+						tight = true;
+						
+						if(u < low[c] || u < half[a][c])
+							continue;
+					}
+					
+					pc = partial(C[c], X[i]);
+					low[c] = metric.partialDistanceToDistance(pc);
+					if(pc < pa || (pc == pa && c < a)) {
+						a = c;
+						pa = pc;
+						u = low[c];
+					}
+				}
+				
+				labels[i] = a;
+				upper[i] = u;
+			}
+		}
+	}
+	
+	/**
+	 * Hamerly's algorithm, with a single lower bound per point
+	 * on the distance to its second-closest centroid
+	 * @author Taylor G Smith
+	 */
+	static class HamerlyAssigner extends BoundedAssigner {
+		final double[] lower;
+		
+		HamerlyAssigner(final double[][] X, final GeometricallySeparable metric, final int k) {
+			super(X, metric, k);
+			this.lower = new double[m];
+		}
+		
+		@Override
+		void nearest(final double[][] C, final int i) {
+			double minDist = Double.POSITIVE_INFINITY, p, d, 
+				nearestDist = Double.POSITIVE_INFINITY, 
+				secondDist = Double.POSITIVE_INFINITY;
+			int nearest = 0;
+			
+			for(int c = 0; c < k; c++) {
+				p = partial(C[c], X[i]);
+				d = metric.partialDistanceToDistance(p);
+				if(p < minDist) {
+					minDist = p;
+					nearest = c;
+					secondDist = nearestDist;
+					nearestDist = d;
+				} else if(d < secondDist) {
+					secondDist = d;
+				}
+			}
+			
+			labels[i] = nearest;
+			upper[i] = nearestDist;
+			lower[i] = secondDist;
+		}
+		
+		@Override
+		void update(final double[][] C, final double[] drift, final double[][] half) {
+			// The largest and second largest drifts
+			int argmax = 0;
+			for(int c = 1; c < k; c++)
+				if(drift[c] > drift[argmax])
+					argmax = c;
+			double second = 0.0;
+			for(int c = 0; c < k; c++)
+				if(c != argmax && drift[c] > second)
+					second = drift[c];
+			
+			final double[] s = closestHalf(half);
+			
+			for(int i = 0; i < m; i++) {
+				final int a = labels[i];
+				upper[i] = grow(upper[i] + drift[a]);
+				lower[i] = shrink(lower[i] - (a == argmax ? second : drift[argmax]));
+				
+				final double z = FastMath.max(lower[i], s[a]);
+				if(upper[i] < z)
+					continue;
+				
+				// Tighten the upper bound before resorting to the full scan
+				upper[i] = metric.partialDistanceToDistance(partial(C[a], X[i]));
+				if(upper[i] < z)
+					continue;
+				
+				nearest(C, i);
+			}
+		}
+	}
+	
+
+	/**
+	 * The filtering algorithm of Kanungo et al. (2002) over a {@link KDTree}. Each node
+	 * caches the count, sum and scatter (the sum of squared distances to the node's mean)
+	 * of its points, so that a subtree whose candidates are filtered down to a single
+	 * centroid is accumulated in one step: its cost to a centroid <tt>c</tt> is the
+	 * scatter plus <tt>count * ||mean - c||^2</tt>. In the leaves, each point is assigned
+	 * to the nearest remaining candidate exactly as in {@link LloydStep}, so the labels 
+	 * are those of {@link KMeansAlgorithm#LLOYD}.
+	 * @author Taylor G Smith
+	 */
+	static class FilteringStep {
+		/** Smaller than the default leaf size, as the leaves are scanned against each candidate */
+		static final int LEAF_SIZE = 16;
+		
+		final double[][] X;
+		final GeometricallySeparable metric;
+		final int n, k;
+		final int[] idx_array;
+		final NearestNeighborHeapSearch.NodeData[] node_data;
+		final double[][] lower, upper;
+		final int[] node_counts;
+		final double[][] node_sums, node_means;
+		final double[] node_scatter;
+		long computations = 0;
+		
+		FilteringStep(final double[][] X, final GeometricallySeparable metric, final int k) {
+			final KDTree tree = new KDTree(X, LEAF_SIZE, Distance.EUCLIDEAN, null);
+			final int nodes = tree.node_data.length;
+			
+			this.X = X;
+			this.metric = metric;
+			this.n = X[0].length;
+			this.k = k;
+			this.idx_array = tree.getIndexArrayRef();
+			this.node_data = tree.getNodeDataRef();
+			this.lower = tree.getNodeBoundsRef()[0];
+			this.upper = tree.getNodeBoundsRef()[1];
+			this.node_counts = new int[nodes];
+			this.node_sums = new double[nodes][];
+			this.node_means = new double[nodes][];
+			this.node_scatter = new double[nodes];
+			
+			cacheNode(0);
+		}
+		
+		/**
+		 * Compute the count, sum, mean and scatter of the node and its descendants. 
+		 * The scatter of a parent combines that of its children about their means.
+		 */
+		private void cacheNode(final int node) {
+			final NearestNeighborHeapSearch.NodeData data = node_data[node];
+			final double[] sum = new double[n], mean = new double[n];
+			double scatter = 0, diff;
+			int count;
+			
+			if(data.is_leaf) {
+				count = data.idx_end - data.idx_start;
+				for(int i = data.idx_start; i < data.idx_end; i++)
+					for(int j = 0; j < n; j++)
+						sum[j] += X[idx_array[i]][j];
+				for(int j = 0; j < n; j++)
+					mean[j] = sum[j] / count;
+				
+				for(int i = data.idx_start; i < data.idx_end; i++) {
+					for(int j = 0; j < n; j++) {
+						diff = X[idx_array[i]][j] - mean[j];
+						scatter += diff * diff;
+					}
+				}
+			} else {
+				final int left = 2 * node + 1, right = left + 1;
+				cacheNode(left);
+				cacheNode(right);
+				
+				final int nl = node_counts[left], nr = node_counts[right];
+				count = nl + nr;
+				
+				double between = 0;
+				for(int j = 0; j < n; j++) {
+					sum[j] = node_sums[left][j] + node_sums[right][j];
+					mean[j] = sum[j] / count;
+					
+					diff = node_means[left][j] - node_means[right][j];
+					between += diff * diff;
+				}
+				
+				scatter = node_scatter[left] + node_scatter[right] + between * nl * nr / count;
+			}
+			
+			node_counts[node] = count;
+			node_sums[node] = sum;
+			node_means[node] = mean;
+			node_scatter[node] = scatter;
+		}
+		
+		/**
+		 * Assign each point to its nearest centroid and accumulate the new
+		 * centroid sums, counts and costs
+		 * @param centroids
+		 * @param labels - the array to fill with the labels
+		 * @return the accumulated sums, counts and costs
+		 */
+		LloydAccumulator accumulate(final ArrayList<double[]> centroids, final int[] labels) {
+			final double[][] C = centroids.toArray(new double[k][]);
+			final LloydAccumulator acc = new LloydAccumulator(k, n);
+			filter(0, VecUtils.arange(k), C, labels, acc);
+			return acc;
+		}
+		
+		/**
+		 * Prune the candidates that are farther than the candidate closest to the node's
+		 * midpoint from every point in its bounding box, then assign the whole node if one
+		 * remains, or else continue down the tree. The candidates stay in ascending order.
+		 */
+		private void filter(final int node, final int[] candidates, final double[][] C,
+				final int[] labels, final LloydAccumulator acc) {
+			
+			final double[] lo = lower[node], hi = upper[node];
+			int[] remaining = candidates;
+			
+			if(candidates.length > 1) {
+				// The candidate closest to the midpoint of the box
+				double best = Double.POSITIVE_INFINITY, dist, diff, diameter = 0;
+				int star = candidates[0];
+				for(int c: candidates) {
+					dist = 0;
+					for(int j = 0; j < n; j++) {
+						diff = 0.5 * (lo[j] + hi[j]) - C[c][j];
+						dist += diff * diff;
+					}
+					
+					if(dist < best) {
+						best = dist;
+						star = c;
+					}
+				}
+				
+				for(int j = 0; j < n; j++) {
+					diff = hi[j] - lo[j];
+					diameter += diff * diff;
+				}
+				
+				final double[] zs = C[star];
+				final int[] kept = new int[candidates.length];
+				int n_kept = 0;
+				
+				for(int c: candidates) {
+					if(c == star || !dominated(C[c], zs, lo, hi, diameter))
+						kept[n_kept++] = c;
+				}
+				
+				computations += 2 * candidates.length;
+				remaining = n_kept == candidates.length ? candidates : VecUtils.slice(kept, 0, n_kept);
+			}
+			
+			final NearestNeighborHeapSearch.NodeData data = node_data[node];
+			if(1 == remaining.length) {
+				assignNode(node, remaining[0], C[remaining[0]], labels, acc);
+			} else if(data.is_leaf) {
+				for(int i = data.idx_start; i < data.idx_end; i++)
+					assignPoint(idx_array[i], remaining, C, labels, acc);
+			} else {
+				filter(2 * node + 1, remaining, C, labels, acc);
+				filter(2 * node + 2, remaining, C, labels, acc);
+			}
+		}
+		
+		/**
+		 * Whether <tt>z</tt> is farther than <tt>zs</tt> from every point in the box. As the
+		 * points closer to <tt>z</tt> lie in a half-space, it suffices to check the vertex
+		 * of the box farthest in the direction of <tt>z - zs</tt>. The margin keeps ties
+		 * (and near-ties, given rounding) from being pruned.
+		 */
+		private boolean dominated(final double[] z, final double[] zs, final double[] lo, 
+				final double[] hi, final double diameter) {
+			
+			double dz = 0, ds = 0, v, diff;
+			for(int j = 0; j < n; j++) {
+				v = z[j] > zs[j] ? hi[j] : lo[j];
+				
+				diff = v - z[j];
+				dz += diff * diff;
+				
+				diff = v - zs[j];
+				ds += diff * diff;
+			}
+			
+			return dz - ds > BoundedAssigner.SLACK * (dz + ds + diameter);
+		}
+		
+		private void assignNode(final int node, final int label, final double[] centroid,
+				final int[] labels, final LloydAccumulator acc) {
+			
+			final NearestNeighborHeapSearch.NodeData data = node_data[node];
+			for(int i = data.idx_start; i < data.idx_end; i++)
+				labels[idx_array[i]] = label;
+			
+			final double[] sums = acc.sums[label], node_sum = node_sums[node], mean = node_means[node];
+			double dist = 0, diff;
+			for(int j = 0; j < n; j++) {
+				sums[j] += node_sum[j];
+				
+				diff = mean[j] - centroid[j];
+				dist += diff * diff;
+			}
+			
+			acc.counts[label] += node_counts[node];
+			acc.wss[label] += node_scatter[node] + node_counts[node] * dist;
+		}
+		
+		/** The same comparisons as {@link LloydStep}, over the remaining candidates */
+		private void assignPoint(final int i, final int[] candidates, final double[][] C,
+				final int[] labels, final LloydAccumulator acc) {
+			
+			final double[] row = X[i];
+			double minDist = Double.POSITIVE_INFINITY, dist;
+			int label = candidates[0];
+			
+			for(int c: candidates) {
+				dist = metric.getPartialDistance(C[c], row, minDist);
+				if(dist < minDist) {
+					minDist = dist;
+					label = c;
+				}
+			}
+			
+			computations += candidates.length;
+			labels[i] = label;
+			
+			final double[] centroid = C[label], sums = acc.sums[label];
+			double cost = 0, diff;
+			for(int j = 0; j < n; j++) {
+				diff = row[j] - centroid[j];
+				cost += (diff * diff);
+				sums[j] += row[j];
+			}
+			
+			acc.counts[label]++;
+			acc.wss[label] += cost;
+		}
+	}
+	
 
 	@Override
 	public Algo getLoggerTag() {
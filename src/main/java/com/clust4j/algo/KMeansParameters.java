@@ -16,11 +16,13 @@
 
 package com.clust4j.algo;
 
+import java.util.Collection;
 import java.util.Random;
 
 import org.apache.commons.math3.linear.RealMatrix;
 
 import com.clust4j.algo.AbstractCentroidClusterer.InitializationStrategy;
+import com.clust4j.algo.KMeans.KMeansAlgorithm;
 import com.clust4j.metrics.pairwise.GeometricallySeparable;
 
 final public class KMeansParameters extends CentroidClustererParameters<KMeans> {
@@ -28,6 +30,8 @@ final public class KMeansParameters extends CentroidClustererParameters<KMeans>
 	
 	private InitializationStrategy strat = KMeans.DEF_INIT;
 	private int maxIter = KMeans.DEF_MAX_ITER;
+	private KMeansAlgorithm algorithm = KMeans.DEF_ALGORITHM;
+	private int nInit = KMeans.DEF_N_INIT;
 	
 	public KMeansParameters() { }
 	public KMeansParameters(int k) {
@@ -41,14 +45,16 @@ final public class KMeansParameters extends CentroidClustererParameters<KMeans>
 	
 	@Override
 	public KMeansParameters copy() {
-		return new KMeansParameters(k)
+		return copyInitialCentroidsTo(new KMeansParameters(k)
 			.setMaxIter(maxIter)
 			.setConvergenceCriteria(minChange)
 			.setMetric(metric)
 			.setVerbose(verbose)
 			.setSeed(seed)
 			.setInitializationStrategy(strat)
-			.setForceParallel(parallel);
+			.setAlgorithm(algorithm)
+			.setNInit(nInit)
+			.setForceParallel(parallel));
 	}
 	
 	@Override
@@ -61,6 +67,49 @@ final public class KMeansParameters extends CentroidClustererParameters<KMeans>
 		return maxIter;
 	}
 	
+	public int getNInit() {
+		return nInit;
+	}
+	
+	/**
+	 * Set the number of restarts, each seeded independently. The restarts share
+	 * the validated data, run concurrently if the model
+	 * is parallel, and the one with the lowest WSS is kept
+	 * @param nInit
+	 * @return this
+	 */
+	public KMeansParameters setNInit(final int nInit) {
+		this.nInit = nInit;
+		return this;
+	}
+	
+	public KMeansAlgorithm getAlgorithm() {
+		return algorithm;
+	}
+	
+	/**
+	 * Set the algorithm used to assign points to centroids
+	 * @param algorithm
+	 * @see KMeansAlgorithm
+	 * @return this
+	 */
+	public KMeansParameters setAlgorithm(final KMeansAlgorithm algorithm) {
+		this.algorithm = algorithm;
+		return this;
+	}
+	
+	@Override
+	public KMeansParameters setInitialCentroids(final Collection<double[]> centroids) {
+		super.setInitialCentroids(centroids);
+		return this;
+	}
+	
+	@Override
+	public KMeansParameters setWarmStart(final AbstractCentroidClusterer model) {
+		super.setWarmStart(model);
+		return this;
+	}
+	
 	@Override
 	public KMeansParameters setForceParallel(boolean b) {
 		this.parallel = b;
@@ -16,18 +16,25 @@
 package com.clust4j.algo;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Map;
+import java.util.Random;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.RecursiveTask;
 
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
 import org.apache.commons.math3.linear.RealMatrix;
 import org.apache.commons.math3.util.FastMath;
 
+import com.clust4j.GlobalState;
 import com.clust4j.except.IllegalClusterStateException;
 import com.clust4j.log.Log.Tag.Algo;
 import com.clust4j.log.LogTimer;
+import com.clust4j.metrics.pairwise.CondensedDistanceMatrix.Storage;
 import com.clust4j.metrics.pairwise.Distance;
 import com.clust4j.metrics.pairwise.GeometricallySeparable;
-import com.clust4j.metrics.pairwise.Pairwise;
+import com.clust4j.metrics.pairwise.PairwiseCache;
 import com.clust4j.utils.VecUtils;
 
 /**
@@ -49,6 +56,11 @@ import com.clust4j.utils.VecUtils;
  * solution. For this reason, clust4j's implementation of KMedoids almost always surpasses
  * the performance of {@link KMeans}, however it can typically take longer  as well.
  * 
+ * <p>
+ * As the Voronoi iteration needs the distances between all pairs of records, larger
+ * datasets can instead be fit with one of the sampling algorithms of {@link KMedoidsAlgorithm},
+ * which only compute the distances from each record to the candidate medoids.
+ * 
  * @see {@link AbstractPartitionalClusterer}
  * @author Taylor G Smith &lt;tgsmith61591@gmail.com&gt;
  */
@@ -60,6 +72,57 @@ final public class KMedoids extends AbstractCentroidClusterer {
 	private static final long serialVersionUID = -4468316488158880820L;
 	final public static GeometricallySeparable DEF_DIST = Distance.MANHATTAN;
 	final public static int DEF_MAX_ITER = 10;
+	final public static Storage DEF_STORAGE = Storage.HEAP;
+	final public static KMedoidsAlgorithm DEF_ALGORITHM = KMedoidsAlgorithm.VORONOI;
+	/** Fits 5 samples for {@link KMedoidsAlgorithm#CLARA}, or runs 2 searches for {@link KMedoidsAlgorithm#CLARANS} */
+	final public static int DEF_NUM_SAMPLES = -1;
+	/** Selects <tt>40 + 2k</tt> records per sample, as Kaufman and Rousseeuw suggest */
+	final public static int DEF_SAMPLE_SIZE = -1;
+	/** Selects <tt>max(250, 1.25% of k(m - k))</tt> neighbors, as Ng and Han suggest */
+	final public static int DEF_MAX_NEIGHBOR = -1;
+	final public static boolean DEF_LAZY_DISTANCES = false;
+	/** By default, the pairwise cache is unbounded, so the full distance matrix is always computed */
+	final public static long DEF_PAIRWISE_CACHE_SIZE = Long.MAX_VALUE;
+	
+	/**
+	 * How the medoids are searched for. {@link #VORONOI} and {@link #PAM} use the distances
+	 * between all pairs of records, while the sampling algorithms only compute the distances from 
+	 * each record to the candidate medoids, and so scale to data for which the 
+	 * <tt>O(m<sup>2</sup>)</tt> distance matrix cannot be held.
+	 * @author Taylor G Smith
+	 */
+	public static enum KMedoidsAlgorithm {
+		/**
+		 * Alternates between assigning each record to its closest medoid and 
+		 * making each cluster's medoid the member closest to the others
+		 */
+		VORONOI,
+		
+		/**
+		 * Kaufman and Rousseeuw's CLARA fits {@link #VORONOI} to several random samples of 
+		 * the data, each including the initial medoids, and keeps the medoids with the lowest
+		 * cost over all of the data. Only the samples' distance matrices are computed.
+		 */
+		CLARA,
+		
+		/**
+		 * Ng and Han's CLARANS runs several randomized searches over the full data, each 
+		 * of which swaps a random medoid for a random record whenever that lowers the cost, 
+		 * until a number of consecutive neighbors fail to. Each neighbor costs <tt>O(m)</tt>
+		 * distance computations, given each record's nearest and second-nearest medoids.
+		 */
+		CLARANS,
+		
+		/**
+		 * The swap phase of PAM as accelerated by Schubert and Rousseeuw's FastPAM1, from
+		 * the initial medoids. Each iteration makes the single swap of a medoid for a record
+		 * that most lowers the cost. Given each record's nearest and second-nearest medoids,
+		 * the swaps of a candidate record with each of the k medoids are evaluated in one pass
+		 * over the records, an <tt>O(k)</tt> speedup over classic PAM. The candidates are
+		 * evaluated in parallel if the model is parallel.
+		 */
+		PAM,
+	}
 	
 	/**
 	 * Stores the indices of the current medoids. Each index,
@@ -68,19 +131,46 @@ final public class KMedoids extends AbstractCentroidClusterer {
 	volatile private int[] medoid_indices = new int[k];
 	
 	/**
-	 * Upper triangular, M x M matrix denoting distances between records.
+	 * Distances between records -- the condensed upper triangular matrix if it
+	 * fits in the pairwise cache size, or else rows computed on demand, or, if
+	 * {@link #lazy}, single distances computed the first time they are read.
 	 * Is only populated during training phase and then set to null for 
 	 * garbage collection, as a large-M matrix has a high space footprint: O(N^2).
 	 * This is only needed during training and then can safely be collected
 	 * to free up heap space.
 	 */
-	volatile private double[][] dist_mat = null;
+	volatile private PairwiseCache dist_mat = null;
+	
+	/**
+	 * Where to keep the distance matrix
+	 */
+	final private Storage storage;
 	
 	/**
 	 * Map the index to the WSS
 	 */
 	volatile private TreeMap<Integer, Double> med_to_wss = new TreeMap<>();
 	
+	/**
+	 * The number of independently seeded restarts
+	 */
+	final private int nInit;
+	
+	final private KMedoidsAlgorithm algorithm;
+	final private int numSamples;
+	final private int sampleSize;
+	final private int maxNeighbor;
+	
+	/**
+	 * Whether to compute each distance the first time it is read rather than
+	 * the full matrix up front. The Voronoi iteration only reads the distances
+	 * within each cluster and to each medoid, about <tt>1/k</tt> of the pairs.
+	 */
+	final private boolean lazy;
+	
+	/** The memory budget in bytes for the {@link PairwiseCache} */
+	final private long pairwise_cache_size;
+	
 	
 	
 	protected KMedoids(final RealMatrix data) {
@@ -93,12 +183,68 @@ final public class KMedoids extends AbstractCentroidClusterer {
 	
 	protected KMedoids(final RealMatrix data, final KMedoidsParameters planner) {
 		super(data, planner);
+		this.storage = planner.getMatrixStorage();
 		
 		// Check if is Manhattan
 		if(!this.dist_metric.equals(Distance.MANHATTAN)) {
 			warn("KMedoids is intented to run with Manhattan distance, WSS/BSS computations will be inaccurate");
 			//this.dist_metric = Distance.MANHATTAN; // idk that we want to enforce this...
 		}
+		
+		this.algorithm = planner.getAlgorithm();
+		this.lazy = planner.getLazyDistances();
+		this.pairwise_cache_size = planner.getPairwiseCacheSize();
+		if(pairwise_cache_size < 1)
+			error(new IllegalArgumentException("pairwise cache size must be positive"));
+		
+		final int samples = planner.getNumSamples();
+		if(0 == samples)
+			error(new IllegalArgumentException("numSamples must be positive"));
+		this.numSamples = samples < 0 ? (KMedoidsAlgorithm.CLARANS == algorithm ? 2 : 5) : samples;
+		
+		final int size = planner.getSampleSize();
+		if(size >= 0 && size < k)
+			error(new IllegalArgumentException("sampleSize must be at least k"));
+		this.sampleSize = FastMath.min(m, size < 0 ? 40 + 2 * k : size);
+		
+		final int neighbors = planner.getMaxNeighbor();
+		if(0 == neighbors)
+			error(new IllegalArgumentException("maxNeighbor must be positive"));
+		this.maxNeighbor = neighbors < 0 ? (int)FastMath.max(250, 0.0125 * k * (m - k)) : neighbors;
+		
+		if((KMedoidsAlgorithm.CLARA == algorithm || KMedoidsAlgorithm.CLARANS == algorithm) && planner.getNInit() > 1) {
+			warn(algorithm + " searches " + numSamples + " sample(s) rather than fitting nInit restarts");
+			this.nInit = 1;
+		} else {
+			this.nInit = warmStartNInit(planner.getNInit());
+		}
+		
+		// Medoids are records, so given centroids are replaced by their nearest records
+		if(warm_start && null == planner.getInitialIndices()) {
+			centroids.clear();
+			for(int i: init_centroid_indices)
+				centroids.add(getDataRef().getRow(i));
+		}
+	}
+	
+	/**
+	 * A restart of the caller, sharing its data and distance matrix
+	 * @param caller
+	 * @param planner
+	 * @param seeds - the initial medoid indices, or null to select them
+	 * @param dist - the caller's distance matrix
+	 */
+	KMedoids(final KMedoids caller, final KMedoidsParameters planner, final int[] seeds, final PairwiseCache dist) {
+		super(caller, planner, seeds);
+		this.storage = caller.storage;
+		this.dist_mat = dist;
+		this.nInit = 1;
+		this.algorithm = caller.algorithm;
+		this.numSamples = caller.numSamples;
+		this.sampleSize = caller.sampleSize;
+		this.maxNeighbor = caller.maxNeighbor;
+		this.lazy = caller.lazy;
+		this.pairwise_cache_size = caller.pairwise_cache_size;
 	}
 	
 	
@@ -117,13 +263,12 @@ final public class KMedoids extends AbstractCentroidClusterer {
 				return this;
 			
 			final LogTimer timer = new LogTimer();
-			final double[][] X = data.getData();
 			final double nan = Double.NaN;
 			
 			
 			// Corner case: K = 1 or all singular
 			if(1 == k) {
-				labelFromSingularK(X);
+				labelFromSingularK(data.getDataRef());
 				fitSummary.add(new Object[]{ iter, converged, 
 					tss, // tss
 					tss, // avg per cluster
@@ -135,11 +280,30 @@ final public class KMedoids extends AbstractCentroidClusterer {
 			}
 			
 			
+			// The sampling algorithms never compute the full distance matrix
+			if(KMedoidsAlgorithm.CLARA == algorithm || KMedoidsAlgorithm.CLARANS == algorithm)
+				return fitSampled(timer);
+			
+			// The sampling algorithms read the data by reference, so only
+			// the algorithms that keep pairwise distances copy it
+			final double[][] X = data.getData();
+			
 			// We do this in KMedoids and not KMeans, because KMedoids uses
 			// real points as medoids and not means for centroids, thus
 			// the recomputation of distances is unnecessary with the dist mat
-			dist_mat = Pairwise.getDistance(X, getSeparabilityMetric(), true, false);
-			info("distance matrix computed in " + timer.toString());
+			if(null == dist_mat && lazy) {
+				dist_mat = getLazyPairwiseCache(X, false);
+				info("distances will be computed as they are first read");
+			} else if(null == dist_mat) {
+				dist_mat = getPairwiseCache(X, false, storage);
+				info("distance matrix computed in " + timer.toString());
+			}
+			
+			if(nInit > 1)
+				return fitBestOfRestarts(timer);
+			
+			if(KMedoidsAlgorithm.PAM == algorithm)
+				return fitSwaps(timer);
 			
 			// Initialize labels
 			medoid_indices = init_centroid_indices;
@@ -267,6 +431,8 @@ final public class KMedoids extends AbstractCentroidClusterer {
 				info("algorithm converged due to " + 
 				(convergedFromCost ? "cost minimization" : "harmonious state"));
 			
+			
+			releaseDistanceMatrix();
 				
 			// wrap things up, create summary..
 			sayBye(timer);
@@ -277,21 +443,585 @@ final public class KMedoids extends AbstractCentroidClusterer {
 	} // End train
 	
 	
+	/**
+	 * Fit {@link #nInit} restarts sharing this model's data and distance matrix, 
+	 * and adopt the one with the lowest WSS. The first restart uses this model's 
+	 * own initial medoids.
+	 */
+	private KMedoids fitBestOfRestarts(final LogTimer timer) {
+		final KMedoidsParameters planner = new KMedoidsParameters(k)
+			.setMaxIter(maxIter)
+			.setConvergenceCriteria(tolerance)
+			.setMetric(getSeparabilityMetric())
+			.setInitializationStrategy(init)
+			.setMatrixStorage(storage)
+			.setPairwiseCacheSize(pairwise_cache_size)
+			.setVerbose(false);
+		
+		final PairwiseCache dist = dist_mat;
+		final KMedoids best = fitRestarts(nInit, new RestartFactory<KMedoids>() {
+			@Override public KMedoids restart(int i, Random seed) {
+				return new KMedoids(KMedoids.this, planner.copy().setSeed(seed), 
+					0 == i ? init_centroid_indices : null, dist);
+			}
+		});
+		
+		adopt(best);
+		
+		if(!converged)
+			warn("algorithm did not converge");
+		
+		releaseDistanceMatrix();
+		sayBye(timer);
+		
+		return this;
+	}
+	
+	@Override
+	protected void adopt(final AbstractCentroidClusterer best) {
+		super.adopt(best);
+		
+		final KMedoids model = (KMedoids)best;
+		this.medoid_indices = model.medoid_indices;
+		this.med_to_wss = model.med_to_wss;
+	}
+	
+	
+	/**
+	 * Make the best swap in each iteration until none lowers the cost by more
+	 * than the tolerance. See {@link KMedoidsAlgorithm#PAM}.
+	 */
+	private KMedoids fitSwaps(final LogTimer timer) {
+		final SwapSearch search = new SwapSearch(dist_mat, init_centroid_indices.clone());
+		double cost = search.cost();
+		
+		while(iter < maxIter) {
+			final Swap swap = parallel ? SwapTask.doAll(search) : search.best(0, m);
+			
+			converged = null == swap || swap.delta >= -tolerance;
+			if(!converged) {
+				search.apply(swap);
+				cost = search.cost();
+			}
+			
+			fitSummary.add(new Object[]{ iter, converged, tss, 
+				cost / (double)k, cost, tss - cost, timer.wallTime() });
+			
+			iter++;
+			if(converged)
+				break;
+		}
+		
+		labelFromMedoids(search.medoids, search.nearest, search.dn);
+		
+		if(!converged)
+			warn("algorithm did not converge");
+		else
+			info("algorithm converged after " + (iter - 1) + " swap(s)");
+		
+		releaseDistanceMatrix();
+		sayBye(timer);
+		
+		return this;
+	}
+	
+	/**
+	 * Build a cache of the pairwise distances between the rows of the
+	 * data, within the memory budget set by
+	 * {@link KMedoidsParameters#setPairwiseCacheSize(long)}
+	 * @param X - the data, which should be equal to that held by the model
+	 * @param diagonal - whether to compute the diagonal; if false, it is reported as zeros
+	 * @param storage - where the full matrix should be kept, if it fits in the budget
+	 * @return the cache
+	 */
+	private PairwiseCache getPairwiseCache(final double[][] X, boolean diagonal, Storage storage) {
+		final PairwiseCache cache = PairwiseCache.of(X, getSeparabilityMetric(), diagonal, pairwise_cache_size, storage);
+		if(!cache.isFull())
+			info("distance matrix exceeds the pairwise cache size; computing rows on demand");
+		return cache;
+	}
+	
+	/**
+	 * Build a cache of the pairwise distances between the rows of the data that
+	 * computes each distance the first time it is requested, holding at most as
+	 * many as fit in the memory budget set by {@link KMedoidsParameters#setPairwiseCacheSize(long)}.
+	 * This suits algorithms that read only a small share of the pairs.
+	 * @param X - the data, which should be equal to that held by the model
+	 * @param diagonal - whether to compute the diagonal; if false, it is reported as zeros
+	 * @return the cache
+	 */
+	private PairwiseCache getLazyPairwiseCache(final double[][] X, boolean diagonal) {
+		return PairwiseCache.lazy(X, getSeparabilityMetric(), diagonal, pairwise_cache_size);
+	}
+	
+	/**
+	 * Release the distance matrix for garbage collection, as it has
+	 * an <tt>O(m<sup>2</sup>)</tt> footprint and is only needed in training
+	 */
+	private void releaseDistanceMatrix() {
+		final PairwiseCache dist = dist_mat;
+		if(null != dist && lazy)
+			info("computed " + dist.getEntriesComputed() + " of " + 
+				((long)m * (m - 1) / 2) + " distances on demand");
+		dist_mat = null;
+	}
+	
+	/**
+	 * Label each record with its nearest medoid, and compute the costs
+	 * @param medoids - the row indices of the medoids
+	 * @param nearest - the position in medoids of each record's nearest medoid
+	 * @param costs - the distance from each record to its nearest medoid
+	 */
+	private void labelFromMedoids(final int[] medoids, final int[] nearest, final double[] costs) {
+		medoid_indices = medoids;
+		labels = new int[m];
+		med_to_wss = new TreeMap<>();
+		for(int medoid: medoid_indices)
+			med_to_wss.put(medoid, 0.0);
+		
+		double wss_sum = 0;
+		for(int r = 0; r < m; r++) {
+			labels[r] = medoid_indices[nearest[r]];
+			med_to_wss.put(labels[r], med_to_wss.get(labels[r]) + costs[r]);
+			wss_sum += costs[r];
+		}
+		
+		bss = tss - wss_sum;
+		reorderLabelsAndCentroids();
+	}
+	
+	/**
+	 * A swap of the medoid at a position for a record, and the change in cost
+	 * @author Taylor G Smith
+	 */
+	static class Swap {
+		final int position;
+		final int record;
+		final double delta;
+		
+		Swap(final int position, final int record, final double delta) {
+			this.position = position;
+			this.record = record;
+			this.delta = delta;
+		}
+		
+		/**
+		 * The better of this swap and another of higher records,
+		 * favoring this one in case of a tie
+		 */
+		Swap better(final Swap other) {
+			return null == other || delta <= other.delta ? this : other;
+		}
+	}
+	
+	/**
+	 * The state of the FastPAM1 swap phase: the medoids, each record's nearest medoid and the
+	 * distances to its nearest and second-nearest medoids, and the loss of removing each medoid.
+	 * The candidate records are evaluated independently, so disjoint ranges of them can be
+	 * searched concurrently.
+	 * @author Taylor G Smith
+	 */
+	static class SwapSearch {
+		final PairwiseCache dist;
+		final int m, k;
+		final int[] medoids;
+		final boolean[] isMedoid;
+		/** The position in medoids of the nearest medoid */
+		final int[] nearest;
+		final double[] dn, ds;
+		/** The change in cost of removing each medoid, were its records to go to their second-nearest */
+		final double[] removal;
+		
+		SwapSearch(final PairwiseCache dist, final int[] medoids) {
+			this.dist = dist;
+			this.m = dist.getRowDimension();
+			this.k = medoids.length;
+			this.medoids = medoids;
+			this.isMedoid = new boolean[m];
+			this.nearest = new int[m];
+			this.dn = new double[m];
+			this.ds = new double[m];
+			this.removal = new double[k];
+			
+			for(int medoid: medoids)
+				isMedoid[medoid] = true;
+			update();
+		}
+		
+		/**
+		 * Compute the nearest and second-nearest medoids of each
+		 * record, and the losses of removing each medoid
+		 */
+		private void update() {
+			double d;
+			for(int r = 0; r < m; r++) {
+				int a = 0;
+				double first = Double.POSITIVE_INFINITY, second = Double.POSITIVE_INFINITY;
+				
+				for(int c = 0; c < k; c++) {
+					d = dist.get(medoids[c], r);
+					if(d < first) {
+						second = first;
+						first = d;
+						a = c;
+					} else if(d < second) {
+						second = d;
+					}
+				}
+				
+				nearest[r] = a;
+				dn[r] = first;
+				ds[r] = second;
+			}
+			
+			Arrays.fill(removal, 0.0);
+			for(int r = 0; r < m; r++)
+				removal[nearest[r]] += ds[r] - dn[r];
+		}
+		
+		double cost() {
+			return VecUtils.sum(dn);
+		}
+		
+		/**
+		 * Find the best swap of a medoid for a record in <tt>from</tt> through <tt>to - 1</tt>
+		 * @param from - the first candidate record, inclusive
+		 * @param to - the last candidate record, exclusive
+		 * @return the best swap, or null if every record in the range is a medoid
+		 */
+		Swap best(final int from, final int to) {
+			final double[] delta = new double[k];
+			// Each candidate's row is read whole, so concurrent searches of a
+			// row cache only contend while looking up or storing rows
+			final double[] row = new double[m];
+			Swap best = null;
+			
+			double d, shared;
+			for(int h = from; h < to; h++) {
+				if(isMedoid[h])
+					continue;
+				
+				System.arraycopy(removal, 0, delta, 0, k);
+				dist.getRow(h, row);
+				shared = 0;
+				
+				for(int r = 0; r < m; r++) {
+					d = row[r];
+					
+					if(d < dn[r]) {
+						// Moves to h whichever medoid is removed
+						shared += d - dn[r];
+						delta[nearest[r]] += dn[r] - ds[r];
+					} else if(d < ds[r]) {
+						// Moves to h rather than its second-nearest if its nearest is removed
+						delta[nearest[r]] += d - ds[r];
+					}
+				}
+				
+				int i = 0;
+				for(int c = 1; c < k; c++)
+					if(delta[c] < delta[i])
+						i = c;
+				
+				if(null == best || delta[i] + shared < best.delta)
+					best = new Swap(i, h, delta[i] + shared);
+			}
+			
+			return best;
+		}
+		
+		void apply(final Swap swap) {
+			isMedoid[medoids[swap.position]] = false;
+			isMedoid[swap.record] = true;
+			medoids[swap.position] = swap.record;
+			update();
+		}
+	}
+	
+	/**
+	 * Searches disjoint ranges of the candidate records concurrently, 
+	 * keeping the best swap of the lowest record in case of ties
+	 * @author Taylor G Smith
+	 */
+	static class SwapTask extends RecursiveTask<Swap> {
+		private static final long serialVersionUID = 6180354926613582217L;
+		final transient SwapSearch search;
+		final int lo, hi, grain;
+		
+		SwapTask(final SwapSearch search) {
+			this(search, 0, search.m, 
+				FastMath.max(1, search.m / (8 * GlobalState.ParallelismConf.NUM_CORES)));
+		}
+		
+		private SwapTask(final SwapSearch search, final int lo, final int hi, final int grain) {
+			this.search = search;
+			this.lo = lo;
+			this.hi = hi;
+			this.grain = grain;
+		}
+		
+		@Override
+		protected Swap compute() {
+			if(hi - lo <= grain)
+				return search.best(lo, hi);
+			
+			int mid = lo + (hi - lo) / 2;
+			SwapTask left  = new SwapTask(search, lo, mid, grain);
+			SwapTask right = new SwapTask(search, mid, hi, grain);
+			
+			left.fork();
+			Swap r = right.compute();
+			Swap l = left.join();
+			
+			return null == l ? r : l.better(r);
+		}
+		
+		static Swap doAll(final SwapSearch search) {
+			return ParallelChunkingTask.getThreadPool().invoke(new SwapTask(search));
+		}
+	}
+	
+	/**
+	 * Fit {@link #numSamples} samples (for {@link KMedoidsAlgorithm#CLARA}) or searches
+	 * (for {@link KMedoidsAlgorithm#CLARANS}), concurrently if this model is parallel, 
+	 * and keep the medoids with the lowest cost over all of the data. Each gets its 
+	 * own seed derived from this model's seed, and adds a row to the fit summary.
+	 */
+	private KMedoids fitSampled(final LogTimer timer) {
+		final Random seed = getSeed();
+		final long[] seeds = new long[numSamples];
+		for(int i = 0; i < numSamples; i++)
+			seeds[i] = seed.nextLong();
+		
+		final ArrayList<Callable<SampledMedoids>> tasks = new ArrayList<>(numSamples);
+		for(int i = 0; i < numSamples; i++) {
+			final int sample = i;
+			tasks.add(new Callable<SampledMedoids>() {
+				@Override public SampledMedoids call() {
+					final Random rand = new Random(seeds[sample]);
+					return KMedoidsAlgorithm.CLARA == algorithm ? 
+						clara(rand) : clarans(0 == sample, rand);
+				}
+			});
+		}
+		
+		SampledMedoids best = null;
+		int i = 0;
+		for(SampledMedoids sampled: invokeAll(tasks)) {
+			if(null == best || sampled.cost < best.cost)
+				best = sampled;
+			
+			fitSummary.add(new Object[]{ i++, sampled.converged, tss, 
+				sampled.cost / (double)k, sampled.cost, tss - sampled.cost, timer.wallTime() });
+		}
+		
+		// Label all of the records from the best medoids
+		final int[] nearest = new int[m];
+		final double[] costs = new double[m];
+		assignNearest(data.getDataRef(), best.medoids, nearest, costs, null);
+		
+		iter = numSamples;
+		converged = best.converged;
+		labelFromMedoids(best.medoids, nearest, costs);
+		
+		if(!converged)
+			warn("algorithm did not converge");
+		sayBye(timer);
+		
+		return this;
+	}
+	
+	/**
+	 * Fit {@link KMedoidsAlgorithm#VORONOI} to a random sample including the initial
+	 * medoids, starting from them, and score the medoids found against all of the data
+	 */
+	private SampledMedoids clara(final Random rand) {
+		final boolean[] taken = new boolean[m];
+		final int[] sample = new int[sampleSize];
+		for(int c = 0; c < k; c++) {
+			sample[c] = init_centroid_indices[c];
+			taken[sample[c]] = true;
+		}
+		
+		for(int n = k, r; n < sampleSize; ) {
+			if(!taken[r = rand.nextInt(m)]) {
+				taken[r] = true;
+				sample[n++] = r;
+			}
+		}
+		
+		final double[][] rows = new double[sampleSize][];
+		for(int n = 0; n < sampleSize; n++)
+			rows[n] = data.getDataRef()[sample[n]];
+		
+		final KMedoids model = new KMedoids(new Array2DRowRealMatrix(rows, false), 
+			new KMedoidsParameters()
+				.setInitialMedoids(VecUtils.arange(k))
+				.setMetric(getSeparabilityMetric())
+				.setMaxIter(maxIter)
+				.setConvergenceCriteria(tolerance)
+				.setMatrixStorage(storage)
+				.setPairwiseCacheSize(pairwise_cache_size)
+				.setSeed(rand)
+				.setVerbose(false)).fit();
+		
+		// A singular sample is fit with k = 1, so the initial medoids are kept
+		final int[] medoids = init_centroid_indices.clone();
+		if(model.k == k)
+			for(int c = 0; c < k; c++)
+				medoids[c] = sample[model.medoid_indices[c]];
+		
+		final double[] costs = new double[m];
+		assignNearest(data.getDataRef(), medoids, new int[m], costs, null);
+		return new SampledMedoids(medoids, VecUtils.sum(costs), model.didConverge());
+	}
+	
+	/**
+	 * Search from the initial medoids (if first) or random medoids, swapping a random
+	 * medoid for a random record whenever that lowers the cost by more than the tolerance,
+	 * until {@link #maxNeighbor} consecutive swaps fail to
+	 */
+	private SampledMedoids clarans(final boolean first, final Random rand) {
+		final double[][] X = data.getDataRef();
+		final boolean[] isMedoid = new boolean[m];
+		final int[] medoids = new int[k];
+		
+		if(first) {
+			for(int c = 0; c < k; c++)
+				medoids[c] = init_centroid_indices[c];
+		} else {
+			for(int c = 0, r; c < k; ) {
+				if(!isMedoid[r = rand.nextInt(m)]) {
+					isMedoid[r] = true;
+					medoids[c++] = r;
+				}
+			}
+		}
+		
+		for(int medoid: medoids)
+			isMedoid[medoid] = true;
+		
+		final int[] nearest = new int[m];
+		final double[] d1 = new double[m], d2 = new double[m];
+		assignNearest(X, medoids, nearest, d1, d2);
+		double cost = VecUtils.sum(d1);
+		
+		final double[] dh = new double[m];
+		for(int fails = 0; fails < maxNeighbor && k < m; ) {
+			final int p = rand.nextInt(k);
+			int h;
+			while(isMedoid[h = rand.nextInt(m)]);
+			
+			// The change in cost of replacing medoid p with record h
+			dist_metric.distanceBlock(X[h], X, 0, m, dh);
+			dh[h] = 0.0;
+			
+			double delta = 0, d;
+			for(int r = 0; r < m; r++) {
+				d = dh[r];
+				if(nearest[r] == p)
+					delta += FastMath.min(d, d2[r]) - d1[r];
+				else if(d < d1[r])
+					delta += d - d1[r];
+			}
+			
+			if(delta < -tolerance) {
+				isMedoid[medoids[p]] = false;
+				isMedoid[h] = true;
+				medoids[p] = h;
+				
+				assignNearest(X, medoids, nearest, d1, d2);
+				cost = VecUtils.sum(d1);
+				fails = 0;
+			} else {
+				fails++;
+			}
+		}
+		
+		return new SampledMedoids(medoids, cost, true);
+	}
+	
+	/**
+	 * Find the position of each record's nearest medoid and the distance to it, and
+	 * optionally the distance to the second-nearest. A medoid is nearest to itself,
+	 * at a distance of zero, as in the distance matrix.
+	 */
+	private void assignNearest(final double[][] X, final int[] medoids, final int[] nearest, 
+			final double[] d1, final double[] d2) {
+		
+		final double[][] M = new double[k][];
+		final int[] self = VecUtils.repInt(-1, m);
+		for(int c = 0; c < k; c++) {
+			M[c] = X[medoids[c]];
+			if(-1 == self[medoids[c]])
+				self[medoids[c]] = c;
+		}
+		
+		final double[] block = new double[k];
+		double first, second;
+		for(int r = 0; r < m; r++) {
+			dist_metric.distanceBlock(X[r], M, 0, k, block);
+			
+			int a = 0;
+			first = second = Double.POSITIVE_INFINITY;
+			for(int c = 0; c < k; c++) {
+				if(-1 != self[r] && c == self[r])
+					block[c] = 0.0;
+				
+				if(block[c] < first) {
+					second = first;
+					first = block[c];
+					a = c;
+				} else if(block[c] < second) {
+					second = block[c];
+				}
+			}
+			
+			if(-1 != self[r]) {
+				a = self[r];
+				first = 0.0;
+			}
+			
+			nearest[r] = a;
+			d1[r] = first;
+			if(null != d2)
+				d2[r] = second;
+		}
+	}
+	
+	/**
+	 * The medoids found by a sample or search, and their cost over all of the data
+	 * @author Taylor G Smith
+	 */
+	static class SampledMedoids {
+		final int[] medoids;
+		final double cost;
+		final boolean converged;
+		
+		SampledMedoids(final int[] medoids, final double cost, final boolean converged) {
+			this.medoids = medoids;
+			this.cost = cost;
+			this.converged = converged;
+		}
+	}
+	
+	
 	/**
 	 * Some metrics produce entirely equal dist matrices...
 	 */
 	private void exitOnBadDistanceMetric(double[][] X, LogTimer timer) {
 		warn("distance metric (" + dist_metric + ") produced entirely equal distances");
+		releaseDistanceMatrix();
 		labelFromSingularK(X);
 		fitSummary.add(new Object[]{ iter, converged, tss, tss, tss, Double.NaN, Double.NaN, timer.wallTime() });
 		sayBye(timer);
 	}
 	
 	
-	private ClusterAssignments assignClosestMedoid(int[] medoidIdcs) {
+	ClusterAssignments assignClosestMedoid(int[] medoidIdcs) {
 		double minDist;
 		boolean all_tied = true;
-		int nearest, rowIdx, colIdx;
+		int nearest;
 		final int[] assn = new int[m];
 		final double[] costs = new double[m];
 		for(int i = 0; i < m; i++) {
@@ -309,16 +1039,14 @@ final public class KMedoids extends AbstractCentroidClusterer {
 				// Corner case: i is a medoid
 				if(i == medoid) {
 					nearest = medoid;
-					minDist = dist_mat[i][i];
+					minDist = dist_mat.get(i, i);
 					is_a_medoid = true;
 					break;
 				}
 				
-				rowIdx = FastMath.min(i, medoid);
-				colIdx = FastMath.max(i, medoid);
-				
-				if(dist_mat[rowIdx][colIdx] < minDist) {
-					minDist = dist_mat[rowIdx][colIdx];
+				final double d = dist_mat.get(medoid, i);
+				if(d < minDist) {
+					minDist = d;
 					nearest = medoid;
 				}
 			}
@@ -387,7 +1115,7 @@ final public class KMedoids extends AbstractCentroidClusterer {
 				members = pair.getValue();
 				
 				double medoidCost, minCost = Double.POSITIVE_INFINITY;
-				int rowIdx, colIdx, bestMedoid = 0; // start at 0, not -1 in case of all ties...
+				int bestMedoid = 0; // start at 0, not -1 in case of all ties...
 				for(int a: members) { // check cost if A is the medoid...
 					
 					medoidCost = 0.0;
@@ -395,10 +1123,7 @@ final public class KMedoids extends AbstractCentroidClusterer {
 						if(a == b)
 							continue;
 						
-						rowIdx = FastMath.min(a, b);
-						colIdx = FastMath.max(a, b);
-						
-						medoidCost += dist_mat[rowIdx][colIdx];
+						medoidCost += dist_mat.get(a, b);
 					}
 
 					if(medoidCost < minCost) {
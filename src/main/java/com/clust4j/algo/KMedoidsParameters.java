@@ -16,18 +16,29 @@
 
 package com.clust4j.algo;
 
+import java.util.Collection;
 import java.util.Random;
 
 import org.apache.commons.math3.linear.RealMatrix;
 
 import com.clust4j.algo.AbstractCentroidClusterer.InitializationStrategy;
+import com.clust4j.algo.KMedoids.KMedoidsAlgorithm;
 import com.clust4j.metrics.pairwise.GeometricallySeparable;
+import com.clust4j.metrics.pairwise.CondensedDistanceMatrix.Storage;
 
 public class KMedoidsParameters extends CentroidClustererParameters<KMedoids> {
 	private static final long serialVersionUID = -3288579217568576647L;
 	
 	private InitializationStrategy strat = KMedoids.DEF_INIT;
+	private int nInit = KMedoids.DEF_N_INIT;
 	private int maxIter = KMedoids.DEF_MAX_ITER;
+	private Storage storage = KMedoids.DEF_STORAGE;
+	private KMedoidsAlgorithm algorithm = KMedoids.DEF_ALGORITHM;
+	private int numSamples = KMedoids.DEF_NUM_SAMPLES;
+	private int sampleSize = KMedoids.DEF_SAMPLE_SIZE;
+	private int maxNeighbor = KMedoids.DEF_MAX_NEIGHBOR;
+	private boolean lazyDistances = KMedoids.DEF_LAZY_DISTANCES;
+	private long cacheSize = KMedoids.DEF_PAIRWISE_CACHE_SIZE;
 	
 	public KMedoidsParameters() {
 		this.metric = KMedoids.DEF_DIST;
@@ -45,14 +56,22 @@ public class KMedoidsParameters extends CentroidClustererParameters<KMedoids> {
 	
 	@Override
 	public KMedoidsParameters copy() {
-		return new KMedoidsParameters(k)
+		return copyInitialCentroidsTo(new KMedoidsParameters(k)
 			.setMaxIter(maxIter)
 			.setConvergenceCriteria(minChange)
 			.setMetric(metric)
 			.setVerbose(verbose)
 			.setSeed(seed)
 			.setInitializationStrategy(strat)
-			.setForceParallel(parallel);
+			.setMatrixStorage(storage)
+			.setNInit(nInit)
+			.setAlgorithm(algorithm)
+			.setNumSamples(numSamples)
+			.setSampleSize(sampleSize)
+			.setMaxNeighbor(maxNeighbor)
+			.setLazyDistances(lazyDistances)
+			.setPairwiseCacheSize(cacheSize)
+			.setForceParallel(parallel));
 	}
 	
 	@Override
@@ -65,12 +84,155 @@ public class KMedoidsParameters extends CentroidClustererParameters<KMedoids> {
 		return maxIter;
 	}
 	
+	public int getNInit() {
+		return nInit;
+	}
+	
+	/**
+	 * Set the number of restarts, each seeded independently. The restarts share
+	 * the validated data and the distance matrix, run concurrently if the model
+	 * is parallel, and the one with the lowest WSS is kept
+	 * @param nInit
+	 * @return this
+	 */
+	public KMedoidsParameters setNInit(final int nInit) {
+		this.nInit = nInit;
+		return this;
+	}
+	
+	public KMedoidsAlgorithm getAlgorithm() {
+		return algorithm;
+	}
+	
+	/**
+	 * Set the algorithm used to search for the medoids
+	 * @param algorithm
+	 * @see KMedoidsAlgorithm
+	 * @return this
+	 */
+	public KMedoidsParameters setAlgorithm(final KMedoidsAlgorithm algorithm) {
+		this.algorithm = algorithm;
+		return this;
+	}
+	
+	public int getNumSamples() {
+		return numSamples;
+	}
+	
+	/**
+	 * Set the number of samples {@link KMedoidsAlgorithm#CLARA} fits, or the number
+	 * of searches {@link KMedoidsAlgorithm#CLARANS} runs, or -1 for 5 and 2, respectively
+	 * @param numSamples
+	 * @return this
+	 */
+	public KMedoidsParameters setNumSamples(final int numSamples) {
+		this.numSamples = numSamples;
+		return this;
+	}
+	
+	public int getSampleSize() {
+		return sampleSize;
+	}
+	
+	/**
+	 * Set the number of records in each {@link KMedoidsAlgorithm#CLARA} sample,
+	 * or -1 for <tt>40 + 2k</tt>
+	 * @param sampleSize
+	 * @return this
+	 */
+	public KMedoidsParameters setSampleSize(final int sampleSize) {
+		this.sampleSize = sampleSize;
+		return this;
+	}
+	
+	public int getMaxNeighbor() {
+		return maxNeighbor;
+	}
+	
+	/**
+	 * Set the number of consecutive swaps that must fail to lower the cost before a
+	 * {@link KMedoidsAlgorithm#CLARANS} search ends, or -1 for 
+	 * <tt>max(250, 1.25% of k(m - k))</tt>
+	 * @param maxNeighbor
+	 * @return this
+	 */
+	public KMedoidsParameters setMaxNeighbor(final int maxNeighbor) {
+		this.maxNeighbor = maxNeighbor;
+		return this;
+	}
+	
+	public boolean getLazyDistances() {
+		return lazyDistances;
+	}
+	
+	/**
+	 * Set whether {@link KMedoidsAlgorithm#VORONOI} and {@link KMedoidsAlgorithm#PAM}
+	 * compute each distance the first time it is read, holding as many as fit in the
+	 * {@link #setPairwiseCacheSize(long) pairwise cache size}, rather than the full
+	 * distance matrix up front. The Voronoi iteration reads only the distances within
+	 * each cluster and to each medoid, so this saves most of the distance computations
+	 * for larger k; PAM reads every pair, and is faster with the full matrix.
+	 * @param lazy
+	 * @return this
+	 */
+	public KMedoidsParameters setLazyDistances(final boolean lazy) {
+		this.lazyDistances = lazy;
+		return this;
+	}
+	
+	public Storage getMatrixStorage() {
+		return storage;
+	}
+	
+	/**
+	 * Start from the given records as the initial medoids rather than those selected by
+	 * the {@link InitializationStrategy}, and set <tt>k</tt> to their number
+	 * @param medoids - the row indices of the initial medoids
+	 * @return this
+	 */
+	public KMedoidsParameters setInitialMedoids(final int[] medoids) {
+		this.k = medoids.length;
+		this.initialIndices = medoids.clone();
+		this.initialCentroids = null;
+		this.priorIter = -1;
+		return this;
+	}
+	
+	@Override
+	public KMedoidsParameters setInitialCentroids(final Collection<double[]> centroids) {
+		super.setInitialCentroids(centroids);
+		return this;
+	}
+	
+	@Override
+	public KMedoidsParameters setWarmStart(final AbstractCentroidClusterer model) {
+		super.setWarmStart(model);
+		return this;
+	}
+	
 	@Override
 	public KMedoidsParameters setForceParallel(boolean b) {
 		this.parallel = b;
 		return this;
 	}
 	
+	public long getPairwiseCacheSize() {
+		return cacheSize;
+	}
+	
+	/**
+	 * Set the memory budget, in bytes, for caching the pairwise distances
+	 * between records. If the full distance matrix does not fit in the budget,
+	 * rows are instead computed on demand and evicted in least-recently-used order.
+	 * @param bytes
+	 * @see com.clust4j.metrics.pairwise.PairwiseCache
+	 * @return this
+	 */
+	public KMedoidsParameters setPairwiseCacheSize(final long bytes) {
+		this.cacheSize = bytes;
+		return this;
+	}
+	
 	@Override
 	public KMedoidsParameters setMetric(final GeometricallySeparable dist) {
 		this.metric = dist; // bad idea in kmedoids
@@ -81,6 +243,17 @@ public class KMedoidsParameters extends CentroidClustererParameters<KMedoids> {
 		this.maxIter = max;
 		return this;
 	}
+	
+	/**
+	 * Set where the distance matrix should be kept. {@link Storage#DIRECT}
+	 * and {@link Storage#MAPPED} keep it off of the Java heap.
+	 * @param storage
+	 * @return this
+	 */
+	public KMedoidsParameters setMatrixStorage(final Storage storage) {
+		this.storage = storage;
+		return this;
+	}
 
 	@Override
 	public KMedoidsParameters setConvergenceCriteria(final double min) {
@@ -0,0 +1,485 @@
+/*******************************************************************************
+ *    Copyright 2015, 2016 Taylor G Smith
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *******************************************************************************/
+package com.clust4j.algo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.commons.math3.exception.DimensionMismatchException;
+import org.apache.commons.math3.linear.RealMatrix;
+import org.apache.commons.math3.util.FastMath;
+
+import com.clust4j.except.ModelNotFitException;
+import com.clust4j.except.NaNException;
+import com.clust4j.log.Log.Tag.Algo;
+import com.clust4j.log.LogTimer;
+import com.clust4j.metrics.pairwise.GeometricallySeparable;
+import com.clust4j.utils.MatUtils;
+import com.clust4j.utils.VecUtils;
+
+/**
+ * Mini-batch KMeans (Sculley, 2010) approximates {@link KMeans} by drawing a small, random
+ * batch of points in each step rather than assigning every point. Each point in the batch is
+ * assigned to its nearest centroid, and each centroid is moved toward the points assigned to it
+ * with a per-centroid learning rate of one over the number of points it has absorbed so far,
+ * such that every centroid is the running mean of the points ever assigned to it.
+ *
+ * <p>
+ * Centroids that have absorbed far fewer points than the busiest centroid (see
+ * {@link MiniBatchKMeansParameters#setReassignmentRatio(double)}) are periodically
+ * moved to points of the current batch, chosen with probability proportional to
+ * their squared distance from their centroid. The fit converges once an exponentially
+ * weighted average (EWA) of the batch inertia has not improved over a number of
+ * consecutive steps (see {@link MiniBatchKMeansParameters#setMaxNoImprovement(int)}).
+ *
+ * <p>
+ * Data that does not fit in memory can be streamed through {@link #partialFit(double[][])}: the
+ * model is constructed over, and initialized from, a first batch, and each subsequent batch
+ * updates the centroids, so memory is proportional to the batch size rather than to the data.
+ * The labels, WSS and BSS always refer to the data the model was constructed with.
+ *
+ * @see <a href="https://www.eecs.tufts.edu/~dsculley/papers/fastkmeans.pdf">Web-Scale K-Means Clustering</a>
+ * @author Taylor G Smith
+ */
+final public class MiniBatchKMeans extends AbstractCentroidClusterer {
+	private static final long serialVersionUID = -6470918725396018237L;
+	final public static int DEF_BATCH_SIZE = 100;
+	final public static int DEF_MAX_ITER = 100;
+	final public static int DEF_MAX_NO_IMPROVEMENT = 10;
+	final public static double DEF_REASSIGNMENT_RATIO = 0.01;
+
+
+
+	final private int batchSize;
+	final private int maxNoImprovement;
+	final private double reassignmentRatio;
+
+	/** The number of points each centroid has absorbed. Its learning rate is the inverse */
+	volatile private long[] counts;
+	/** The exponentially weighted average of the mean batch inertia */
+	volatile private double ewa_inertia = Double.NaN;
+	private double best_ewa_inertia = Double.POSITIVE_INFINITY;
+	private int no_improvement = 0;
+	/** The number of points seen since the low-count centroids were last checked */
+	private long since_reassignment = 0;
+	/** The total number of centroids moved to new points */
+	private long reassignments = 0;
+
+
+
+	protected MiniBatchKMeans(final RealMatrix data) {
+		this(data, DEF_K);
+	}
+
+	protected MiniBatchKMeans(final RealMatrix data, final int k) {
+		this(data, new MiniBatchKMeansParameters(k));
+	}
+
+	protected MiniBatchKMeans(final RealMatrix data, final MiniBatchKMeansParameters planner) {
+		super(data, planner);
+
+		this.batchSize = planner.getBatchSize();
+		this.maxNoImprovement = planner.getMaxNoImprovement();
+		this.reassignmentRatio = planner.getReassignmentRatio();
+
+		if(batchSize < 1)
+			error(new IllegalArgumentException("batchSize must be positive"));
+		if(maxNoImprovement < 1)
+			error(new IllegalArgumentException("maxNoImprovement must be positive"));
+		if(reassignmentRatio < 0 || Double.isNaN(reassignmentRatio))
+			error(new IllegalArgumentException("reassignmentRatio must not be negative"));
+
+		this.counts = new long[k];
+	}
+
+
+
+
+	@Override
+	public String getName() {
+		return "MiniBatchKMeans";
+	}
+
+	@Override
+	protected MiniBatchKMeans fit() {
+		synchronized(fitLock) {
+
+			if(null != labels) // already fit
+				return this;
+
+
+			final LogTimer timer = new LogTimer();
+			final double[][] X = data.getDataRef();
+			final Random seed = getSeed();
+
+
+			// Corner case: K = 1 or all singular values
+			if(1 == k) {
+				labelFromSingularK(X);
+				fitSummary.add(new Object[]{ iter, converged, Double.NaN, 0, timer.wallTime() });
+				sayBye(timer);
+				return this;
+			}
+
+
+			// An epoch draws (with replacement) as many points as there are rows
+			final int b = FastMath.min(batchSize, m);
+			final long stepsPerEpoch = (m + b - 1) / b;
+			final long maxSteps = FastMath.min((long)maxIter * stepsPerEpoch, Integer.MAX_VALUE);
+			final double[][] batch = new double[b][];
+
+			for(iter = 0; iter < maxSteps && !converged; ) {
+				for(int i = 0; i < b; i++)
+					batch[i] = X[seed.nextInt(m)];
+
+				step(batch, seed);
+				iter++;
+
+				if(converged || 0 == iter % stepsPerEpoch)
+					fitSummary.add(new Object[]{
+						iter, converged, ewa_inertia, reassignments, timer.wallTime() });
+			}
+
+
+			// Label the data with the final centroids
+			labelData();
+			reorderLabelsAndCentroids();
+
+			if(!converged)
+				warn("algorithm did not converge");
+
+
+			// wrap things up, create summary..
+			sayBye(timer);
+
+
+			return this;
+		}
+	}
+
+	/**
+	 * Update the centroids with a new batch of data, and relabel the data the model
+	 * was constructed with. The model need not have been fit beforehand; in that case,
+	 * the centroids are updated starting from their initial seeds. The batch is not copied,
+	 * and is not retained.
+	 * @param batch - the new batch of data
+	 * @throws DimensionMismatchException if the batch differs in width from the model's data
+	 * @throws NaNException if the batch contains a NaN
+	 * @throws IllegalArgumentException if the batch is empty
+	 * @return this
+	 */
+	public MiniBatchKMeans partialFit(final double[][] batch) {
+		synchronized(fitLock) {
+			final LogTimer timer = new LogTimer();
+
+			MatUtils.checkDims(batch);
+			MatUtils.checkDimsForUniformity(batch);
+
+			final int n = getDataRef().getColumnDimension();
+			if(batch[0].length != n)
+				error(new DimensionMismatchException(batch[0].length, n));
+			if(MatUtils.containsNaN(batch))
+				error(new NaNException("NaN in batch"));
+
+			step(batch, getSeed());
+			iter++;
+
+			labelData();
+			reorderLabelsAndCentroids();
+
+			fitSummary.add(new Object[]{
+				iter, converged, ewa_inertia, reassignments, timer.wallTime() });
+			info("updated centroids with a batch of " + batch.length + " in " + timer.toString());
+
+			return this;
+		}
+	}
+
+	/**
+	 * Assign the batch to the centroids, move the centroids toward their points,
+	 * reassign the low-count centroids and update the EWA inertia
+	 * @param batch
+	 * @param seed
+	 */
+	private void step(final double[][] batch, final Random seed) {
+		final int b = batch.length, n = batch[0].length;
+		final int[] assignments = new int[b];
+		final double[] sq_dists = new double[b];
+		final double[][] sums = new double[k][n];
+		final int[] batch_counts = new int[k];
+
+		double inertia = 0.0;
+		for(int i = 0; i < b; i++) {
+			final int c = nearest(batch[i]);
+			assignments[i] = c;
+			sq_dists[i] = squaredEuclidean(batch[i], centroids.get(c));
+			inertia += sq_dists[i];
+
+			batch_counts[c]++;
+			for(int j = 0; j < n; j++)
+				sums[c][j] += batch[i][j];
+		}
+
+		// Each centroid becomes the mean of all points it has ever absorbed
+		for(int c = 0; c < k; c++) {
+			if(0 == batch_counts[c])
+				continue;
+
+			counts[c] += batch_counts[c];
+			final double[] centroid = centroids.get(c);
+			final double count = (double)counts[c];
+			for(int j = 0; j < n; j++)
+				centroid[j] += (sums[c][j] - batch_counts[c] * centroid[j]) / count;
+		}
+
+		// Checking too often would keep moving the centroids that just moved
+		since_reassignment += b;
+		if(reassignmentRatio > 0 && since_reassignment >= 10L * k) {
+			since_reassignment = 0;
+			reassignments += reassign(batch, sq_dists, seed);
+		}
+
+		// The EWA smooths over the noise of any one batch
+		final double batch_inertia = inertia / (double)b;
+		final double alpha = FastMath.min(1.0, 2.0 * b / (m + 1.0));
+		ewa_inertia = Double.isNaN(ewa_inertia) ? batch_inertia :
+			ewa_inertia * (1.0 - alpha) + batch_inertia * alpha;
+
+		if(ewa_inertia < best_ewa_inertia * (1.0 - tolerance)) {
+			best_ewa_inertia = ewa_inertia;
+			no_improvement = 0;
+		} else {
+			best_ewa_inertia = FastMath.min(best_ewa_inertia, ewa_inertia);
+			no_improvement++;
+		}
+
+		converged = no_improvement >= maxNoImprovement;
+	}
+
+	/**
+	 * Move the centroids that have absorbed fewer than <tt>reassignmentRatio</tt> times
+	 * as many points as the busiest centroid to points in the batch, sampled without
+	 * replacement with probability proportional to their squared distance from
+	 * their centroid. At most half the batch is used.
+	 * @return the number of centroids reassigned
+	 */
+	private int reassign(final double[][] batch, final double[] sq_dists, final Random seed) {
+		long max_count = 0;
+		for(long count: counts)
+			max_count = FastMath.max(max_count, count);
+		final double threshold = reassignmentRatio * max_count;
+
+		// Insertion sort the low-count centroids by count, keeping
+		// the lowest counts if there are too many. Ties keep index order.
+		final int[] low = new int[k];
+		int n_low = 0;
+		for(int c = 0; c < k; c++) {
+			if(counts[c] < threshold) {
+				int i = n_low++;
+				for(; i > 0 && counts[low[i - 1]] > counts[c]; i--)
+					low[i] = low[i - 1];
+				low[i] = c;
+			}
+		}
+
+		if(0 == n_low)
+			return 0;
+
+		final int num = FastMath.min(n_low, batch.length / 2);
+
+		// Reassigned centroids start with as many points as the least busy remaining centroid
+		long min_count = Long.MAX_VALUE;
+		for(int c = 0; c < k; c++)
+			if(counts[c] >= threshold)
+				min_count = FastMath.min(min_count, counts[c]);
+
+		final double[] weights = VecUtils.copy(sq_dists);
+		double total = VecUtils.sum(weights);
+
+		for(int r = 0; r < num; r++) {
+			int chosen = -1;
+			if(total > 0) {
+				double cut = seed.nextDouble() * total;
+				for(int i = 0; i < weights.length; i++) {
+					if(weights[i] > 0 && (cut -= weights[i]) <= 0) {
+						chosen = i;
+						break;
+					}
+				}
+			}
+
+			// Rounding, or all remaining points sitting on their centroids
+			if(-1 == chosen)
+				chosen = seed.nextInt(weights.length);
+
+			total -= weights[chosen];
+			weights[chosen] = 0.0;
+
+			final int c = low[r];
+			centroids.set(c, VecUtils.copy(batch[chosen]));
+			counts[c] = min_count;
+		}
+
+		return num;
+	}
+
+	/** The index of the nearest centroid, where ties resolve to the lowest index */
+	private int nearest(final double[] row) {
+		int best = 0;
+		double best_dist = dist_metric.getPartialDistance(centroids.get(0), row), d;
+		for(int c = 1; c < k; c++) {
+			d = dist_metric.getPartialDistance(centroids.get(c), row);
+			if(d < best_dist) {
+				best_dist = d;
+				best = c;
+			}
+		}
+
+		return best;
+	}
+
+	private static double squaredEuclidean(final double[] a, final double[] b) {
+		double sum = 0, diff;
+		for(int j = 0; j < a.length; j++) {
+			diff = a[j] - b[j];
+			sum += diff * diff;
+		}
+
+		return sum;
+	}
+
+	/** Label the data the model was constructed with, and compute the WSS and BSS */
+	private void labelData() {
+		final double[][] X = data.getDataRef();
+		final int[] new_labels = new int[m];
+		final double[] new_wss = new double[k];
+
+		double wss_sum = 0.0;
+		for(int i = 0; i < m; i++) {
+			final int c = nearest(X[i]);
+			final double cost = squaredEuclidean(X[i], centroids.get(c));
+			new_labels[i] = c;
+			new_wss[c] += cost;
+			wss_sum += cost;
+		}
+
+		labels = new_labels;
+		wss = new_wss;
+		bss = tss - wss_sum;
+	}
+
+	/**
+	 * Predict the nearest of the current centroids for each row. Unlike {@link KMeans},
+	 * this does not rely on the labels, since the centroids may have been updated with
+	 * batches beyond the data the model was constructed with.
+	 * @throws ModelNotFitException if the model has not been fit
+	 */
+	@Override
+	public int[] predict(RealMatrix newData) {
+		synchronized(fitLock) {
+			if(null == labels)
+				throw new ModelNotFitException("model has not been fit yet");
+
+			final int n = getDataRef().getColumnDimension();
+			if(newData.getColumnDimension() != n)
+				throw new DimensionMismatchException(newData.getColumnDimension(), n);
+
+			final int[] predictions = new int[newData.getRowDimension()];
+			for(int i = 0; i < predictions.length; i++)
+				predictions[i] = nearest(newData.getRow(i));
+
+			return predictions;
+		}
+	}
+
+	/**
+	 * The number of points each centroid has absorbed
+	 * @return a copy of the counts
+	 */
+	public long[] getCounts() {
+		synchronized(fitLock) {
+			return Arrays.copyOf(counts, counts.length);
+		}
+	}
+
+	/**
+	 * The exponentially weighted average of the mean inertia (squared
+	 * distance from each point to its centroid) of the batches
+	 * @return the EWA inertia, or NaN if no batches have been seen
+	 */
+	public double getEWAInertia() {
+		synchronized(fitLock) {
+			return ewa_inertia;
+		}
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	@Override
+	public Algo getLoggerTag() {
+		return com.clust4j.log.Log.Tag.Algo.MINIBATCH;
+	}
+
+	@Override
+	protected Object[] getModelFitSummaryHeaders() {
+		return new Object[]{
+			"Iter. #","Converged","EWA Inertia","Reassigned","Wall"
+		};
+	}
+
+	/**
+	 * Reorder the labels in order of appearance, and the centroids, WSS and
+	 * counts to correspond. Centroids that no point is nearest to follow,
+	 * in their existing order.
+	 */
+	@Override
+	protected void reorderLabelsAndCentroids() {
+		final int[] order = new int[k]; // new index to old index
+		final int[] mapping = VecUtils.repInt(-1, k); // old index to new index
+
+		int next = 0;
+		for(int label: labels)
+			if(-1 == mapping[label]) {
+				mapping[label] = next;
+				order[next++] = label;
+			}
+
+		for(int c = 0; c < k; c++)
+			if(-1 == mapping[c]) {
+				mapping[c] = next;
+				order[next++] = c;
+			}
+
+		for(int i = 0; i < labels.length; i++)
+			labels[i] = mapping[labels[i]];
+
+		final ArrayList<double[]> new_centroids = new ArrayList<>(k);
+		final double[] new_wss = new double[k];
+		final long[] new_counts = new long[k];
+		for(int i = 0; i < k; i++) {
+			new_centroids.add(centroids.get(order[i]));
+			new_wss[i] = wss[order[i]];
+			new_counts[i] = counts[order[i]];
+		}
+
+		centroids = new_centroids;
+		wss = new_wss;
+		counts = new_counts;
+	}
+}
@@ -0,0 +1,175 @@
+/*******************************************************************************
+ *    Copyright 2015, 2016 Taylor G Smith
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *******************************************************************************/
+
+package com.clust4j.algo;
+
+import java.util.Collection;
+import java.util.Random;
+
+import org.apache.commons.math3.linear.RealMatrix;
+
+import com.clust4j.algo.AbstractCentroidClusterer.InitializationStrategy;
+import com.clust4j.metrics.pairwise.GeometricallySeparable;
+
+/**
+ * Parameters for {@link MiniBatchKMeans}. The {@link #getMaxIter() maxIter} is the
+ * maximum number of epochs, each drawing as many points as the data has rows, and the
+ * {@link #getConvergenceTolerance() convergence tolerance} is the relative decrease
+ * in the EWA inertia that counts as an improvement.
+ * @author Taylor G Smith
+ */
+final public class MiniBatchKMeansParameters extends CentroidClustererParameters<MiniBatchKMeans> {
+	private static final long serialVersionUID = 4362791034572869125L;
+
+	private InitializationStrategy strat = MiniBatchKMeans.DEF_INIT;
+	private int maxIter = MiniBatchKMeans.DEF_MAX_ITER;
+	private int batchSize = MiniBatchKMeans.DEF_BATCH_SIZE;
+	private int maxNoImprovement = MiniBatchKMeans.DEF_MAX_NO_IMPROVEMENT;
+	private double reassignmentRatio = MiniBatchKMeans.DEF_REASSIGNMENT_RATIO;
+
+	public MiniBatchKMeansParameters() { }
+	public MiniBatchKMeansParameters(int k) {
+		this.k = k;
+	}
+
+	@Override
+	public MiniBatchKMeans fitNewModel(final RealMatrix data) {
+		return new MiniBatchKMeans(data, this.copy()).fit();
+	}
+
+	@Override
+	public MiniBatchKMeansParameters copy() {
+		return copyInitialCentroidsTo(new MiniBatchKMeansParameters(k)
+			.setMaxIter(maxIter)
+			.setConvergenceCriteria(minChange)
+			.setMetric(metric)
+			.setVerbose(verbose)
+			.setSeed(seed)
+			.setInitializationStrategy(strat)
+			.setBatchSize(batchSize)
+			.setMaxNoImprovement(maxNoImprovement)
+			.setReassignmentRatio(reassignmentRatio)
+			.setForceParallel(parallel));
+	}
+
+	@Override
+	public InitializationStrategy getInitializationStrategy() {
+		return strat;
+	}
+
+	@Override
+	public int getMaxIter() {
+		return maxIter;
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	public int getMaxNoImprovement() {
+		return maxNoImprovement;
+	}
+
+	public double getReassignmentRatio() {
+		return reassignmentRatio;
+	}
+
+	/**
+	 * Set the number of points drawn in each step
+	 * @param size
+	 * @return this
+	 */
+	public MiniBatchKMeansParameters setBatchSize(final int size) {
+		this.batchSize = size;
+		return this;
+	}
+
+	/**
+	 * Set the number of consecutive steps without an improvement
+	 * in the EWA inertia after which the model has converged
+	 * @param steps
+	 * @return this
+	 */
+	public MiniBatchKMeansParameters setMaxNoImprovement(final int steps) {
+		this.maxNoImprovement = steps;
+		return this;
+	}
+
+	/**
+	 * Set the fraction of the busiest centroid's count below which a centroid
+	 * is moved to a new point. Higher values reassign more often, while zero
+	 * disables reassignment entirely
+	 * @param ratio
+	 * @return this
+	 */
+	public MiniBatchKMeansParameters setReassignmentRatio(final double ratio) {
+		this.reassignmentRatio = ratio;
+		return this;
+	}
+
+	@Override
+	public MiniBatchKMeansParameters setInitialCentroids(final Collection<double[]> centroids) {
+		super.setInitialCentroids(centroids);
+		return this;
+	}
+	
+	@Override
+	public MiniBatchKMeansParameters setWarmStart(final AbstractCentroidClusterer model) {
+		super.setWarmStart(model);
+		return this;
+	}
+	
+	@Override
+	public MiniBatchKMeansParameters setForceParallel(boolean b) {
+		this.parallel = b;
+		return this;
+	}
+
+	@Override
+	public MiniBatchKMeansParameters setMetric(final GeometricallySeparable dist) {
+		this.metric = dist;
+		return this;
+	}
+
+	public MiniBatchKMeansParameters setMaxIter(final int max) {
+		this.maxIter = max;
+		return this;
+	}
+
+	@Override
+	public MiniBatchKMeansParameters setConvergenceCriteria(final double min) {
+		this.minChange = min;
+		return this;
+	}
+
+	@Override
+	public MiniBatchKMeansParameters setInitializationStrategy(InitializationStrategy init) {
+		this.strat = init;
+		return this;
+	}
+
+	@Override
+	public MiniBatchKMeansParameters setSeed(final Random seed) {
+		this.seed = seed;
+		return this;
+	}
+
+	@Override
+	public MiniBatchKMeansParameters setVerbose(final boolean v) {
+		this.verbose = v;
+		return this;
+	}
+}
@@ -22,6 +22,7 @@ import org.apache.commons.math3.exception.DimensionMismatchException;
 import org.apache.commons.math3.linear.RealMatrix;
 import org.apache.commons.math3.util.FastMath;
 
+import com.clust4j.data.CSRMatrix;
 import com.clust4j.except.ModelNotFitException;
 import com.clust4j.kernel.CircularKernel;
 import com.clust4j.kernel.LogKernel;
@@ -29,6 +30,8 @@ import com.clust4j.log.Log.Tag.Algo;
 import com.clust4j.log.LogTimer;
 import com.clust4j.metrics.pairwise.Distance;
 import com.clust4j.metrics.pairwise.GeometricallySeparable;
+import com.clust4j.metrics.pairwise.PrecomputedRowStatistics;
+import com.clust4j.metrics.pairwise.SimilarityMetric;
 import com.clust4j.metrics.scoring.SupervisedMetric;
 import com.clust4j.utils.ArrayFormatter;
 import com.clust4j.utils.EntryPair;
@@ -73,6 +76,7 @@ final public class NearestCentroid extends AbstractClusterer implements Supervis
 	// State set in fit method
 	volatile private int[] labels = null;
 	volatile private ArrayList<double[]> centroids = null;
+	volatile private PrecomputedRowStatistics centroid_stats = null;
 	
 	/**
 	 * Default constructor. Builds an instance of {@link NearestCentroid}
@@ -260,9 +264,13 @@ final public class NearestCentroid extends AbstractClusterer implements Supervis
 						centroids.get(i)[j] = shrunk[i][j] + centroid[j];
 			}
 			
+			// Centroids are final now, so compute their norms
+			this.centroid_stats = new PrecomputedRowStatistics(
+				centroids.toArray(new double[centroids.size()][]));
+			
 			
 			// Now run the predict method on training labels to score model
-			this.labels = predict(data);
+			this.labels = predict(getRowStatistics()).getKey();
 			info("model score ("+DEF_SUPERVISED_METRIC+"): " + score());
 			
 			
@@ -399,23 +407,87 @@ final public class NearestCentroid extends AbstractClusterer implements Supervis
 	 * @return
 	 */
 	protected EntryPair<int[], double[]> predict(double[][] data) {
+		return predict(new PrecomputedRowStatistics(data));
+	}
+	
+	/**
+	 * To be used from {@link KMeans}, which can share the
+	 * row statistics of its data across iterations
+	 * @param data
+	 * @return
+	 */
+	protected EntryPair<int[], double[]> predict(PrecomputedRowStatistics data) {
 		if(null == centroids)
 			throw new ModelNotFitException("model not yet fit");
 		
-		int[] predictions = new int[data.length];
-		double[] dists = new double[data.length];
+		final int m = data.getRowDimension();
+		int[] predictions = new int[m];
+		double[] dists = new double[m];
 		double[] row, centroid;
 		
-		for(int i = 0; i < data.length; i++) {
-			row = data[i];
+		/*
+		 * Similarity metrics (i.e., kernels) are largely defined over the inner
+		 * product and the row norms, so they can use the precomputed norms. Other
+		 * metrics are better served abandoning once they exceed the current best.
+		 */
+		final GeometricallySeparable metric = getSeparabilityMetric();
+		final boolean useStats = metric instanceof SimilarityMetric;
+		
+		final int k = centroids.size();
+		final double[] block = new double[k];
+		
+		for(int i = 0; i < m; i++) {
+			row = data.getRow(i);
 			
 			double minDist = Double.POSITIVE_INFINITY, dist = minDist;
 			int nearestLabel = 0; // should not equal -1, because dist could be infinity
 			
-			for(int j = 0; j < centroids.size(); j++) {
+			// Kernels are evaluated against all of the centroids in one batch call
+			if(useStats)
+				metric.partialDistanceBlock(data, i, centroid_stats, 0, k, block);
+			
+			for(int j = 0; j < k; j++) {
 				centroid = centroids.get(j);
-				dist = getSeparabilityMetric()
-					.getPartialDistance(centroid, row); // Can afford to compute partial dist--faster
+				// Can afford to compute partial dist--faster, and
+				// can abandon it once it exceeds the current best
+				dist = useStats ? block[j] :
+					metric.getPartialDistance(centroid, row, minDist);
+				
+				if(dist < minDist) {
+					minDist = dist;
+					nearestLabel = j;
+				}
+			}
+			
+			predictions[i] = nearestLabel;
+			dists[i] = minDist;
+		}
+
+		return new EntryPair<>(encoder.reverseTransform(predictions), dists);
+	}
+	
+	/**
+	 * To be used from {@link KMeans} when fit with sparse data. Metrics
+	 * that can fold the zeros of each row into the centroid norms only
+	 * visit the non-zero entries.
+	 * @param data
+	 * @return
+	 */
+	protected EntryPair<int[], double[]> predict(CSRMatrix data) {
+		if(null == centroids)
+			throw new ModelNotFitException("model not yet fit");
+		
+		final int m = data.getRowDimension();
+		int[] predictions = new int[m];
+		double[] dists = new double[m];
+		
+		final GeometricallySeparable metric = getSeparabilityMetric();
+		for(int i = 0; i < m; i++) {
+			double minDist = Double.POSITIVE_INFINITY, dist;
+			int nearestLabel = 0; // should not equal -1, because dist could be infinity
+			
+			for(int j = 0; j < centroids.size(); j++) {
+				dist = metric.getPartialDistance(data, i, centroid_stats, j);
 				
 				if(dist < minDist) {
 					minDist = dist;
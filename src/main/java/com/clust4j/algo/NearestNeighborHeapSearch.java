@@ -33,6 +33,7 @@ import com.clust4j.utils.VecUtils;
 import static com.clust4j.GlobalState.Mathematics.*;
 
 import java.util.Arrays;
+import java.util.concurrent.RejectedExecutionException;
 
 
 /**
@@ -182,6 +183,27 @@ abstract class NearestNeighborHeapSearch implements java.io.Serializable {
 		recursiveBuild(0, 0, N_SAMPLES);
 	}
 	
+	/**
+	 * Builds a reader over an existing tree. The reader shares the tree's data
+	 * and node arrays, which queries never modify, but keeps its own counters
+	 * so that several readers may query the same tree concurrently.
+	 * @param tree
+	 */
+	protected NearestNeighborHeapSearch(final NearestNeighborHeapSearch tree) {
+		this.data_arr = tree.data_arr;
+		this.idx_array = tree.idx_array;
+		this.node_data = tree.node_data;
+		this.node_bounds = tree.node_bounds;
+		this.logger = tree.logger;
+		this.dist_metric = tree.dist_metric;
+		this.infinity_dist = tree.infinity_dist;
+		this.leaf_size = tree.leaf_size;
+		this.n_levels = tree.n_levels;
+		this.n_nodes = tree.n_nodes;
+		this.N_SAMPLES = tree.N_SAMPLES;
+		this.N_FEATURES = tree.N_FEATURES;
+	}
+	
 	
 	
 	
@@ -837,6 +859,19 @@ abstract class NearestNeighborHeapSearch implements java.io.Serializable {
 		return dist_metric.getPartialDistance(a, b);
 	}
 	
+	/**
+	 * Compute the reduced distance, abandoning it once it exceeds the upper bound
+	 * @see GeometricallySeparable#getPartialDistance(double[], double[], double)
+	 * @param a
+	 * @param b
+	 * @param upperBound
+	 * @return the reduced distance, or a value greater than upperBound
+	 */
+	double rDist(final double[] a, final double[] b, final double upperBound) {
+		n_calls++;
+		return dist_metric.getPartialDistance(a, b, upperBound);
+	}
+	
 	double rDistToDist(final double d) {
 		return dist_metric.partialDistanceToDistance(d);
 	}
@@ -933,6 +968,19 @@ abstract class NearestNeighborHeapSearch implements java.io.Serializable {
 	
 	// Tested: passing
 	public static int findNodeSplitDim(double[][] data, int[] idcs) {
+		return findNodeSplitDim(data, idcs, 0, idcs.length);
+	}
+	
+	/**
+	 * Find the dimension of greatest spread among the rows 
+	 * indexed by <tt>idcs[start]</tt> through <tt>idcs[end - 1]</tt>
+	 * @param data
+	 * @param idcs
+	 * @param start - inclusive
+	 * @param end - exclusive
+	 * @return the split dimension
+	 */
+	static int findNodeSplitDim(double[][] data, int[] idcs, int start, int end) {
 		// Gets the difference between the vector of column
 		// maxes and the vector of column mins, then finds the
 		// arg max.
@@ -946,7 +994,7 @@ abstract class NearestNeighborHeapSearch implements java.io.Serializable {
 		double diff, maxDiff = Double.NEGATIVE_INFINITY;
 		
 		// Optimized to one KxN pass
-		for(int i = 0; i < idcs.length; i++) {
+		for(int i = start; i < end; i++) {
 			idx = idcs[i];
 			current = data[idx];
 			
@@ -957,7 +1005,7 @@ abstract class NearestNeighborHeapSearch implements java.io.Serializable {
 					minVec[j] = current[j];
 				
 				// If the last iter, we can calc difference right now
-				if(i == idcs.length-1) {
+				if(i == end-1) {
 					diff = maxVec[j] - minVec[j];
 					if(diff > maxDiff) {
 						maxDiff = diff;
@@ -1056,9 +1104,28 @@ abstract class NearestNeighborHeapSearch implements java.io.Serializable {
 	public static void partitionNodeIndices(double[][] data,
 			int[] nodeIndices, int splitDim, int splitIndex,
 			int nFeatures, int nPoints) {
+		partitionNodeIndices(data, nodeIndices, 0, splitDim, splitIndex, nFeatures, nPoints);
+	}
+	
+	/**
+	 * Partition <tt>nodeIndices[offset]</tt> through <tt>nodeIndices[offset + nPoints - 1]</tt>
+	 * such that the rows before <tt>offset + splitIndex</tt> are no greater along the split
+	 * dimension than those after it
+	 * @param data
+	 * @param nodeIndices
+	 * @param offset - the start of the node's indices
+	 * @param splitDim
+	 * @param splitIndex - relative to the offset
+	 * @param nFeatures
+	 * @param nPoints
+	 */
+	static void partitionNodeIndices(double[][] data,
+			int[] nodeIndices, int offset, int splitDim, int splitIndex,
+			int nFeatures, int nPoints) {
 			 
-		int left = 0;
-		int right = nPoints - 1;
+		int left = offset;
+		int right = offset + nPoints - 1;
+		int split = offset + splitIndex;
 		double d1, d2;
 		
 		while(true) {
@@ -1075,9 +1142,9 @@ abstract class NearestNeighborHeapSearch implements java.io.Serializable {
 			}
 			
 			swap(nodeIndices, midindex, right);
-			if(midindex == splitIndex) {
+			if(midindex == split) {
 				break;
-			} else if(midindex < splitIndex) {
+			} else if(midindex < split) {
 				left = midindex + 1;
 			} else {
 				right = midindex - 1;
@@ -1113,8 +1180,8 @@ abstract class NearestNeighborHeapSearch implements java.io.Serializable {
 		} else {
 			// split node and recursively build child nodes
 			node_data[i_node].is_leaf = false;
-			i_max = findNodeSplitDim(data_arr, idx_array);
-			partitionNodeIndices(data_arr, idx_array, 
+			i_max = findNodeSplitDim(data_arr, idx_array, idx_start, idx_end);
+			partitionNodeIndices(data_arr, idx_array, idx_start,
 					i_max, n_mid, N_FEATURES, n_points);
 			
 			recursiveBuild(2 * i_node + 1, idx_start, idx_start + n_mid);
@@ -1194,6 +1261,144 @@ abstract class NearestNeighborHeapSearch implements java.io.Serializable {
 		return new Neighborhood(distances, indices);
 	}
 	
+	/**
+	 * Queries the tree in parallel with {@link #queryParallel(double[][], int, boolean, boolean)}
+	 * if <tt>parallel</tt>, falling back to the serial query if the pool rejects the task
+	 * @param X
+	 * @param k
+	 * @param dualTree
+	 * @param sort
+	 * @param parallel
+	 * @return the neighborhood
+	 */
+	public Neighborhood query(double[][] X, int k, boolean dualTree, boolean sort, boolean parallel) {
+		if(parallel) {
+			try {
+				return queryParallel(X, k, dualTree, sort);
+			} catch(RejectedExecutionException r) {
+				if(null != logger)
+					logger.warn("parallel tree query failed; falling back to serial query");
+			}
+		}
+		
+		return query(X, k, dualTree, sort);
+	}
+	
+	/**
+	 * Queries the tree as in {@link #query(double[][], int, boolean, boolean)}, but splits
+	 * the rows of X into chunks which are searched concurrently in the ForkJoin pool. Each
+	 * chunk is searched by its own {@link #newReader() reader}, and the tree statistics are
+	 * the sums over the chunks. The neighborhoods are identical to those of the serial query.
+	 * @param X
+	 * @param k
+	 * @param dualTree
+	 * @param sort
+	 * @return the neighborhood
+	 */
+	public Neighborhood queryParallel(double[][] X, int k, boolean dualTree, boolean sort) {
+		MatUtils.checkDims(X);
+		
+		if(N_FEATURES != X[0].length)
+			throw new DimensionMismatchException(N_FEATURES, X[0].length);
+		if(this.N_SAMPLES < k) 
+			throw new IllegalArgumentException(k+" is greater than rows in data");
+		if(k < 1) throw new IllegalArgumentException(k+" must exceed 0");
+		
+		this.n_trims  = 0;
+		this.n_leaves = 0;
+		this.n_splits = 0;
+		
+		return ParallelQueryTask.doAll(this, X, k, dualTree, sort);
+	}
+	
+	/**
+	 * Searches the chunks of the query rows for {@link NearestNeighborHeapSearch#queryParallel}
+	 * and writes each chunk's neighborhoods to its rows of the output
+	 * @author Taylor G Smith
+	 */
+	static class ParallelQueryTask extends ParallelChunkingTask<Neighborhood> {
+		private static final long serialVersionUID = 7356389462617264103L;
+		final transient NearestNeighborHeapSearch tree;
+		final double[][] distances;
+		final int[][] indices;
+		final int k;
+		final boolean dualTree;
+		final boolean sort;
+		final int low;
+		final int high;
+		
+		ParallelQueryTask(final NearestNeighborHeapSearch tree, final double[][] X, 
+				final int k, final boolean dualTree, final boolean sort) {
+			super(X, new CoreBalancedChunkingStrategy(X.length));
+			
+			this.tree = tree;
+			this.distances = new double[X.length][];
+			this.indices = new int[X.length][];
+			this.k = k;
+			this.dualTree = dualTree;
+			this.sort = sort;
+			this.low = 0;
+			this.high = chunks.size();
+		}
+		
+		ParallelQueryTask(final ParallelQueryTask task, final int low, final int high) {
+			super(task);
+			
+			this.tree = task.tree;
+			this.distances = task.distances;
+			this.indices = task.indices;
+			this.k = task.k;
+			this.dualTree = task.dualTree;
+			this.sort = task.sort;
+			this.low = low;
+			this.high = high;
+		}
+		
+		@Override
+		protected Neighborhood compute() {
+			if(high - low <= 1) {
+				reduce(chunks.get(low));
+			} else {
+				int mid = this.low + (this.high - this.low) / 2;
+				ParallelQueryTask left = new ParallelQueryTask(this, low, mid);
+				ParallelQueryTask right = new ParallelQueryTask(this, mid, high);
+				
+				left.fork();
+				right.compute();
+				left.join();
+			}
+			
+			return new Neighborhood(distances, indices);
+		}
+		
+		@Override
+		public Neighborhood reduce(Chunk chunk) {
+			final NearestNeighborHeapSearch reader = tree.newReader();
+			final Neighborhood n = reader.query(chunk.get(), k, dualTree, sort);
+			final double[][] d = n.getDistances();
+			final int[][] i = n.getIndices();
+			
+			for(int j = 0, row = chunk.start; j < chunk.size(); j++, row++) {
+				distances[row] = d[j];
+				indices[row] = i[j];
+			}
+			
+			synchronized(tree) {
+				tree.n_trims  += reader.n_trims;
+				tree.n_leaves += reader.n_leaves;
+				tree.n_splits += reader.n_splits;
+				tree.n_calls  += reader.n_calls;
+			}
+			
+			return n;
+		}
+		
+		static Neighborhood doAll(final NearestNeighborHeapSearch tree, final double[][] X,
+				final int k, final boolean dualTree, final boolean sort) {
+			return getThreadPool().invoke(new ParallelQueryTask(tree, X, k, dualTree, sort));
+		}
+	}
+	
 	private void queryDualDepthFirst(int i_node1, NearestNeighborHeapSearch other,
 									 int i_node2, double[] bounds, NeighborsHeap heap,
 									 double reduced_dist_LB) {
@@ -1224,7 +1429,7 @@ abstract class NearestNeighborHeapSearch implements java.io.Serializable {
 					// sklearn line:
 					// data1 + n_features * self.idx_array[i1],
                     // data2 + n_features * i_pt
-					dist_pt = rDist(data1[idx_array[i1]], data2[i_pt]);
+					dist_pt = rDist(data1[idx_array[i1]], data2[i_pt], heap.largest(i_pt));
 					if(dist_pt < heap.largest(i_pt))
 						heap.push(i_pt, dist_pt, idx_array[i1]);
 				}
@@ -1402,7 +1607,7 @@ abstract class NearestNeighborHeapSearch implements java.io.Serializable {
 			reduced_r = this.dist_metric.distanceToPartialDistance(r);
 			
 			for(i = nodeInfo.idx_start; i < nodeInfo.idx_end; i++) {
-				dist_pt = this.rDist(pt, data[idx_array[i]]);
+				dist_pt = this.rDist(pt, data[idx_array[i]], reduced_r);
 				
 				if(dist_pt <= reduced_r) {
 					/*// can't really happen?
@@ -1451,7 +1656,8 @@ abstract class NearestNeighborHeapSearch implements java.io.Serializable {
 		else if(nodeInfo.is_leaf) {
 			this.n_leaves++;
 			for(i = nodeInfo.idx_start; i < nodeInfo.idx_end; i++) {
-				dist_pt = rDist(pt, this.data_arr[idx_array[i]]);
+				// Only need the exact distance if it could enter the heap
+				dist_pt = rDist(pt, this.data_arr[idx_array[i]], heap.largest(i_pt));
 				
 				if(dist_pt < heap.largest(i_pt)) { // in radius
 					heap.push(i_pt, dist_pt, idx_array[i]);
@@ -1641,4 +1847,9 @@ abstract class NearestNeighborHeapSearch implements java.io.Serializable {
 	
 	// Hack for new instance functions
 	abstract NearestNeighborHeapSearch newInstance(double[][] arr, int leaf, DistanceMetric dist, Loggable logger);
+	/**
+	 * A reader over this tree which shares its arrays but not its counters
+	 * @see #NearestNeighborHeapSearch(NearestNeighborHeapSearch)
+	 */
+	abstract NearestNeighborHeapSearch newReader();
 }
\ No newline at end of file
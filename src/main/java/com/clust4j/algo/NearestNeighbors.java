@@ -21,6 +21,7 @@ import org.apache.commons.math3.linear.RealMatrix;
 import org.apache.commons.math3.util.FastMath;
 
 import com.clust4j.algo.Neighborhood;
+import com.clust4j.data.CSRMatrix;
 import com.clust4j.except.ModelNotFitException;
 import com.clust4j.log.Log.Tag.Algo;
 import com.clust4j.log.LogTimer;
@@ -76,8 +77,8 @@ final public class NearestNeighbors extends BaseNeighborsModel {
 		return new ModelSummary(new Object[]{
 				"Num Rows","Num Cols","Metric","Algo","K","Leaf Size","Allow Par."
 			}, new Object[]{
-				m,data.getColumnDimension(),getSeparabilityMetric(),
-				alg, kNeighbors, leafSize,
+				m,getDataRef().getColumnDimension(),getSeparabilityMetric(),
+				searchAlgorithm(), kNeighbors, leafSize,
 				parallel
 			});
 	}
@@ -97,7 +98,7 @@ final public class NearestNeighbors extends BaseNeighborsModel {
 					other.kNeighbors == this.kNeighbors : 
 						other.kNeighbors.intValue() == this.kNeighbors)
 				&& other.leafSize == this.leafSize
-				&& MatUtils.equalsExactly(other.fit_X, this.fit_X);
+				&& (isSparse() || MatUtils.equalsExactly(other.fit_X, this.fit_X));
 		}
 		
 		return false;
@@ -126,7 +127,9 @@ final public class NearestNeighbors extends BaseNeighborsModel {
 			
 			// We can do parallel here!
 			Neighborhood initRes = null;
-			if(parallel) {
+			if(isSparse()) {
+				initRes = sparseQuery(sparse_data, nNeighbors);
+			} else if(parallel) {
 				try {
 					initRes = ParallelNNSearch.doAll(fit_X, this, nNeighbors);
 				} catch(RejectedExecutionException r) {
@@ -137,7 +140,7 @@ final public class NearestNeighbors extends BaseNeighborsModel {
 			// Gets here in serial mode or if parallel failed...
 			if(null == initRes)
 				initRes = new Neighborhood(tree.query(fit_X, nNeighbors, DUAL_TREE_SEARCH, SORT));
-			info("queried "+this.alg+" for nearest neighbors in " + timer.toString());
+			info("queried "+searchAlgorithm()+" for nearest neighbors in " + timer.toString());
 
 			
 			double[][] dists = initRes.getDistances();
@@ -244,7 +247,23 @@ final public class NearestNeighbors extends BaseNeighborsModel {
 	}
 	
 	public Neighborhood getNeighbors(RealMatrix x, int k) {
-		return getNeighbors(x.getData(), k, parallel);
+		return isSparse() ? 
+			getNeighbors(asSparse(x), k) : 
+				getNeighbors(x.getData(), k, parallel);
+	}
+	
+	/**
+	 * Brute force search for sparse models
+	 * @param X
+	 * @param k
+	 * @return
+	 */
+	private Neighborhood getNeighbors(CSRMatrix X, int k) {
+		if(null == res)
+			throw new ModelNotFitException("model not yet fit");
+		
+		validateK(k, m);
+		return sparseQuery(X, k);
 	}
 	
 	/**
@@ -254,6 +273,9 @@ final public class NearestNeighbors extends BaseNeighborsModel {
 	 * @return
 	 */
 	protected Neighborhood getNeighbors(double[][] X, int k, boolean parallelize) {
+		if(isSparse())
+			return getNeighbors(new CSRMatrix(X), k);
+		
 		if(null == res)
 			throw new ModelNotFitException("model not yet fit");
 		
@@ -132,6 +132,29 @@ public abstract class ParallelChunkingTask<T> extends RecursiveTask<T> implement
 			return out;
 		}
 	}
+	
+	/**
+	 * Splits the rows into about four chunks per core, but no fewer than
+	 * {@link #DEF_CHUNK_SIZE} rows each, such that tasks that keep per-chunk
+	 * state allocate a few copies per worker rather than one per small chunk
+	 * @author Taylor G Smith
+	 */
+	static public class CoreBalancedChunkingStrategy extends ChunkingStrategy {
+		public CoreBalancedChunkingStrategy(final int numRows) {
+			super(FastMath.max(DEF_CHUNK_SIZE, (int)FastMath.ceil(numRows / (4.0 * AVAILABLE_CORES))));
+		}
+		
+		@Override
+		protected ArrayList<Chunk> map(double[][] X) {
+			final ArrayList<Chunk> out = new ArrayList<>();
+			final int numChunks = getNumChunks(chunkSize, X.length);
+			
+			for(int i = 0; i < numChunks; i++)
+				out.add(getChunk(X, chunkSize, i));
+			
+			return out;
+		}
+	}
  	
 	
 	/**
@@ -21,6 +21,7 @@ import org.apache.commons.math3.linear.RealMatrix;
 import org.apache.commons.math3.util.FastMath;
 
 import com.clust4j.algo.Neighborhood;
+import com.clust4j.data.CSRMatrix;
 import com.clust4j.except.ModelNotFitException;
 import com.clust4j.log.LogTimer;
 import com.clust4j.log.Log.Tag.Algo;
@@ -72,8 +73,8 @@ final public class RadiusNeighbors extends BaseNeighborsModel {
 		return new ModelSummary(new Object[]{
 				"Num Rows","Num Cols","Metric","Algo","Radius","Leaf Size","Allow Par."
 			}, new Object[]{
-				m,data.getColumnDimension(),getSeparabilityMetric(),
-				alg, radius, leafSize,
+				m,getDataRef().getColumnDimension(),getSeparabilityMetric(),
+				searchAlgorithm(), radius, leafSize,
 				parallel
 			});
 	}
@@ -110,7 +111,7 @@ final public class RadiusNeighbors extends BaseNeighborsModel {
 					other.radius == this.radius : 
 						other.radius.intValue() == this.radius)
 				&& other.leafSize == this.leafSize
-				&& MatUtils.equalsExactly(other.fit_X, this.fit_X);
+				&& (isSparse() || MatUtils.equalsExactly(other.fit_X, this.fit_X));
 		}
 		
 		return false;
@@ -123,8 +124,10 @@ final public class RadiusNeighbors extends BaseNeighborsModel {
 				return this;
 
 			final LogTimer timer = new LogTimer();
-			Neighborhood initRes = new Neighborhood(tree.queryRadius(fit_X, radius, false));
-			info("queried "+this.alg+" for radius neighbors in " + timer.toString());
+			Neighborhood initRes = isSparse() ? 
+				sparseQueryRadius(sparse_data, radius) : 
+					new Neighborhood(tree.queryRadius(fit_X, radius, false));
+			info("queried "+searchAlgorithm()+" for radius neighbors in " + timer.toString());
 			
 			
 			double[][] dists = initRes.getDistances();
@@ -207,10 +210,29 @@ final public class RadiusNeighbors extends BaseNeighborsModel {
 	}
 	
 	public Neighborhood getNeighbors(RealMatrix x, double rad) {
-		return getNeighbors(x.getData(), rad, parallel);
+		return isSparse() ? 
+			getNeighbors(asSparse(x), rad) : 
+				getNeighbors(x.getData(), rad, parallel);
+	}
+	
+	/**
+	 * Brute force search for sparse models
+	 * @param X
+	 * @param rad
+	 * @return
+	 */
+	private Neighborhood getNeighbors(CSRMatrix X, double rad) {
+		if(null == res)
+			throw new ModelNotFitException("model not yet fit");
+		
+		validateRadius(rad);
+		return sparseQueryRadius(X, rad);
 	}
 	
 	protected Neighborhood getNeighbors(double[][] X, double rad, boolean parallelize) {
+		if(isSparse())
+			return getNeighbors(new CSRMatrix(X), rad);
+		
 		if(null == res)
 			throw new ModelNotFitException("model not yet fit");
 		validateRadius(rad);
@@ -0,0 +1,32 @@
+/*******************************************************************************
+ *    Copyright 2015, 2016 Taylor G Smith
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *******************************************************************************/
+package com.clust4j.algo;
+
+/**
+ * Any clusterer that can operate directly over a {@link com.clust4j.data.CSRMatrix}
+ * without densifying it. When such a model is fit with a CSRMatrix, its memory and
+ * distance computations scale with the number of non-zero entries rather than
+ * with <tt>m x n</tt>. All other models densify sparse input.
+ * 
+ * @author Taylor G Smith
+ * @see {@link AbstractClusterer#isSparse()}
+ * @see {@link KMeans}
+ * @see {@link NearestNeighbors}
+ * @see {@link RadiusNeighbors}
+ * @see {@link DBSCAN}
+ */
+public interface SparseLearner extends java.io.Serializable {
+}
@@ -0,0 +1,315 @@
+/*******************************************************************************
+ *    Copyright 2015, 2016 Taylor G Smith
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *******************************************************************************/
+package com.clust4j.data;
+
+import java.util.Arrays;
+
+import org.apache.commons.math3.exception.DimensionMismatchException;
+import org.apache.commons.math3.exception.MathUnsupportedOperationException;
+import org.apache.commons.math3.linear.AbstractRealMatrix;
+import org.apache.commons.math3.linear.MatrixUtils;
+import org.apache.commons.math3.linear.OpenMapRealMatrix;
+import org.apache.commons.math3.linear.RealMatrix;
+import org.apache.commons.math3.util.MathUtils;
+
+import com.clust4j.utils.MatUtils;
+
+/**
+ * An immutable matrix in compressed sparse row (CSR) format. The non-zero values
+ * of row <tt>i</tt> are stored in <tt>values[indptr[i]]</tt> through
+ * <tt>values[indptr[i+1] - 1]</tt>, and their (strictly ascending) column indices
+ * in the same positions of <tt>indices</tt>. Memory is therefore proportional to
+ * the number of non-zero entries rather than to <tt>m x n</tt>.
+ *
+ * <p>
+ * Since it is a {@link RealMatrix}, a CSRMatrix can be passed to any
+ * <tt>fitNewModel</tt> method. Models that implement
+ * {@link com.clust4j.algo.SparseLearner} operate over it directly, while
+ * all other models densify it.
+ *
+ * @author Taylor G Smith
+ * @see com.clust4j.metrics.pairwise.GeometricallySeparable#getPartialDistance(CSRMatrix, int, CSRMatrix, int)
+ */
+public class CSRMatrix extends AbstractRealMatrix implements java.io.Serializable {
+	private static final long serialVersionUID = -4196391282358519317L;
+
+	final private int m, n;
+	final private int[] indptr;
+	final private int[] indices;
+	final private double[] values;
+
+	/**
+	 * Build a CSRMatrix from its components. The arrays are copied.
+	 * @param m - the number of rows
+	 * @param n - the number of columns
+	 * @param indptr - the row pointers, of length m + 1
+	 * @param indices - the column index of each stored value
+	 * @param values - the stored values
+	 * @throws IllegalArgumentException if the dimensions are not positive,
+	 * the row pointers are not non-decreasing from zero or the column
+	 * indices of a row are not strictly ascending within [0, n)
+	 * @throws DimensionMismatchException if indptr is not of length m + 1,
+	 * or indices and values differ in length from indptr[m]
+	 */
+	public CSRMatrix(final int m, final int n, final int[] indptr, final int[] indices, final double[] values) {
+		if(m < 1 || n < 1)
+			throw new IllegalArgumentException("dimensions must be positive");
+		if(indptr.length != m + 1)
+			throw new DimensionMismatchException(indptr.length, m + 1);
+		if(indices.length != values.length)
+			throw new DimensionMismatchException(values.length, indices.length);
+		if(indptr[0] != 0 || indptr[m] != indices.length)
+			throw new DimensionMismatchException(indptr[m], indices.length);
+
+		for(int i = 0; i < m; i++) {
+			final int start = indptr[i], end = indptr[i + 1];
+			if(end < start)
+				throw new IllegalArgumentException("row pointers must be non-decreasing");
+
+			for(int p = start; p < end; p++) {
+				if(indices[p] < 0 || indices[p] >= n)
+					throw new IllegalArgumentException("column index " + indices[p] + " out of bounds for " + n + " columns");
+				if(p > start && indices[p] <= indices[p - 1])
+					throw new IllegalArgumentException("column indices must be strictly ascending within a row");
+			}
+		}
+
+		this.m = m;
+		this.n = n;
+		this.indptr = Arrays.copyOf(indptr, indptr.length);
+		this.indices = Arrays.copyOf(indices, indices.length);
+		this.values = Arrays.copyOf(values, values.length);
+	}
+
+	/**
+	 * Compress a dense matrix, dropping its zeros
+	 * @param X
+	 * @throws IllegalArgumentException if the matrix is empty
+	 * @throws NonUniformMatrixException if the rows are not uniform in length
+	 */
+	public CSRMatrix(final double[][] X) {
+		this(new RowSource() {
+			@Override public int rows() { return X.length; }
+			@Override public double[] row(int i) { return X[i]; }
+		}, X);
+	}
+
+	/**
+	 * Compress any RealMatrix, dropping its zeros
+	 * @param X
+	 */
+	public CSRMatrix(final RealMatrix X) {
+		this(new RowSource() {
+			@Override public int rows() { return X.getRowDimension(); }
+			@Override public double[] row(int i) { return X.getRow(i); }
+		}, null);
+	}
+
+	/** Avoids materializing the full dense matrix when compressing a RealMatrix */
+	private static interface RowSource {
+		int rows();
+		double[] row(int i);
+	}
+
+	private CSRMatrix(final RowSource src, final double[][] check) {
+		if(null != check) {
+			MatUtils.checkDims(check);
+			MatUtils.checkDimsForUniformity(check);
+		}
+
+		this.m = src.rows();
+		if(m < 1)
+			throw new IllegalArgumentException("empty matrix");
+
+		// First pass counts the non-zeros so the arrays are exactly sized
+		this.indptr = new int[m + 1];
+		int n = -1;
+		for(int i = 0; i < m; i++) {
+			final double[] row = src.row(i);
+			n = row.length;
+
+			int nnz = 0;
+			for(double d: row)
+				if(d != 0)
+					nnz++;
+			indptr[i + 1] = indptr[i] + nnz;
+		}
+
+		if(n < 1)
+			throw new IllegalArgumentException("empty matrix");
+		this.n = n;
+		this.indices = new int[indptr[m]];
+		this.values = new double[indptr[m]];
+
+		for(int i = 0, p = 0; i < m; i++) {
+			final double[] row = src.row(i);
+			for(int j = 0; j < n; j++) {
+				if(row[j] != 0) {
+					indices[p] = j;
+					values[p++] = row[j];
+				}
+			}
+		}
+	}
+
+	@Override
+	public int getRowDimension() {
+		return m;
+	}
+
+	@Override
+	public int getColumnDimension() {
+		return n;
+	}
+
+	/**
+	 * The number of stored (non-zero) entries
+	 * @return the number of non-zeros
+	 */
+	public int getNnz() {
+		return values.length;
+	}
+
+	/**
+	 * The row pointers. This is the internal reference -- it should not be modified.
+	 * @return the row pointers
+	 */
+	public int[] getIndptrRef() {
+		return indptr;
+	}
+
+	/**
+	 * The column index of each stored value. This is the internal reference --
+	 * it should not be modified.
+	 * @return the column indices
+	 */
+	public int[] getIndicesRef() {
+		return indices;
+	}
+
+	/**
+	 * The stored values. This is the internal reference -- it should not be modified.
+	 * @return the values
+	 */
+	public double[] getValuesRef() {
+		return values;
+	}
+
+	@Override
+	public double getEntry(int row, int column) {
+		MatrixUtils.checkMatrixIndex(this, row, column);
+		final int p = Arrays.binarySearch(indices, indptr[row], indptr[row + 1], column);
+		return p < 0 ? 0.0 : values[p];
+	}
+
+	/**
+	 * CSRMatrix is immutable
+	 * @throws MathUnsupportedOperationException
+	 */
+	@Override
+	public void setEntry(int row, int column, double value) {
+		throw new MathUnsupportedOperationException();
+	}
+
+	@Override
+	public double[] getRow(int row) {
+		MatrixUtils.checkRowIndex(this, row);
+		final double[] out = new double[n];
+		for(int p = indptr[row]; p < indptr[row + 1]; p++)
+			out[indices[p]] = values[p];
+		return out;
+	}
+
+	@Override
+	public double[][] getData() {
+		final double[][] out = new double[m][n];
+		for(int i = 0; i < m; i++)
+			for(int p = indptr[i]; p < indptr[i + 1]; p++)
+				out[i][indices[p]] = values[p];
+		return out;
+	}
+
+	/**
+	 * Since {@link #setEntry(int, int, double)} is not supported,
+	 * new matrices are sparse, mutable {@link OpenMapRealMatrix}es
+	 */
+	@Override
+	public RealMatrix createMatrix(int rowDimension, int columnDimension) {
+		return new OpenMapRealMatrix(rowDimension, columnDimension);
+	}
+
+	@Override
+	public CSRMatrix copy() {
+		return new CSRMatrix(m, n, indptr, indices, values);
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if(this == o)
+			return true;
+		if(o instanceof CSRMatrix) {
+			CSRMatrix c = (CSRMatrix)o;
+			return c.m == this.m
+				&& c.n == this.n
+				&& Arrays.equals(c.indptr, this.indptr)
+				&& Arrays.equals(c.indices, this.indices)
+				&& Arrays.equals(c.values, this.values);
+		}
+
+		// Defer to the element-wise comparison for other RealMatrix types
+		return super.equals(o);
+	}
+
+	/**
+	 * Consistent with {@link AbstractRealMatrix#hashCode()} for matrices
+	 * that are equal element-wise, without visiting the zeros one at a time
+	 */
+	@Override
+	public int hashCode() {
+		// AbstractRealMatrix: 31 * (31 * (7 * 31 + m) + n), then ret = ret * 31 + f(i, j, v)
+		// for every entry in row-major order, where f(i, j, 0.0) is zero
+		int ret = 7;
+		ret = ret * 31 + m;
+		ret = ret * 31 + n;
+
+		// Each step multiplies by 31, so the contribution of the element with
+		// flat index k is 31^(mn - 1 - k) * f(i, j, v)
+		final long total = (long)m * (long)n;
+		ret *= pow31(total);
+
+		for(int i = 0; i < m; i++) {
+			for(int p = indptr[i]; p < indptr[i + 1]; p++) {
+				final int j = indices[p];
+				ret += pow31(total - 1 - ((long)i * n + j)) *
+					(11 * (i + 1) + 17 * (j + 1)) * MathUtils.hash(values[p]);
+			}
+		}
+
+		return ret;
+	}
+
+	/** 31<sup>e</sup> with int overflow, via exponentiation by squaring */
+	private static int pow31(long e) {
+		int result = 1, base = 31;
+		while(e > 0) {
+			if((e & 1L) == 1L)
+				result *= base;
+			base *= base;
+			e >>>= 1;
+		}
+		return result;
+	}
+}
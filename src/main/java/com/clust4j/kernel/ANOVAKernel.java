@@ -17,6 +17,8 @@ package com.clust4j.kernel;
 
 import org.apache.commons.math3.util.FastMath;
 
+import com.clust4j.metrics.pairwise.PrecomputedRowStatistics;
+
 import com.clust4j.utils.VecUtils;
 
 /**
@@ -71,6 +73,40 @@ public class ANOVAKernel extends RadialBasisKernel {
 		return s;
 	}
 	
+	@Override
+	public double getPartialSimilarity(final PrecomputedRowStatistics x, final int i,
+			final PrecomputedRowStatistics y, final int j) {
+		// not a function of the Hilbert space projection
+		return getPartialSimilarity(x.getRow(i), y.getRow(j));
+	}
+	
+	@Override
+	public void partialSimilarityBlock(final double[] q, final double[][] rows,
+			final int from, final int to, final double[] out) {
+		final int n = q.length;
+		final double negSigma = -getSigma(), degree = getDegree();
+		
+		for(int k = from; k < to; k++) {
+			final double[] b = rows[k];
+			VecUtils.checkDims(q, b);
+			
+			double s = 0, diff;
+			for(int f = 0; f < n; f++) {
+				diff = q[f] - b[f];
+				s += FastMath.pow(FastMath.exp((diff * diff) * negSigma), degree);
+			}
+			
+			out[k - from] = s;
+		}
+	}
+	
+	@Override
+	public void partialSimilarityBlock(final PrecomputedRowStatistics x, final int i,
+			final PrecomputedRowStatistics y, final int from, final int to, final double[] out) {
+		// not a function of the Hilbert space projection
+		partialSimilarityBlock(x.getRow(i), y.getDataRef(), from, to, out);
+	}
+	
 	@Override
 	public double partialSimilarityToSimilarity(double partial) {
 		return partial;
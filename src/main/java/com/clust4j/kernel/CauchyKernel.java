@@ -46,8 +46,8 @@ public class CauchyKernel extends RadialBasisKernel {
 	}
 	
 	@Override
-	final public double getPartialSimilarity(final double[] a, final double[] b) {
-		final double lp2 = FastMath.pow(toHilbertPSpace(a, b), 2);
+	final protected double hilbertToPartialSimilarity(final double lp) {
+		final double lp2 = FastMath.pow(lp, 2);
 		return 1.0 / (1 + lp2/FastMath.pow(getSigma(), 2));
 	}
 	
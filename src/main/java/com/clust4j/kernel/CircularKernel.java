@@ -40,8 +40,7 @@ public class CircularKernel extends RadialBasisKernel {
 	}
 	
 	@Override
-	public double getPartialSimilarity(double[] a, double[] b) {
-		final double lp = toHilbertPSpace(a, b);
+	protected double hilbertToPartialSimilarity(final double lp) {
 		
 		// Per corner case condition
 		if(lp >= getSigma())
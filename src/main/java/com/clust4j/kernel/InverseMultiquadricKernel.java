@@ -46,7 +46,7 @@ public class InverseMultiquadricKernel extends MultiquadricKernel {
 	}
 	
 	@Override
-	public double getSimilarity(final double[] a, final double[] b) {
-		return 1.0 / super.getSimilarity(a, b);
+	protected double hilbertToSimilarity(final double lp) {
+		return 1.0 / super.hilbertToSimilarity(lp);
 	}
 }
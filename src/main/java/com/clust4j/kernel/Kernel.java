@@ -15,6 +15,7 @@
  *******************************************************************************/
 package com.clust4j.kernel;
 
+import com.clust4j.metrics.pairwise.PrecomputedRowStatistics;
 import com.clust4j.metrics.pairwise.SimilarityMetric;
 import com.clust4j.utils.VecUtils;
 
@@ -49,6 +50,38 @@ public abstract class Kernel implements SimilarityMetric {
 		return getSimilarity(a, b);
 	}
 	
+	@Override
+	public double getPartialDistance(final PrecomputedRowStatistics x, final int i,
+			final PrecomputedRowStatistics y, final int j) {
+		return -getPartialSimilarity(x, i, y, j);
+	}
+	
+	@Override
+	public void distanceBlock(final double[] q, final double[][] rows,
+			final int from, final int to, final double[] out) {
+		similarityBlock(q, rows, from, to, out);
+		negate(out, to - from);
+	}
+	
+	@Override
+	public void partialDistanceBlock(final double[] q, final double[][] rows,
+			final int from, final int to, final double[] out) {
+		partialSimilarityBlock(q, rows, from, to, out);
+		negate(out, to - from);
+	}
+	
+	@Override
+	public void partialDistanceBlock(final PrecomputedRowStatistics x, final int i,
+			final PrecomputedRowStatistics y, final int from, final int to, final double[] out) {
+		partialSimilarityBlock(x, i, y, from, to, out);
+		negate(out, to - from);
+	}
+	
+	private static void negate(final double[] out, final int len) {
+		for(int k = 0; k < len; k++)
+			out[k] = -out[k];
+	}
+	
 	@Override
 	public double distanceToPartialDistance(double d) {
 		return -similarityToPartialSimilarity(-d);
@@ -89,6 +122,24 @@ public abstract class Kernel implements SimilarityMetric {
 		return 2*ipab - ipaa - ipbb;
 	}
 	
+	/**
+	 * Project the i<sup>th</sup> row of <tt>x</tt> and the j<sup>th</sup> row
+	 * of <tt>y</tt> into Hilbert space using the precomputed squared norms, such
+	 * that only the cross term remains to be computed. The result is identical
+	 * to {@link #toHilbertPSpace(double[], double[])}.
+	 * @param x
+	 * @param i
+	 * @param y
+	 * @param j
+	 * @return the projection
+	 */
+	final protected static double toHilbertPSpace(final PrecomputedRowStatistics x, final int i,
+			final PrecomputedRowStatistics y, final int j) {
+		final double[] a = x.getRow(i), b = y.getRow(j);
+		VecUtils.checkDims(a,b);
+		return 2*VecUtils.innerProduct(a, b) - x.getSquaredNorm(i) - y.getSquaredNorm(j);
+	}
+	
 	/**
 	 * Returns the name of the kernel
 	 */
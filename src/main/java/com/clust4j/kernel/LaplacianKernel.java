@@ -64,7 +64,7 @@ public class LaplacianKernel extends RadialBasisKernel {
 	}
 	
 	@Override
-	public double getPartialSimilarity(double[] a, double[] b) {
+	protected double hilbertToPartialSimilarity(final double lp) {
 		// Kernlab's laplacedot returns:
 		// return(exp(-sigma*sqrt(-(round(2*crossprod(x,y) - crossprod(x) - crossprod(y),9)))))
 		//
@@ -72,8 +72,7 @@ public class LaplacianKernel extends RadialBasisKernel {
 		// return(exp(-sigma*sqrt(-hilbert)))
 		
 		
-		double hilbert = toHilbertPSpace(a, b);
-		hilbert = getPower() > 1 ? FastMath.pow(hilbert, getPower()) : -hilbert;
+		final double hilbert = getPower() > 1 ? FastMath.pow(lp, getPower()) : -lp;
 		final double sigma_val = getSigmaScalar() * FastMath.pow(getSigma(), getSigmaPower());
 		
 		return -sigma_val * FastMath.sqrt(hilbert);
@@ -15,6 +15,7 @@
  *******************************************************************************/
 package com.clust4j.kernel;
 
+import com.clust4j.metrics.pairwise.PrecomputedRowStatistics;
 import com.clust4j.utils.VecUtils;
 
 /**
@@ -46,6 +47,30 @@ public class LinearKernel extends ConstantKernel {
 		return VecUtils.innerProduct(a, b) + getConstant();
 	}
 	
+	@Override
+	public void partialSimilarityBlock(final double[] q, final double[][] rows,
+			final int from, final int to, final double[] out) {
+		final int n = q.length;
+		final double c = getConstant();
+		
+		for(int k = from; k < to; k++) {
+			final double[] b = rows[k];
+			VecUtils.checkDims(q, b);
+			
+			double ip = 0.0;
+			for(int f = 0; f < n; f++)
+				ip += q[f] * b[f];
+			out[k - from] = ip + c;
+		}
+	}
+	
+	@Override
+	public void partialSimilarityBlock(final PrecomputedRowStatistics x, final int i,
+			final PrecomputedRowStatistics y, final int from, final int to, final double[] out) {
+		// not a function of the norms
+		partialSimilarityBlock(x.getRow(i), y.getDataRef(), from, to, out);
+	}
+	
 	@Override
 	public String getName() {
 		return "LinearKernel";
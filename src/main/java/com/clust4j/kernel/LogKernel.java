@@ -44,8 +44,8 @@ public class LogKernel extends PowerKernel {
 	}
 	
 	@Override
-	public double getSimilarity(final double[] a, final double[] b) {
-		final double sup = -(super.getSimilarity(a, b)); // super returns negative, so reverse it
+	protected double hilbertToSimilarity(final double lp) {
+		final double sup = -(super.hilbertToSimilarity(lp)); // super returns negative, so reverse it
 		final double answer = -FastMath.log(sup + 1);
 		return Double.isNaN(answer) ? Double.NEGATIVE_INFINITY : answer;
 	}
@@ -17,6 +17,8 @@ package com.clust4j.kernel;
 
 import org.apache.commons.math3.util.FastMath;
 
+import com.clust4j.metrics.pairwise.PrecomputedRowStatistics;
+
 /**
  * The Multiquadric kernel can be used in the same situations as the {@link RationalQuadraticKernel}. 
  * As is the case with the Sigmoid kernel ({@link HyperbolicTangentKernel}), it is also an example of an non-positive definite kernel.
@@ -42,7 +44,23 @@ public class MultiquadricKernel extends ConstantKernel {
 
 	@Override
 	public double getSimilarity(final double[] a, final double[] b) {
-		double lp = toHilbertPSpace(a, b);
+		return hilbertToSimilarity(toHilbertPSpace(a, b));
+	}
+	
+	@Override
+	public double getPartialSimilarity(final PrecomputedRowStatistics x, final int i,
+			final PrecomputedRowStatistics y, final int j) {
+		return hilbertToSimilarity(toHilbertPSpace(x, i, y, j));
+	}
+	
+	/**
+	 * Compute the similarity from the Hilbert space projection of the two vectors.
+	 * Subclasses should override this rather than {@link #getSimilarity(double[], double[])}
+	 * such that precomputed row norms can be used.
+	 * @param lp - the Hilbert space projection
+	 * @return the similarity
+	 */
+	protected double hilbertToSimilarity(final double lp) {
 		double sqnm = FastMath.pow(lp, 2);
 		return FastMath.sqrt(sqnm + FastMath.pow(getConstant(), 2));
 	}
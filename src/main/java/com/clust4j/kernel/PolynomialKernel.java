@@ -17,6 +17,7 @@ package com.clust4j.kernel;
 
 import org.apache.commons.math3.util.FastMath;
 
+import com.clust4j.metrics.pairwise.PrecomputedRowStatistics;
 import com.clust4j.utils.VecUtils;
 
 /**
@@ -68,4 +69,28 @@ public class PolynomialKernel extends ConstantKernel {
 	public double getSimilarity(final double[] a, final double[] b) {
 		return FastMath.pow(getAlpha() * VecUtils.innerProduct(a, b) + getConstant(), getDegree());
 	}
+	
+	@Override
+	public void partialSimilarityBlock(final double[] q, final double[][] rows,
+			final int from, final int to, final double[] out) {
+		final int n = q.length;
+		final double a = getAlpha(), c = getConstant(), d = getDegree();
+		
+		for(int k = from; k < to; k++) {
+			final double[] b = rows[k];
+			VecUtils.checkDims(q, b);
+			
+			double ip = 0.0;
+			for(int f = 0; f < n; f++)
+				ip += q[f] * b[f];
+			out[k - from] = FastMath.pow(a * ip + c, d);
+		}
+	}
+	
+	@Override
+	public void partialSimilarityBlock(final PrecomputedRowStatistics x, final int i,
+			final PrecomputedRowStatistics y, final int from, final int to, final double[] out) {
+		// not a function of the norms
+		partialSimilarityBlock(x.getRow(i), y.getDataRef(), from, to, out);
+	}
 }
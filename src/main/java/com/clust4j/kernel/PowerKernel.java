@@ -17,6 +17,8 @@ package com.clust4j.kernel;
 
 import org.apache.commons.math3.util.FastMath;
 
+import com.clust4j.metrics.pairwise.PrecomputedRowStatistics;
+
 /**
  * The Power kernel is also known as the (unrectified) triangular kernel. 
  * It is an example of scale-invariant kernel <a href="http://hal.archives-ouvertes.fr/docs/00/07/19/84/PDF/RR-4601.pdf">
@@ -43,7 +45,24 @@ public class PowerKernel extends Kernel {
 
 	@Override
 	public double getSimilarity(double[] a, double[] b) {
-		return -(FastMath.pow(toHilbertPSpace(a, b), getDegree()));
+		return hilbertToSimilarity(toHilbertPSpace(a, b));
+	}
+	
+	@Override
+	public double getPartialSimilarity(final PrecomputedRowStatistics x, final int i,
+			final PrecomputedRowStatistics y, final int j) {
+		return hilbertToSimilarity(toHilbertPSpace(x, i, y, j));
+	}
+	
+	/**
+	 * Compute the similarity from the Hilbert space projection of the two vectors.
+	 * Subclasses should override this rather than {@link #getSimilarity(double[], double[])}
+	 * such that precomputed row norms can be used.
+	 * @param lp - the Hilbert space projection
+	 * @return the similarity
+	 */
+	protected double hilbertToSimilarity(final double lp) {
+		return -(FastMath.pow(lp, getDegree()));
 	}
 
 	@Override
@@ -17,6 +17,9 @@ package com.clust4j.kernel;
 
 import org.apache.commons.math3.util.FastMath;
 
+import com.clust4j.metrics.pairwise.PrecomputedRowStatistics;
+import com.clust4j.utils.VecUtils;
+
 /**
  * Implementation of the radial basis kernel function. 
  * The adjustable parameter sigma plays a major role in the performance 
@@ -59,7 +62,64 @@ public class RadialBasisKernel extends Kernel {
 	
 	@Override
 	public double getPartialSimilarity(final double[] a, final double[] b) {
-		return sigma * toHilbertPSpace(a,b);
+		return hilbertToPartialSimilarity(toHilbertPSpace(a,b));
+	}
+	
+	@Override
+	public double getPartialSimilarity(final PrecomputedRowStatistics x, final int i,
+			final PrecomputedRowStatistics y, final int j) {
+		return hilbertToPartialSimilarity(toHilbertPSpace(x, i, y, j));
+	}
+	
+	/**
+	 * Computes the squared norm of the query once, and the cross term
+	 * and the squared norm of each row in a single pass
+	 */
+	@Override
+	public void partialSimilarityBlock(final double[] q, final double[][] rows,
+			final int from, final int to, final double[] out) {
+		final int n = q.length;
+		double ipqq = 0;
+		for(int f = 0; f < n; f++)
+			ipqq += q[f] * q[f];
+		
+		for(int k = from; k < to; k++) {
+			final double[] b = rows[k];
+			VecUtils.checkDims(q, b);
+			
+			double ipqb = 0, ipbb = 0;
+			for(int f = 0; f < n; f++) {
+				ipqb += q[f] * b[f];
+				ipbb += b[f] * b[f];
+			}
+			
+			out[k - from] = hilbertToPartialSimilarity(2*ipqb - ipqq - ipbb);
+		}
+	}
+	
+	@Override
+	public void partialSimilarityBlock(final PrecomputedRowStatistics x, final int i,
+			final PrecomputedRowStatistics y, final int from, final int to, final double[] out) {
+		final double[] a = x.getRow(i);
+		final double aa = x.getSquaredNorm(i);
+		
+		for(int k = from; k < to; k++) {
+			final double[] b = y.getRow(k);
+			VecUtils.checkDims(a, b);
+			out[k - from] = hilbertToPartialSimilarity(2*VecUtils.innerProduct(a, b) - aa - y.getSquaredNorm(k));
+		}
+	}
+	
+	/**
+	 * Compute the partial similarity from the Hilbert space projection of
+	 * the two vectors. Subclasses that are a function of the projection
+	 * should override this rather than {@link #getPartialSimilarity(double[], double[])}
+	 * such that precomputed row norms can be used.
+	 * @param lp - the Hilbert space projection
+	 * @return the partial similarity
+	 */
+	protected double hilbertToPartialSimilarity(final double lp) {
+		return sigma * lp;
 	}
 	
 	@Override
@@ -17,6 +17,8 @@ package com.clust4j.kernel;
 
 import org.apache.commons.math3.util.FastMath;
 
+import com.clust4j.metrics.pairwise.PrecomputedRowStatistics;
+
 /**
  * The Rational Quadratic kernel is less computationally 
  * intensive than the {@link GaussianKernel} and can be used as an 
@@ -39,7 +41,23 @@ public class RationalQuadraticKernel extends ConstantKernel {
 	
 	@Override
 	public double getSimilarity(double[] a, double[] b) {
-		final double lp = toHilbertPSpace(a, b);
+		return hilbertToSimilarity(toHilbertPSpace(a, b));
+	}
+	
+	@Override
+	public double getPartialSimilarity(final PrecomputedRowStatistics x, final int i,
+			final PrecomputedRowStatistics y, final int j) {
+		return hilbertToSimilarity(toHilbertPSpace(x, i, y, j));
+	}
+	
+	/**
+	 * Compute the similarity from the Hilbert space projection of the two vectors.
+	 * Subclasses should override this rather than {@link #getSimilarity(double[], double[])}
+	 * such that precomputed row norms can be used.
+	 * @param lp - the Hilbert space projection
+	 * @return the similarity
+	 */
+	protected double hilbertToSimilarity(final double lp) {
 		final double sqnm = FastMath.pow(lp, 2);
 		return 1 - (sqnm / (sqnm + getConstant()));
 	}
@@ -47,8 +47,7 @@ public class SphericalKernel extends CircularKernel {
 	}
 	
 	@Override
-	public double getPartialSimilarity(final double[] a, final double[] b) {
-		final double lp = toHilbertPSpace(a, b);
+	protected double hilbertToPartialSimilarity(final double lp) {
 		if(lp >= getSigma())
 			return 0.0;
 		
@@ -17,6 +17,7 @@ package com.clust4j.kernel;
 
 import org.apache.commons.math3.util.FastMath;
 
+import com.clust4j.metrics.pairwise.PrecomputedRowStatistics;
 import com.clust4j.utils.VecUtils;
 
 /**
@@ -51,14 +52,34 @@ public class SplineKernel extends Kernel {
          * fres <- prod(1 + front - mid + back)
 		 */
 		
-		// Parallel min
 		VecUtils.checkDims(a,b);
-		final int n = a.length;
-		final double[] minV = VecUtils.pmin(a, b);
-		
-		// Get front
+		return spline(a, b);
+	}
+	
+	@Override
+	public void partialSimilarityBlock(final double[] q, final double[][] rows,
+			final int from, final int to, final double[] out) {
+		for(int k = from; k < to; k++) {
+			VecUtils.checkDims(q, rows[k]);
+			out[k - from] = spline(q, rows[k]);
+		}
+	}
+	
+	@Override
+	public void partialSimilarityBlock(final PrecomputedRowStatistics x, final int i,
+			final PrecomputedRowStatistics y, final int from, final int to, final double[] out) {
+		// not a function of the norms
+		partialSimilarityBlock(x.getRow(i), y.getDataRef(), from, to, out);
+	}
+	
+	/**
+	 * The product of the piece-wise polynomial over the
+	 * features. Assumes the dimensions have been checked.
+	 */
+	private static double spline(final double[] a, final double[] b) {
 		// Originally: 
 		//
+		// final double[] minV = VecUtils.pmin(a, b);
 		// final double[] front = VecUtils.multiply(VecUtils.multiply(a, b), VecUtils.scalarAdd(minV, 1d));
 		// final double[] mid1 = VecUtils.scalarDivide(VecUtils.add(a, b), 2);
 		// final double[] mid2 = VecUtils.pow(minV, 2);
@@ -67,14 +88,16 @@ public class SplineKernel extends Kernel {
 		// final double[] res = VecUtils.addForceSerial(VecUtils.subtractForceSerial(VecUtils.scalarAdd(front, 1), mid), back);
 		// return VecUtils.prod(res);
 		//
-		// but this takes 12n (13n total!!)... can do it uglier, but much more elegantly in 1n (2n total):
-		double[] front = new double[n], mid = new double[n], back = new double[n];
+		// but this takes 12n (13n total!!)... can do it uglier, but much more elegantly in 1n,
+		// without allocating a vector per pair:
+		double front, mid, back, minV;
 		double prod = 1;
-		for(int i = 0; i < n; i++) {
-			front[i] = a[i]*b[i] * (minV[i]+1);
-			mid[i] = ((a[i]+b[i]) / 2) * (minV[i] * minV[i]);
-			back[i] = FastMath.pow(minV[i], 3) / 3d;
-			prod *= ( ((front[i]+1)-mid[i])+back[i] );
+		for(int i = 0; i < a.length; i++) {
+			minV = FastMath.min(a[i], b[i]);
+			front = a[i]*b[i] * (minV+1);
+			mid = ((a[i]+b[i]) / 2) * (minV * minV);
+			back = FastMath.pow(minV, 3) / 3d;
+			prod *= ( ((front+1)-mid)+back );
 		}
 		
 		return prod;
@@ -53,6 +53,7 @@ public abstract class Log {
 			/** More algos... */
 			KMEDOIDS		{ @Override public String toString(){return "KMEDOID";} },
 			KMEANS 			{ @Override public String toString(){return "K-MEANS";} },
+			MINIBATCH		{ @Override public String toString(){return "MBKMEAN";} },
 			MEANSHIFT		{ @Override public String toString(){return "MNSHIFT";} },
 			NEAREST			{ @Override public String toString(){return "NEAREST";} },
 			RADIUS          { @Override public String toString(){return "RADIUS ";} },
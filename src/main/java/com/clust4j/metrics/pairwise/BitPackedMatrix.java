@@ -0,0 +1,117 @@
+/*******************************************************************************
+ *    Copyright 2015, 2016 Taylor G Smith
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *******************************************************************************/
+package com.clust4j.metrics.pairwise;
+
+import com.clust4j.utils.VecUtils;
+
+/**
+ * A binary matrix whose rows are packed into <tt>long</tt> bitsets, 64 features
+ * to a word. As in {@link BooleanSimilarity}, any non-zero element is treated as
+ * true, and otherwise false. The binary distances (see {@link Distance#binaryDistances()})
+ * can then count the TT, TF and FT features of two rows 64 at a time via
+ * {@link Long#bitCount(long)}, rather than comparing doubles one at a time,
+ * while using one sixty-fourth of the memory.
+ *
+ * @author Taylor G Smith
+ * @see Distance#getPartialDistance(BitPackedMatrix, int, BitPackedMatrix, int)
+ */
+public class BitPackedMatrix implements java.io.Serializable {
+	private static final long serialVersionUID = 2826473470283590498L;
+	static final int WORD_SHIFT = 6;
+	static final int WORD_MASK = (1 << WORD_SHIFT) - 1;
+
+	final long[][] bits;
+	final int n;
+
+	/**
+	 * Pack the matrix. Any non-zero element is set
+	 * @param X
+	 * @throws IllegalArgumentException if the rows are empty
+	 * @throws DimensionMismatchException if the rows are not uniform in length
+	 */
+	public BitPackedMatrix(final double[][] X) {
+		final int m = X.length;
+		this.n = 0 == m ? 0 : X[0].length;
+		this.bits = new long[m][words(n)];
+
+		for(int i = 0; i < m; i++) {
+			final double[] row = X[i];
+			VecUtils.checkDims(row, X[0]);
+
+			final long[] b = bits[i];
+			for(int k = 0; k < n; k++)
+				if(row[k] != 0)
+					b[k >>> WORD_SHIFT] |= 1L << (k & WORD_MASK);
+		}
+	}
+
+	/**
+	 * The number of words needed to store n bits
+	 * @param n
+	 * @return the number of words
+	 */
+	static int words(final int n) {
+		return (n + WORD_MASK) >>> WORD_SHIFT;
+	}
+
+	/**
+	 * Whether every element in the matrix is either 0 or 1, in which case
+	 * the packed matrix loses no information
+	 * @param X
+	 * @return whether the matrix is binary
+	 */
+	public static boolean isBinary(final double[][] X) {
+		for(double[] row: X)
+			for(double d: row)
+				if(d != 0 && d != 1)
+					return false;
+		return true;
+	}
+
+	public int getRowDimension() {
+		return bits.length;
+	}
+
+	public int getColumnDimension() {
+		return n;
+	}
+
+	/**
+	 * Whether the element at the i<sup>th</sup> row
+	 * and j<sup>th</sup> column is set
+	 * @param i
+	 * @param j
+	 * @return whether the bit is set
+	 */
+	public boolean get(final int i, final int j) {
+		if(j < 0 || j >= n)
+			throw new IndexOutOfBoundsException("column " + j + " out of bounds for " + n + " columns");
+		return 0 != (bits[i][j >>> WORD_SHIFT] & (1L << (j & WORD_MASK)));
+	}
+
+	/**
+	 * Unpack the matrix into 1s and 0s
+	 * @return the unpacked matrix
+	 */
+	public double[][] toArray() {
+		final double[][] out = new double[bits.length][n];
+		for(int i = 0; i < bits.length; i++)
+			for(int j = 0; j < n; j++)
+				if(get(i, j))
+					out[i][j] = 1.0;
+		return out;
+	}
+}
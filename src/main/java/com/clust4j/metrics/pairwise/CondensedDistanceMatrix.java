@@ -0,0 +1,479 @@
+/*******************************************************************************
+ *    Copyright 2015, 2016 Taylor G Smith
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *******************************************************************************/
+package com.clust4j.metrics.pairwise;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+import com.clust4j.utils.DeepCloneable;
+
+/**
+ * A symmetric pairwise matrix stored as its flattened strict upper triangle,
+ * in the same row-major order as SciPy's <tt>pdist</tt>. Only
+ * <tt>m * (m - 1) / 2</tt> values are kept rather than the <tt>m * m</tt>
+ * a full matrix would require, and the diagonal is kept separately
+ * (and only allocated when it is not all zeros, as is the case for kernel
+ * similarities).
+ *
+ * <p>
+ * The values are held in fixed-size pages and addressed with
+ * <tt>long</tt> indices, so the number of pairs is not limited
+ * by the maximum length of a single Java array. The pages may live
+ * on the heap, in direct buffers outside of the heap, or in a memory-mapped
+ * temporary file (see {@link Storage}), so very large matrices need
+ * not be bounded by (or churned through) the garbage collected heap.
+ *
+ * @see Pairwise#getCondensedDistance(double[][], GeometricallySeparable, boolean, boolean)
+ * @author Taylor G Smith
+ */
+public class CondensedDistanceMatrix implements java.io.Serializable, DeepCloneable {
+	private static final long serialVersionUID = 4297383164925740871L;
+
+	/** Each page holds 2<sup>{@value #PAGE_SHIFT}</sup> values */
+	static final int PAGE_SHIFT = 20;
+	static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+	static final int PAGE_MASK = PAGE_SIZE - 1;
+
+	/**
+	 * Where the pages of a {@link CondensedDistanceMatrix} are kept
+	 * @author Taylor G Smith
+	 */
+	public static enum Storage {
+		/** Pages are double arrays on the Java heap */
+		HEAP,
+
+		/** Pages are direct buffers allocated outside of the Java heap.
+		 *  Bounded by <tt>-XX:MaxDirectMemorySize</tt> rather than <tt>-Xmx</tt> */
+		DIRECT,
+
+		/** Pages are mapped from a temporary file and paged in and out
+		 *  by the operating system, so the matrix is bounded by disk rather than memory */
+		MAPPED,
+	}
+
+	private final int m;
+	private final long size;
+	private final Storage storage;
+	private double[] diagonal = null;
+
+	/** Exactly one of these is non-null, depending on the storage */
+	private transient double[][] heap;
+	private transient DoubleBuffer[] buffers;
+
+	/**
+	 * Create a zero-filled condensed matrix for m records on the heap
+	 * @param m - the number of records
+	 */
+	public CondensedDistanceMatrix(final int m) {
+		this(m, Storage.HEAP);
+	}
+
+	/**
+	 * Create a zero-filled condensed matrix for m records
+	 * @param m - the number of records
+	 * @param storage - where to keep the values
+	 * @throws UncheckedIOException if the storage is {@link Storage#MAPPED}
+	 * and the backing file cannot be created
+	 */
+	public CondensedDistanceMatrix(final int m, final Storage storage) {
+		if(m < 0)
+			throw new IllegalArgumentException("m must not be negative");
+
+		this.m = m;
+		this.size = (long)m * (long)(m - 1) / 2L;
+		this.storage = null == storage ? Storage.HEAP : storage;
+		allocate();
+	}
+
+	/**
+	 * Condense a full, symmetric matrix. Only the upper
+	 * triangle and diagonal are read.
+	 * @param full
+	 * @throws IllegalArgumentException if the matrix is not square
+	 */
+	public CondensedDistanceMatrix(final double[][] full) {
+		this(full.length);
+
+		for(int i = 0; i < m; i++) {
+			if(full[i].length != m)
+				throw new IllegalArgumentException("matrix is not square");
+			if(full[i][i] != 0.0)
+				setDiagonal(i, full[i][i]);
+
+			setRange(index(m, i, i + 1), full[i], i + 1, m - i - 1);
+		}
+	}
+
+	private CondensedDistanceMatrix(CondensedDistanceMatrix other) {
+		this(other.m, other.storage);
+
+		if(null != heap) {
+			for(int p = 0; p < heap.length; p++)
+				System.arraycopy(other.heap[p], 0, heap[p], 0, heap[p].length);
+		} else {
+			for(int p = 0; p < buffers.length; p++)
+				buffers[p].duplicate().put(other.buffers[p].duplicate());
+		}
+
+		this.diagonal = null == other.diagonal ? null : other.diagonal.clone();
+	}
+
+	private static int numPages(final long size) {
+		return (int)((size + PAGE_MASK) >>> PAGE_SHIFT);
+	}
+
+	private static int pageLength(final long size, final int page) {
+		return (int)Math.min(PAGE_SIZE, size - ((long)page << PAGE_SHIFT));
+	}
+
+	private void allocate() {
+		final int numPages = numPages(size);
+
+		switch(storage) {
+			case HEAP:
+				heap = new double[numPages][];
+				for(int p = 0; p < numPages; p++)
+					heap[p] = new double[pageLength(size, p)];
+				break;
+
+			case DIRECT:
+				buffers = new DoubleBuffer[numPages];
+				for(int p = 0; p < numPages; p++)
+					buffers[p] = ByteBuffer.allocateDirect(pageLength(size, p) << 3)
+						.order(ByteOrder.nativeOrder()).asDoubleBuffer();
+				break;
+
+			case MAPPED:
+				buffers = map(size, numPages);
+				break;
+
+			default:
+				throw new InternalError("unknown storage: " + storage);
+		}
+	}
+
+	/**
+	 * Map each page from a new temporary file. The mappings remain valid
+	 * after the channel is closed, and on most platforms after the file
+	 * is deleted, so the file is removed as soon as it is mapped.
+	 * @param size
+	 * @param numPages
+	 * @return the mapped pages
+	 */
+	private static DoubleBuffer[] map(final long size, final int numPages) {
+		final DoubleBuffer[] buffers = new DoubleBuffer[numPages];
+
+		File file = null;
+		try {
+			file = File.createTempFile("clust4j", ".dist");
+			try(RandomAccessFile raf = new RandomAccessFile(file, "rw");
+				FileChannel channel = raf.getChannel()) {
+
+				raf.setLength(size << 3);
+				for(int p = 0; p < numPages; p++)
+					buffers[p] = channel.map(MapMode.READ_WRITE, (long)p << (PAGE_SHIFT + 3),
+						(long)pageLength(size, p) << 3).order(ByteOrder.nativeOrder()).asDoubleBuffer();
+			}
+		} catch(IOException e) {
+			throw new UncheckedIOException("could not map distance matrix", e);
+		} finally {
+			if(null != file && !file.delete())
+				file.deleteOnExit();
+		}
+
+		return buffers;
+	}
+
+	@Override
+	public CondensedDistanceMatrix copy() {
+		return new CondensedDistanceMatrix(this);
+	}
+
+	/**
+	 * Get the position of the pair (i, j) in the flattened upper
+	 * triangle of an m x m matrix. The order of i and j does not matter.
+	 *
+	 * <p>
+	 * Original:
+	 * <p>
+	 * <table>
+	 * <tr><td>0 </td><td>1 </td><td>2 </td><td>3</td></tr>
+	 * <tr><td>0 </td><td>0 </td><td>1 </td><td>2</td></tr>
+	 * <tr><td>0 </td><td>0 </td><td>0 </td><td>1</td></tr>
+	 * <tr><td>0 </td><td>0 </td><td>0 </td><td>0</td></tr>
+	 * </table>
+	 *
+	 * <p>
+	 * Flattened:
+	 * <p>
+	 * &lt;1 2 3 1 2 1&gt;
+	 *
+	 * <p>
+	 * ...such that mat[0][3] corresponds to vec[2]; this method would return 2.
+	 *
+	 * @param m - the number of records
+	 * @param i
+	 * @param j
+	 * @throws IllegalArgumentException if i == j
+	 * @return the index
+	 */
+	public static long index(final int m, int i, int j) {
+		if(i == j)
+			throw new IllegalArgumentException("i cannot equal j");
+		if(i > j) {
+			final int tmp = i;
+			i = j;
+			j = tmp;
+		}
+
+		final long li = i;
+		return (long)m * li - (li * (li + 1L)) / 2L + (j - i - 1);
+	}
+
+	/**
+	 * The number of records, i.e., the number of rows
+	 * in the equivalent square matrix
+	 * @return the row dimension
+	 */
+	public int getRowDimension() {
+		return m;
+	}
+
+	/**
+	 * The number of off-diagonal pairs stored, <tt>m * (m - 1) / 2</tt>
+	 * @return the number of stored pairs
+	 */
+	public long size() {
+		return size;
+	}
+
+	public Storage getStorage() {
+		return storage;
+	}
+
+	public double get(final long idx) {
+		final int p = (int)(idx >>> PAGE_SHIFT), pos = (int)(idx & PAGE_MASK);
+		return null != heap ? heap[p][pos] : buffers[p].get(pos);
+	}
+
+	public void set(final long idx, final double value) {
+		final int p = (int)(idx >>> PAGE_SHIFT), pos = (int)(idx & PAGE_MASK);
+		if(null != heap)
+			heap[p][pos] = value;
+		else
+			buffers[p].put(pos, value);
+	}
+
+	/**
+	 * Get the value between records i and j. The order of i and j
+	 * does not matter.
+	 * @param i
+	 * @param j
+	 * @return the value at (i, j)
+	 */
+	public double get(final int i, final int j) {
+		return i == j ? getDiagonal(i) : get(index(m, i, j));
+	}
+
+	/**
+	 * Set the value between records i and j. Since the matrix
+	 * is symmetric, this also sets (j, i).
+	 * @param i
+	 * @param j
+	 * @param value
+	 */
+	public void set(final int i, final int j, final double value) {
+		if(i == j)
+			setDiagonal(i, value);
+		else
+			set(index(m, i, j), value);
+	}
+
+	public double getDiagonal(final int i) {
+		if(i < 0 || i >= m)
+			throw new IndexOutOfBoundsException(i + " is out of bounds for " + m + " records");
+		return null == diagonal ? 0.0 : diagonal[i];
+	}
+
+	public void setDiagonal(final int i, final double value) {
+		if(i < 0 || i >= m)
+			throw new IndexOutOfBoundsException(i + " is out of bounds for " + m + " records");
+
+		// only allocate the diagonal once it is known to be non-zero
+		if(null == diagonal) {
+			if(value == 0.0)
+				return;
+			diagonal = new double[m];
+		}
+
+		diagonal[i] = value;
+	}
+
+	/**
+	 * Copy a contiguous run of values into the flattened upper triangle
+	 * starting at idx, spanning pages where necessary
+	 * @param idx - the first position to write
+	 * @param src - the source array
+	 * @param off - the offset into the source array
+	 * @param len - the number of values to copy
+	 */
+	void setRange(long idx, final double[] src, int off, int len) {
+		while(len > 0) {
+			final int page = (int)(idx >>> PAGE_SHIFT), pos = (int)(idx & PAGE_MASK);
+			final int n = Math.min(len, pageLength(size, page) - pos);
+
+			if(null != heap) {
+				System.arraycopy(src, off, heap[page], pos, n);
+			} else {
+				// Absolute positioning on a duplicate keeps concurrent writers independent
+				final DoubleBuffer buf = buffers[page].duplicate();
+				buf.position(pos);
+				buf.put(src, off, n);
+			}
+
+			idx += n;
+			off += n;
+			len -= n;
+		}
+	}
+
+	/**
+	 * Get the full i<sup>th</sup> row of the equivalent square matrix
+	 * @param i
+	 * @return a new array of length m
+	 */
+	public double[] getRow(final int i) {
+		return getRow(i, new double[m]);
+	}
+
+	/**
+	 * Get the full i<sup>th</sup> row of the equivalent square matrix,
+	 * reusing the provided array
+	 * @param i
+	 * @param row - an array of length m, which is overwritten
+	 * @return row
+	 */
+	public double[] getRow(final int i, final double[] row) {
+		if(row.length != m)
+			throw new IllegalArgumentException("row length must equal " + m);
+		row[i] = getDiagonal(i);
+
+		// Column i above the diagonal... (k, i) for k < i
+		for(int k = 0; k < i; k++)
+			row[k] = get(index(m, k, i));
+
+		// The contiguous segment to the right of the diagonal
+		long idx = i < m - 1 ? index(m, i, i + 1) : 0L;
+		for(int j = i + 1; j < m; j++)
+			row[j] = get(idx++);
+
+		return row;
+	}
+
+	/**
+	 * Get the full j<sup>th</sup> column of the equivalent square matrix.
+	 * Since the matrix is symmetric, this is equal to the j<sup>th</sup> row.
+	 * @param j
+	 * @return a new array of length m
+	 */
+	public double[] getColumn(final int j) {
+		return getRow(j);
+	}
+
+	/**
+	 * Expand the condensed matrix into a square matrix.
+	 * @param upperTriang - whether to only populate the upper triangle,
+	 * leaving the lower triangle and diagonal as zeros
+	 * @return a new m x m matrix
+	 */
+	public double[][] toArray(final boolean upperTriang) {
+		final double[][] out = new double[m][m];
+
+		long idx = 0L;
+		for(int i = 0; i < m; i++) {
+			if(!upperTriang)
+				out[i][i] = getDiagonal(i);
+
+			for(int j = i + 1; j < m; j++) {
+				final double d = get(idx++);
+				out[i][j] = d;
+
+				if(!upperTriang)
+					out[j][i] = d;
+			}
+		}
+
+		return out;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if(this == o)
+			return true;
+		if(o instanceof CondensedDistanceMatrix) {
+			CondensedDistanceMatrix c = (CondensedDistanceMatrix)o;
+			if(c.m != m)
+				return false;
+
+			for(long idx = 0L; idx < size; idx++)
+				if(Double.doubleToLongBits(get(idx)) != Double.doubleToLongBits(c.get(idx)))
+					return false;
+
+			for(int i = 0; i < m; i++)
+				if(getDiagonal(i) != c.getDiagonal(i))
+					return false;
+
+			return true;
+		}
+
+		return false;
+	}
+
+	@Override
+	public int hashCode() {
+		int h = 31 * m;
+		for(long idx = 0L; idx < size; idx++)
+			h = 31 * h + Double.hashCode(get(idx));
+		return h;
+	}
+
+	@Override
+	public String toString() {
+		return "CondensedDistanceMatrix(m=" + m + ", size=" + size + ", storage=" + storage + ")";
+	}
+
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		out.defaultWriteObject();
+		for(long idx = 0L; idx < size; idx++)
+			out.writeDouble(get(idx));
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		allocate();
+		for(long idx = 0L; idx < size; idx++)
+			set(idx, in.readDouble());
+	}
+}
@@ -18,8 +18,10 @@ package com.clust4j.metrics.pairwise;
 import java.util.ArrayList;
 import java.util.Collection;
 
+import org.apache.commons.math3.exception.DimensionMismatchException;
 import org.apache.commons.math3.util.FastMath;
 
+import com.clust4j.data.CSRMatrix;
 import com.clust4j.utils.VecUtils;
 
 public enum Distance implements DistanceMetric, java.io.Serializable {
@@ -27,17 +29,34 @@ public enum Distance implements DistanceMetric, java.io.Serializable {
 		
 		@Override
 		public double getPartialDistance(final double[] a, final double[] b) {
+			return getPartialDistance(a, b, Double.POSITIVE_INFINITY);
+		}
+		
+		@Override
+		public double getPartialDistance(final double[] a, final double[] b, final double upperBound) {
 			VecUtils.checkDims(a, b);
 			
 			final int n = a.length;
 			double ct = 0;
-			for(int i = 0; i < n; i++)
-				if(a[i] != b[i])
+			for(int i = 0; i < n; i++) {
+				if(a[i] != b[i]) {
 					ct++;
+					
+					// The count can only grow
+					if(ct / n > upperBound)
+						return ct / n;
+				}
+			}
 			
 			return ct / n;
 		}
 		
+		@Override
+		double partialDistanceFromCounts(double ctt, double ctf, double cft, double cff) {
+			// Equal to the above only for vectors of 0s and 1s
+			return (ctf + cft) / (ctt + ctf + cft + cff);
+		}
+		
 		@Override
 		public String getName() {
 			return "Hamming";
@@ -50,17 +69,79 @@ public enum Distance implements DistanceMetric, java.io.Serializable {
 		
 		@Override 
 		public double getPartialDistance(final double[] a, final double[] b) {
+			return getPartialDistance(a, b, Double.POSITIVE_INFINITY);
+		}
+		
+		@Override
+		public double getPartialDistance(final double[] a, final double[] b, final double upperBound) {
 			VecUtils.checkDims(a,b);
 			
 			double sum = 0;
 			for(int i = 0; i < a.length; i++) {
 				double diff = a[i] - b[i];
 				sum += FastMath.abs(diff);
+				
+				if(sum > upperBound)
+					return sum;
+			}
+			
+			return sum;
+		}
+		
+		@Override
+		public void partialDistanceBlock(final double[] q, final double[][] rows,
+				final int from, final int to, final double[] out) {
+			final int n = q.length;
+			for(int k = from; k < to; k++) {
+				final double[] b = rows[k];
+				VecUtils.checkDims(q, b);
+				
+				double sum = 0;
+				for(int f = 0; f < n; f++)
+					sum += FastMath.abs(q[f] - b[f]);
+				out[k - from] = sum;
+			}
+		}
+		
+		@Override
+		public double getPartialDistance(final CSRMatrix x, final int i, final CSRMatrix y, final int j) {
+			checkSparseDims(x, y.getColumnDimension());
+			final int[] xi = x.getIndicesRef(), yi = y.getIndicesRef();
+			final double[] xv = x.getValuesRef(), yv = y.getValuesRef();
+			final int pEnd = x.getIndptrRef()[i + 1], qEnd = y.getIndptrRef()[j + 1];
+			
+			// Merge the two rows -- columns zero in both contribute nothing
+			double sum = 0;
+			int p = x.getIndptrRef()[i], q = y.getIndptrRef()[j];
+			while(p < pEnd || q < qEnd) {
+				if(q == qEnd || (p < pEnd && xi[p] < yi[q]))
+					sum += FastMath.abs(xv[p++]);
+				else if(p == pEnd || yi[q] < xi[p])
+					sum += FastMath.abs(yv[q++]);
+				else
+					sum += FastMath.abs(xv[p++] - yv[q++]);
 			}
 			
 			return sum;
 		}
 		
+		@Override
+		public double getPartialDistance(final CSRMatrix x, final int i,
+				final PrecomputedRowStatistics y, final int j) {
+			checkSparseDims(x, y.getColumnDimension());
+			final int[] xi = x.getIndicesRef();
+			final double[] xv = x.getValuesRef(), b = y.getRow(j);
+			
+			// ||b||_1 + sum over the non-zeros of (|a - b| - |b|)
+			final double l1 = y.getL1Norm(j);
+			double sum = l1;
+			for(int p = x.getIndptrRef()[i]; p < x.getIndptrRef()[i + 1]; p++)
+				sum += FastMath.abs(xv[p] - b[xi[p]]) - FastMath.abs(b[xi[p]]);
+			
+			// Guard against catastrophic cancellation for near points
+			return sum < Pairwise.EXPANSION_RTOL * l1 ? getPartialDistance(x.getRow(i), b) : sum;
+		}
+		
 		@Override
 		final public double getP() {
 			return 1.0;
@@ -91,6 +172,11 @@ public enum Distance implements DistanceMetric, java.io.Serializable {
 		
 		@Override
 		public double getPartialDistance(final double[] a, final double[] b) {
+			return getPartialDistance(a, b, Double.POSITIVE_INFINITY);
+		}
+		
+		@Override
+		public double getPartialDistance(final double[] a, final double[] b, final double upperBound) {
 			VecUtils.checkDims(a,b);
 			
 			double sum = 0;
@@ -98,10 +184,87 @@ public enum Distance implements DistanceMetric, java.io.Serializable {
 				// Don't use math.pow -- too expensive
 				double diff = a[i]-b[i];
 				sum += diff * diff;
+				
+				if(sum > upperBound)
+					return sum;
 			}
 			
 			return sum;
 		}
+
+		@Override
+		public void partialDistanceBlock(final double[] q, final double[][] rows,
+				final int from, final int to, final double[] out) {
+			final int n = q.length;
+			for(int k = from; k < to; k++) {
+				final double[] b = rows[k];
+				VecUtils.checkDims(q, b);
+				
+				double sum = 0;
+				for(int f = 0; f < n; f++) {
+					double diff = q[f] - b[f];
+					sum += diff * diff;
+				}
+				out[k - from] = sum;
+			}
+		}
+		
+		@Override
+		public double getPartialDistance(final PrecomputedRowStatistics x, final int i,
+				final PrecomputedRowStatistics y, final int j) {
+			final double[] a = x.getRow(i), b = y.getRow(j);
+			VecUtils.checkDims(a,b);
+
+			// ||a||^2 + ||b||^2 - 2ab
+			final double norms = x.getSquaredNorm(i) + y.getSquaredNorm(j);
+			final double d2 = norms - 2.0 * VecUtils.innerProduct(a, b);
+
+			// Guard against catastrophic cancellation for near points
+			return d2 < Pairwise.EXPANSION_RTOL * norms ? getPartialDistance(a, b) : d2;
+		}
+		
+		@Override
+		public double getPartialDistance(final CSRMatrix x, final int i, final CSRMatrix y, final int j) {
+			checkSparseDims(x, y.getColumnDimension());
+			final int[] xi = x.getIndicesRef(), yi = y.getIndicesRef();
+			final double[] xv = x.getValuesRef(), yv = y.getValuesRef();
+			final int pEnd = x.getIndptrRef()[i + 1], qEnd = y.getIndptrRef()[j + 1];
+			
+			// Merge the two rows -- columns zero in both contribute nothing
+			double sum = 0, diff;
+			int p = x.getIndptrRef()[i], q = y.getIndptrRef()[j];
+			while(p < pEnd || q < qEnd) {
+				if(q == qEnd || (p < pEnd && xi[p] < yi[q]))
+					diff = xv[p++];
+				else if(p == pEnd || yi[q] < xi[p])
+					diff = yv[q++];
+				else
+					diff = xv[p++] - yv[q++];
+				sum += diff * diff;
+			}
+			
+			return sum;
+		}
+		
+		@Override
+		public double getPartialDistance(final CSRMatrix x, final int i,
+				final PrecomputedRowStatistics y, final int j) {
+			checkSparseDims(x, y.getColumnDimension());
+			final int[] xi = x.getIndicesRef();
+			final double[] xv = x.getValuesRef(), b = y.getRow(j);
+			
+			// ||b||^2 + sum over the non-zeros of (a^2 - 2ab)
+			double sq = 0, d2 = y.getSquaredNorm(j);
+			for(int p = x.getIndptrRef()[i]; p < x.getIndptrRef()[i + 1]; p++) {
+				final double v = xv[p];
+				sq += v * v;
+				d2 += v * (v - 2.0 * b[xi[p]]);
+			}
+			
+			// Guard against catastrophic cancellation for near points
+			return d2 < Pairwise.EXPANSION_RTOL * (sq + y.getSquaredNorm(j)) ?
+				getPartialDistance(x.getRow(i), b) : d2;
+		}
 		
 		@Override
 		public double partialDistanceToDistance(double d) {
@@ -146,6 +309,11 @@ public enum Distance implements DistanceMetric, java.io.Serializable {
 		
 		@Override
 		public double getPartialDistance(final double[] a, final double[] b) {
+			return getPartialDistance(a, b, Double.POSITIVE_INFINITY);
+		}
+		
+		@Override
+		public double getPartialDistance(final double[] a, final double[] b, final double upperBound) {
 			VecUtils.checkDims(a,b);
 			
 			final int n = a.length;
@@ -153,6 +321,9 @@ public enum Distance implements DistanceMetric, java.io.Serializable {
 			for(int i = 0; i < n; i++) {
 				numer = FastMath.abs(a[i] - b[i]);
 				sum += 0 == numer ? 0 : nanInf( numer / (FastMath.abs(a[i]) + FastMath.abs(b[i])) );
+				
+				if(sum > upperBound)
+					return sum;
 			}
 			
 			return sum;
@@ -172,14 +343,23 @@ public enum Distance implements DistanceMetric, java.io.Serializable {
 		
 		@Override
 		public double getPartialDistance(final double[] a, final double[] b) {
+			return getPartialDistance(a, b, Double.POSITIVE_INFINITY);
+		}
+		
+		@Override
+		public double getPartialDistance(final double[] a, final double[] b, final double upperBound) {
 			VecUtils.checkDims(a, b);
 			
 			final int n = a.length;
 			double max = 0;
 			for(int i = 0; i < n; i++) {
 				double abs = FastMath.abs(a[i] - b[i]);
-				if(abs > max)
+				if(abs > max) {
 					max = abs;
+					
+					if(max > upperBound)
+						return max;
+				}
 			}
 			
 			return max;
@@ -204,8 +384,11 @@ public enum Distance implements DistanceMetric, java.io.Serializable {
 		@Override
 		public double getPartialDistance(final double[] a, final double[] b) {
 			BooleanSimilarity bool = BooleanSimilarity.build(a, b);
-			double ctt = bool.getFirst(), ctf = bool.getSecond(), cft = bool.getThird();
-			
+			return partialDistanceFromCounts(bool.getFirst(), bool.getSecond(), bool.getThird(), bool.getFourth());
+		}
+		
+		@Override
+		double partialDistanceFromCounts(double ctt, double ctf, double cft, double cff) {
 			double numer = (ctf + cft);
 			
 			// This hack covers the case where all true (1) or all false (0)
@@ -226,9 +409,13 @@ public enum Distance implements DistanceMetric, java.io.Serializable {
 		@Override
 		public double getPartialDistance(final double[] a, final double[] b) {
 			BooleanSimilarity bool = BooleanSimilarity.build(a, b);
-			final double ctt = bool.getFirst(), ctf = bool.getSecond(), cft = bool.getThird();
-			
-			return (ctf + cft - ctt + a.length) / (cft + ctf + a.length);
+			return partialDistanceFromCounts(bool.getFirst(), bool.getSecond(), bool.getThird(), bool.getFourth());
+		}
+		
+		@Override
+		double partialDistanceFromCounts(double ctt, double ctf, double cft, double cff) {
+			final double n = ctt + ctf + cft + cff;
+			return (ctf + cft - ctt + n) / (cft + ctf + n);
 		}
 		
 		@Override
@@ -244,7 +431,11 @@ public enum Distance implements DistanceMetric, java.io.Serializable {
 		@Override
 		public double getPartialDistance(final double[]a, final double[] b) {
 			BooleanSimilarity bool = BooleanSimilarity.build(a, b);
-			final double ctt = bool.getFirst(), ctf = bool.getSecond(), cft = bool.getThird(), cff = bool.getFourth();
+			return partialDistanceFromCounts(bool.getFirst(), bool.getSecond(), bool.getThird(), bool.getFourth());
+		}
+		
+		@Override
+		double partialDistanceFromCounts(double ctt, double ctf, double cft, double cff) {
 			final double R = 2 * (cft + ctf);
 			return 0 == R ? 0 : 
 				// Should be impossible to be NaN:
@@ -269,8 +460,31 @@ public enum Distance implements DistanceMetric, java.io.Serializable {
 				BooleanSimilarity.asBool(b));*/
 			
 			BooleanSimilarity bool = BooleanSimilarity.build(a, b);			
+			return partialDistanceFromCounts(bool.getFirst(), bool.getSecond(), bool.getThird(), bool.getFourth());
+		}
+		
+		@Override
+		double partialDistanceFromCounts(double ctt, double ctf, double cft, double cff) {
+			final double n = ctt + ctf + cft + cff;
+			return (n - ctt) / n;
+		}
+		
+		@Override
+		public double getPartialDistance(final double[] a, final double[] b, final double upperBound) {
+			VecUtils.checkDims(a, b);
+			
+			// Even if every remaining feature were TT, the distance 
+			// could fall no lower than (seen - ctt) / n
 			final double n = (double)a.length;
-			return (n - bool.getFirst()) / n;
+			double ctt = 0;
+			for(int i = 0; i < a.length; i++) {
+				if(a[i] != 0 && b[i] != 0)
+					ctt += 1.0;
+				else if((i + 1 - ctt) / n > upperBound)
+					return (i + 1 - ctt) / n;
+			}
+			
+			return (n - ctt) / n;
 		}
 		
 		@Override
@@ -287,7 +501,11 @@ public enum Distance implements DistanceMetric, java.io.Serializable {
 		@Override
 		public double getPartialDistance(final double[] a, final double[] b) {
 			BooleanSimilarity bool = BooleanSimilarity.build(a, b);
-			final double ctt = bool.getFirst(), ctf = bool.getSecond(), cft = bool.getThird();
+			return partialDistanceFromCounts(bool.getFirst(), bool.getSecond(), bool.getThird(), bool.getFourth());
+		}
+		
+		@Override
+		double partialDistanceFromCounts(double ctt, double ctf, double cft, double cff) {
 			final double R = 2 * (cft + ctf);
 
 			// If all values in a and b are 0s, the distance will be NaN.
@@ -309,7 +527,11 @@ public enum Distance implements DistanceMetric, java.io.Serializable {
 		@Override
 		public double getPartialDistance(final double[] a, final double[] b) {
 			BooleanSimilarity bool = BooleanSimilarity.build(a, b);
-			final double ctt = bool.getFirst(), ctf = bool.getSecond(), cft = bool.getThird(), cff = bool.getFourth();
+			return partialDistanceFromCounts(bool.getFirst(), bool.getSecond(), bool.getThird(), bool.getFourth());
+		}
+		
+		@Override
+		double partialDistanceFromCounts(double ctt, double ctf, double cft, double cff) {
 			final double R = 2 * cft * ctf; // per scipy 0.17. 0.14 had 2 * (cft + ctf)
 			
 			// If all values in a and b are 0s, the distance will be NaN.
@@ -388,6 +610,15 @@ public enum Distance implements DistanceMetric, java.io.Serializable {
 			return getDistance(a, b);
 		}
 		
+		/**
+		 * There are only ever two features, so there
+		 * is nothing to abandon early
+		 */
+		@Override
+		public double getPartialDistance(final double[] a, final double[] b, final double upperBound) {
+			return getDistance(a, b);
+		}
+		
 		@Override
 		public double partialDistanceToDistance(double d) {
 			return d;
@@ -422,6 +653,14 @@ public enum Distance implements DistanceMetric, java.io.Serializable {
 	public double getDistance(double[] a, double[] b) {
 		return partialDistanceToDistance(getPartialDistance(a, b));
 	}
+	
+	@Override
+	public void distanceBlock(final double[] q, final double[][] rows,
+			final int from, final int to, final double[] out) {
+		partialDistanceBlock(q, rows, from, to, out);
+		for(int k = 0; k < to - from; k++)
+			out[k] = partialDistanceToDistance(out[k]);
+	}
 
 	@Override
 	public double partialDistanceToDistance(double d) {
@@ -453,9 +692,56 @@ public enum Distance implements DistanceMetric, java.io.Serializable {
 		return binary;
 	}
 	
+	/**
+	 * Compute the partial distance between the i<sup>th</sup> row of <tt>x</tt>
+	 * and the j<sup>th</sup> row of <tt>y</tt> from their packed bits, counting
+	 * 64 features at a time. The result is identical to {@link #getPartialDistance(double[], double[])}
+	 * over the unpacked rows (for {@link #HAMMING}, only if the rows consist
+	 * of 0s and 1s; see {@link BitPackedMatrix#isBinary(double[][])}).
+	 * @param x
+	 * @param i
+	 * @param y
+	 * @param j
+	 * @throws UnsupportedOperationException if this is not a binary distance
+	 * @throws DimensionMismatchException if the column dimensions differ
+	 * @return the partial distance
+	 */
+	public double getPartialDistance(final BitPackedMatrix x, final int i, final BitPackedMatrix y, final int j) {
+		if(!isBinaryDistance())
+			throw new UnsupportedOperationException(getName() + " is not a binary distance");
+		
+		final int n = x.getColumnDimension();
+		if(n != y.getColumnDimension())
+			throw new DimensionMismatchException(y.getColumnDimension(), n);
+		
+		final long[] a = x.bits[i], b = y.bits[j];
+		int ctt = 0, ctf = 0, cft = 0;
+		for(int k = 0; k < a.length; k++) {
+			ctt += Long.bitCount(a[k] & b[k]);
+			ctf += Long.bitCount(a[k] & ~b[k]);
+			cft += Long.bitCount(~a[k] & b[k]);
+		}
+		
+		return partialDistanceFromCounts(ctt, ctf, cft, n - ctt - ctf - cft);
+	}
+	
+	/**
+	 * Compute the partial distance of a binary distance from the counts of
+	 * features that are true in both vectors, only the first, only the second
+	 * and neither
+	 */
+	double partialDistanceFromCounts(double ctt, double ctf, double cft, double cff) {
+		throw new UnsupportedOperationException(getName() + " is not a binary distance");
+	}
+	
 	private static double nanInf(double d) {
 		return Double.isNaN(d) ? Double.POSITIVE_INFINITY : d;
 	}
 	
+	static void checkSparseDims(final CSRMatrix x, final int n) {
+		if(n != x.getColumnDimension())
+			throw new DimensionMismatchException(n, x.getColumnDimension());
+	}
+	
 	abstract public boolean isBinaryDistance();
 }
@@ -16,6 +16,7 @@
 package com.clust4j.metrics.pairwise;
 
 import com.clust4j.NamedEntity;
+import com.clust4j.data.CSRMatrix;
 
 public interface GeometricallySeparable extends java.io.Serializable, NamedEntity {
 	
@@ -42,6 +43,136 @@ public interface GeometricallySeparable extends java.io.Serializable, NamedEntit
 	 */
 	public double getPartialDistance(final double[] a, final double[] b);
 	
+	/**
+	 * Compute the partial distance, abandoning the computation as soon
+	 * as it is known to exceed <tt>upperBound</tt>. This is useful when
+	 * a distance only matters if it beats some running best, e.g., the
+	 * current k<sup>th</sup> nearest neighbor.
+	 * 
+	 * <p>
+	 * If the partial distance is less than or equal to the bound, the result is
+	 * exactly {@link #getPartialDistance(double[], double[])}. Otherwise, the
+	 * result is some value greater than the bound, but not necessarily the 
+	 * partial distance. Metrics that cannot abandon early compute the full
+	 * partial distance.
+	 * @param a
+	 * @param b
+	 * @param upperBound - the partial distance beyond which the exact value is not needed
+	 * @return the partial distance, or a value greater than upperBound
+	 */
+	public default double getPartialDistance(final double[] a, final double[] b, final double upperBound) {
+		return getPartialDistance(a, b);
+	}
+	
+	/**
+	 * Compute the partial distance between the i<sup>th</sup> row of <tt>x</tt>
+	 * and the j<sup>th</sup> row of <tt>y</tt>. Metrics that can be expressed
+	 * in terms of an inner product and the row norms (e.g., {@link Distance#EUCLIDEAN},
+	 * {@link Similarity#COSINE} and many of the {@link com.clust4j.kernel.Kernel}s)
+	 * use the precomputed norms rather than recomputing them for each pair. Otherwise,
+	 * this is equal to {@link #getPartialDistance(double[], double[])}.
+	 * @param x - the statistics of the first matrix
+	 * @param i - the row index in x
+	 * @param y - the statistics of the second matrix
+	 * @param j - the row index in y
+	 * @return the partial distance
+	 */
+	public default double getPartialDistance(final PrecomputedRowStatistics x, final int i,
+			final PrecomputedRowStatistics y, final int j) {
+		return getPartialDistance(x.getRow(i), y.getRow(j));
+	}
+	
+	/**
+	 * Compute the partial distance between the i<sup>th</sup> row of the sparse
+	 * matrix <tt>x</tt> and the j<sup>th</sup> row of the sparse matrix <tt>y</tt>.
+	 * Metrics for which a zero in both rows contributes nothing (e.g., {@link Distance#EUCLIDEAN},
+	 * {@link Distance#MANHATTAN} and {@link Similarity#COSINE}) only visit the non-zero
+	 * entries. Otherwise, the rows are densified and this is equal to
+	 * {@link #getPartialDistance(double[], double[])}.
+	 * @param x - the first sparse matrix
+	 * @param i - the row index in x
+	 * @param y - the second sparse matrix
+	 * @param j - the row index in y
+	 * @return the partial distance
+	 */
+	public default double getPartialDistance(final CSRMatrix x, final int i, final CSRMatrix y, final int j) {
+		return getPartialDistance(x.getRow(i), y.getRow(j));
+	}
+	
+	/**
+	 * Compute the partial distance between the i<sup>th</sup> row of the sparse
+	 * matrix <tt>x</tt> and the j<sup>th</sup> row of the dense matrix <tt>y</tt>,
+	 * e.g., a centroid. Metrics that can fold the zero entries of the sparse row
+	 * into the precomputed norms of the dense row only visit the non-zero entries.
+	 * Otherwise, the sparse row is densified and this is equal to
+	 * {@link #getPartialDistance(double[], double[])}.
+	 * @param x - the sparse matrix
+	 * @param i - the row index in x
+	 * @param y - the statistics of the dense matrix
+	 * @param j - the row index in y
+	 * @return the partial distance
+	 */
+	public default double getPartialDistance(final CSRMatrix x, final int i,
+			final PrecomputedRowStatistics y, final int j) {
+		return getPartialDistance(x.getRow(i), y.getRow(j));
+	}
+	
+	/**
+	 * Compute the distance between the query and each of <tt>rows[from]</tt>
+	 * through <tt>rows[to - 1]</tt>, writing the distance to <tt>rows[k]</tt> into
+	 * <tt>out[k - from]</tt>. Metrics may override this with a tight loop that hoists
+	 * the per-query work and the virtual dispatch out of the per-row computation.
+	 * Otherwise, this is equal to calling {@link #getDistance(double[], double[])} for each row.
+	 * @param q - the query
+	 * @param rows - the block of rows
+	 * @param from - the first row, inclusive
+	 * @param to - the last row, exclusive
+	 * @param out - the output, of length at least <tt>to - from</tt>
+	 */
+	public default void distanceBlock(final double[] q, final double[][] rows,
+			final int from, final int to, final double[] out) {
+		for(int k = from; k < to; k++)
+			out[k - from] = getDistance(q, rows[k]);
+	}
+	
+	/**
+	 * Compute the partial distance between the query and each of <tt>rows[from]</tt>
+	 * through <tt>rows[to - 1]</tt>, writing the partial distance to <tt>rows[k]</tt>
+	 * into <tt>out[k - from]</tt>. Otherwise, this is equal to calling
+	 * {@link #getPartialDistance(double[], double[])} for each row.
+	 * @param q - the query
+	 * @param rows - the block of rows
+	 * @param from - the first row, inclusive
+	 * @param to - the last row, exclusive
+	 * @param out - the output, of length at least <tt>to - from</tt>
+	 * @see #distanceBlock(double[], double[][], int, int, double[])
+	 */
+	public default void partialDistanceBlock(final double[] q, final double[][] rows,
+			final int from, final int to, final double[] out) {
+		for(int k = from; k < to; k++)
+			out[k - from] = getPartialDistance(q, rows[k]);
+	}
+	
+	/**
+	 * Compute the partial distance between the i<sup>th</sup> row of <tt>x</tt> and
+	 * each of rows <tt>from</tt> through <tt>to - 1</tt> of <tt>y</tt>, writing the
+	 * partial distance to the k<sup>th</sup> row of y into <tt>out[k - from]</tt>.
+	 * Otherwise, this is equal to calling
+	 * {@link #getPartialDistance(PrecomputedRowStatistics, int, PrecomputedRowStatistics, int)}
+	 * for each row.
+	 * @param x - the statistics of the query matrix
+	 * @param i - the row index in x
+	 * @param y - the statistics of the block
+	 * @param from - the first row in y, inclusive
+	 * @param to - the last row in y, exclusive
+	 * @param out - the output, of length at least <tt>to - from</tt>
+	 */
+	public default void partialDistanceBlock(final PrecomputedRowStatistics x, final int i,
+			final PrecomputedRowStatistics y, final int from, final int to, final double[] out) {
+		for(int k = from; k < to; k++)
+			out[k - from] = getPartialDistance(x, i, y, k);
+	}
+	
 	/**
 	 * Convert the partial distance to the full distance
 	 * @param a
@@ -41,6 +41,11 @@ public class MinkowskiDistance implements DistanceMetric {
 	
 	@Override
 	public double getPartialDistance(final double[] a, final double[] b) {
+		return getPartialDistance(a, b, Double.POSITIVE_INFINITY);
+	}
+	
+	@Override
+	public double getPartialDistance(final double[] a, final double[] b, final double upperBound) {
 		VecUtils.checkDims(a,b);
 		
 		double sum = 0;
@@ -48,6 +53,9 @@ public class MinkowskiDistance implements DistanceMetric {
 			// Don't use math.abs -- too expensive
 			double diff = a[i] - b[i];
 			sum += FastMath.pow(FastMath.abs(diff), p);
+			
+			if(sum > upperBound)
+				return sum;
 		}
 		
 		return sum;
@@ -15,79 +15,936 @@
  *******************************************************************************/
 package com.clust4j.metrics.pairwise;
 
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import org.apache.commons.math3.exception.DimensionMismatchException;
 import org.apache.commons.math3.linear.AbstractRealMatrix;
+import org.apache.commons.math3.util.FastMath;
+
+import com.clust4j.GlobalState;
+import com.clust4j.kernel.Kernel;
+import com.clust4j.metrics.pairwise.CondensedDistanceMatrix.Storage;
+import com.clust4j.utils.MatUtils;
+import com.clust4j.utils.VecUtils;
 
+/**
+ * Computes pairwise distance and similarity matrices. The matrix is
+ * computed in square tiles of rows small enough to stay resident in
+ * cache while they are being processed, and for larger matrices the
+ * tiles are distributed over the global {@link ForkJoinPool}.
+ *
+ * <p>
+ * For {@link Distance#EUCLIDEAN} and {@link Similarity#COSINE}, the row norms
+ * are computed once, and each pair then costs a single inner product via the expansion
+ * <tt>||a - b||<sup>2</sup> = ||a||<sup>2</sup> + ||b||<sup>2</sup> - 2a&middot;b</tt>.
+ * {@link Kernel}s are handed the {@link PrecomputedRowStatistics} of the matrix
+ * such that those defined over the Hilbert space projection need not recompute the
+ * norms for each pair. The binary distances (see {@link Distance#binaryDistances()})
+ * operate over a {@link BitPackedMatrix} copy of the rows. All other metrics are
+ * handed a row and a block of columns at a time via
+ * {@link GeometricallySeparable#distanceBlock(double[], double[][], int, int, double[])}.
+ *
+ * <p>
+ * Callers that only need a reduction over each row of a distance matrix can
+ * instead stream the cross-distances in blocks of rows to a {@link BlockConsumer}
+ * via {@link #cdistChunked(double[][], double[][], GeometricallySeparable, int, BlockConsumer)},
+ * such that the full matrix is never materialized.
+ *
+ * @author Taylor G Smith
+ */
 public abstract class Pairwise {
+	/** The approximate number of bytes two tiles of rows should occupy */
+	static final int TILE_BYTES = 1 << 17;
+	static final int MIN_TILE_ROWS = 8;
+	static final int MAX_TILE_ROWS = 256;
+	/** The approximate number of bytes in each block of a streamed cross-distance computation */
+	public static final int BLOCK_BYTES = 1 << 22;
+
+	/**
+	 * If a norm-expanded squared Euclidean distance is smaller than this
+	 * fraction of the sum of the squared norms, too many significant digits
+	 * have cancelled out and the distance is recomputed directly.
+	 */
+	static final double EXPANSION_RTOL = 1e-3;
+
+
+
 	public static double[][] getDistance(AbstractRealMatrix a,
 			GeometricallySeparable geo,
 			boolean upperTriang, boolean partial) {
 		return getDistance(a.getData(), geo, upperTriang, partial);
 	}
-	
-	public static double[][] getDistance(double[][] a, 
-			GeometricallySeparable geo, 
+
+	public static double[][] getDistance(double[][] a,
+			GeometricallySeparable geo,
 			boolean upperTriang, boolean partial) {
-		
-		return pairwise(a, geo, upperTriang, partial, 1.0);
+
+		return getDistance(a, geo, upperTriang, partial, autoParallel(a.length));
+	}
+
+	/**
+	 * Compute the distance matrix, explicitly determining whether
+	 * the tiles should be computed in parallel
+	 * @param a
+	 * @param geo
+	 * @param upperTriang - whether to only populate the upper triangular portion
+	 * @param partial - whether to compute the partial distance
+	 * @param parallel - whether to distribute the tiles over the ForkJoinPool
+	 * @return the distance matrix
+	 */
+	public static double[][] getDistance(double[][] a,
+			GeometricallySeparable geo,
+			boolean upperTriang, boolean partial, boolean parallel) {
+
+		return pairwise(a, geo, upperTriang, partial, 1.0, parallel);
 	}
-	
+
 	public static double[][] getSimilarity(AbstractRealMatrix a,
 			GeometricallySeparable geo,
 			boolean upperTriang, boolean partial) {
 		return getSimilarity(a.getData(), geo, upperTriang, partial);
 	}
-	
-	public static double[][] getSimilarity(double[][] a, 
-			GeometricallySeparable geo, 
+
+	public static double[][] getSimilarity(double[][] a,
+			GeometricallySeparable geo,
 			boolean upperTriang, boolean partial) {
 
-		return pairwise(a, geo, upperTriang, partial, -1.0);
+		return getSimilarity(a, geo, upperTriang, partial, autoParallel(a.length));
 	}
-	
+
+	/**
+	 * Compute the similarity matrix, explicitly determining whether
+	 * the tiles should be computed in parallel
+	 * @param a
+	 * @param geo
+	 * @param upperTriang - whether to only populate the upper triangular portion
+	 * @param partial - whether to compute the partial similarity
+	 * @param parallel - whether to distribute the tiles over the ForkJoinPool
+	 * @return the similarity matrix
+	 */
+	public static double[][] getSimilarity(double[][] a,
+			GeometricallySeparable geo,
+			boolean upperTriang, boolean partial, boolean parallel) {
+
+		return pairwise(a, geo, upperTriang, partial, -1.0, parallel);
+	}
+
+	/**
+	 * Whether a matrix of m rows is large enough to warrant
+	 * a parallel computation, given the {@link GlobalState}
+	 * @param m
+	 * @return whether to compute in parallel
+	 */
+	static boolean autoParallel(final int m) {
+		return autoParallel((long)m * (long)m);
+	}
+
+	static boolean autoParallel(final long elements) {
+		return GlobalState.ParallelismConf.PARALLELISM_ALLOWED
+			&& elements > GlobalState.ParallelismConf.MIN_ELEMENTS;
+	}
+
+	/**
+	 * The number of rows in a tile, such that two tiles of
+	 * rows of length n will fit in roughly {@value #TILE_BYTES} bytes
+	 * @param n
+	 * @return the tile size
+	 */
+	static int tileSize(final int n) {
+		final int rows = TILE_BYTES / (16 * FastMath.max(n, 1));
+		return FastMath.max(MIN_TILE_ROWS, FastMath.min(MAX_TILE_ROWS, rows));
+	}
+
 	private static double[][] pairwise(double[][] a,
 			GeometricallySeparable geo,
-			boolean upper, boolean partial, double scalar) {
-		
-		/*
-		 * Don't need to check dims, because that happens in each
-		 * getDistance call. Any non-uniformity should be handled 
-		 * there.
-		 */
-		
+			boolean upper, boolean partial, double scalar,
+			boolean parallel) {
+
 		final int m = a.length;
 		final double[][] out = new double[m][m];
-		double dist;
-		
-		/*
-		 * First loop: O(M choose 2). Do computations
-		 */
-		for(int i = 0; i < m - 1; i++) {
-			for(int j = i + 1; j < m; j++) {
-				
-				dist = scalar * (partial ? 
-					geo.getPartialDistance(a[i], a[j]) : 
-						geo.getDistance(a[i], a[j]));
-				out[i][j] = dist;
-				
-				// We want the full matrix
-				if(!upper) {
-					out[j][i] = dist;
-				}
-			}
-		}
-		
+		compute(a, geo, partial, scalar, parallel, new DenseSink(out, upper));
+
 		/*
 		 *  If we want the full matrix, we need to compute the diagonal...
 		 *  O(M) -- just the diagonal elements
 		 */
 		if(!upper) {
 			for(int i = 0; i < m; i++) {
-				out[i][i] = scalar * (partial ? 
-					geo.getPartialDistance(a[i], a[i]) : 
+				out[i][i] = scalar * (partial ?
+					geo.getPartialDistance(a[i], a[i]) :
 						geo.getDistance(a[i], a[i]));
 			}
 		}
-		
+
 		return out;
 	}
+
+
+
+	public static CondensedDistanceMatrix getCondensedDistance(AbstractRealMatrix a,
+			GeometricallySeparable geo,
+			boolean diagonal, boolean partial) {
+		return getCondensedDistance(a.getData(), geo, diagonal, partial);
+	}
+
+	/**
+	 * Compute the distance matrix in its condensed form, which requires roughly
+	 * half the memory of the square matrix returned by
+	 * {@link #getDistance(double[][], GeometricallySeparable, boolean, boolean)}
+	 * @param a
+	 * @param geo
+	 * @param diagonal - whether to compute the diagonal; if false, it is left as zeros
+	 * @param partial - whether to compute the partial distance
+	 * @return the condensed distance matrix
+	 */
+	public static CondensedDistanceMatrix getCondensedDistance(double[][] a,
+			GeometricallySeparable geo,
+			boolean diagonal, boolean partial) {
+
+		return getCondensedDistance(a, geo, diagonal, partial, autoParallel(a.length));
+	}
+
+	/**
+	 * Compute the condensed distance matrix, explicitly determining
+	 * whether the tiles should be computed in parallel
+	 * @param a
+	 * @param geo
+	 * @param diagonal - whether to compute the diagonal; if false, it is left as zeros
+	 * @param partial - whether to compute the partial distance
+	 * @param parallel - whether to distribute the tiles over the ForkJoinPool
+	 * @return the condensed distance matrix
+	 */
+	public static CondensedDistanceMatrix getCondensedDistance(double[][] a,
+			GeometricallySeparable geo,
+			boolean diagonal, boolean partial, boolean parallel) {
+
+		return getCondensedDistance(a, geo, diagonal, partial, parallel, Storage.HEAP);
+	}
+
+	/**
+	 * Compute the condensed distance matrix into the given storage
+	 * @param a
+	 * @param geo
+	 * @param diagonal - whether to compute the diagonal; if false, it is left as zeros
+	 * @param partial - whether to compute the partial distance
+	 * @param storage - where the matrix should be kept
+	 * @return the condensed distance matrix
+	 */
+	public static CondensedDistanceMatrix getCondensedDistance(double[][] a,
+			GeometricallySeparable geo,
+			boolean diagonal, boolean partial, Storage storage) {
+
+		return getCondensedDistance(a, geo, diagonal, partial, autoParallel(a.length), storage);
+	}
+
+	public static CondensedDistanceMatrix getCondensedDistance(double[][] a,
+			GeometricallySeparable geo,
+			boolean diagonal, boolean partial, boolean parallel, Storage storage) {
+
+		return condensed(a, geo, diagonal, partial, 1.0, parallel, storage);
+	}
+
+	public static CondensedDistanceMatrix getCondensedSimilarity(AbstractRealMatrix a,
+			GeometricallySeparable geo,
+			boolean diagonal, boolean partial) {
+		return getCondensedSimilarity(a.getData(), geo, diagonal, partial);
+	}
+
+	public static CondensedDistanceMatrix getCondensedSimilarity(double[][] a,
+			GeometricallySeparable geo,
+			boolean diagonal, boolean partial) {
+
+		return getCondensedSimilarity(a, geo, diagonal, partial, autoParallel(a.length));
+	}
+
+	public static CondensedDistanceMatrix getCondensedSimilarity(double[][] a,
+			GeometricallySeparable geo,
+			boolean diagonal, boolean partial, boolean parallel) {
+
+		return getCondensedSimilarity(a, geo, diagonal, partial, parallel, Storage.HEAP);
+	}
+
+	public static CondensedDistanceMatrix getCondensedSimilarity(double[][] a,
+			GeometricallySeparable geo,
+			boolean diagonal, boolean partial, Storage storage) {
+
+		return getCondensedSimilarity(a, geo, diagonal, partial, autoParallel(a.length), storage);
+	}
+
+	public static CondensedDistanceMatrix getCondensedSimilarity(double[][] a,
+			GeometricallySeparable geo,
+			boolean diagonal, boolean partial, boolean parallel, Storage storage) {
+
+		return condensed(a, geo, diagonal, partial, -1.0, parallel, storage);
+	}
+
+	private static CondensedDistanceMatrix condensed(double[][] a,
+			GeometricallySeparable geo,
+			boolean diagonal, boolean partial, double scalar,
+			boolean parallel, Storage storage) {
+
+		final int m = a.length;
+		final CondensedDistanceMatrix out = new CondensedDistanceMatrix(m, storage);
+		compute(a, geo, partial, scalar, parallel, new CondensedSink(out));
+
+		if(diagonal) {
+			for(int i = 0; i < m; i++) {
+				out.setDiagonal(i, scalar * (partial ?
+					geo.getPartialDistance(a[i], a[i]) :
+						geo.getDistance(a[i], a[i])));
+			}
+		}
+
+		return out;
+	}
+
+	/**
+	 * Receives the row blocks of a streamed cross-distance computation
+	 * (see {@link Pairwise#cdistChunked(double[][], double[][], GeometricallySeparable, int, BlockConsumer)}).
+	 * When the blocks are computed in parallel, the consumer is called concurrently,
+	 * but each call covers a disjoint range of rows.
+	 * @author Taylor G Smith
+	 */
+	public static interface BlockConsumer {
+		/**
+		 * Receive the distances between rows <tt>[rowStart, rowStart + rows)</tt>
+		 * of A and every row of B, where the distance between row i of A and row j
+		 * of B is at <tt>block[(i - rowStart) * B.length + j]</tt>. The buffer is
+		 * reused for the next block once this method returns, so it must not be retained.
+		 * @param rowStart - the index in A of the first row in the block
+		 * @param rows - the number of rows in the block
+		 * @param block - the distances
+		 */
+		public void accept(int rowStart, int rows, double[] block);
+	}
+
+	/**
+	 * The number of rows per block such that a block of distances
+	 * to mb rows occupies roughly {@value #BLOCK_BYTES} bytes
+	 * @param mb - the number of rows in B
+	 * @return the number of rows per block
+	 */
+	public static int defaultBlockRows(final int mb) {
+		return FastMath.max(1, BLOCK_BYTES / (8 * FastMath.max(mb, 1)));
+	}
+
+	public static void cdistChunked(double[][] A, double[][] B,
+			GeometricallySeparable geo, BlockConsumer consumer) {
+
+		cdistChunked(A, B, geo, defaultBlockRows(B.length), consumer);
+	}
+
+	/**
+	 * Compute the distances between each row of A and each row of B, handing
+	 * them to the consumer in blocks of <tt>blockRows</tt> rows of A rather than
+	 * materializing the <tt>|A| x |B|</tt> matrix. The block buffers are reused,
+	 * such that peak memory is on the order of <tt>blockRows x |B|</tt> per thread.
+	 * This is ideal for callers that only need a reduction over each row, e.g., its
+	 * minimum or its sum.
+	 * @param A
+	 * @param B
+	 * @param geo
+	 * @param blockRows - the number of rows of A in each block
+	 * @param consumer
+	 * @throws IllegalArgumentException if blockRows is not positive or either matrix is empty
+	 * @throws DimensionMismatchException if the column dimensions differ
+	 */
+	public static void cdistChunked(double[][] A, double[][] B,
+			GeometricallySeparable geo, int blockRows, BlockConsumer consumer) {
+
+		cdistChunked(A, B, geo, false, blockRows,
+			autoParallel((long)A.length * (long)B.length), consumer);
+	}
+
+	/**
+	 * Stream the cross-distance blocks, explicitly determining whether the
+	 * (partial) distance is computed and whether the blocks are computed in parallel
+	 * @param A
+	 * @param B
+	 * @param geo
+	 * @param partial - whether to compute the partial distance
+	 * @param blockRows - the number of rows of A in each block
+	 * @param parallel - whether to distribute the blocks over the ForkJoinPool
+	 * @param consumer
+	 */
+	public static void cdistChunked(double[][] A, double[][] B,
+			GeometricallySeparable geo, boolean partial, int blockRows,
+			boolean parallel, BlockConsumer consumer) {
+
+		if(blockRows < 1)
+			throw new IllegalArgumentException("blockRows must be positive");
+		MatUtils.checkDims(A);
+		MatUtils.checkDims(B);
+
+		/*
+		 * The kernels only compute j > i when A and B are the same matrix. A
+		 * distinct outer array (sharing the same rows) gets the full rows.
+		 */
+		final double[][] b = A == B ? B.clone() : B;
+		final BlockKernel kernel = BlockKernel.of(A, b, geo, partial, 1.0);
+		final int numBlocks = (A.length + blockRows - 1) / blockRows;
+
+		if(parallel) {
+			// one buffer per worker rather than per block
+			final int perTask = FastMath.max(1,
+				(numBlocks + getThreadPool().getParallelism() - 1) / getThreadPool().getParallelism());
+			getThreadPool().invoke(
+				new ParallelCdistTask(kernel, consumer, blockRows, perTask, 0, numBlocks));
+		} else {
+			cdistBlocks(kernel, consumer, blockRows, 0, numBlocks);
+		}
+	}
+
+	/**
+	 * Compute the blocks in [lo, hi), reusing one block buffer
+	 * and one tile buffer across all of them
+	 */
+	static void cdistBlocks(final BlockKernel kernel, final BlockConsumer consumer,
+			final int blockRows, final int lo, final int hi) {
+
+		final int ma = kernel.a.length, mb = kernel.b.length;
+		final int tile = tileSize(kernel.a[0].length);
+		final double[] block = new double[FastMath.min(blockRows, ma) * mb];
+		final double[] buf = new double[tile * tile];
+
+		for(int t = lo; t < hi; t++) {
+			final int r0 = t * blockRows, r1 = FastMath.min(ma, r0 + blockRows);
+
+			// compute the block in cache-sized tiles
+			for(int i0 = r0; i0 < r1; i0 += tile) {
+				final int i1 = FastMath.min(r1, i0 + tile);
+				for(int j0 = 0; j0 < mb; j0 += tile) {
+					final int j1 = FastMath.min(mb, j0 + tile), w = j1 - j0;
+					kernel.block(i0, i1, j0, j1, buf);
+
+					for(int i = i0; i < i1; i++)
+						System.arraycopy(buf, (i - i0) * w, block, (i - r0) * mb + j0, w);
+				}
+			}
+
+			consumer.accept(r0, r1 - r0, block);
+		}
+	}
+
+	/**
+	 * Compute all the off-diagonal pairs (i, j), j &gt; i, in tiles
+	 * and hand them to the sink. The diagonal is left to the caller.
+	 * @param a
+	 * @param geo
+	 * @param partial
+	 * @param scalar
+	 * @param parallel
+	 * @param sink
+	 */
+	private static void compute(double[][] a,
+			GeometricallySeparable geo,
+			boolean partial, double scalar,
+			boolean parallel, TileSink sink) {
+
+		final int m = a.length;
+		if(m < 2)
+			return;
+
+		/*
+		 * Dims are checked in the kernel for metrics that have
+		 * a specialized implementation, and in each getDistance
+		 * call otherwise. Any non-uniformity is handled there.
+		 */
+		final BlockKernel kernel = BlockKernel.of(a, a, geo, partial, scalar);
+		final int tile = tileSize(a[0].length);
+		final int numTiles = (m + tile - 1) / tile;
+
+		/*
+		 * Compute each row of tiles -- O(M choose 2)
+		 */
+		if(parallel) {
+			getThreadPool().invoke(
+				new ParallelPairwiseTask(kernel, sink, m, tile, 0, numTiles));
+		} else {
+			final double[] buf = new double[tile * tile];
+			for(int t = 0; t < numTiles; t++)
+				tileRow(kernel, sink, m, tile, t, buf);
+		}
+	}
+
+	/**
+	 * Compute all tiles in the t<sup>th</sup> row of tiles on or to
+	 * the right of the diagonal, and hand them to the sink
+	 * @param kernel
+	 * @param sink
+	 * @param m - the number of rows
+	 * @param tile
+	 * @param t
+	 * @param buf - a scratch buffer of length tile * tile
+	 */
+	static void tileRow(final BlockKernel kernel, final TileSink sink,
+			final int m, final int tile, final int t, final double[] buf) {
+
+		final int i0 = t * tile, i1 = FastMath.min(m, i0 + tile);
+
+		for(int j0 = i0; j0 < m; j0 += tile) {
+			final int j1 = FastMath.min(m, j0 + tile), w = j1 - j0;
+			kernel.block(i0, i1, j0, j1, buf);
+
+			for(int i = i0; i < i1; i++) {
+				// only the diagonal tiles have j <= i
+				final int from = FastMath.max(j0, i + 1);
+				if(from < j1)
+					sink.store(i, from, buf, (i - i0) * w + (from - j0), j1 - from);
+			}
+		}
+	}
+
+	static ForkJoinPool getThreadPool() {
+		return GlobalState.ParallelismConf.FJ_THREADPOOL;
+	}
+
+
+
+	/**
+	 * Receives the computed values (i, j) for j in [from, from + len).
+	 * Each row of tiles writes to a disjoint set of cells, so
+	 * implementations need not synchronize.
+	 * @author Taylor G Smith
+	 */
+	abstract static class TileSink {
+		abstract void store(int i, int from, double[] buf, int off, int len);
+	}
+
+	static class DenseSink extends TileSink {
+		final double[][] out;
+		final boolean upper;
+
+		DenseSink(double[][] out, boolean upper) {
+			this.out = out;
+			this.upper = upper;
+		}
+
+		@Override
+		void store(int i, int from, double[] buf, int off, int len) {
+			System.arraycopy(buf, off, out[i], from, len);
+
+			// We want the full matrix
+			if(!upper) {
+				for(int k = 0; k < len; k++)
+					out[from + k][i] = buf[off + k];
+			}
+		}
+	}
+
+	static class CondensedSink extends TileSink {
+		final CondensedDistanceMatrix out;
+		final int m;
+
+		CondensedSink(CondensedDistanceMatrix out) {
+			this.out = out;
+			this.m = out.getRowDimension();
+		}
+
+		@Override
+		void store(int i, int from, double[] buf, int off, int len) {
+			// (i, from)...(i, from + len - 1) are contiguous in the condensed form
+			out.setRange(CondensedDistanceMatrix.index(m, i, from), buf, off, len);
+		}
+	}
+
+
+
+	/**
+	 * Recursively splits the rows of tiles and computes each in parallel.
+	 * Each row of tiles writes to a disjoint set of cells in the output.
+	 * @author Taylor G Smith
+	 */
+	static class ParallelPairwiseTask extends RecursiveTask<Void> {
+		private static final long serialVersionUID = -2880931283786569313L;
+		final BlockKernel kernel;
+		final TileSink sink;
+		final int m, tile, lo, hi;
+
+		ParallelPairwiseTask(BlockKernel kernel, TileSink sink, int m, int tile, int lo, int hi) {
+			this.kernel = kernel;
+			this.sink = sink;
+			this.m = m;
+			this.tile = tile;
+			this.lo = lo;
+			this.hi = hi;
+		}
+
+		@Override
+		protected Void compute() {
+			if(hi - lo <= 1) {
+				tileRow(kernel, sink, m, tile, lo, new double[tile * tile]);
+			} else {
+				int mid = lo + (hi - lo) / 2;
+				ParallelPairwiseTask left  = new ParallelPairwiseTask(kernel, sink, m, tile, lo, mid);
+				ParallelPairwiseTask right = new ParallelPairwiseTask(kernel, sink, m, tile, mid, hi);
+
+				left.fork();
+				right.compute();
+				left.join();
+			}
+
+			return null;
+		}
+	}
+
+
+
+	/**
+	 * Recursively splits the blocks of a streamed cross-distance
+	 * computation, each leaf reusing its buffers across its blocks
+	 * @author Taylor G Smith
+	 */
+	static class ParallelCdistTask extends RecursiveTask<Void> {
+		private static final long serialVersionUID = 6393744390425387318L;
+		final BlockKernel kernel;
+		final BlockConsumer consumer;
+		final int blockRows, perTask, lo, hi;
+
+		ParallelCdistTask(BlockKernel kernel, BlockConsumer consumer, int blockRows, int perTask, int lo, int hi) {
+			this.kernel = kernel;
+			this.consumer = consumer;
+			this.blockRows = blockRows;
+			this.perTask = perTask;
+			this.lo = lo;
+			this.hi = hi;
+		}
+
+		@Override
+		protected Void compute() {
+			if(hi - lo <= perTask) {
+				cdistBlocks(kernel, consumer, blockRows, lo, hi);
+			} else {
+				int mid = lo + (hi - lo) / 2;
+				ParallelCdistTask left  = new ParallelCdistTask(kernel, consumer, blockRows, perTask, lo, mid);
+				ParallelCdistTask right = new ParallelCdistTask(kernel, consumer, blockRows, perTask, mid, hi);
+
+				left.fork();
+				right.compute();
+				left.join();
+			}
+
+			return null;
+		}
+	}
+
+
+
+	/**
+	 * Computes a rectangular block of pairwise values between rows of
+	 * <tt>a</tt> and rows of <tt>b</tt>. Implementations must be safe
+	 * for concurrent use from multiple threads.
+	 * @author Taylor G Smith
+	 */
+	abstract static class BlockKernel {
+		final double[][] a, b;
+		final double scalar;
+		/** Whether a and b are the same matrix, in which case only j &gt; i is needed */
+		final boolean symmetric;
+
+		BlockKernel(double[][] a, double[][] b, double scalar) {
+			this.a = a;
+			this.b = b;
+			this.scalar = scalar;
+			this.symmetric = a == b;
+		}
+
+		/**
+		 * Select the kernel for the metric
+		 * @param a
+		 * @param b
+		 * @param geo
+		 * @param partial
+		 * @param scalar - 1.0 for distances, -1.0 for similarities
+		 * @return the kernel
+		 */
+		static BlockKernel of(double[][] a, double[][] b,
+				GeometricallySeparable geo, boolean partial, double scalar) {
+
+			if(Distance.EUCLIDEAN.equals(geo))
+				return new EuclideanKernel(a, b, partial, scalar);
+			else if(Similarity.COSINE.equals(geo))
+				return new CosineKernel(a, b, scalar);
+			else if(geo instanceof Kernel)
+				return new RowStatisticsKernel(a, b, geo, partial, scalar);
+			else if(BinaryKernel.accepts(a, b, geo))
+				return new BinaryKernel(a, b, (Distance)geo, partial, scalar);
+			return new GenericKernel(a, b, geo, partial, scalar);
+		}
+
+		/**
+		 * Populate <tt>out[(i - i0) * (j1 - j0) + (j - j0)]</tt>
+		 * for each i in [i0, i1) and j in [j0, j1). If the kernel is
+		 * symmetric, cells where j &lt;= i are not guaranteed to be populated.
+		 */
+		abstract void block(int i0, int i1, int j0, int j1, double[] out);
+
+		/**
+		 * The first column in [j0, j1) that needs computing for row i
+		 */
+		final int firstCol(int i, int i0, int j0) {
+			return symmetric && i0 == j0 ? i + 1 : j0;
+		}
+
+		/**
+		 * Compute the row statistics of <tt>b</tt>, reusing those of
+		 * <tt>a</tt> if the kernel is symmetric
+		 */
+		static PrecomputedRowStatistics statistics(final double[][] b, final PrecomputedRowStatistics sa) {
+			if(sa.data == b)
+				return sa;
+
+			final PrecomputedRowStatistics sb = new PrecomputedRowStatistics(b);
+			VecUtils.checkDims(b[0], sa.data[0]);
+			return sb;
+		}
+
+		/**
+		 * Computes the inner products for a block, keeping two rows from
+		 * each side in registers such that each load is used twice. The
+		 * order of summation is identical to {@link VecUtils#innerProduct(double[], double[])}.
+		 */
+		final void dotBlock(int i0, int i1, int j0, int j1, double[] out) {
+			final int w = j1 - j0, n = a[i0].length;
+
+			int i = i0;
+			for(; i + 1 < i1; i += 2) {
+				final double[] a0 = a[i], a1 = a[i + 1];
+				final int r0 = (i - i0) * w - j0, r1 = r0 + w;
+
+				// on diagonal tiles, start at the diagonal to keep the pairs aligned
+				int j = symmetric && i0 == j0 ? i : j0;
+				for(; j + 1 < j1; j += 2) {
+					final double[] b0 = b[j], b1 = b[j + 1];
+					double s00 = 0, s01 = 0, s10 = 0, s11 = 0;
+					for(int k = 0; k < n; k++) {
+						final double x0 = a0[k], x1 = a1[k], y0 = b0[k], y1 = b1[k];
+						s00 += x0 * y0;
+						s01 += x0 * y1;
+						s10 += x1 * y0;
+						s11 += x1 * y1;
+					}
+
+					out[r0 + j] = s00;
+					out[r0 + j + 1] = s01;
+					out[r1 + j] = s10;
+					out[r1 + j + 1] = s11;
+				}
+
+				// odd column out
+				if(j < j1) {
+					final double[] b0 = b[j];
+					double s00 = 0, s10 = 0;
+					for(int k = 0; k < n; k++) {
+						s00 += a0[k] * b0[k];
+						s10 += a1[k] * b0[k];
+					}
+
+					out[r0 + j] = s00;
+					out[r1 + j] = s10;
+				}
+			}
+
+			// odd row out
+			if(i < i1) {
+				final double[] a0 = a[i];
+				final int r0 = (i - i0) * w - j0;
+				for(int j = firstCol(i, i0, j0); j < j1; j++) {
+					final double[] b0 = b[j];
+					double s = 0;
+					for(int k = 0; k < n; k++)
+						s += a0[k] * b0[k];
+					out[r0 + j] = s;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Computes (squared) Euclidean distances from precomputed squared
+	 * row norms and blocked inner products.
+	 * @author Taylor G Smith
+	 */
+	static class EuclideanKernel extends BlockKernel {
+		final double[] sqA, sqB;
+		final boolean partial;
+
+		EuclideanKernel(double[][] a, double[][] b, boolean partial, double scalar) {
+			super(a, b, scalar);
+			this.partial = partial;
+			final PrecomputedRowStatistics sa = new PrecomputedRowStatistics(a);
+			this.sqA = sa.squaredNorms;
+			this.sqB = statistics(b, sa).squaredNorms;
+		}
+
+		@Override
+		void block(int i0, int i1, int j0, int j1, double[] out) {
+			dotBlock(i0, i1, j0, j1, out);
+
+			final int w = j1 - j0;
+			for(int i = i0; i < i1; i++) {
+				final int row = (i - i0) * w - j0;
+
+				for(int j = firstCol(i, i0, j0); j < j1; j++) {
+					final double norms = sqA[i] + sqB[j];
+					double d2 = norms - 2.0 * out[row + j];
+
+					// Guard against catastrophic cancellation for near points
+					if(d2 < EXPANSION_RTOL * norms)
+						d2 = Distance.EUCLIDEAN.getPartialDistance(a[i], b[j]);
+
+					out[row + j] = scalar * (partial ? d2 : FastMath.sqrt(d2));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Computes cosine similarity from precomputed row
+	 * norms and blocked inner products.
+	 * @author Taylor G Smith
+	 */
+	static class CosineKernel extends BlockKernel {
+		final double[] normA, normB;
+
+		CosineKernel(double[][] a, double[][] b, double scalar) {
+			super(a, b, scalar);
+			final PrecomputedRowStatistics sa = new PrecomputedRowStatistics(a);
+			this.normA = sa.norms;
+			this.normB = statistics(b, sa).norms;
+		}
+
+		@Override
+		void block(int i0, int i1, int j0, int j1, double[] out) {
+			dotBlock(i0, i1, j0, j1, out);
+
+			final int w = j1 - j0;
+			for(int i = i0; i < i1; i++) {
+				final int row = (i - i0) * w - j0;
+
+				// the cosine distance is the negative similarity
+				for(int j = firstCol(i, i0, j0); j < j1; j++)
+					out[row + j] = -scalar * (out[row + j] / (normA[i] * normB[j]));
+			}
+		}
+	}
+
+	/**
+	 * Calls the metric per pair with the precomputed row statistics, such
+	 * that kernels which are a function of the Hilbert space projection
+	 * need only compute one inner product per pair rather than three.
+	 * @author Taylor G Smith
+	 */
+	static class RowStatisticsKernel extends BlockKernel {
+		final GeometricallySeparable geo;
+		final PrecomputedRowStatistics sa, sb;
+		final boolean partial;
+
+		RowStatisticsKernel(double[][] a, double[][] b, GeometricallySeparable geo, boolean partial, double scalar) {
+			super(a, b, scalar);
+			this.geo = geo;
+			this.partial = partial;
+			this.sa = new PrecomputedRowStatistics(a);
+			this.sb = statistics(b, sa);
+		}
+
+		@Override
+		void block(int i0, int i1, int j0, int j1, double[] out) {
+			final int w = j1 - j0;
+			final double[] buf = new double[w];
+			for(int i = i0; i < i1; i++) {
+				final int row = (i - i0) * w - j0;
+				final int first = firstCol(i, i0, j0);
+				if(first >= j1)
+					continue;
+
+				geo.partialDistanceBlock(sa, i, sb, first, j1, buf);
+				for(int j = first; j < j1; j++) {
+					final double d = buf[j - first];
+					out[row + j] = scalar * (partial ? d : geo.partialDistanceToDistance(d));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Computes binary distances over bit-packed copies of the rows,
+	 * counting 64 features at a time rather than comparing doubles
+	 * @author Taylor G Smith
+	 */
+	static class BinaryKernel extends BlockKernel {
+		final Distance geo;
+		final BitPackedMatrix pa, pb;
+		final boolean partial;
+
+		BinaryKernel(double[][] a, double[][] b, Distance geo, boolean partial, double scalar) {
+			super(a, b, scalar);
+			this.geo = geo;
+			this.partial = partial;
+			this.pa = new BitPackedMatrix(a);
+			this.pb = a == b ? pa : new BitPackedMatrix(b);
+		}
+
+		/**
+		 * Packing treats any non-zero value as true, just as the boolean
+		 * metrics do. {@link Distance#HAMMING} compares the values themselves,
+		 * so it can only be packed if the matrices consist of 0s and 1s.
+		 */
+		static boolean accepts(double[][] a, double[][] b, GeometricallySeparable geo) {
+			if(!(geo instanceof Distance) || !((Distance)geo).isBinaryDistance())
+				return false;
+			return !Distance.HAMMING.equals(geo) ||
+				(BitPackedMatrix.isBinary(a) && (a == b || BitPackedMatrix.isBinary(b)));
+		}
+
+		@Override
+		void block(int i0, int i1, int j0, int j1, double[] out) {
+			final int w = j1 - j0;
+			for(int i = i0; i < i1; i++) {
+				final int row = (i - i0) * w - j0;
+
+				for(int j = firstCol(i, i0, j0); j < j1; j++) {
+					final double d = geo.getPartialDistance(pa, i, pb, j);
+					out[row + j] = scalar * (partial ? d : geo.partialDistanceToDistance(d));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Falls back to a call to the metric per pair
+	 * @author Taylor G Smith
+	 */
+	static class GenericKernel extends BlockKernel {
+		final GeometricallySeparable geo;
+		final boolean partial;
+
+		GenericKernel(double[][] a, double[][] b, GeometricallySeparable geo, boolean partial, double scalar) {
+			super(a, b, scalar);
+			this.geo = geo;
+			this.partial = partial;
+		}
+
+		@Override
+		void block(int i0, int i1, int j0, int j1, double[] out) {
+			final int w = j1 - j0;
+			final double[] buf = new double[w];
+			for(int i = i0; i < i1; i++) {
+				final int row = (i - i0) * w - j0;
+				final int first = firstCol(i, i0, j0);
+				if(first >= j1)
+					continue;
+
+				// One virtual call per row rather than per pair
+				if(partial)
+					geo.partialDistanceBlock(a[i], b, first, j1, buf);
+				else
+					geo.distanceBlock(a[i], b, first, j1, buf);
+
+				for(int j = first; j < j1; j++)
+					out[row + j] = scalar * buf[j - first];
+			}
+		}
+	}
 }
@@ -0,0 +1,518 @@
+/*******************************************************************************
+ *    Copyright 2015, 2016 Taylor G Smith
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *******************************************************************************/
+package com.clust4j.metrics.pairwise;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.clust4j.metrics.pairwise.CondensedDistanceMatrix.Storage;
+
+/**
+ * Serves the pairwise distances between the rows of a matrix by their
+ * row indices, so algorithms that repeatedly revisit the same pairs (for
+ * instance, the medoid swaps of {@link com.clust4j.algo.KMedoids}) need not
+ * recompute them. This is especially worthwhile for a {@link com.clust4j.kernel.Kernel},
+ * whose values are expensive to compute; for kernels, the cached distances
+ * are the negated entries of the Gram matrix.
+ *
+ * <p>
+ * If the full {@link CondensedDistanceMatrix} fits in the memory budget,
+ * it is computed up front. Otherwise, as in libsvm, a bounded number of
+ * full rows are computed on demand and kept in least-recently-used order,
+ * so the memory footprint is <tt>O(budget)</tt> rather than <tt>O(m<sup>2</sup>)</tt>.
+ *
+ * <p>
+ * Algorithms that only ever read a sparse subset of the pairs (for instance, the
+ * within-cluster pairs of the Voronoi iteration in {@link com.clust4j.algo.KMedoids})
+ * can instead use a {@link #lazy(double[][], GeometricallySeparable, boolean, long) lazy}
+ * cache, which computes and memoizes single entries as they are first requested, so
+ * the cost of the fit scales with the number of pairs it touches.
+ *
+ * @author Taylor G Smith
+ * @see Pairwise#getCondensedDistance(double[][], GeometricallySeparable, boolean, boolean, Storage)
+ */
+public abstract class PairwiseCache {
+	/** The cache will never hold fewer rows than this */
+	public static final int MIN_ROWS = 2;
+
+	final int m;
+	final boolean diagonal;
+
+	PairwiseCache(final int m, final boolean diagonal) {
+		this.m = m;
+		this.diagonal = diagonal;
+	}
+
+	/**
+	 * Build the cache for the rows of X, computing the full condensed matrix
+	 * if it fits in the budget, or else caching rows as they are requested
+	 * @param X
+	 * @param geo
+	 * @param diagonal - whether to compute the diagonal; if false, it is reported as zeros
+	 * @param budget - the memory budget, in bytes
+	 * @param storage - where the full matrix should be kept, if it fits in the budget
+	 * @throws IllegalArgumentException if the budget is not positive or X is empty
+	 * @return the cache
+	 */
+	public static PairwiseCache of(final double[][] X, final GeometricallySeparable geo,
+			final boolean diagonal, final long budget, final Storage storage) {
+		if(budget < 1)
+			throw new IllegalArgumentException("budget must be positive");
+		if(X.length == 0)
+			throw new IllegalArgumentException("empty matrix");
+
+		if(fullBytes(X.length, diagonal) <= budget)
+			return new Full(Pairwise.getCondensedDistance(X, geo, diagonal, false, storage), diagonal);
+		return new RowLRU(X, geo, diagonal, budget);
+	}
+
+	/**
+	 * Build a cache for the rows of X that computes each entry the first time it is
+	 * requested, holding at most as many entries as fit in the budget. The cache is
+	 * safe for concurrent use.
+	 * @param X
+	 * @param geo
+	 * @param diagonal - whether to compute the diagonal; if false, it is reported as zeros
+	 * @param budget - the memory budget, in bytes
+	 * @throws IllegalArgumentException if the budget is not positive or X is empty
+	 * @return the cache
+	 */
+	public static PairwiseCache lazy(final double[][] X, final GeometricallySeparable geo,
+			final boolean diagonal, final long budget) {
+		if(budget < 1)
+			throw new IllegalArgumentException("budget must be positive");
+		if(X.length == 0)
+			throw new IllegalArgumentException("empty matrix");
+		
+		return new Lazy(X, geo, diagonal, budget);
+	}
+
+	/**
+	 * The number of bytes the full condensed matrix of m rows requires
+	 * @param m
+	 * @param diagonal - whether the diagonal is stored as well
+	 * @return the number of bytes
+	 */
+	public static long fullBytes(final int m, final boolean diagonal) {
+		final long size = (long)m * (m - 1) / 2 + (diagonal ? m : 0);
+		return size * Double.BYTES;
+	}
+
+	/**
+	 * Get the distance between the i<sup>th</sup> and j<sup>th</sup> rows. When
+	 * neither row is held, a row cache computes the i<sup>th</sup> row, so callers
+	 * that scan many records against a few fixed ones (medoids, candidates) should
+	 * pass the fixed record as <tt>i</tt>
+	 * @param i - the record whose row is computed on a miss
+	 * @param j
+	 * @return the distance
+	 */
+	public abstract double get(final int i, final int j);
+
+	/**
+	 * Get the distances between the i<sup>th</sup> row and every row. Unlike
+	 * {@link #get(int, int)}, a row cache computes a missing row into the
+	 * provided array outside of its lock, so threads reading different rows
+	 * do not wait on one another.
+	 * @param i
+	 * @param row - an array of length m, which is overwritten
+	 * @throws IllegalArgumentException if the array is not of length m
+	 * @return row
+	 */
+	public double[] getRow(final int i, final double[] row) {
+		checkIndex(i);
+		checkRow(row);
+		for(int j = 0; j < m; j++)
+			row[j] = get(i, j);
+		return row;
+	}
+
+	/**
+	 * Whether the full matrix has been computed, as opposed
+	 * to rows being computed on demand
+	 * @return whether the full matrix is held
+	 */
+	public abstract boolean isFull();
+
+	/**
+	 * The number of rows that have been computed on demand. This is zero
+	 * for a full matrix, and otherwise is the number of cache misses.
+	 * @return the number of rows computed
+	 */
+	public abstract long getRowsComputed();
+
+	/**
+	 * The number of entries that have been computed on demand. This is zero for
+	 * a full matrix, and otherwise counts each miss of a lazy cache, or the whole
+	 * row computed by each miss of a row cache.
+	 * @return the number of entries computed
+	 */
+	public abstract long getEntriesComputed();
+
+	public int getRowDimension() {
+		return m;
+	}
+
+	final void checkIndex(final int i) {
+		if(i < 0 || i >= m)
+			throw new IndexOutOfBoundsException("row " + i + " out of bounds for " + m + " rows");
+	}
+
+	final void checkRow(final double[] row) {
+		if(row.length != m)
+			throw new IllegalArgumentException("row length must equal " + m);
+	}
+
+
+
+	/**
+	 * Wraps the full condensed matrix
+	 * @author Taylor G Smith
+	 */
+	static final class Full extends PairwiseCache {
+		final CondensedDistanceMatrix mat;
+
+		Full(final CondensedDistanceMatrix mat, final boolean diagonal) {
+			super(mat.getRowDimension(), diagonal);
+			this.mat = mat;
+		}
+
+		@Override
+		public double get(final int i, final int j) {
+			return i == j ? mat.getDiagonal(i) : mat.get(i, j);
+		}
+
+		@Override
+		public double[] getRow(final int i, final double[] row) {
+			checkIndex(i);
+			return mat.getRow(i, row);
+		}
+
+		@Override
+		public boolean isFull() {
+			return true;
+		}
+
+		@Override
+		public long getRowsComputed() {
+			return 0;
+		}
+
+		@Override
+		public long getEntriesComputed() {
+			return 0;
+		}
+	}
+
+
+
+	/**
+	 * Holds a bounded number of full rows in least-recently-used order.
+	 * Since the matrix is symmetric, the (i, j) pair may be served from either
+	 * the i<sup>th</sup> or the j<sup>th</sup> row.
+	 * @author Taylor G Smith
+	 */
+	static final class RowLRU extends PairwiseCache {
+		final Pairwise.BlockKernel kernel;
+		final int capacity;
+		final LinkedHashMap<Integer, double[]> rows;
+		/** An evicted row whose array can be reused by the next miss */
+		private double[] spare = null;
+		private long computed = 0;
+
+		RowLRU(final double[][] X, final GeometricallySeparable geo, final boolean diagonal, final long budget) {
+			super(X.length, diagonal);
+
+			// Not symmetric, so the kernel computes full rows
+			this.kernel = Pairwise.BlockKernel.of(X, X.clone(), geo, false, 1.0);
+			this.capacity = (int)Math.min(m, Math.max(MIN_ROWS, budget / ((long)m * Double.BYTES)));
+			this.rows = new LinkedHashMap<Integer, double[]>(16, 0.75f, true) {
+				private static final long serialVersionUID = -1604585371766314562L;
+
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<Integer, double[]> eldest) {
+					if(size() > capacity) {
+						spare = eldest.getValue();
+						return true;
+					}
+					return false;
+				}
+			};
+		}
+
+		@Override
+		public synchronized double get(final int i, final int j) {
+			checkIndex(i);
+			checkIndex(j);
+			if(i == j && !diagonal)
+				return 0.0;
+
+			double[] row = rows.get(i);
+			if(null != row)
+				return row[j];
+			if(null != (row = rows.get(j)))
+				return row[i];
+
+			row = null == spare ? new double[m] : spare;
+			spare = null;
+			kernel.block(i, i + 1, 0, m, row);
+			computed++;
+
+			rows.put(i, row);
+			return row[j];
+		}
+
+		@Override
+		public double[] getRow(final int i, final double[] row) {
+			checkIndex(i);
+			checkRow(row);
+
+			synchronized(this) {
+				final double[] held = rows.get(i);
+				if(null != held) {
+					System.arraycopy(held, 0, row, 0, m);
+					if(!diagonal)
+						row[i] = 0.0;
+					return row;
+				}
+			}
+
+			// Compute outside the lock; at worst two threads compute the same row
+			kernel.block(i, i + 1, 0, m, row);
+			if(!diagonal)
+				row[i] = 0.0;
+
+			synchronized(this) {
+				computed++;
+				if(!rows.containsKey(i)) {
+					final double[] copy = null == spare ? new double[m] : spare;
+					spare = null;
+					System.arraycopy(row, 0, copy, 0, m);
+					rows.put(i, copy);
+				}
+			}
+
+			return row;
+		}
+
+		@Override
+		public boolean isFull() {
+			return false;
+		}
+
+		@Override
+		public synchronized long getRowsComputed() {
+			return computed;
+		}
+
+		@Override
+		public synchronized long getEntriesComputed() {
+			return computed * m;
+		}
+
+		/**
+		 * The maximum number of rows held at once
+		 * @return the capacity
+		 */
+		int getCapacity() {
+			return capacity;
+		}
+	}
+
+
+
+	/**
+	 * Computes single entries on demand and memoizes them in open-addressed
+	 * tables of <tt>long</tt> keys (the row-major index of the upper triangular
+	 * cell) to <tt>double</tt> values. The tables are split into independently
+	 * locked stripes so concurrent readers rarely contend, and each grows with
+	 * the number of pairs touched up to its share of the budget. A stripe that
+	 * fills is cleared, so the hottest pairs are soon recomputed.
+	 * @author Taylor G Smith
+	 */
+	static final class Lazy extends PairwiseCache {
+		/** The number of independently locked stripes; a power of two */
+		static final int STRIPES = 64;
+		static final int MIN_TABLE = 16;
+		static final long EMPTY = -1L;
+
+		final Pairwise.BlockKernel kernel;
+		final Stripe[] stripes;
+		/** The maximum length of each stripe's table, a power of two */
+		final int maxTable;
+
+		Lazy(final double[][] X, final GeometricallySeparable geo, final boolean diagonal, final long budget) {
+			super(X.length, diagonal);
+
+			// Not symmetric, so the kernel computes any single cell
+			this.kernel = Pairwise.BlockKernel.of(X, X.clone(), geo, false, 1.0);
+
+			// Each slot is a key and a value, and the tables are at most half full
+			final long slots = budget / (2L * Double.BYTES * STRIPES);
+			final long upper = Math.min(1L << 30, Long.highestOneBit(Math.max(1, slots)));
+			this.maxTable = (int)Math.max(MIN_TABLE, upper);
+
+			this.stripes = new Stripe[STRIPES];
+			for(int s = 0; s < STRIPES; s++)
+				stripes[s] = new Stripe(Math.min(MIN_TABLE, maxTable));
+		}
+
+		@Override
+		public double get(final int i, final int j) {
+			checkIndex(i);
+			checkIndex(j);
+			if(i == j && !diagonal)
+				return 0.0;
+
+			final long key = i < j ? (long)i * m + j : (long)j * m + i;
+			final int hash = hash(key);
+			final Stripe stripe = stripes[hash >>> 26];
+
+			synchronized(stripe) {
+				final int slot = stripe.slot(key, hash);
+				if(stripe.keys[slot] == key)
+					return stripe.values[slot];
+			}
+
+			// Compute outside the lock; at worst two threads compute the same cell
+			final double[] cell = new double[1];
+			kernel.block(i, i + 1, j, j + 1, cell);
+			synchronized(stripe) {
+				stripe.put(key, hash, cell[0], maxTable);
+			}
+
+			return cell[0];
+		}
+
+		static int hash(final long key) {
+			final long z = key * 0x9E3779B97F4A7C15L;
+			return (int)(z ^ (z >>> 32));
+		}
+
+		@Override
+		public boolean isFull() {
+			return false;
+		}
+
+		@Override
+		public long getRowsComputed() {
+			return 0;
+		}
+
+		@Override
+		public long getEntriesComputed() {
+			long computed = 0;
+			for(Stripe stripe: stripes) {
+				synchronized(stripe) {
+					computed += stripe.computed;
+				}
+			}
+
+			return computed;
+		}
+
+		/**
+		 * The number of entries currently held
+		 * @return the number of entries
+		 */
+		long size() {
+			long size = 0;
+			for(Stripe stripe: stripes) {
+				synchronized(stripe) {
+					size += stripe.size;
+				}
+			}
+
+			return size;
+		}
+
+		/**
+		 * The maximum number of entries held at once
+		 * @return the capacity
+		 */
+		long getCapacity() {
+			return (long)STRIPES * (maxTable / 2);
+		}
+	}
+
+	/**
+	 * A linearly probed table of {@link Lazy} entries, guarded by its own monitor
+	 * @author Taylor G Smith
+	 */
+	static final class Stripe {
+		long[] keys;
+		double[] values;
+		int size = 0;
+		long computed = 0;
+
+		Stripe(final int length) {
+			keys = new long[length];
+			values = new double[length];
+			Arrays.fill(keys, Lazy.EMPTY);
+		}
+
+		/** The slot holding the key, or else the empty slot where it belongs */
+		int slot(final long key, final int hash) {
+			final int mask = keys.length - 1;
+			int s = hash & mask;
+			while(keys[s] != Lazy.EMPTY && keys[s] != key)
+				s = (s + 1) & mask;
+			return s;
+		}
+
+		void put(final long key, final int hash, final double value, final int maxTable) {
+			int s = slot(key, hash);
+			if(keys[s] == key) // computed concurrently
+				return;
+
+			computed++;
+			if(2 * (size + 1) > keys.length) {
+				if(keys.length < maxTable)
+					resize(keys.length << 1);
+				else
+					clear();
+				s = slot(key, hash);
+			}
+
+			keys[s] = key;
+			values[s] = value;
+			size++;
+		}
+
+		private void resize(final int length) {
+			final long[] oldKeys = keys;
+			final double[] oldValues = values;
+
+			keys = new long[length];
+			values = new double[length];
+			Arrays.fill(keys, Lazy.EMPTY);
+
+			for(int s = 0; s < oldKeys.length; s++) {
+				if(oldKeys[s] != Lazy.EMPTY) {
+					final int t = slot(oldKeys[s], Lazy.hash(oldKeys[s]));
+					keys[t] = oldKeys[s];
+					values[t] = oldValues[s];
+				}
+			}
+		}
+
+		private void clear() {
+			Arrays.fill(keys, Lazy.EMPTY);
+			size = 0;
+		}
+	}
+}
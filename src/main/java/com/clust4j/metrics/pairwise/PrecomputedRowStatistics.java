@@ -0,0 +1,126 @@
+/*******************************************************************************
+ *    Copyright 2015, 2016 Taylor G Smith
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *******************************************************************************/
+package com.clust4j.metrics.pairwise;
+
+import org.apache.commons.math3.util.FastMath;
+
+import com.clust4j.utils.VecUtils;
+
+/**
+ * Caches per-row statistics of a matrix (the squared L<sub>2</sub>, L<sub>2</sub> and
+ * L<sub>1</sub> norms) such that metrics which are expressible in terms of an inner
+ * product and the row norms need not recompute the norms for every pair. For instance,
+ * the squared Euclidean distance can be computed as <tt>||a||<sup>2</sup> + ||b||<sup>2</sup> - 2a&middot;b</tt>,
+ * and the Hilbert space projection used by many {@link com.clust4j.kernel.Kernel}s
+ * as <tt>2a&middot;b - ||a||<sup>2</sup> - ||b||<sup>2</sup></tt>, reducing three
+ * inner products per pair to one.
+ *
+ * <p>
+ * The statistics hold a reference to the matrix rather than a copy, so
+ * the matrix must not be mutated while the statistics are in use.
+ *
+ * @author Taylor G Smith
+ * @see GeometricallySeparable#getPartialDistance(PrecomputedRowStatistics, int, PrecomputedRowStatistics, int)
+ */
+public class PrecomputedRowStatistics implements java.io.Serializable {
+	private static final long serialVersionUID = -1733049151962262473L;
+
+	final double[][] data;
+	final double[] squaredNorms;
+	final double[] norms;
+	final double[] l1Norms;
+
+	/**
+	 * Compute the statistics of each row in a single pass
+	 * @param data
+	 * @throws IllegalArgumentException if the rows are empty
+	 * @throws DimensionMismatchException if the rows are not uniform in length
+	 */
+	public PrecomputedRowStatistics(final double[][] data) {
+		final int m = data.length;
+		this.data = data;
+		this.squaredNorms = new double[m];
+		this.norms = new double[m];
+		this.l1Norms = new double[m];
+
+		for(int i = 0; i < m; i++) {
+			final double[] row = data[i];
+			VecUtils.checkDims(row, data[0]);
+
+			double sq = 0, l1 = 0;
+			for(int k = 0; k < row.length; k++) {
+				sq += row[k] * row[k];
+				l1 += FastMath.abs(row[k]);
+			}
+
+			squaredNorms[i] = sq;
+			norms[i] = FastMath.sqrt(sq);
+			l1Norms[i] = l1;
+		}
+	}
+
+	/**
+	 * Returns a reference to the i<sup>th</sup> row
+	 * @param i
+	 * @return the row
+	 */
+	public double[] getRow(final int i) {
+		return data[i];
+	}
+
+	/**
+	 * Returns a reference to the underlying matrix
+	 * @return the matrix
+	 */
+	public double[][] getDataRef() {
+		return data;
+	}
+
+	public int getRowDimension() {
+		return data.length;
+	}
+
+	public int getColumnDimension() {
+		return 0 == data.length ? 0 : data[0].length;
+	}
+
+	/**
+	 * The sum of squares of the i<sup>th</sup> row
+	 * @param i
+	 * @return the squared L<sub>2</sub> norm
+	 */
+	public double getSquaredNorm(final int i) {
+		return squaredNorms[i];
+	}
+
+	/**
+	 * The L<sub>2</sub> (Euclidean) norm of the i<sup>th</sup> row
+	 * @param i
+	 * @return the L<sub>2</sub> norm
+	 */
+	public double getNorm(final int i) {
+		return norms[i];
+	}
+
+	/**
+	 * The L<sub>1</sub> (Manhattan) norm of the i<sup>th</sup> row
+	 * @param i
+	 * @return the L<sub>1</sub> norm
+	 */
+	public double getL1Norm(final int i) {
+		return l1Norms[i];
+	}
+}
@@ -15,6 +15,9 @@
  *******************************************************************************/
 package com.clust4j.metrics.pairwise;
 
+import org.apache.commons.math3.util.FastMath;
+
+import com.clust4j.data.CSRMatrix;
 import com.clust4j.utils.VecUtils;
 
 public enum Similarity implements SimilarityMetric {
@@ -46,11 +49,59 @@ public enum Similarity implements SimilarityMetric {
 			return d;
 		}
 
+		@Override
+		public double getPartialDistance(PrecomputedRowStatistics x, int i, PrecomputedRowStatistics y, int j) {
+			return -getPartialSimilarity(x, i, y, j);
+		}
+
 		@Override
 		public double getPartialSimilarity(double[] a, double[] b) {
 			return getSimilarity(a, b);
 		}
 
+		@Override
+		public double getPartialSimilarity(PrecomputedRowStatistics x, int i, PrecomputedRowStatistics y, int j) {
+			final double[] a = x.getRow(i), b = y.getRow(j);
+			VecUtils.checkDims(a, b);
+			return VecUtils.innerProduct(a, b) / (x.getNorm(i) * y.getNorm(j));
+		}
+
+		@Override
+		public double getPartialDistance(CSRMatrix x, int i, CSRMatrix y, int j) {
+			Distance.checkSparseDims(x, y.getColumnDimension());
+			final int[] xi = x.getIndicesRef(), yi = y.getIndicesRef();
+			final double[] xv = x.getValuesRef(), yv = y.getValuesRef();
+			final int pStart = x.getIndptrRef()[i], pEnd = x.getIndptrRef()[i + 1];
+			final int qStart = y.getIndptrRef()[j], qEnd = y.getIndptrRef()[j + 1];
+			
+			// Only columns non-zero in both contribute to the inner product
+			double ip = 0;
+			for(int p = pStart, q = qStart; p < pEnd && q < qEnd; ) {
+				if(xi[p] < yi[q])
+					p++;
+				else if(yi[q] < xi[p])
+					q++;
+				else
+					ip += xv[p++] * yv[q++];
+			}
+			
+			return -ip / (FastMath.sqrt(squaredNorm(xv, pStart, pEnd)) * FastMath.sqrt(squaredNorm(yv, qStart, qEnd)));
+		}
+
+		@Override
+		public double getPartialDistance(CSRMatrix x, int i, PrecomputedRowStatistics y, int j) {
+			Distance.checkSparseDims(x, y.getColumnDimension());
+			final int[] xi = x.getIndicesRef();
+			final double[] xv = x.getValuesRef(), b = y.getRow(j);
+			final int pStart = x.getIndptrRef()[i], pEnd = x.getIndptrRef()[i + 1];
+			
+			double ip = 0;
+			for(int p = pStart; p < pEnd; p++)
+				ip += xv[p] * b[xi[p]];
+			
+			return -ip / (FastMath.sqrt(squaredNorm(xv, pStart, pEnd)) * y.getNorm(j));
+		}
+
 		@Override
 		public double partialSimilarityToSimilarity(double d) {
 			return d;
@@ -68,4 +119,11 @@ public enum Similarity implements SimilarityMetric {
 	public String toString() {
 		return getName();
 	}
+	
+	private static double squaredNorm(final double[] v, final int start, final int end) {
+		double sum = 0;
+		for(int p = start; p < end; p++)
+			sum += v[p] * v[p];
+		return sum;
+	}
 }
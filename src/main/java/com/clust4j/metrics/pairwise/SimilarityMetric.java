@@ -36,6 +36,78 @@ public interface SimilarityMetric extends GeometricallySeparable, java.io.Serial
 	 */
 	public double getPartialSimilarity(final double[] a, final double[] b);
 	
+	/**
+	 * Compute the partial similarity between the i<sup>th</sup> row of <tt>x</tt>
+	 * and the j<sup>th</sup> row of <tt>y</tt>, making use of the precomputed
+	 * row norms where the metric allows. Otherwise, this is equal to
+	 * {@link #getPartialSimilarity(double[], double[])}.
+	 * @param x - the statistics of the first matrix
+	 * @param i - the row index in x
+	 * @param y - the statistics of the second matrix
+	 * @param j - the row index in y
+	 * @return the partial similarity
+	 */
+	public default double getPartialSimilarity(final PrecomputedRowStatistics x, final int i,
+			final PrecomputedRowStatistics y, final int j) {
+		return getPartialSimilarity(x.getRow(i), y.getRow(j));
+	}
+	
+	/**
+	 * Compute the similarity between the query and each of <tt>rows[from]</tt>
+	 * through <tt>rows[to - 1]</tt>, writing the similarity to <tt>rows[k]</tt>
+	 * into <tt>out[k - from]</tt>. By default, this converts the result of
+	 * {@link #partialSimilarityBlock(double[], double[][], int, int, double[])}.
+	 * @param q - the query
+	 * @param rows - the block of rows
+	 * @param from - the first row, inclusive
+	 * @param to - the last row, exclusive
+	 * @param out - the output, of length at least <tt>to - from</tt>
+	 */
+	public default void similarityBlock(final double[] q, final double[][] rows,
+			final int from, final int to, final double[] out) {
+		partialSimilarityBlock(q, rows, from, to, out);
+		for(int k = 0; k < to - from; k++)
+			out[k] = partialSimilarityToSimilarity(out[k]);
+	}
+	
+	/**
+	 * Compute the partial similarity between the query and each of <tt>rows[from]</tt>
+	 * through <tt>rows[to - 1]</tt>, writing the partial similarity to <tt>rows[k]</tt>
+	 * into <tt>out[k - from]</tt>. Metrics may override this with a tight loop that
+	 * hoists the per-query work and the virtual dispatch out of the per-row computation.
+	 * Otherwise, this is equal to calling {@link #getPartialSimilarity(double[], double[])}
+	 * for each row.
+	 * @param q - the query
+	 * @param rows - the block of rows
+	 * @param from - the first row, inclusive
+	 * @param to - the last row, exclusive
+	 * @param out - the output, of length at least <tt>to - from</tt>
+	 */
+	public default void partialSimilarityBlock(final double[] q, final double[][] rows,
+			final int from, final int to, final double[] out) {
+		for(int k = from; k < to; k++)
+			out[k - from] = getPartialSimilarity(q, rows[k]);
+	}
+	
+	/**
+	 * Compute the partial similarity between the i<sup>th</sup> row of <tt>x</tt> and
+	 * each of rows <tt>from</tt> through <tt>to - 1</tt> of <tt>y</tt>, making use of
+	 * the precomputed row norms where the metric allows. Otherwise, this is equal to calling
+	 * {@link #getPartialSimilarity(PrecomputedRowStatistics, int, PrecomputedRowStatistics, int)}
+	 * for each row.
+	 * @param x - the statistics of the query matrix
+	 * @param i - the row index in x
+	 * @param y - the statistics of the block
+	 * @param from - the first row in y, inclusive
+	 * @param to - the last row in y, exclusive
+	 * @param out - the output, of length at least <tt>to - from</tt>
+	 */
+	public default void partialSimilarityBlock(final PrecomputedRowStatistics x, final int i,
+			final PrecomputedRowStatistics y, final int from, final int to, final double[] out) {
+		for(int k = from; k < to; k++)
+			out[k - from] = getPartialSimilarity(x, i, y, k);
+	}
+	
 	/**
 	 * Convert the partial similarity to the full similarity
 	 * @param a
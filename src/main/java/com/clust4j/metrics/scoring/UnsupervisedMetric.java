@@ -15,8 +15,7 @@
  *******************************************************************************/
 package com.clust4j.metrics.scoring;
 
-import java.util.ArrayList;
-import java.util.TreeMap;
+import java.util.Arrays;
 
 import org.apache.commons.math3.exception.DimensionMismatchException;
 import org.apache.commons.math3.linear.RealMatrix;
@@ -27,7 +26,6 @@ import com.clust4j.algo.LabelEncoder;
 import com.clust4j.metrics.pairwise.Distance;
 import com.clust4j.metrics.pairwise.DistanceMetric;
 import com.clust4j.metrics.pairwise.Pairwise;
-import com.clust4j.utils.MatUtils;
 import com.clust4j.utils.VecUtils;
 
 public enum UnsupervisedMetric implements EvaluationMetric {
@@ -61,88 +59,46 @@ public enum UnsupervisedMetric implements EvaluationMetric {
 			
 			
 			
-			final int[] encoded    = encoder.getEncodedLabels();
-			final int[] uniqueLabs = encoder.getClasses();
+			final int[] encoded = encoder.getEncodedLabels();
+			final int numClasses = encoder.getNumClasses();
+			final int[] counts = new int[numClasses];
+			for(int label: encoded)
+				counts[label]++;
 			
+			final double[] intraDists = VecUtils.rep(1.0, m);
+			final double[] interDists = VecUtils.rep(Double.POSITIVE_INFINITY, m);
 			
-			double[][] distMatrix = Pairwise.getDistance(X, metric, false, false);
-			double[] intraDists   = VecUtils.rep(1.0, m);
-			double[] interDists   = VecUtils.rep(Double.POSITIVE_INFINITY, m);
-			
-			Integer[] maskIdcs, otherIdxMask;
-			double[][] currDists;
-			
-			
-			// To avoid numerous passes on the order of M
-			// to get a mask for labels, do it once...
-			final int[] uniqueEncoded = encoder.transform(uniqueLabs);
-			TreeMap<Integer, Integer[]> labToIdcs = new TreeMap<>();
-			for(int label: uniqueEncoded) {
-				ArrayList<Integer> ref = new ArrayList<>();
-				
-				for(int i = 0; i < m; i++) {
-					if(encoded[i] == label)
-						ref.add(i);
-				}
-				
-				labToIdcs.put(label, ref.toArray(new Integer[ref.size()]));
-			}
-			
-			
-			for(int label: uniqueEncoded) {
-				
-				// Mask of idcs for label
-				maskIdcs = labToIdcs.get(label);
-				currDists = MatUtils.getRows(distMatrix, maskIdcs);
-				
-
-				int numCurrent = maskIdcs.length - 1;
-				if(numCurrent != 0) { // i.e., if this isn't the only label for this class
-					
-					// Get the row sums of all the columns included in the maskIdcs
-					for(int idx: maskIdcs) {
-						
-						// Easy way, but uses too many passes on order of N or M:
-						double colSum = 0;
-						for(int j = 0; j < currDists.length; j++)
-							colSum += currDists[j][idx];
-						intraDists[idx] = colSum / numCurrent;
-					}
-				} // if it does, we need to update inter anyways:
-				
-				// Look at other labels, see how close other clusters are
-				for(int other: uniqueEncoded) {
-					if(other == label)
-						continue;
+			/*
+			 * Only the per-label sum of each row's distances is needed, so
+			 * the distances are streamed in blocks of rows rather than
+			 * materializing the m x m matrix. Each block covers different
+			 * rows, so the writes below never collide.
+			 */
+			Pairwise.cdistChunked(X, X, metric, new Pairwise.BlockConsumer() {
+				@Override
+				public void accept(int rowStart, int rows, double[] block) {
+					final double[] sums = new double[numClasses];
 					
-					else {
-						otherIdxMask = labToIdcs.get(other);
+					for(int r = 0; r < rows; r++) {
+						final int i = rowStart + r, label = encoded[i], off = r * m;
 						
+						Arrays.fill(sums, 0.0);
+						for(int j = 0; j < m; j++)
+							sums[encoded[j]] += block[off + j];
 						
-						/* Get row means. Same as:
-						double[] otherDists = MatUtils.rowMeans(
-							MatUtils.getColumns(currDists, otherIdxMask));*/
+						// if this isn't the only member of its class
+						if(counts[label] > 1)
+							intraDists[i] = sums[label] / (counts[label] - 1);
 						
-						final int maskCt = otherIdxMask.length;
-						double[] otherDists = new double[currDists.length];
-						for(int h = 0; h < otherDists.length; h++) {
-							for(int c= 0; c < maskCt; c++) {
-								otherDists[h] += currDists[h][otherIdxMask[c]];
-								if(c == maskCt - 1)
-									otherDists[h] /= (double)maskCt;
-							}
+						// Look at other labels, see how close other clusters are
+						for(int other = 0; other < numClasses; other++) {
+							if(other != label)
+								interDists[i] = FastMath.min(sums[other] / (double)counts[other], interDists[i]);
 						}
-						
-						
-						int k = 0;
-						for(int idx: maskIdcs)
-							interDists[idx] = FastMath.min(otherDists[k++], 
-								interDists[idx]); 
-						
 					}
 				}
-			}
-
+			});
+			
 			
 			// Get difference in distances
 			double[] sil = new double[intraDists.length];
@@ -36,6 +36,7 @@ import com.clust4j.algo.HierarchicalTests;
 import com.clust4j.algo.KMeansTests;
 import com.clust4j.algo.KMedoidsTests;
 import com.clust4j.algo.MeanShiftTests;
+import com.clust4j.algo.MiniBatchKMeansTests;
 import com.clust4j.algo.NNHSTests;
 import com.clust4j.algo.NearestCentroidTests;
 import com.clust4j.algo.NearestNeighborsTests;
@@ -46,6 +47,7 @@ import com.clust4j.algo.pipeline.PipelineTest;
 import com.clust4j.algo.preprocess.ImputationTests;
 import com.clust4j.algo.preprocess.PreProcessorTests;
 import com.clust4j.data.BufferedMatrixReaderTests;
+import com.clust4j.data.CSRMatrixTests;
 import com.clust4j.data.DataSet;
 import com.clust4j.data.ExampleDataSets;
 import com.clust4j.data.TestDataSet;
@@ -53,8 +55,12 @@ import com.clust4j.data.TrainTestSplitTests;
 import com.clust4j.except.TestExcept;
 import com.clust4j.kernel.KernelTestCases;
 import com.clust4j.log.LogTest;
+import com.clust4j.metrics.pairwise.BitPackedMatrixTests;
+import com.clust4j.metrics.pairwise.CondensedDistanceMatrixTests;
 import com.clust4j.metrics.pairwise.HaversineTest;
+import com.clust4j.metrics.pairwise.PairwiseCacheTests;
 import com.clust4j.metrics.pairwise.PairwiseTests;
+import com.clust4j.metrics.pairwise.PrecomputedRowStatisticsTests;
 import com.clust4j.metrics.pairwise.TestDistanceEnums;
 import com.clust4j.metrics.scoring.TestMetrics;
 import com.clust4j.optimize.TestOptimizer;
@@ -77,6 +83,11 @@ import com.clust4j.utils.parallel.ParallelTests;
 	BoruvkaTests.class,
 	BufferedMatrixReaderTests.class,
 	ClustTests.class,
+	CondensedDistanceMatrixTests.class,
+	CSRMatrixTests.class,
+	PairwiseCacheTests.class,
+	PrecomputedRowStatisticsTests.class,
+	BitPackedMatrixTests.class,
 	DBSCANTests.class,
 	FormatterTests.class,
 	HaversineTest.class,
@@ -87,6 +98,7 @@ import com.clust4j.utils.parallel.ParallelTests;
 	KernelTestCases.class,
 	KMeansTests.class,
 	KMedoidsTests.class,
+	MiniBatchKMeansTests.class,
 	LogTest.class,
 	MatTests.class,
 	MeanShiftTests.class,
@@ -17,8 +17,17 @@ package com.clust4j.algo;
 
 import static org.junit.Assert.*;
 
+import java.util.Random;
+
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
 import org.junit.Test;
 
+import com.clust4j.algo.HDBSCAN.HDBSCAN_Algorithm;
+import com.clust4j.metrics.pairwise.Distance;
+import com.clust4j.metrics.pairwise.DistanceMetric;
+import com.clust4j.utils.MatUtils;
+import com.clust4j.utils.VecUtils;
+
 public class BoruvkaTests {
 
 	@Test
@@ -32,5 +41,73 @@ public class BoruvkaTests {
 		double rad1 = 0.5, rad2 = 0.75;
 		assertTrue(BoruvkaAlgorithm.ballTreeMinDistDual(rad1, rad2, 1, 2, d) == 4.75);
 	}
-
+	
+	static double[][] spanningTree(NearestNeighborHeapSearch tree, DistanceMetric metric, boolean approx, boolean fork) {
+		return new BoruvkaAlgorithm(tree, 5, metric, 13, approx, 1.0, false, fork, null).spanningTree();
+	}
+	
+	static boolean spansAll(double[][] edges, int m) {
+		if(edges.length != m - 1)
+			return false;
+		
+		// m - 1 edges without a cycle connect all m points
+		final HDBSCAN.UnionFind uf = new HDBSCAN.UnionFind(m);
+		for(double[] edge: edges) {
+			int a = uf.find((int)edge[0]), b = uf.find((int)edge[1]);
+			if(a == b)
+				return false;
+			uf.union(a, b);
+		}
+		
+		return true;
+	}
+	
+	@Test
+	public void testForkedTraversalMatchesSerialWeights() {
+		final double[][] x = MatUtils.randomGaussian(1000, 3, new Random(11));
+		final Array2DRowRealMatrix mat = new Array2DRowRealMatrix(x, false);
+		
+		for(boolean kd: new boolean[]{true, false}) {
+			final DistanceMetric metric = Distance.EUCLIDEAN;
+			final NearestNeighborHeapSearch tree = kd ? new KDTree(mat, 40, metric) : new BallTree(mat, 40, metric);
+			
+			double[][] serial = spanningTree(tree, metric, false, false);
+			double[][] forked = spanningTree(tree, metric, false, true);
+			
+			// The same weights, even if edges of equal weight differ
+			assertTrue(spansAll(forked, x.length));
+			assertTrue(VecUtils.equalsExactly(
+				MatUtils.getColumn(MatUtils.sortAscByCol(serial, 2), 2),
+				MatUtils.getColumn(MatUtils.sortAscByCol(forked, 2), 2)));
+			
+			// And the forked traversal is deterministic
+			assertTrue(MatUtils.equalsExactly(forked, spanningTree(tree, metric, false, true)));
+			
+			// The approximate tree still spans the data
+			assertTrue(spansAll(spanningTree(tree, metric, true, true), x.length));
+		}
+	}
+	
+	@Test
+	public void testParallelBoruvkaLabels() {
+		final Array2DRowRealMatrix x = new Array2DRowRealMatrix(
+			MatUtils.randomGaussian(800, 2, new Random(3)), false);
+		
+		final int[] expected = new HDBSCANParameters(10).setApprox(false)
+			.setAlgo(HDBSCAN_Algorithm.BORUVKA_KDTREE).fitNewModel(x).getLabels();
+		final HDBSCAN model = new HDBSCANParameters(10).setApprox(false)
+			.setAlgo(HDBSCAN_Algorithm.PARALLEL_BORUVKA).fitNewModel(x);
+		
+		assertTrue(model.algo == HDBSCAN_Algorithm.PARALLEL_BORUVKA);
+		assertTrue(VecUtils.equalsExactly(expected, model.getLabels()));
+		
+		// Uses a ball tree for metrics the KD tree doesn't support
+		final int[] ball = new HDBSCANParameters(10).setApprox(false).setMetric(Distance.HAVERSINE.MI)
+			.setAlgo(HDBSCAN_Algorithm.BORUVKA_BALLTREE).fitNewModel(x).getLabels();
+		assertTrue(VecUtils.equalsExactly(ball, new HDBSCANParameters(10).setApprox(false).setMetric(Distance.HAVERSINE.MI)
+			.setAlgo(HDBSCAN_Algorithm.PARALLEL_BORUVKA).fitNewModel(x).getLabels()));
+		
+		assertTrue(HDBSCAN_Algorithm.PARALLEL_BORUVKA.isValidMetric(Distance.HAVERSINE.MI));
+		assertFalse(HDBSCAN_Algorithm.PARALLEL_BORUVKA.isValidMetric(Distance.CANBERRA));
+	}
 }
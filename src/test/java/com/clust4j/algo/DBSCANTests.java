@@ -21,6 +21,7 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.file.Files;
+import java.util.Random;
 
 import org.apache.commons.math3.exception.DimensionMismatchException;
 import org.apache.commons.math3.linear.Array2DRowRealMatrix;
@@ -33,6 +34,7 @@ import org.junit.Test;
 import com.clust4j.TestSuite;
 import com.clust4j.algo.DBSCANParameters;
 import com.clust4j.algo.preprocess.StandardScaler;
+import com.clust4j.data.CSRMatrix;
 import com.clust4j.data.DataSet;
 import com.clust4j.except.ModelNotFitException;
 import com.clust4j.kernel.GaussianKernel;
@@ -376,4 +378,27 @@ public class DBSCANTests implements ClusterTest, ClassifierTest, BaseModelTest {
 			assertTrue(a);
 		}
 	}
+	
+	@Test
+	public void testSparse() {
+		// Three well-separated groups, each only non-zero in its own two features
+		final Random rand = new Random(2);
+		final double[][] x = new double[60][6];
+		for(int i = 0; i < x.length; i++) {
+			final int c = i % 3;
+			x[i][2 * c] = 5 + rand.nextGaussian() * 0.3;
+			x[i][2 * c + 1] = 5 + rand.nextGaussian() * 0.3;
+		}
+		
+		final CSRMatrix csr = new CSRMatrix(x);
+		assertTrue(csr.getNnz() == 120);
+		
+		DBSCAN dense = new DBSCANParameters(0.9).setMinPts(3).fitNewModel(new Array2DRowRealMatrix(x, false));
+		DBSCAN sparse = new DBSCANParameters(0.9).setMinPts(3).fitNewModel(csr);
+		
+		assertTrue(sparse.isSparse());
+		assertTrue(dense.getNumberOfIdentifiedClusters() == 3);
+		assertTrue(VecUtils.equalsExactly(dense.getLabels(), sparse.getLabels()));
+		assertTrue(VecUtils.equalsExactly(dense.predict(csr), sparse.predict(csr)));
+	}
 }
@@ -26,7 +26,12 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Map;
+import java.util.Random;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.commons.math3.exception.DimensionMismatchException;
 import org.apache.commons.math3.linear.Array2DRowRealMatrix;
@@ -35,6 +40,7 @@ import org.apache.commons.math3.util.FastMath;
 import org.apache.commons.math3.util.Precision;
 import org.junit.Test;
 
+import com.clust4j.GlobalState;
 import com.clust4j.TestSuite;
 import com.clust4j.algo.HDBSCAN.HDBSCAN_Algorithm;
 import com.clust4j.algo.HDBSCAN.CompQuadTup;
@@ -49,13 +55,15 @@ import com.clust4j.except.ModelNotFitException;
 import com.clust4j.kernel.GaussianKernel;
 import com.clust4j.kernel.Kernel;
 import com.clust4j.kernel.KernelTestCases;
+import com.clust4j.metrics.pairwise.CondensedDistanceMatrix;
+import com.clust4j.metrics.pairwise.CondensedDistanceMatrix.Storage;
 import com.clust4j.metrics.pairwise.Distance;
 import com.clust4j.metrics.pairwise.DistanceMetric;
 import com.clust4j.metrics.pairwise.MinkowskiDistance;
 import com.clust4j.metrics.pairwise.Pairwise;
 import com.clust4j.metrics.pairwise.Similarity;
-import com.clust4j.utils.EntryPair;
 import com.clust4j.utils.Series.Inequality;
+import com.clust4j.utils.EntryPair;
 import com.clust4j.utils.MatUtils;
 import com.clust4j.utils.VecUtils;
 import com.clust4j.utils.MatUtils.MatSeries;
@@ -175,16 +183,16 @@ public class HDBSCANTests implements ClusterTest, ClassifierTest, BaseModelTest
 			new double[]{3.0, 1.0, 0.6, 3.0}
 		};
 		
-		ArrayList<CompQuadTup<Integer, Integer, Double, Integer>> h = HDBSCAN.LinkageTreeUtils.condenseTree(slt, 5);
+		HDBSCAN.CondensedTree h = HDBSCAN.LinkageTreeUtils.condenseTree(slt, 5);
 		QuadTup<Integer, Integer, Double, Integer> q = h.get(0);
 		assertTrue(q.getFirst() == 3);
 		assertTrue(q.getSecond() == 0);
 		// Three is a repeating decimal...
 		assertTrue(q.getFourth() == 1);
 		
-		TreeMap<Integer, Double> computedStability = HDBSCAN.LinkageTreeUtils.computeStability(h);
-		assertTrue(computedStability.size() == 1);
-		assertTrue(computedStability.get(3) == 5);
+		double[] computedStability = HDBSCAN.LinkageTreeUtils.computeStability(h);
+		assertTrue(computedStability.length == 1);
+		assertTrue(computedStability[3 - h.root()] == 5);
 		
 		int[] labels = HDBSCAN.getLabels(h, computedStability);
 		assertTrue(labels.length == 3);
@@ -384,38 +392,38 @@ public class HDBSCANTests implements ClusterTest, ClassifierTest, BaseModelTest
 			new double[]{3,2,10.05,3}
 		};
 		
-		ArrayList<Integer> result;
+		int[] result;
 		int root;
 		
 		// Test with root == 0
 		root = 0;
 		result = HDBSCAN.LinkageTreeUtils.breadthFirstSearch(x, root);
-		assertTrue(result.size() == 1);
-		assertTrue(result.get(0) == root);
+		assertTrue(result.length == 1);
+		assertTrue(result[0] == root);
 		
 		// Test with root == 1
 		root = 1;
 		result = HDBSCAN.LinkageTreeUtils.breadthFirstSearch(x, root);
-		assertTrue(result.size() == 1);
-		assertTrue(result.get(0) == root);
+		assertTrue(result.length == 1);
+		assertTrue(result[0] == root);
 
 		// Test with root == 2
 		root = 2;
 		result = HDBSCAN.LinkageTreeUtils.breadthFirstSearch(x, root);
-		assertTrue(result.size() == 1);
-		assertTrue(result.get(0) == root);
+		assertTrue(result.length == 1);
+		assertTrue(result[0] == root);
 		
 		// Test with root == -1
 		root = -1;
 		result = HDBSCAN.LinkageTreeUtils.breadthFirstSearch(x, root);
-		assertTrue(result.size() == 1);
-		assertTrue(result.get(0) == root);
+		assertTrue(result.length == 1);
+		assertTrue(result[0] == root);
 		
 		// Test with root == -2
 		root = -2;
 		result = HDBSCAN.LinkageTreeUtils.breadthFirstSearch(x, root);
-		assertTrue(result.size() == 1);
-		assertTrue(result.get(0) == root);
+		assertTrue(result.length == 1);
+		assertTrue(result[0] == root);
 	}
 	
 	@Test
@@ -436,32 +444,54 @@ public class HDBSCANTests implements ClusterTest, ClassifierTest, BaseModelTest
 	}
 	
 	@Test
-	public void testDescKeySet() {
-		TreeMap<Integer, Double> stability = new TreeMap<>();
-		stability.put(1, 456.0);
-		stability.put(9, 23.0);
-		stability.put(-5, 89.0);
-			
-		ArrayList<Integer> nodes = HDBSCAN.GetLabelUtils.descSortedKeySet(stability);
-		assertTrue(nodes.size() == 2);
-		assertTrue(nodes.get(0) == 9);
-		assertTrue(nodes.get(1) == 1);
-		// It should trim the last one
+	public void testCondensedTreeGrows() {
+		HDBSCAN.CondensedTree tree = new HDBSCAN.CondensedTree(1);
+		for(int i = 0; i < 20; i++)
+			tree.add(30 + i / 5, i, i / 2.0, 1);
+		tree.add(30, 31, 0.5, 5);
+		
+		assertTrue(tree.size() == 21);
+		assertTrue(tree.root() == 30);
+		assertTrue(tree.maxParent() == 33);
+		assertTrue(tree.maxChild() == 31);
+		assertTrue(tree.get(7).almostEquals(new CompQuadTup<Integer, Integer, Double, Integer>(31, 7, 3.5, 1)));
+		
+		// The rows in ascending order of their children
+		final int[] rows = tree.rowsByChild();
+		assertTrue(rows.length == 32);
+		assertTrue(rows[31] == 20);
+		assertTrue(rows[30] == -1);
+		assertTrue(rows[4] == 4);
 	}
 	
 	@Test
-	public void testSizeOverOne() {
-		ArrayList<CompQuadTup<Integer, Integer, Double, Integer>> tup = new ArrayList<>();
-		tup.add(new CompQuadTup<Integer, Integer, Double, Integer>(1,2,1.0,1));
-		tup.add(new CompQuadTup<Integer, Integer, Double, Integer>(1,1,1.0,2));
-		tup.add(new CompQuadTup<Integer, Integer, Double, Integer>(1,1,1.0,2));
-		tup.add(new CompQuadTup<Integer, Integer, Double, Integer>(1,1,1.0,2));
-		
-		EntryPair<ArrayList<double[]>, Integer> entry = 
-			HDBSCAN.GetLabelUtils.childSizeGtOneAndMaxChild(tup);
-		
-		assertTrue(entry.getKey().size() == 3);
-		assertTrue(entry.getValue() == 3);
+	public void testSelectsChildClustersWhenMoreStable() {
+		// The root 12 splits into 13 and 14, which split into 15 and 16, and 17 and 18
+		HDBSCAN.CondensedTree tree = new HDBSCAN.CondensedTree(4);
+		tree.add(12, 13, 1.0, 6);
+		tree.add(12, 14, 1.0, 6);
+		tree.add(13, 15, 2.0, 3);
+		tree.add(13, 16, 2.0, 3);
+		tree.add(14, 17, 2.0, 3);
+		tree.add(14, 18, 2.0, 3);
+		for(int i = 0; i < 12; i++)
+			tree.add(15 + i / 3, i, 8.0, 1);
+		
+		// Each leaf is (8 - 2) * 3 = 18, more than 13's (2 - 1) * 6 = 6. The
+		// largest child has no birth, so its stability, and its parent's sum, is NaN
+		double[] stability = HDBSCAN.LinkageTreeUtils.computeStability(tree);
+		assertTrue(stability.length == 7);
+		assertTrue(Double.isNaN(stability[0]));
+		assertTrue(stability[1] == 6.0);
+		assertTrue(stability[3] == 18.0);
+		assertTrue(Double.isNaN(stability[6]));
+		
+		// So 15 and 16 are selected over 13, but 14 over 17 and 18, and
+		// the selected clusters are numbered in ascending order
+		final int[] labels = HDBSCAN.getLabels(tree, stability);
+		assertTrue(stability[1] == 36.0);
+		assertTrue(labels.length == 12);
+		assertTrue(VecUtils.equalsExactly(labels, new int[]{1,1,1, 2,2,2, 0,0,0, 0,0,0}));
 	}
 	
 	@Test
@@ -601,6 +631,67 @@ public class HDBSCANTests implements ClusterTest, ClassifierTest, BaseModelTest
 		assertTrue(MatUtils.equalsExactly(mr, expected));
 	}
 	
+	@Test
+	public void testCondensedMutualReachability() {
+		final double[][] X = iris.getData();
+		final int m = X.length, minPts = 5;
+		final double alpha = 1.5;
+		
+		final double[][] dist = Pairwise.getDistance(X, Distance.EUCLIDEAN, false, false);
+		final double[] core_distances = MatUtils.sortColsAsc(dist)[minPts];
+		
+		final CondensedDistanceMatrix mr = HDBSCAN.LinkageTreeUtils.mutualReachability(
+			Pairwise.getCondensedDistance(X, Distance.EUCLIDEAN, true, false), minPts, alpha);
+		
+		for(int i = 0; i < m; i++) {
+			for(int j = 0; j < m; j++) {
+				final double expected = FastMath.max(
+					FastMath.max(core_distances[i], core_distances[j]), dist[i][j] / alpha);
+				assertTrue(mr.get(i, j) == expected);
+			}
+		}
+	}
+	
+	@Test
+	public void testSelectMatchesSort() {
+		final Random seed = new Random(4);
+		
+		for(int trial = 0; trial < 200; trial++) {
+			final int n = 1 + seed.nextInt(60);
+			final double[] a = new double[n];
+			for(int i = 0; i < n; i++) // plenty of duplicates
+				a[i] = trial % 2 == 0 ? seed.nextInt(5) : seed.nextGaussian();
+			
+			final double[] sorted = VecUtils.copy(a);
+			Arrays.sort(sorted);
+			
+			for(int k = 0; k < n; k++)
+				assertTrue(LinkageTreeUtils.select(VecUtils.copy(a), k) == sorted[k]);
+		}
+		
+		// Already sorted and reversed rows
+		final double[] asc = new double[100];
+		for(int i = 0; i < asc.length; i++)
+			asc[i] = i;
+		assertTrue(LinkageTreeUtils.select(VecUtils.reverseSeries(asc), 83) == 83.0);
+		assertTrue(LinkageTreeUtils.select(asc, 17) == 17.0);
+	}
+	
+	@Test
+	public void testParallelMutualReachability() {
+		final double[][] X = MatUtils.randomGaussian(700, 3, new Random(8));
+		final CondensedDistanceMatrix dist = Pairwise.getCondensedDistance(X, Distance.EUCLIDEAN, true, false);
+		final CondensedDistanceMatrix serial = LinkageTreeUtils.mutualReachability(dist.copy(), 7, 1.3, false);
+		final CondensedDistanceMatrix parallel = LinkageTreeUtils.mutualReachability(dist.copy(), 7, 1.3, true);
+		
+		assertEquals(serial, parallel);
+		
+		// Overwrites the distances in place
+		final CondensedDistanceMatrix inPlace = dist.copy();
+		assertTrue(LinkageTreeUtils.mutualReachability(inPlace, 7, 1.3) == inPlace);
+		assertEquals(serial, inPlace);
+	}
+	
 	@Test
 	public void testGenericAlgo() {
 		HDBSCAN h = new HDBSCAN(iris,
@@ -1314,8 +1405,10 @@ public class HDBSCANTests implements ClusterTest, ClassifierTest, BaseModelTest
 		
 		
 		// test the condense tree label
-		ArrayList<CompQuadTup<Integer, Integer, Double, Integer>> condensed = 
-			HDBSCAN.LinkageTreeUtils.condenseTree(expected_labMat, 5);
+		HDBSCAN.CondensedTree tree = HDBSCAN.LinkageTreeUtils.condenseTree(expected_labMat, 5);
+		ArrayList<CompQuadTup<Integer, Integer, Double, Integer>> condensed = new ArrayList<>();
+		for(int i = 0; i < tree.size(); i++)
+			condensed.add(tree.get(i));
 		// Now sort it for the sake of comparing to the sklearn res...
 		Collections.sort(condensed, new Comparator<QuadTup<Integer, Integer, Double, Integer>>(){
 			@Override
@@ -1353,7 +1446,7 @@ public class HDBSCANTests implements ClusterTest, ClassifierTest, BaseModelTest
 		
 		
 		// If we get here, the condensed labels works!!
-		TreeMap<Integer, Double> stability = HDBSCAN.LinkageTreeUtils.computeStability(condensed);
+		double[] stability = HDBSCAN.LinkageTreeUtils.computeStability(tree);
 		TreeMap<Integer, Double> exp_stab  = new TreeMap<>();
 		exp_stab.put(150, Double.NaN);
 		exp_stab.put(151, 128.9165546745262);
@@ -1374,11 +1467,11 @@ public class HDBSCANTests implements ClusterTest, ClassifierTest, BaseModelTest
 			int key = entry.getKey();
 			double stab = entry.getValue();
 			
-			if(Double.isNaN(stab) && Double.isNaN(stability.get(key)))
+			if(Double.isNaN(stab) && Double.isNaN(stability[key - 150]))
 				continue;
-			if(!Precision.equals(stab, stability.get(key), 1e-6)) {
+			if(!Precision.equals(stab, stability[key - 150], 1e-6)) {
 				System.out.println(key + ", " + stab);
-				System.out.println(key + ", " + stability.get(key));
+				System.out.println(key + ", " + stability[key - 150]);
 				fail();
 			}
 		}
@@ -1613,11 +1706,19 @@ public class HDBSCANTests implements ClusterTest, ClassifierTest, BaseModelTest
 		}
 		
 		/*
-		 * Ensure unsupportedOperation
+		 * A far away point is noise
 		 */
 		newData = new Array2DRowRealMatrix(new double[][]{
 			new double[]{150,150,150,150}
 		}, false);
+		EntryPair<int[], double[]> p = d.approximatePredict(newData);
+		assertTrue(p.getKey()[0] == HDBSCAN.NOISE_CLASS);
+		assertTrue(p.getValue()[0] == 0.0);
+		
+		/*
+		 * Ensure unsupportedOperation when no tree supports the metric
+		 */
+		d = new HDBSCANParameters().setAlgo(HDBSCAN_Algorithm.GENERIC).setMetric(Distance.CANBERRA).fitNewModel(iris);
 		a = false;
 		try {
 			d.predict(newData);
@@ -1627,4 +1728,133 @@ public class HDBSCANTests implements ClusterTest, ClassifierTest, BaseModelTest
 			assertTrue(a);
 		}
 	}
+	
+	@Test
+	public void testPredictFitDataReproducesLabels() {
+		final Array2DRowRealMatrix x = new Array2DRowRealMatrix(
+			MatUtils.randomGaussian(600, 3, new Random(3)), false);
+		
+		// Each fit point is its own nearest neighbor in mutual reachability
+		for(HDBSCAN_Algorithm algo: HDBSCAN_Algorithm.values()) {
+			HDBSCAN model = new HDBSCANParameters(10).setAlgo(algo).fitNewModel(x);
+			assertTrue(VecUtils.equalsExactly(model.getLabels(), model.predict(x)));
+		}
+	}
+	
+	@Test
+	public void testGenericKeepsFitCoreDistances() {
+		final double[][] x = MatUtils.randomGaussian(300, 3, new Random(3));
+		final int minPts = 10;
+		
+		final HDBSCAN model = new HDBSCANParameters(minPts)
+			.setAlgo(HDBSCAN_Algorithm.GENERIC).fitNewModel(new Array2DRowRealMatrix(x, false));
+		final HDBSCAN.PredictionData prediction = model.prediction;
+		assertTrue(prediction.coreNeighbors == minPts + 1);
+		
+		// The distance to the minPts-th neighbor, not counting the point itself
+		final double[] row = new double[x.length];
+		for(int i = 0; i < x.length; i++) {
+			for(int j = 0; j < x.length; j++)
+				row[j] = Distance.EUCLIDEAN.getDistance(x[i], x[j]);
+		
+			Arrays.sort(row);
+			assertEquals(row[minPts], prediction.coreDistances[i], 1e-12);
+		}
+		
+		// And a fit point's neighbors reach the same core distance in predict
+		final double[][] dists = prediction.tree.query(x, prediction.coreNeighbors, true, true).getDistances();
+		for(int i = 0; i < x.length; i++)
+			assertEquals(prediction.coreDistances[i], dists[i][minPts], 1e-12);
+	}
+	
+	@Test
+	public void testApproximatePredict() {
+		// Two blobs, far apart
+		final Random seed = new Random(7);
+		final double[][] x = new double[400][2];
+		for(int i = 0; i < x.length; i++) {
+			x[i][0] = seed.nextGaussian() + (i < 200 ? 0 : 20);
+			x[i][1] = seed.nextGaussian();
+		}
+		
+		final HDBSCAN model = new HDBSCANParameters(10).fitNewModel(new Array2DRowRealMatrix(x, false));
+		final int[] labels = model.getLabels();
+		assertTrue(model.getNumberOfIdentifiedClusters() == 2);
+		
+		final EntryPair<int[], double[]> p = model.approximatePredict(new Array2DRowRealMatrix(new double[][]{
+			new double[]{0.05, -0.05},
+			new double[]{20.1, 0.1},
+			new double[]{10, 50}
+		}, false));
+		
+		// The centers join their blobs, while a distant point is noise
+		assertTrue(p.getKey()[0] == labels[0] && p.getKey()[1] == labels[399]);
+		assertTrue(p.getKey()[0] != p.getKey()[1]);
+		assertTrue(p.getKey()[2] == HDBSCAN.NOISE_CLASS);
+		
+		assertTrue(p.getValue()[0] > 0 && p.getValue()[0] <= 1);
+		assertTrue(p.getValue()[1] > 0 && p.getValue()[1] <= 1);
+		assertTrue(p.getValue()[2] == 0.0);
+	}
+	
+	@Test
+	public void testConcurrentPredict() throws Exception {
+		final Array2DRowRealMatrix x = new Array2DRowRealMatrix(
+			MatUtils.randomGaussian(500, 2, new Random(1)), false);
+		final Array2DRowRealMatrix newData = new Array2DRowRealMatrix(
+			MatUtils.randomGaussian(300, 2, new Random(2)), false);
+		final HDBSCAN model = new HDBSCANParameters(10).fitNewModel(x);
+		final int[] expected = model.predict(newData);
+		
+		final ExecutorService service = Executors.newFixedThreadPool(4);
+		try {
+			final ArrayList<Future<int[]>> futures = new ArrayList<>();
+			for(int i = 0; i < 8; i++) {
+				futures.add(service.submit(new Callable<int[]>() {
+					@Override
+					public int[] call() {
+						return model.predict(newData);
+					}
+				}));
+			}
+			
+			for(Future<int[]> f: futures)
+				assertTrue(VecUtils.equalsExactly(expected, f.get()));
+		} finally {
+			service.shutdown();
+		}
+	}
+	
+	@Test
+	public void testOffHeapStorage() {
+		final int[] expected = new HDBSCAN(iris, new HDBSCANParameters().setAlgo(HDBSCAN_Algorithm.GENERIC)).fit().getLabels();
+		
+		for(Storage storage: new Storage[]{Storage.DIRECT, Storage.MAPPED}) {
+			HDBSCAN model = new HDBSCAN(iris, new HDBSCANParameters().setAlgo(HDBSCAN_Algorithm.GENERIC).setMatrixStorage(storage)).fit();
+			assertTrue(VecUtils.equalsExactly(expected, model.getLabels()));
+		}
+	}
+	
+	@Test
+	public void testParallelCoreDistancesMatchSerial() {
+		final Array2DRowRealMatrix x = new Array2DRowRealMatrix(
+			MatUtils.randomGaussian(1200, 2, new Random(5)), false);
+		final boolean allowed = GlobalState.ParallelismConf.PARALLELISM_ALLOWED;
+		
+		try {
+			GlobalState.ParallelismConf.PARALLELISM_ALLOWED = true;
+			
+			for(HDBSCAN_Algorithm algo: new HDBSCAN_Algorithm[]{
+					HDBSCAN_Algorithm.PRIMS_KDTREE, HDBSCAN_Algorithm.PRIMS_BALLTREE,
+					HDBSCAN_Algorithm.BORUVKA_KDTREE, HDBSCAN_Algorithm.BORUVKA_BALLTREE}) {
+				HDBSCAN serial = new HDBSCANParameters(10).setAlgo(algo).fitNewModel(x);
+				HDBSCAN parallel = new HDBSCANParameters(10).setAlgo(algo).setForceParallel(true).fitNewModel(x);
+				
+				assertTrue(parallel.parallel);
+				assertTrue(VecUtils.equalsExactly(serial.getLabels(), parallel.getLabels()));
+			}
+		} finally {
+			GlobalState.ParallelismConf.PARALLELISM_ALLOWED = allowed;
+		}
+	}
 }
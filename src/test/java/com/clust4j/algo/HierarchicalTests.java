@@ -33,12 +33,13 @@ import org.junit.Test;
 import com.clust4j.TestSuite;
 import com.clust4j.utils.SimpleHeap;
 import com.clust4j.algo.HierarchicalAgglomerativeParameters;
-import com.clust4j.algo.HierarchicalAgglomerative.EfficientDistanceMatrix;
 import com.clust4j.algo.HierarchicalAgglomerative.Linkage;
 import com.clust4j.except.ModelNotFitException;
 import com.clust4j.kernel.GaussianKernel;
 import com.clust4j.kernel.Kernel;
 import com.clust4j.kernel.KernelTestCases;
+import com.clust4j.metrics.pairwise.CondensedDistanceMatrix;
+import com.clust4j.metrics.pairwise.CondensedDistanceMatrix.Storage;
 import com.clust4j.metrics.pairwise.Distance;
 import com.clust4j.metrics.pairwise.DistanceMetric;
 import com.clust4j.metrics.pairwise.MinkowskiDistance;
@@ -54,7 +55,7 @@ public class HierarchicalTests implements ClusterTest, ClassifierTest, BaseModel
 	
 	@Test
 	public void testCondensedIdx() {
-		assertTrue(EfficientDistanceMatrix.getIndexFromFlattenedVec(10, 3, 4) == 24);
+		assertTrue(CondensedDistanceMatrix.index(10, 3, 4) == 24);
 	}
 	
 	@Test
@@ -362,7 +363,7 @@ public class HierarchicalTests implements ClusterTest, ClassifierTest, BaseModel
 	public void testBadEfficientDistMatTest() {
 		boolean a = false;
 		try {
-			HierarchicalAgglomerative.EfficientDistanceMatrix.getIndexFromFlattenedVec(0, 0, 0);
+			CondensedDistanceMatrix.index(0, 0, 0);
 		} catch(IllegalArgumentException i) {
 			a = true;
 		} finally {
@@ -423,4 +424,14 @@ public class HierarchicalTests implements ClusterTest, ClassifierTest, BaseModel
 			assertTrue(a);
 		}
 	}
+	
+	@Test
+	public void testOffHeapStorage() {
+		final int[] expected = new HierarchicalAgglomerative(data_, new HierarchicalAgglomerativeParameters(3)).fit().getLabels();
+		
+		for(Storage storage: new Storage[]{Storage.DIRECT, Storage.MAPPED}) {
+			HierarchicalAgglomerative model = new HierarchicalAgglomerative(data_, new HierarchicalAgglomerativeParameters(3).setMatrixStorage(storage)).fit();
+			assertTrue(VecUtils.equalsExactly(expected, model.getLabels()));
+		}
+	}
 }
@@ -25,12 +25,15 @@ import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.Random;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
 import org.apache.commons.math3.exception.DimensionMismatchException;
 import org.apache.commons.math3.linear.RealMatrix;
 import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+import org.apache.commons.math3.util.FastMath;
+import org.apache.commons.math3.util.Precision;
 import org.junit.Test;
 
 import com.clust4j.GlobalState;
@@ -39,6 +42,8 @@ import com.clust4j.algo.AbstractCentroidClusterer.InitializationStrategy;
 import com.clust4j.algo.preprocess.PreProcessor;
 import com.clust4j.algo.preprocess.StandardScaler;
 import com.clust4j.algo.KMeansParameters;
+import com.clust4j.data.CSRMatrix;
+import com.clust4j.data.CSRMatrixTests;
 import com.clust4j.data.DataSet;
 import com.clust4j.except.ModelNotFitException;
 import com.clust4j.except.NaNException;
@@ -48,6 +53,7 @@ import com.clust4j.kernel.Kernel;
 import com.clust4j.metrics.pairwise.Distance;
 import com.clust4j.metrics.pairwise.DistanceMetric;
 import com.clust4j.metrics.pairwise.GeometricallySeparable;
+import com.clust4j.metrics.pairwise.PrecomputedRowStatistics;
 import com.clust4j.utils.MatUtils;
 import com.clust4j.utils.VecUtils;
 import com.clust4j.utils.Series.Inequality;
@@ -777,4 +783,393 @@ public class KMeansTests implements ClassifierTest, ClusterTest, ConvergeableTes
 		threadPool.execute(first);
 		threadPool.execute(second);
 	}
+	
+	@Test
+	public void testSparse() {
+		final double[][] x = CSRMatrixTests.randomSparse(80, 15, 0.25, new Random(5));
+		final CSRMatrix csr = new CSRMatrix(x);
+		final Array2DRowRealMatrix dense_x = new Array2DRowRealMatrix(x, false);
+		
+		for(InitializationStrategy init: InitializationStrategy.values()) {
+			for(Distance dist: new Distance[]{Distance.EUCLIDEAN, Distance.MANHATTAN}) {
+				KMeans dense = new KMeansParameters(3).setMetric(dist).setInitializationStrategy(init)
+					.setSeed(new Random(9)).fitNewModel(dense_x);
+				KMeans sparse = new KMeansParameters(3).setMetric(dist).setInitializationStrategy(init)
+					.setSeed(new Random(9)).fitNewModel(csr);
+				
+				assertFalse(dense.isSparse());
+				assertTrue(sparse.isSparse());
+				assertTrue(sparse.getData() instanceof CSRMatrix);
+				assertEquals(csr, sparse.getData());
+				
+				// Only visiting the non-zeros must not change the clustering
+				assertTrue(VecUtils.equalsExactly(dense.getLabels(), sparse.getLabels()));
+				assertTrue(dense.itersElapsed() == sparse.itersElapsed());
+				assertEquals(dense.getTSS(), sparse.getTSS(), 1e-8);
+				assertArrayEquals(dense.getWSS(), sparse.getWSS(), 1e-8);
+				assertTrue(VecUtils.equalsExactly(dense.predict(dense_x), sparse.predict(csr)));
+			}
+		}
+	}
+	
+	@Test
+	public void testAcceleratedAlgorithmsMatchLloyd() {
+		final Array2DRowRealMatrix[] datasets = new Array2DRowRealMatrix[]{data_, wine, bc};
+		final DistanceMetric[] metrics = new DistanceMetric[]{
+			Distance.EUCLIDEAN, Distance.MANHATTAN, Distance.CHEBYSHEV};
+		
+		for(Array2DRowRealMatrix x: datasets) {
+			for(DistanceMetric metric: metrics) {
+				for(int k: new int[]{2, 8}) {
+					KMeans lloyd = new KMeansParameters(k).setMetric(metric)
+						.setSeed(new Random(3)).fitNewModel(x);
+					assertTrue(lloyd.getAlgorithm() == KMeans.KMeansAlgorithm.LLOYD);
+					
+					for(KMeans.KMeansAlgorithm algo: new KMeans.KMeansAlgorithm[]{
+							KMeans.KMeansAlgorithm.ELKAN, KMeans.KMeansAlgorithm.HAMERLY}) {
+						KMeans accel = new KMeansParameters(k).setMetric(metric)
+							.setAlgorithm(algo).setSeed(new Random(3)).fitNewModel(x);
+						assertTrue(accel.getAlgorithm() == algo);
+						
+						// Bit-for-bit the same clustering
+						assertTrue(VecUtils.equalsExactly(lloyd.getLabels(), accel.getLabels()));
+						assertTrue(lloyd.itersElapsed() == accel.itersElapsed());
+						assertTrue(Arrays.equals(lloyd.getWSS(), accel.getWSS()));
+						for(int c = 0; c < k; c++)
+							assertTrue(Arrays.equals(lloyd.getCentroids().get(c), accel.getCentroids().get(c)));
+						
+						if(k > 2 && lloyd.itersElapsed() > 2)
+							assertTrue(algo + ", " + metric.getName(),
+								accel.getDistanceComputations() < lloyd.getDistanceComputations());
+					}
+				}
+			}
+		}
+	}
+	
+	@Test
+	public void testAcceleratedAlgorithmFallback() {
+		// Kernels do not satisfy the triangle inequality
+		KMeans km = new KMeansParameters(3).setMetric(new GaussianKernel())
+			.setAlgorithm(KMeans.KMeansAlgorithm.ELKAN).fitNewModel(data_);
+		assertTrue(km.getAlgorithm() == KMeans.KMeansAlgorithm.LLOYD);
+		assertTrue(km.hasWarnings());
+		
+		// Nor is sparse data supported
+		final CSRMatrix csr = new CSRMatrix(CSRMatrixTests.randomSparse(40, 6, 0.3, new Random(1)));
+		km = new KMeansParameters(3).setAlgorithm(KMeans.KMeansAlgorithm.HAMERLY).fitNewModel(csr);
+		assertTrue(km.getAlgorithm() == KMeans.KMeansAlgorithm.LLOYD);
+		
+		// The parameters copy the algorithm
+		assertTrue(new KMeansParameters().setAlgorithm(KMeans.KMeansAlgorithm.ELKAN)
+			.copy().getAlgorithm() == KMeans.KMeansAlgorithm.ELKAN);
+	}
+	
+	@Test
+	public void testParallelLloydStepMatchesSerial() {
+		final double[][] x = MatUtils.randomGaussian(3000, 4, new Random(7));
+		final double[][] sp = CSRMatrixTests.randomSparse(1500, 8, 0.3, new Random(7));
+		
+		for(RealMatrix mat: new RealMatrix[]{
+				new Array2DRowRealMatrix(x, false), new CSRMatrix(sp)}) {
+			for(GeometricallySeparable metric: new GeometricallySeparable[]{
+					Distance.EUCLIDEAN, Distance.MANHATTAN, new GaussianKernel()}) {
+				
+				final KMeans km = new KMeans(mat, new KMeansParameters(5).setMetric(metric));
+				final int m = mat.getRowDimension();
+				final double[][] X = km.isSparse() ? null : km.data.getData();
+				final PrecomputedRowStatistics stats = km.isSparse() ? null : km.getRowStatistics();
+				
+				final int[] serial_labels = new int[m], parallel_labels = new int[m];
+				final KMeans.LloydAccumulator serial = new KMeans.LloydStep(km, X, stats, 
+					km.centroids, metric, serial_labels, true).accumulate(0, m);
+				final KMeans.LloydStep step = new KMeans.LloydStep(km, X, stats, 
+					km.centroids, metric, parallel_labels, true);
+				final KMeans.LloydAccumulator parallel = KMeans.LloydTask.doAll(step);
+				
+				// The range is split, and the leaves cover every row exactly once
+				assertTrue(new KMeans.LloydTask(step).grain < m);
+				assertTrue(VecUtils.equalsExactly(serial_labels, parallel_labels));
+				assertTrue(Arrays.equals(serial.counts, parallel.counts));
+				assertArrayEquals(serial.wss, parallel.wss, 1e-8);
+				for(int c = 0; c < 5; c++)
+					assertArrayEquals(serial.sums[c], parallel.sums[c], 1e-8);
+				
+				// Pre-assigned labels are accumulated as given
+				final KMeans.LloydAccumulator given = KMeans.LloydTask.doAll(new KMeans.LloydStep(km, 
+					X, stats, km.centroids, metric, VecUtils.copy(serial_labels), false));
+				assertTrue(Arrays.equals(serial.counts, given.counts));
+			}
+		}
+	}
+	
+	@Test
+	public void testParallelFit() {
+		final Array2DRowRealMatrix x = new Array2DRowRealMatrix(
+			MatUtils.randomGaussian(2000, 3, new Random(4)), false);
+		final boolean allowed = GlobalState.ParallelismConf.PARALLELISM_ALLOWED;
+		
+		try {
+			GlobalState.ParallelismConf.PARALLELISM_ALLOWED = true;
+			for(KMeans.KMeansAlgorithm algo: KMeans.KMeansAlgorithm.values()) {
+				KMeans serial = new KMeansParameters(4).setAlgorithm(algo)
+					.setSeed(new Random(2)).fitNewModel(x);
+				KMeans parallel = new KMeansParameters(4).setAlgorithm(algo)
+					.setSeed(new Random(2)).setForceParallel(true).fitNewModel(x);
+				
+				assertFalse(serial.parallel);
+				assertTrue(parallel.parallel);
+				assertTrue(VecUtils.equalsExactly(serial.getLabels(), parallel.getLabels()));
+				assertArrayEquals(serial.getWSS(), parallel.getWSS(), 1e-8);
+			}
+		} finally {
+			GlobalState.ParallelismConf.PARALLELISM_ALLOWED = allowed;
+		}
+	}
+	
+	/** The sum of squared distances from each row to its nearest seed */
+	private static double seedPotential(final double[][] x, final int[] seeds) {
+		double potential = 0;
+		for(double[] row: x) {
+			double best = Double.POSITIVE_INFINITY;
+			for(int s: seeds)
+				best = FastMath.min(best, Distance.EUCLIDEAN.getPartialDistance(row, x[s]));
+			potential += best;
+		}
+		
+		return potential;
+	}
+	
+	@Test
+	public void testKMeansParallelInit() {
+		final Array2DRowRealMatrix[] datasets = new Array2DRowRealMatrix[]{data_, wine, bc};
+		
+		for(Array2DRowRealMatrix x: datasets) {
+			final double[][] X = x.getDataRef();
+			
+			for(int k: new int[]{3, 10, 25}) {
+				double parallel = 0, augmented = 0, random = 0;
+				
+				for(int trial = 0; trial < 5; trial++) {
+					final KMeans km = new KMeans(x, new KMeansParameters(k).setSeed(new Random(trial))
+						.setInitializationStrategy(InitializationStrategy.KMEANS_PARALLEL));
+					assertTrue(km.init == InitializationStrategy.KMEANS_PARALLEL);
+					
+					final int[] seeds = km.init_centroid_indices;
+					assertTrue(seeds.length == k);
+					assertTrue(VecUtils.unique(seeds).size() == k);
+					
+					// Shares the seeding with KMedoids
+					final KMedoids med = new KMedoids(x, new KMedoidsParameters(k).setSeed(new Random(trial))
+						.setInitializationStrategy(InitializationStrategy.KMEANS_PARALLEL));
+					assertTrue(VecUtils.equalsExactly(seeds, med.init_centroid_indices));
+					
+					parallel += seedPotential(X, seeds);
+					augmented += seedPotential(X, new KMeans(x, new KMeansParameters(k).setSeed(new Random(trial))
+						.setInitializationStrategy(InitializationStrategy.KM_AUGMENTED)).init_centroid_indices);
+					random += seedPotential(X, new KMeans(x, new KMeansParameters(k).setSeed(new Random(trial))
+						.setInitializationStrategy(InitializationStrategy.RANDOM)).init_centroid_indices);
+				}
+				
+				// As good as k-means++ on average, and better than random
+				assertTrue(parallel + " vs. " + augmented, parallel < augmented * 1.25);
+				assertTrue(parallel + " vs. " + random, parallel < random);
+			}
+		}
+	}
+	
+	@Test
+	public void testKMeansParallelInitParallelMatchesSerial() {
+		final Array2DRowRealMatrix x = new Array2DRowRealMatrix(
+			MatUtils.randomGaussian(3000, 3, new Random(4)), false);
+		final boolean allowed = GlobalState.ParallelismConf.PARALLELISM_ALLOWED;
+		
+		try {
+			GlobalState.ParallelismConf.PARALLELISM_ALLOWED = true;
+			KMeans serial = new KMeans(x, new KMeansParameters(20).setSeed(new Random(6))
+				.setInitializationStrategy(InitializationStrategy.KMEANS_PARALLEL));
+			KMeans parallel = new KMeans(x, new KMeansParameters(20).setSeed(new Random(6))
+				.setInitializationStrategy(InitializationStrategy.KMEANS_PARALLEL).setForceParallel(true));
+			
+			assertTrue(parallel.parallel);
+			assertTrue(VecUtils.equalsExactly(serial.init_centroid_indices, parallel.init_centroid_indices));
+		} finally {
+			GlobalState.ParallelismConf.PARALLELISM_ALLOWED = allowed;
+		}
+	}
+	
+	@Test
+	public void testKMeansParallelInitCornerCases() {
+		// There are only two distinct points, so the seeds are filled with distinct rows
+		final double[][] two = MatUtils.rep(-1, 10, 3);
+		for(int i = 0; i < 5; i++)
+			two[i] = new double[]{1, 1, 1};
+		final Array2DRowRealMatrix same = new Array2DRowRealMatrix(two, false);
+		final int[] seeds = new KMeans(same, new KMeansParameters(4)
+			.setInitializationStrategy(InitializationStrategy.KMEANS_PARALLEL)).init_centroid_indices;
+		assertTrue(VecUtils.unique(seeds).size() == 4);
+		
+		// k = m
+		final Array2DRowRealMatrix small = new Array2DRowRealMatrix(MatUtils.randomGaussian(5, 2, new Random(1)), false);
+		assertTrue(VecUtils.equalsExactly(VecUtils.arange(5), new KMeans(small, new KMeansParameters(5)
+			.setInitializationStrategy(InitializationStrategy.KMEANS_PARALLEL)).init_centroid_indices));
+	}
+	
+	@Test
+	public void testNInit() {
+		final Array2DRowRealMatrix x = new Array2DRowRealMatrix(
+			MatUtils.randomGaussian(500, 3, new Random(2)), false);
+		
+		for(KMeans.KMeansAlgorithm algo: KMeans.KMeansAlgorithm.values()) {
+			KMeansParameters planner = new KMeansParameters(8).setSeed(new Random(5)).setAlgorithm(algo);
+			KMeans single = planner.copy().fitNewModel(x);
+			KMeans multi = planner.copy().setNInit(5).fitNewModel(x);
+			
+			// The first restart is the single fit, so the best can only be better
+			assertTrue(multi.totalWSS() <= single.totalWSS());
+			assertTrue(multi.fitSummary.size() == 6);
+			assertTrue(multi.getCentroids().size() == 8);
+			assertTrue(VecUtils.unique(multi.getLabels()).size() == 8);
+			
+			// The solution is self-consistent
+			final int[] predicted = multi.predict(x);
+			assertTrue(VecUtils.equalsExactly(predicted, multi.getLabels()));
+		}
+		
+		// A single restart is the default, and copies keep the option
+		assertTrue(new KMeansParameters().getNInit() == 1);
+		assertTrue(new KMeansParameters().setNInit(3).copy().getNInit() == 3);
+	}
+	
+	@Test
+	public void testNInitParallelMatchesSerial() {
+		final Array2DRowRealMatrix x = new Array2DRowRealMatrix(
+			MatUtils.randomGaussian(1000, 4, new Random(3)), false);
+		final boolean allowed = GlobalState.ParallelismConf.PARALLELISM_ALLOWED;
+		
+		try {
+			GlobalState.ParallelismConf.PARALLELISM_ALLOWED = true;
+			KMeans serial = new KMeansParameters(6).setSeed(new Random(9)).setNInit(4).fitNewModel(x);
+			KMeans parallel = new KMeansParameters(6).setSeed(new Random(9)).setNInit(4)
+				.setForceParallel(true).fitNewModel(x);
+			
+			assertTrue(parallel.parallel);
+			assertTrue(VecUtils.equalsExactly(serial.getLabels(), parallel.getLabels()));
+			assertTrue(Precision.equals(serial.totalWSS(), parallel.totalWSS(), 1e-8));
+			assertTrue(parallel.fitSummary.size() == 5);
+		} finally {
+			GlobalState.ParallelismConf.PARALLELISM_ALLOWED = allowed;
+		}
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void testNInitIAE() {
+		new KMeans(data_, new KMeansParameters(3).setNInit(0));
+	}
+	
+	@Test
+	public void testFilteringMatchesLloyd() {
+		for(int n: new int[]{2, 3, 5}) {
+			final Array2DRowRealMatrix x = new Array2DRowRealMatrix(
+				MatUtils.randomGaussian(3000, n, new Random(n)), false);
+			
+			for(int k: new int[]{2, 7, 25}) {
+				KMeans lloyd = new KMeansParameters(k).setSeed(new Random(k)).fitNewModel(x);
+				KMeans filter = new KMeansParameters(k).setSeed(new Random(k))
+					.setAlgorithm(KMeans.KMeansAlgorithm.FILTERING).fitNewModel(x);
+				
+				assertTrue(filter.getAlgorithm() == KMeans.KMeansAlgorithm.FILTERING);
+				assertTrue(VecUtils.equalsExactly(lloyd.getLabels(), filter.getLabels()));
+				assertTrue(lloyd.itersElapsed() == filter.itersElapsed());
+				assertTrue(Precision.equals(lloyd.totalWSS(), filter.totalWSS(), 1e-8 * lloyd.getTSS()));
+				
+				for(int c = 0; c < k; c++)
+					assertTrue(VecUtils.equalsWithTolerance(lloyd.getCentroids().get(c), 
+						filter.getCentroids().get(c), 1e-10));
+				
+				// Whole subtrees are assigned at once in low dimensions
+				if(2 == n && k > 2)
+					assertTrue(filter.getDistanceComputations() < lloyd.getDistanceComputations());
+			}
+		}
+	}
+	
+	@Test
+	public void testFilteringFallback() {
+		// The pruning relies on the Euclidean bisector being a hyperplane
+		KMeans km = new KMeansParameters(3).setMetric(Distance.MANHATTAN)
+			.setAlgorithm(KMeans.KMeansAlgorithm.FILTERING).fitNewModel(data_);
+		assertTrue(km.getAlgorithm() == KMeans.KMeansAlgorithm.LLOYD);
+		assertTrue(km.hasWarnings());
+		
+		final CSRMatrix csr = new CSRMatrix(CSRMatrixTests.randomSparse(40, 6, 0.3, new Random(1)));
+		km = new KMeansParameters(3).setAlgorithm(KMeans.KMeansAlgorithm.FILTERING).fitNewModel(csr);
+		assertTrue(km.getAlgorithm() == KMeans.KMeansAlgorithm.LLOYD);
+		
+		// Duplicate points share leaves without breaking the node statistics
+		final double[][] dupes = new double[200][];
+		for(int i = 0; i < dupes.length; i++)
+			dupes[i] = new double[]{i % 4, (i % 4) * 2};
+		km = new KMeansParameters(4).setAlgorithm(KMeans.KMeansAlgorithm.FILTERING)
+			.fitNewModel(new Array2DRowRealMatrix(dupes, false));
+		assertTrue(VecUtils.unique(km.getLabels()).size() == 4);
+		assertTrue(km.totalWSS() < 1e-8);
+	}
+	
+	@Test
+	public void testWarmStart() {
+		final Random rand = new Random(3);
+		final double[][] x = MatUtils.randomGaussian(3000, 3, rand);
+		for(int i = 0; i < x.length; i++)
+			x[i][i % 3] += 5 * (i % 2);
+		
+		// Drift the data a little
+		final double[][] y = MatUtils.copy(x);
+		for(int i = 0; i < y.length; i++)
+			for(int j = 0; j < 3; j++)
+				y[i][j] += 0.05 * rand.nextGaussian();
+		
+		final Array2DRowRealMatrix X = new Array2DRowRealMatrix(x, false), Y = new Array2DRowRealMatrix(y, false);
+		final KMeans prev = new KMeansParameters(8).setSeed(new Random(1))
+			.setMaxIter(500).setConvergenceCriteria(1e-8).fitNewModel(X);
+		
+		KMeansParameters planner = new KMeansParameters()
+			.setMaxIter(500).setConvergenceCriteria(1e-8).setWarmStart(prev);
+		assertTrue(planner.getK() == 8);
+		assertTrue(planner.copy().getPriorIterations() == prev.itersElapsed());
+		
+		final KMeans warm = planner.fitNewModel(Y);
+		assertTrue(warm.itersElapsed() < prev.itersElapsed());
+		assertTrue(warm.getIterationsSaved() == prev.itersElapsed() - warm.itersElapsed());
+		assertTrue(prev.getIterationsSaved() == -1);
+		
+		// On the same data, the fit is already converged
+		final KMeans same = new KMeansParameters().setMaxIter(500)
+			.setConvergenceCriteria(1e-8).setWarmStart(prev).fitNewModel(X);
+		assertTrue(same.itersElapsed() <= 2);
+		assertTrue(VecUtils.equalsExactly(prev.getLabels(), same.getLabels()));
+		
+		// Centroids that are not records are kept as given
+		final ArrayList<double[]> given = new ArrayList<>();
+		given.add(new double[]{0.5, 0.5, 0.5});
+		given.add(new double[]{-3, 2, 1});
+		KMeans km = new KMeans(X, new KMeansParameters().setInitialCentroids(given).setNInit(3));
+		assertTrue(km.getK() == 2);
+		assertTrue(VecUtils.equalsExactly(km.getCentroids().get(1), given.get(1)));
+		assertTrue(km.hasWarnings()); // fits once
+		assertTrue(km.init_centroid_indices.length == 2);
+	}
+	
+	@Test(expected=DimensionMismatchException.class)
+	public void testWarmStartDimensionMismatch() {
+		final ArrayList<double[]> given = new ArrayList<>();
+		given.add(new double[]{0, 0});
+		given.add(new double[]{1, 1});
+		new KMeans(data_, new KMeansParameters().setInitialCentroids(given));
+	}
+	
+	@Test(expected=ModelNotFitException.class)
+	public void testWarmStartNotFit() {
+		new KMeansParameters().setWarmStart(new KMeans(data_, 3));
+	}
 }
@@ -24,13 +24,17 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Random;
 
 import org.apache.commons.math3.linear.RealMatrix;
 import org.apache.commons.math3.linear.Array2DRowRealMatrix;
 import org.apache.commons.math3.util.FastMath;
+import org.apache.commons.math3.util.Precision;
 import org.junit.Test;
 
+import com.clust4j.GlobalState;
 import com.clust4j.TestSuite;
+import com.clust4j.algo.KMedoids.KMedoidsAlgorithm;
 import com.clust4j.algo.KMedoidsParameters;
 import com.clust4j.algo.preprocess.StandardScaler;
 import com.clust4j.data.DataSet;
@@ -38,9 +42,11 @@ import com.clust4j.kernel.HyperbolicTangentKernel;
 import com.clust4j.kernel.Kernel;
 //import com.clust4j.kernel.KernelTestCases;
 import com.clust4j.kernel.LaplacianKernel;
+import com.clust4j.metrics.pairwise.CondensedDistanceMatrix.Storage;
 import com.clust4j.metrics.pairwise.Distance;
 import com.clust4j.metrics.pairwise.DistanceMetric;
 import com.clust4j.metrics.pairwise.GeometricallySeparable;
+import com.clust4j.metrics.pairwise.PairwiseCache;
 import com.clust4j.utils.MatUtils;
 import com.clust4j.utils.VecUtils;
 import com.clust4j.utils.Series.Inequality;
@@ -81,6 +87,49 @@ public class KMedoidsTests implements ClusterTest, ClassifierTest, ConvergeableT
 		assertTrue(getCost(belonging, med_idx, distanceMatrix) == 4);
 	}
 
+	@Test
+	public void testOffHeapStorage() {
+		final int[] expected = new KMedoids(irisdata, 
+			new KMedoidsParameters(3).setSeed(new Random(5))).fit().getLabels();
+		
+		for(Storage storage: new Storage[]{Storage.DIRECT, Storage.MAPPED}) {
+			KMedoids km = new KMedoids(irisdata, new KMedoidsParameters(3)
+				.setSeed(new Random(5)).setMatrixStorage(storage)).fit();
+			assertTrue(VecUtils.equalsExactly(expected, km.getLabels()));
+		}
+	}
+
+	@Test
+	public void testBoundedPairwiseCache() {
+		// Room for only a handful of rows, so they are computed on demand and evicted
+		for(GeometricallySeparable geo: new GeometricallySeparable[]{
+				Distance.MANHATTAN, new LaplacianKernel(0.5)}) {
+			final int[] expected = new KMedoids(irisdata, new KMedoidsParameters(3)
+				.setMetric(geo).setSeed(new Random(5))).fit().getLabels();
+			
+			KMedoids km = new KMedoids(irisdata, new KMedoidsParameters(3)
+				.setMetric(geo).setSeed(new Random(5))
+				.setPairwiseCacheSize(10 * 150 * 8)).fit();
+			assertTrue(VecUtils.equalsExactly(expected, km.getLabels()));
+		}
+		
+		// One assignment pass should only compute the medoids' rows
+		final Array2DRowRealMatrix X = getRandom(2000, 4);
+		final int[] medoids = new int[]{0, 1, 2};
+		final KMedoidsParameters planner = new KMedoidsParameters(3).setSeed(new Random(5));
+		final PairwiseCache cache = PairwiseCache.of(X.getDataRef(),
+			Distance.EUCLIDEAN, false, 100L * 2000 * 8, Storage.HEAP);
+		assertFalse(cache.isFull());
+		
+		new KMedoids(new KMedoids(X, planner), planner.copy(), medoids, cache).assignClosestMedoid(medoids);
+		assertTrue(cache.getRowsComputed() == medoids.length);
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testBadPairwiseCacheSize() {
+		new KMedoids(irisdata, new KMedoidsParameters(3).setPairwiseCacheSize(0));
+	}
+
 	@Test
 	@Override
 	public void testItersElapsed() {
@@ -440,4 +489,404 @@ public class KMedoidsTests implements ClusterTest, ClassifierTest, ConvergeableT
 		int[] labels = new KMedoids(X, new KMedoidsParameters(3).setVerbose(true)).fit().getLabels();
 		assertTrue(new VecUtils.IntSeries(labels, Inequality.EQUAL_TO, 0).all());
 	}
+	
+	@Test
+	public void testNInit() {
+		final Array2DRowRealMatrix x = new Array2DRowRealMatrix(
+			MatUtils.randomGaussian(300, 3, new Random(2)), false);
+		
+		for(Storage storage: Storage.values()) {
+			KMedoidsParameters planner = new KMedoidsParameters(6).setSeed(new Random(5)).setMatrixStorage(storage);
+			KMedoids single = planner.copy().fitNewModel(x);
+			KMedoids multi = planner.copy().setNInit(5).fitNewModel(x);
+			
+			// The first restart is the single fit, so the best can only be better
+			assertTrue(multi.totalWSS() <= single.totalWSS());
+			assertTrue(multi.fitSummary.size() == 6);
+			assertTrue(VecUtils.unique(multi.getLabels()).size() == 6);
+			
+			assertTrue(multi.getCentroids().size() == 6);
+		}
+		
+		// A single restart is the default, and copies keep the option
+		assertTrue(new KMedoidsParameters().getNInit() == 1);
+		assertTrue(new KMedoidsParameters().setNInit(3).copy().getNInit() == 3);
+	}
+	
+	@Test
+	public void testNInitParallelMatchesSerial() {
+		final Array2DRowRealMatrix x = new Array2DRowRealMatrix(
+			MatUtils.randomGaussian(400, 4, new Random(3)), false);
+		final boolean allowed = GlobalState.ParallelismConf.PARALLELISM_ALLOWED;
+		
+		try {
+			GlobalState.ParallelismConf.PARALLELISM_ALLOWED = true;
+			KMedoids serial = new KMedoidsParameters(5).setSeed(new Random(9)).setNInit(4).fitNewModel(x);
+			KMedoids parallel = new KMedoidsParameters(5).setSeed(new Random(9)).setNInit(4)
+				.setForceParallel(true).fitNewModel(x);
+			
+			assertTrue(parallel.parallel);
+			assertTrue(VecUtils.equalsExactly(serial.getLabels(), parallel.getLabels()));
+			assertTrue(serial.totalWSS() == parallel.totalWSS());
+			assertTrue(parallel.fitSummary.size() == 5);
+		} finally {
+			GlobalState.ParallelismConf.PARALLELISM_ALLOWED = allowed;
+		}
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void testNInitIAE() {
+		new KMedoids(TestSuite.IRIS_DATASET.getData(), new KMedoidsParameters(3).setNInit(0));
+	}
+	
+	@Test
+	public void testWarmStart() {
+		final Array2DRowRealMatrix x = new Array2DRowRealMatrix(
+			MatUtils.randomGaussian(300, 3, new Random(2)), false);
+		
+		// Starts from the given medoids
+		final int[] medoids = new int[]{4, 100, 7};
+		KMedoids km = new KMedoids(x, new KMedoidsParameters().setInitialMedoids(medoids));
+		assertTrue(km.getK() == 3);
+		assertTrue(VecUtils.equalsExactly(km.init_centroid_indices, medoids));
+		assertTrue(VecUtils.equalsExactly(km.getCentroids().get(1), x.getRow(100)));
+		
+		// Warm starting from a fit model on the same data keeps its medoids
+		final KMedoids prev = new KMedoidsParameters(4).setSeed(new Random(3)).fitNewModel(x);
+		final KMedoids warm = new KMedoidsParameters().setWarmStart(prev).fitNewModel(x);
+		assertTrue(VecUtils.equalsExactly(prev.getLabels(), warm.getLabels()));
+		assertTrue(warm.itersElapsed() <= prev.itersElapsed());
+		assertTrue(warm.getIterationsSaved() == prev.itersElapsed() - warm.itersElapsed());
+		
+		// Given centroids are replaced by distinct nearest records
+		final ArrayList<double[]> given = new ArrayList<>();
+		given.add(x.getRow(10));
+		given.add(x.getRow(10));
+		km = new KMedoids(x, new KMedoidsParameters().setInitialCentroids(given));
+		assertTrue(km.init_centroid_indices[0] == 10);
+		assertTrue(km.init_centroid_indices[1] != 10);
+		assertTrue(VecUtils.equalsExactly(km.getCentroids().get(1), x.getRow(km.init_centroid_indices[1])));
+		
+		// The parameters copy the medoids
+		assertTrue(VecUtils.equalsExactly(medoids, 
+			new KMedoidsParameters().setInitialMedoids(medoids).copy().getInitialIndices()));
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void testWarmStartIndexOutOfRange() {
+		new KMedoids(TestSuite.IRIS_DATASET.getData(), new KMedoidsParameters().setInitialMedoids(new int[]{0, 150}));
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void testWarmStartDuplicateMedoids() {
+		new KMedoids(TestSuite.IRIS_DATASET.getData(), new KMedoidsParameters().setInitialMedoids(new int[]{3, 3}));
+	}
+	
+	/** The sum of distances from each record to its nearest medoid */
+	static double medoidCost(final double[][] X, final int[] medoids) {
+		double cost = 0;
+		for(double[] row: X) {
+			double min = Double.POSITIVE_INFINITY;
+			for(int medoid: medoids)
+				min = FastMath.min(min, Distance.MANHATTAN.getDistance(row, X[medoid]));
+			cost += min;
+		}
+		
+		return cost;
+	}
+	
+	@Test
+	public void testSampledAlgorithms() {
+		final double[][] x = MatUtils.randomGaussian(2000, 3, new Random(5));
+		for(int i = 0; i < x.length; i++)
+			x[i][i % 3] += 8 * (i % 2);
+		final Array2DRowRealMatrix X = new Array2DRowRealMatrix(x, false);
+		
+		final double voronoi = VecUtils.sum(new KMedoidsParameters(6).setSeed(new Random(1)).fitNewModel(X).getWSS());
+		
+		for(KMedoidsAlgorithm algo: new KMedoidsAlgorithm[]{KMedoidsAlgorithm.CLARA, KMedoidsAlgorithm.CLARANS}) {
+			final KMedoids km = new KMedoidsParameters(6).setSeed(new Random(1))
+				.setAlgorithm(algo).setNumSamples(4).fitNewModel(X);
+			
+			final int[] labels = km.getLabels();
+			assertTrue(algo.toString(), VecUtils.unique(labels).size() == 6);
+			assertTrue(km.itersElapsed() == 4);
+			assertTrue(km.fitSummary.size() == 5);
+			
+			// The medoids are records, and each record is labeled by its nearest
+			final ArrayList<double[]> medoids = km.getCentroids();
+			final double wss = VecUtils.sum(km.getWSS());
+			for(int i = 0; i < x.length; i++) {
+				final double d = Distance.MANHATTAN.getDistance(x[i], medoids.get(labels[i]));
+				for(double[] medoid: medoids)
+					assertTrue(d <= Distance.MANHATTAN.getDistance(x[i], medoid));
+			}
+			
+			// Comparable to the full Voronoi iteration
+			assertTrue(algo + ": " + wss + " vs. " + voronoi, wss < 1.25 * voronoi);
+			assertTrue(Precision.equals(wss + km.getBSS(), km.getTSS(), 1e-8 * km.getTSS()));
+			
+			// Deterministic given the seed
+			assertTrue(VecUtils.equalsExactly(labels, new KMedoidsParameters(6).setSeed(new Random(1))
+				.setAlgorithm(algo).setNumSamples(4).fitNewModel(X).getLabels()));
+		}
+	}
+	
+	@Test
+	public void testClaransImprovesOnInitialMedoids() {
+		final double[][] x = MatUtils.randomGaussian(500, 2, new Random(2));
+		final int[] initial = new int[]{0, 1, 2, 3};
+		final double start = medoidCost(x, initial);
+		
+		final KMedoids km = new KMedoidsParameters().setInitialMedoids(initial)
+			.setAlgorithm(KMedoidsAlgorithm.CLARANS).setNumSamples(1).setMaxNeighbor(100)
+			.fitNewModel(new Array2DRowRealMatrix(x, false));
+		assertTrue(VecUtils.sum(km.getWSS()) <= start);
+		assertTrue(km.didConverge());
+	}
+	
+	@Test
+	public void testSampledParallelMatchesSerial() {
+		final Array2DRowRealMatrix X = new Array2DRowRealMatrix(
+			MatUtils.randomGaussian(800, 4, new Random(3)), false);
+		final boolean allowed = GlobalState.ParallelismConf.PARALLELISM_ALLOWED;
+		
+		try {
+			GlobalState.ParallelismConf.PARALLELISM_ALLOWED = true;
+			for(KMedoidsAlgorithm algo: new KMedoidsAlgorithm[]{KMedoidsAlgorithm.CLARA, KMedoidsAlgorithm.CLARANS}) {
+				KMedoids serial = new KMedoidsParameters(5).setSeed(new Random(9))
+					.setAlgorithm(algo).fitNewModel(X);
+				KMedoids parallel = new KMedoidsParameters(5).setSeed(new Random(9))
+					.setAlgorithm(algo).setForceParallel(true).fitNewModel(X);
+				
+				assertTrue(parallel.parallel);
+				assertTrue(VecUtils.equalsExactly(serial.getLabels(), parallel.getLabels()));
+			}
+		} finally {
+			GlobalState.ParallelismConf.PARALLELISM_ALLOWED = allowed;
+		}
+	}
+	
+	@Test
+	public void testSampledParameters() {
+		final Array2DRowRealMatrix iris = TestSuite.IRIS_DATASET.getData();
+		
+		// Defaults, and nInit is ignored
+		KMedoids km = new KMedoids(iris, new KMedoidsParameters(3)
+			.setAlgorithm(KMedoidsAlgorithm.CLARA).setNInit(4));
+		assertTrue(km.hasWarnings());
+		assertTrue(km.fit().itersElapsed() == 5);
+		assertTrue(new KMedoidsParameters(3).setAlgorithm(KMedoidsAlgorithm.CLARANS)
+			.fitNewModel(iris).itersElapsed() == 2);
+		
+		// A sample larger than the data is the whole data
+		km = new KMedoidsParameters(3).setAlgorithm(KMedoidsAlgorithm.CLARA)
+			.setSampleSize(1000).setNumSamples(1).fitNewModel(iris);
+		assertTrue(VecUtils.unique(km.getLabels()).size() == 3);
+		
+		KMedoidsParameters planner = new KMedoidsParameters(3).setAlgorithm(KMedoidsAlgorithm.CLARANS)
+			.setNumSamples(3).setSampleSize(50).setMaxNeighbor(20).copy();
+		assertTrue(planner.getAlgorithm() == KMedoidsAlgorithm.CLARANS);
+		assertTrue(planner.getNumSamples() == 3);
+		assertTrue(planner.getSampleSize() == 50);
+		assertTrue(planner.getMaxNeighbor() == 20);
+		
+		boolean a = false;
+		try {
+			new KMedoids(iris, new KMedoidsParameters(3).setSampleSize(2));
+		} catch(IllegalArgumentException e) {
+			a = true;
+		} finally {
+			assertTrue(a);
+		}
+		
+		a = false;
+		try {
+			new KMedoids(iris, new KMedoidsParameters(3).setMaxNeighbor(0));
+		} catch(IllegalArgumentException e) {
+			a = true;
+		} finally {
+			assertTrue(a);
+		}
+	}
+	
+	/** The row indices of the records that are the medoids */
+	static int[] medoidIndices(final double[][] X, final ArrayList<double[]> medoids) {
+		final int[] indices = new int[medoids.size()];
+		for(int i = 0; i < indices.length; i++)
+			for(int r = 0; r < X.length; r++)
+				if(VecUtils.equalsExactly(X[r], medoids.get(i)))
+					indices[i] = r;
+		
+		return indices;
+	}
+	
+	@Test
+	public void testPAMSwapsToALocalOptimum() {
+		final double[][] x = MatUtils.randomGaussian(150, 2, new Random(4));
+		for(int i = 0; i < x.length; i++)
+			x[i][i % 2] += 6 * (i % 3);
+		final Array2DRowRealMatrix X = new Array2DRowRealMatrix(x, false);
+		
+		final KMedoids km = new KMedoidsParameters(4).setSeed(new Random(1)).setMaxIter(100)
+			.setConvergenceCriteria(0.0).setAlgorithm(KMedoidsAlgorithm.PAM).fitNewModel(X);
+		assertTrue(km.didConverge());
+		
+		// The reported cost is that of the medoids, and no single swap improves it
+		final int[] medoids = medoidIndices(x, km.getCentroids());
+		final double cost = medoidCost(x, medoids);
+		assertTrue(Precision.equals(cost, VecUtils.sum(km.getWSS()), 1e-8));
+		assertTrue(Precision.equals(cost + km.getBSS(), km.getTSS(), 1e-8 * km.getTSS()));
+		
+		for(int i = 0; i < medoids.length; i++) {
+			final int medoid = medoids[i];
+			for(int h = 0; h < x.length; h++) {
+				medoids[i] = h;
+				assertTrue(medoidCost(x, medoids) >= cost - 1e-8);
+			}
+			medoids[i] = medoid;
+		}
+		
+		// Each record is labeled by its nearest medoid
+		final int[] labels = km.getLabels();
+		final ArrayList<double[]> centroids = km.getCentroids();
+		for(int i = 0; i < x.length; i++) {
+			final double d = Distance.MANHATTAN.getDistance(x[i], centroids.get(labels[i]));
+			for(double[] centroid: centroids)
+				assertTrue(d <= Distance.MANHATTAN.getDistance(x[i], centroid));
+		}
+		
+		// No worse than the Voronoi iteration from the same initial medoids
+		assertTrue(VecUtils.sum(km.getWSS()) <= VecUtils.sum(new KMedoidsParameters(4)
+			.setSeed(new Random(1)).fitNewModel(X).getWSS()) + 1e-8);
+	}
+	
+	@Test
+	public void testPAMImprovesOnInitialMedoids() {
+		final double[][] x = MatUtils.randomGaussian(300, 3, new Random(8));
+		final int[] initial = new int[]{0, 1, 2, 3, 4};
+		
+		final KMedoids km = new KMedoidsParameters().setInitialMedoids(initial)
+			.setAlgorithm(KMedoidsAlgorithm.PAM).fitNewModel(new Array2DRowRealMatrix(x, false));
+		assertTrue(VecUtils.sum(km.getWSS()) < medoidCost(x, initial));
+		assertTrue(km.itersElapsed() > 1);
+		
+		// A swap search capped at one iteration does not converge
+		assertFalse(new KMedoidsParameters().setInitialMedoids(initial).setMaxIter(1)
+			.setAlgorithm(KMedoidsAlgorithm.PAM).fitNewModel(new Array2DRowRealMatrix(x, false))
+			.didConverge());
+	}
+	
+	@Test
+	public void testPAMParallelMatchesSerial() {
+		final Array2DRowRealMatrix X = new Array2DRowRealMatrix(
+			MatUtils.randomGaussian(400, 4, new Random(6)), false);
+		final boolean allowed = GlobalState.ParallelismConf.PARALLELISM_ALLOWED;
+		
+		try {
+			GlobalState.ParallelismConf.PARALLELISM_ALLOWED = true;
+			KMedoids serial = new KMedoidsParameters(5).setSeed(new Random(2))
+				.setAlgorithm(KMedoidsAlgorithm.PAM).fitNewModel(X);
+			KMedoids parallel = new KMedoidsParameters(5).setSeed(new Random(2))
+				.setAlgorithm(KMedoidsAlgorithm.PAM).setForceParallel(true).fitNewModel(X);
+			
+			assertTrue(parallel.parallel);
+			assertTrue(serial.itersElapsed() == parallel.itersElapsed());
+			assertTrue(VecUtils.equalsExactly(serial.getLabels(), parallel.getLabels()));
+		} finally {
+			GlobalState.ParallelismConf.PARALLELISM_ALLOWED = allowed;
+		}
+	}
+	
+	@Test
+	public void testPAMParallelBoundedCache() {
+		final Array2DRowRealMatrix X = new Array2DRowRealMatrix(
+			MatUtils.randomGaussian(400, 4, new Random(6)), false);
+		final boolean allowed = GlobalState.ParallelismConf.PARALLELISM_ALLOWED;
+		
+		try {
+			GlobalState.ParallelismConf.PARALLELISM_ALLOWED = true;
+			KMedoids full = new KMedoidsParameters(5).setSeed(new Random(2))
+				.setAlgorithm(KMedoidsAlgorithm.PAM).fitNewModel(X);
+		
+			// Room for only twenty rows, read concurrently by the candidate search
+			KMedoids bounded = new KMedoidsParameters(5).setSeed(new Random(2))
+				.setAlgorithm(KMedoidsAlgorithm.PAM).setForceParallel(true)
+				.setPairwiseCacheSize(20 * 400 * 8).fitNewModel(X);
+		
+			assertTrue(bounded.parallel);
+			assertTrue(full.itersElapsed() == bounded.itersElapsed());
+			assertTrue(VecUtils.equalsExactly(full.getLabels(), bounded.getLabels()));
+		} finally {
+			GlobalState.ParallelismConf.PARALLELISM_ALLOWED = allowed;
+		}
+	}
+	
+	@Test
+	public void testSwapSearchComputesFixedRows() {
+		final double[][] X = MatUtils.randomGaussian(2000, 4, new Random(6));
+		final int[] medoids = new int[]{0, 1, 2};
+		final PairwiseCache cache = PairwiseCache.of(X, Distance.EUCLIDEAN, false, 100L * 2000 * 8, Storage.HEAP);
+		assertFalse(cache.isFull());
+		
+		// Only the medoids' rows are needed for the nearest medoids...
+		final KMedoids.SwapSearch search = new KMedoids.SwapSearch(cache, medoids);
+		assertTrue(cache.getRowsComputed() == medoids.length);
+		
+		// ... and one more per candidate
+		final KMedoids.Swap best = search.best(3, 13);
+		assertTrue(cache.getRowsComputed() == medoids.length + 10);
+		
+		final KMedoids.SwapSearch full = new KMedoids.SwapSearch(PairwiseCache.of(X,
+			Distance.EUCLIDEAN, false, Long.MAX_VALUE, Storage.HEAP), medoids);
+		final KMedoids.Swap expected = full.best(3, 13);
+		assertTrue(best.position == expected.position && best.record == expected.record);
+		
+		// The forked search keeps the same swap as the serial one
+		final KMedoids.Swap serial = full.best(0, 2000), forked = KMedoids.SwapTask.doAll(full);
+		assertTrue(serial.position == forked.position && serial.record == forked.record);
+		assertTrue(serial.delta == forked.delta);
+	}
+		
+	@Test
+	public void testPAMRestarts() {
+		final Array2DRowRealMatrix iris = TestSuite.IRIS_DATASET.getData();
+		final KMedoidsParameters planner = new KMedoidsParameters(3).setSeed(new Random(3))
+			.setAlgorithm(KMedoidsAlgorithm.PAM).setNInit(3).copy();
+		assertTrue(planner.getAlgorithm() == KMedoidsAlgorithm.PAM);
+		
+		// Each restart swaps to a local optimum, so the best is one too
+		final KMedoids km = planner.fitNewModel(iris);
+		assertFalse(km.hasWarnings());
+		assertTrue(km.didConverge());
+		assertTrue(VecUtils.unique(km.getLabels()).size() == 3);
+	}
+	
+	@Test
+	public void testLazyDistances() {
+		final double[][] x = MatUtils.randomGaussian(600, 3, new Random(11));
+		for(int i = 0; i < x.length; i++)
+			x[i][i % 3] += 7 * (i % 4);
+		final Array2DRowRealMatrix X = new Array2DRowRealMatrix(x, false);
+		
+		final KMedoidsParameters planner = new KMedoidsParameters(4).setLazyDistances(true).copy();
+		assertTrue(planner.getLazyDistances());
+		assertFalse(new KMedoidsParameters(4).getLazyDistances());
+		
+		// The same fit as from the full matrix, including with a budget too small for it
+		for(KMedoidsAlgorithm algo: new KMedoidsAlgorithm[]{KMedoidsAlgorithm.VORONOI, KMedoidsAlgorithm.PAM}) {
+			for(long budget: new long[]{Long.MAX_VALUE, 1 << 14}) {
+				KMedoids eager = new KMedoidsParameters(4).setSeed(new Random(5))
+					.setAlgorithm(algo).fitNewModel(X);
+				KMedoids lazy = new KMedoidsParameters(4).setSeed(new Random(5)).setAlgorithm(algo)
+					.setLazyDistances(true).setPairwiseCacheSize(budget).setNInit(2).fitNewModel(X);
+				KMedoids lazy1 = new KMedoidsParameters(4).setSeed(new Random(5)).setAlgorithm(algo)
+					.setLazyDistances(true).setPairwiseCacheSize(budget).fitNewModel(X);
+				
+				assertTrue(VecUtils.equalsExactly(eager.getLabels(), lazy1.getLabels()));
+				assertTrue(eager.itersElapsed() == lazy1.itersElapsed());
+				assertTrue(VecUtils.sum(lazy.getWSS()) <= VecUtils.sum(lazy1.getWSS()) + 1e-8);
+			}
+		}
+	}
 }
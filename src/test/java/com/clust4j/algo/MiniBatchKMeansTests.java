@@ -0,0 +1,311 @@
+/*******************************************************************************
+ *    Copyright 2015, 2016 Taylor G Smith
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *******************************************************************************/
+package com.clust4j.algo;
+
+import static com.clust4j.metrics.scoring.SupervisedMetric.INDEX_AFFINITY;
+import static org.junit.Assert.*;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.commons.math3.exception.DimensionMismatchException;
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+import org.junit.Test;
+
+import com.clust4j.TestSuite;
+import com.clust4j.except.ModelNotFitException;
+import com.clust4j.except.NaNException;
+import com.clust4j.metrics.pairwise.Distance;
+import com.clust4j.utils.MatUtils;
+import com.clust4j.utils.VecUtils;
+import com.clust4j.utils.Series.Inequality;
+
+public class MiniBatchKMeansTests implements ClassifierTest, ClusterTest, ConvergeableTest, BaseModelTest {
+	final Array2DRowRealMatrix data_ = TestSuite.IRIS_DATASET.getData();
+	final static double[][] centers = new double[][]{
+		new double[]{0, 0}, new double[]{100, 100}, new double[]{-100, 100}
+	};
+
+	/** Well-separated Gaussian blobs, cycling through the centers */
+	static double[][] blobs(final int m, final int numCenters, final Random rand) {
+		final double[][] X = new double[m][];
+		for(int i = 0; i < m; i++) {
+			final double[] c = centers[i % numCenters];
+			X[i] = new double[]{c[0] + rand.nextGaussian(), c[1] + rand.nextGaussian()};
+		}
+
+		return X;
+	}
+
+	static int[] blobLabels(final int m) {
+		final int[] y = new int[m];
+		for(int i = 0; i < m; i++)
+			y[i] = i % centers.length;
+		return y;
+	}
+
+	@Test
+	@Override
+	public void testItersElapsed() {
+		assertTrue(new MiniBatchKMeans(data_).fit().itersElapsed() > 0);
+		assertTrue(new MiniBatchKMeans(data_, 3).fit().itersElapsed() > 0);
+		assertTrue(new MiniBatchKMeans(data_, new MiniBatchKMeansParameters()).fit().itersElapsed() > 0);
+		assertTrue(new MiniBatchKMeans(data_, new MiniBatchKMeansParameters(3)).fit().itersElapsed() > 0);
+	}
+
+	@Test
+	@Override
+	public void testConverged() {
+		assertTrue(new MiniBatchKMeans(data_, 3).fit().didConverge());
+		assertFalse(new MiniBatchKMeans(data_, new MiniBatchKMeansParameters(3)
+			.setMaxIter(0)).fit().didConverge());
+	}
+
+	@Test
+	@Override
+	public void testDefConst() {
+		new MiniBatchKMeans(data_);
+	}
+
+	@Test
+	@Override
+	public void testArgConst() {
+		new MiniBatchKMeans(data_, 3);
+	}
+
+	@Test
+	@Override
+	public void testPlannerConst() {
+		new MiniBatchKMeans(data_, new MiniBatchKMeansParameters());
+		new MiniBatchKMeans(data_, new MiniBatchKMeansParameters(3));
+	}
+
+	@Test
+	@Override
+	public void testFit() {
+		new MiniBatchKMeans(data_).fit();
+		new MiniBatchKMeans(data_, 3).fit();
+		new MiniBatchKMeans(data_, new MiniBatchKMeansParameters()).fit();
+		new MiniBatchKMeans(data_, new MiniBatchKMeansParameters(3)).fit();
+	}
+
+	@Test
+	@Override
+	public void testFromPlanner() {
+		new MiniBatchKMeansParameters().fitNewModel(data_);
+		new MiniBatchKMeansParameters(3).fitNewModel(data_);
+	}
+
+	@Test
+	@Override
+	public void testScoring() {
+		new MiniBatchKMeans(data_, 3).fit().silhouetteScore();
+		new MiniBatchKMeans(data_, 5).fit().silhouetteScore();
+	}
+
+	@Test
+	@Override
+	public void testAllSame() {
+		final double[][] x = MatUtils.rep(-1, 3, 3);
+		final Array2DRowRealMatrix X = new Array2DRowRealMatrix(x, false);
+
+		int[] labels = new MiniBatchKMeans(X, new MiniBatchKMeansParameters(3).setVerbose(true)).fit().getLabels();
+		assertTrue(new VecUtils.IntSeries(labels, Inequality.EQUAL_TO, 0).all());
+		System.out.println();
+	}
+
+	@Test
+	@Override
+	public void testSerialization() throws IOException, ClassNotFoundException {
+		MiniBatchKMeans km = new MiniBatchKMeans(data_,
+			new MiniBatchKMeansParameters(3)
+				.setVerbose(true)).fit();
+		System.out.println();
+
+		final double c = km.getTSS();
+		km.saveObject(new FileOutputStream(TestSuite.tmpSerPath));
+		assertTrue(TestSuite.file.exists());
+
+		MiniBatchKMeans km2 = (MiniBatchKMeans)MiniBatchKMeans.loadObject(new FileInputStream(TestSuite.tmpSerPath));
+		assertTrue(km2.getTSS() == c);
+		assertTrue(km.equals(km2));
+		assertTrue(Arrays.equals(km.getCounts(), km2.getCounts()));
+		Files.delete(TestSuite.path);
+	}
+
+	@Test
+	public void testCloseToKMeans() {
+		final Array2DRowRealMatrix[] datasets = new Array2DRowRealMatrix[]{
+			data_, TestSuite.WINE_DATASET.getData(), TestSuite.BC_DATASET.getData()
+		};
+
+		for(Array2DRowRealMatrix X: datasets) {
+			final KMeans km = new KMeansParameters(3).setSeed(new Random(5)).fitNewModel(X);
+			final MiniBatchKMeans mb = new MiniBatchKMeansParameters(3)
+				.setSeed(new Random(5))
+				.setBatchSize(50)
+				.fitNewModel(X);
+
+			// The approximation is within a few percent of the full-batch inertia
+			final double km_wss = VecUtils.sum(km.getWSS()), mb_wss = VecUtils.sum(mb.getWSS());
+			assertTrue(mb_wss + " vs. " + km_wss, mb_wss < km_wss * 1.1);
+			assertEquals(mb.getTSS(), mb.getBSS() + mb_wss, 1e-6 * mb.getTSS());
+			assertTrue(mb.getLabels().length == X.getRowDimension());
+			assertTrue(mb.getCentroids().size() == 3);
+		}
+	}
+
+	@Test
+	public void testDeterministic() {
+		final MiniBatchKMeans a = new MiniBatchKMeansParameters(3).setSeed(new Random(11)).fitNewModel(data_);
+		final MiniBatchKMeans b = new MiniBatchKMeansParameters(3).setSeed(new Random(11)).fitNewModel(data_);
+		assertTrue(Arrays.equals(a.getLabels(), b.getLabels()));
+		assertTrue(Arrays.equals(a.getCounts(), b.getCounts()));
+		assertTrue(a.getEWAInertia() == b.getEWAInertia());
+	}
+
+	@Test
+	public void testPartialFit() {
+		final Random rand = new Random(3);
+		final double[][] first = blobs(60, 3, rand);
+		final MiniBatchKMeans mb = new MiniBatchKMeans(new Array2DRowRealMatrix(first, false),
+			new MiniBatchKMeansParameters(3).setSeed(new Random(3)).setReassignmentRatio(0.0));
+
+		// Not yet fit
+		assertTrue(Double.isNaN(mb.getEWAInertia()));
+		boolean caught = false;
+		try {
+			mb.getLabels();
+		} catch(ModelNotFitException e) {
+			caught = true;
+		}
+		assertTrue(caught);
+
+		// Stream the rest of the data through without ever holding it
+		int seen = 0;
+		for(int b = 0; b < 20; b++) {
+			final double[][] batch = blobs(30, 3, rand);
+			mb.partialFit(batch);
+			seen += batch.length;
+		}
+
+		long absorbed = 0;
+		for(long count: mb.getCounts())
+			absorbed += count;
+		assertTrue(absorbed == seen);
+		assertTrue(mb.itersElapsed() == 20);
+		assertFalse(Double.isNaN(mb.getEWAInertia()));
+
+		// Each centroid found a blob
+		for(double[] c: centers)
+			assertTrue(nearestTo(c, mb.getCentroids()) < 1.0);
+
+		// The labels refer to the constructed data, and predict uses the current centroids
+		final double[][] test = blobs(90, 3, rand);
+		assertTrue(mb.getLabels().length == first.length);
+		assertTrue(1.0 == mb.indexAffinityScore(mb.predict(new Array2DRowRealMatrix(first, false))));
+		final int[] pred = mb.predict(new Array2DRowRealMatrix(test, false));
+		assertEquals(1.0, INDEX_AFFINITY.evaluate(blobLabels(90), pred), 0.0);
+	}
+
+	@Test
+	public void testReassignment() {
+		final Random rand = new Random(9);
+		final double[][] first = blobs(60, 3, rand);
+
+		// Only the first two blobs are streamed, so one centroid is starved
+		final double[][][] batches = new double[10][][];
+		for(int b = 0; b < batches.length; b++)
+			batches[b] = blobs(40, 2, rand);
+
+		final MiniBatchKMeans kept = new MiniBatchKMeans(new Array2DRowRealMatrix(first, false),
+			new MiniBatchKMeansParameters(3).setSeed(new Random(9)).setReassignmentRatio(0.0));
+		final MiniBatchKMeans moved = new MiniBatchKMeans(new Array2DRowRealMatrix(first, false),
+			new MiniBatchKMeansParameters(3).setSeed(new Random(9)).setReassignmentRatio(0.5));
+		for(double[][] batch: batches) {
+			kept.partialFit(batch);
+			moved.partialFit(batch);
+		}
+
+		assertTrue(nearestTo(centers[2], kept.getCentroids()) < 5.0);
+		assertTrue(nearestTo(centers[2], moved.getCentroids()) > 50.0);
+	}
+
+	private static double nearestTo(final double[] point, final ArrayList<double[]> cents) {
+		double best = Double.POSITIVE_INFINITY;
+		for(double[] cent: cents)
+			best = Math.min(best, Distance.EUCLIDEAN.getDistance(point, cent));
+		return best;
+	}
+
+	@Test(expected=DimensionMismatchException.class)
+	public void testPartialFitDimMismatch() {
+		new MiniBatchKMeans(data_, 3).partialFit(MatUtils.randomGaussian(5, 3));
+	}
+
+	@Test(expected=NaNException.class)
+	public void testPartialFitNaN() {
+		final double[][] batch = MatUtils.randomGaussian(5, 4);
+		batch[2][1] = Double.NaN;
+		new MiniBatchKMeans(data_, 3).partialFit(batch);
+	}
+
+	@Test(expected=ModelNotFitException.class)
+	public void testPredictNotFit() {
+		new MiniBatchKMeans(data_, 3).predict(data_);
+	}
+
+	@Test(expected=DimensionMismatchException.class)
+	public void testPredictDimMismatch() {
+		new MiniBatchKMeans(data_, 3).fit().predict(new Array2DRowRealMatrix(MatUtils.randomGaussian(5, 3), false));
+	}
+
+	@Test
+	public void testBadParams() {
+		final MiniBatchKMeansParameters[] bad = new MiniBatchKMeansParameters[]{
+			new MiniBatchKMeansParameters(3).setBatchSize(0),
+			new MiniBatchKMeansParameters(3).setMaxNoImprovement(0),
+			new MiniBatchKMeansParameters(3).setReassignmentRatio(-0.1)
+		};
+
+		for(MiniBatchKMeansParameters p: bad) {
+			boolean caught = false;
+			try {
+				p.fitNewModel(data_);
+			} catch(IllegalArgumentException e) {
+				caught = true;
+			}
+			assertTrue(caught);
+		}
+	}
+
+	@Test
+	public void testCopy() {
+		final MiniBatchKMeansParameters p = new MiniBatchKMeansParameters(4)
+			.setBatchSize(17).setMaxNoImprovement(3).setReassignmentRatio(0.2).setMaxIter(7);
+		final MiniBatchKMeansParameters c = p.copy();
+		assertTrue(c.getK() == 4);
+		assertTrue(c.getBatchSize() == 17);
+		assertTrue(c.getMaxNoImprovement() == 3);
+		assertTrue(c.getReassignmentRatio() == 0.2);
+		assertTrue(c.getMaxIter() == 7);
+	}
+}
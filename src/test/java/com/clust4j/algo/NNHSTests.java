@@ -27,6 +27,7 @@ import org.apache.commons.math3.util.FastMath;
 import org.apache.commons.math3.util.Precision;
 import org.junit.Test;
 
+import com.clust4j.GlobalState;
 import com.clust4j.TestSuite;
 import com.clust4j.algo.BallTree;
 import com.clust4j.algo.KDTree;
@@ -1940,4 +1941,76 @@ public class NNHSTests {
 			k.queryRadius(IRIS.getData(), 1.5, true)
 		);
 	}
+	
+	@Test
+	public void testNodeBoundsContainTheirPoints() {
+		final double[][] x = MatUtils.randomGaussian(1000, 3, new Random(4));
+		final KDTree kd = new KDTree(new Array2DRowRealMatrix(x, false), 10);
+		final double[][][] bounds = kd.getNodeBoundsRef();
+		final NodeData[] nodes = kd.getNodeDataRef();
+		
+		for(int node = 0; node < nodes.length; node++) {
+			for(int i = nodes[node].idx_start; i < nodes[node].idx_end; i++) {
+				for(int j = 0; j < 3; j++) {
+					final double v = x[kd.idx_array[i]][j];
+					assertTrue(v >= bounds[0][node][j] && v <= bounds[1][node][j]);
+				}
+			}
+			
+			// Children split the parent's range along one dimension
+			if(!nodes[node].is_leaf) {
+				assertTrue(nodes[2 * node + 1].idx_start == nodes[node].idx_start);
+				assertTrue(nodes[2 * node + 2].idx_end == nodes[node].idx_end);
+			}
+		}
+		
+		// The indices are a permutation
+		assertTrue(VecUtils.unique(kd.idx_array).size() == 1000);
+	}
+	
+	@Test
+	public void testParallelQueryMatchesSerial() {
+		final Array2DRowRealMatrix x = new Array2DRowRealMatrix(
+			MatUtils.randomGaussian(1500, 3, new Random(7)), false);
+		final boolean allowed = GlobalState.ParallelismConf.PARALLELISM_ALLOWED;
+		
+		try {
+			GlobalState.ParallelismConf.PARALLELISM_ALLOWED = true;
+			
+			for(NearestNeighborHeapSearch tree: new NearestNeighborHeapSearch[]{new KDTree(x), new BallTree(x)}) {
+				for(boolean dual: new boolean[]{true, false}) {
+					Neighborhood serial = tree.query(x.getData(), 5, dual, true);
+					final int calls = tree.getNumCalls();
+					Neighborhood parallel = tree.queryParallel(x.getData(), 5, dual, true);
+					
+					assertTrue(MatUtils.equalsExactly(serial.getDistances(), parallel.getDistances()));
+					assertTrue(MatUtils.equalsExactly(serial.getIndices(), parallel.getIndices()));
+					
+					// The readers' counters are summed into the tree's
+					assertTrue(tree.getNumCalls() > calls);
+					if(!dual) // only the single tree search counts leaves
+						assertTrue(tree.getTreeStats().getMiddle() > 0);
+				}
+			}
+		} finally {
+			GlobalState.ParallelismConf.PARALLELISM_ALLOWED = allowed;
+		}
+	}
+	
+	@Test
+	public void testReaderSharesTreeArrays() {
+		KDTree kd = new KDTree(IRIS);
+		NearestNeighborHeapSearch reader = kd.newReader();
+		
+		assertTrue(reader instanceof KDTree);
+		assertTrue(reader.data_arr == kd.data_arr);
+		assertTrue(reader.node_data == kd.node_data);
+		assertTrue(reader.node_bounds == kd.node_bounds);
+		
+		// Queries on the reader leave the tree's counters alone
+		reader.query(IRIS.getData(), 3, true, true);
+		assertTrue(reader.getNumCalls() > 0);
+		assertTrue(kd.getNumCalls() == 0);
+		assertEquals(kd.query(IRIS.getData(), 3, true, true), reader.query(IRIS.getData(), 3, true, true));
+	}
 }
@@ -33,6 +33,8 @@ import com.clust4j.TestSuite;
 import com.clust4j.algo.BaseNeighborsModel.NeighborsAlgorithm;
 import com.clust4j.algo.Neighborhood;
 import com.clust4j.algo.NearestNeighborsParameters;
+import com.clust4j.data.CSRMatrix;
+import com.clust4j.data.CSRMatrixTests;
 import com.clust4j.except.ModelNotFitException;
 import com.clust4j.kernel.GaussianKernel;
 import com.clust4j.metrics.pairwise.Distance;
@@ -645,4 +647,43 @@ public class NearestNeighborsTests implements ClusterTest, BaseModelTest {
 		new NearestNeighbors(km).fit();
 		new NearestNeighbors(km, new NearestNeighborsParameters(2)).fit();
 	}
+	
+	@Test
+	public void testSparse() {
+		final double[][] x = CSRMatrixTests.randomSparse(60, 10, 0.3, new Random(3));
+		final double[][] q = CSRMatrixTests.randomSparse(7, 10, 0.3, new Random(4));
+		final CSRMatrix csr = new CSRMatrix(x);
+		
+		for(Distance dist: new Distance[]{Distance.EUCLIDEAN, Distance.MANHATTAN}) {
+			NearestNeighbors dense = new NearestNeighborsParameters(4).setMetric(dist)
+				.fitNewModel(new Array2DRowRealMatrix(x, false));
+			NearestNeighbors sparse = new NearestNeighborsParameters(4).setMetric(dist)
+				.fitNewModel(csr);
+			
+			assertTrue(sparse.isSparse());
+			assertNull(sparse.tree);
+			assertEquals(csr, sparse.getData());
+			
+			Neighborhood a = dense.getNeighbors(), b = sparse.getNeighbors();
+			assertTrue(MatUtils.equalsExactly(a.getIndices(), b.getIndices()));
+			assertTrue(MatUtils.equalsWithTolerance(a.getDistances(), b.getDistances(), 1e-10));
+			
+			// Dense and sparse queries against the sparse model
+			a = dense.getNeighbors(new Array2DRowRealMatrix(q, false));
+			b = sparse.getNeighbors(new CSRMatrix(q));
+			assertTrue(MatUtils.equalsExactly(a.getIndices(), b.getIndices()));
+			assertTrue(MatUtils.equalsWithTolerance(a.getDistances(), b.getDistances(), 1e-10));
+			
+			b = sparse.getNeighbors(new Array2DRowRealMatrix(q, false));
+			assertTrue(MatUtils.equalsExactly(a.getIndices(), b.getIndices()));
+		}
+	}
+	
+	@Test
+	public void testSparseFallbackMetric() {
+		NearestNeighbors nn = new NearestNeighborsParameters(2).setMetric(new GaussianKernel())
+			.fitNewModel(new CSRMatrix(CSRMatrixTests.randomSparse(10, 4, 0.5, new Random(1))));
+		assertTrue(nn.hasWarnings());
+		assertTrue(nn.getSeparabilityMetric().equals(Distance.EUCLIDEAN));
+	}
 }
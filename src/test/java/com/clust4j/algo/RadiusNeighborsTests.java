@@ -21,6 +21,7 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.file.Files;
+import java.util.Arrays;
 import java.util.Random;
 
 import org.apache.commons.math3.exception.DimensionMismatchException;
@@ -31,6 +32,8 @@ import com.clust4j.TestSuite;
 import com.clust4j.algo.BaseNeighborsModel.NeighborsAlgorithm;
 import com.clust4j.algo.Neighborhood;
 import com.clust4j.algo.RadiusNeighborsParameters;
+import com.clust4j.data.CSRMatrix;
+import com.clust4j.data.CSRMatrixTests;
 import com.clust4j.except.ModelNotFitException;
 import com.clust4j.kernel.GaussianKernel;
 import com.clust4j.metrics.pairwise.Distance;
@@ -38,6 +41,7 @@ import com.clust4j.metrics.pairwise.MinkowskiDistance;
 import com.clust4j.metrics.pairwise.Similarity;
 import com.clust4j.utils.MatUtils;
 import com.clust4j.utils.Series.Inequality;
+import com.clust4j.utils.VecUtils;
 
 public class RadiusNeighborsTests implements ClusterTest, BaseModelTest {
 	final static Array2DRowRealMatrix iris = TestSuite.IRIS_DATASET.getData();
@@ -350,4 +354,28 @@ public class RadiusNeighborsTests implements ClusterTest, BaseModelTest {
 		model.getNeighbors(iris.getData(), true);
 		model.getNeighbors(iris.getData());
 	}
+	
+	@Test
+	public void testSparse() {
+		final double[][] x = CSRMatrixTests.randomSparse(60, 10, 0.3, new Random(3));
+		final CSRMatrix csr = new CSRMatrix(x);
+		
+		for(Distance dist: new Distance[]{Distance.EUCLIDEAN, Distance.MANHATTAN}) {
+			RadiusNeighbors dense = new RadiusNeighborsParameters(1.5).setMetric(dist)
+				.fitNewModel(new Array2DRowRealMatrix(x, false));
+			RadiusNeighbors sparse = new RadiusNeighborsParameters(1.5).setMetric(dist)
+				.fitNewModel(csr);
+			
+			assertTrue(sparse.isSparse());
+			assertNull(sparse.tree);
+			
+			// The trees don't return the neighbors in index order
+			int[][] a = dense.getNeighbors().getIndices(), b = sparse.getNeighbors().getIndices();
+			for(int i = 0; i < a.length; i++) {
+				int[] expected = a[i].clone();
+				Arrays.sort(expected);
+				assertTrue(VecUtils.equalsExactly(expected, b[i]));
+			}
+		}
+	}
 }
@@ -0,0 +1,174 @@
+/*******************************************************************************
+ *    Copyright 2015, 2016 Taylor G Smith
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *******************************************************************************/
+package com.clust4j.data;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.apache.commons.math3.exception.DimensionMismatchException;
+import org.apache.commons.math3.exception.MathUnsupportedOperationException;
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+import org.junit.Test;
+
+import com.clust4j.except.NonUniformMatrixException;
+import com.clust4j.kernel.GaussianKernel;
+import com.clust4j.metrics.pairwise.Distance;
+import com.clust4j.metrics.pairwise.GeometricallySeparable;
+import com.clust4j.metrics.pairwise.PrecomputedRowStatistics;
+import com.clust4j.metrics.pairwise.Similarity;
+import com.clust4j.utils.MatUtils;
+import com.clust4j.utils.VecUtils;
+
+public class CSRMatrixTests {
+	final static double[][] X = randomSparse(30, 12, 0.3, new Random(11));
+	final static CSRMatrix csr = new CSRMatrix(X);
+	
+	/**
+	 * A random matrix with roughly the given proportion of non-zero entries
+	 */
+	public static double[][] randomSparse(int m, int n, double density, Random rand) {
+		final double[][] out = new double[m][n];
+		for(int i = 0; i < m; i++)
+			for(int j = 0; j < n; j++)
+				if(rand.nextDouble() < density)
+					out[i][j] = rand.nextGaussian();
+		return out;
+	}
+
+	@Test
+	public void testRoundTrip() {
+		assertTrue(csr.getRowDimension() == 30);
+		assertTrue(csr.getColumnDimension() == 12);
+		assertTrue(MatUtils.equalsExactly(X, csr.getData()));
+		
+		int nnz = 0;
+		for(int i = 0; i < X.length; i++) {
+			assertTrue(VecUtils.equalsExactly(X[i], csr.getRow(i)));
+			for(int j = 0; j < X[i].length; j++) {
+				assertTrue(X[i][j] == csr.getEntry(i, j));
+				if(X[i][j] != 0)
+					nnz++;
+			}
+		}
+		
+		assertTrue(csr.getNnz() == nnz);
+		assertTrue(csr.getValuesRef().length == nnz);
+		
+		// From a RealMatrix as well
+		assertEquals(csr, new CSRMatrix(new Array2DRowRealMatrix(X, false)));
+	}
+	
+	@Test
+	public void testEqualsAndHashCode() {
+		final Array2DRowRealMatrix dense = new Array2DRowRealMatrix(X, true);
+		assertTrue(csr.equals(dense));
+		assertTrue(dense.equals(csr));
+		assertTrue(csr.hashCode() == dense.hashCode());
+		
+		final CSRMatrix copy = csr.copy();
+		assertTrue(copy.equals(csr));
+		assertFalse(copy.getValuesRef() == csr.getValuesRef());
+		assertTrue(copy.hashCode() == csr.hashCode());
+		
+		final double[][] other = MatUtils.copy(X);
+		other[3][4] += 1.0;
+		assertFalse(csr.equals(new CSRMatrix(other)));
+	}
+	
+	@Test
+	public void testComponents() {
+		// [[1, 0, 2], [0, 0, 0], [0, 3, 0]]
+		final CSRMatrix c = new CSRMatrix(3, 3, 
+			new int[]{0, 2, 2, 3}, new int[]{0, 2, 1}, new double[]{1, 2, 3});
+		
+		assertTrue(MatUtils.equalsExactly(c.getData(), new double[][]{
+			new double[]{1, 0, 2},
+			new double[]{0, 0, 0},
+			new double[]{0, 3, 0}
+		}));
+		
+		assertTrue(c.getEntry(0, 2) == 2.0);
+		assertTrue(c.getEntry(1, 1) == 0.0);
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void testUnsortedIndices() {
+		new CSRMatrix(1, 3, new int[]{0, 2}, new int[]{2, 0}, new double[]{1, 2});
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void testIndexOutOfBounds() {
+		new CSRMatrix(1, 3, new int[]{0, 1}, new int[]{3}, new double[]{1});
+	}
+	
+	@Test(expected=DimensionMismatchException.class)
+	public void testBadIndptr() {
+		new CSRMatrix(2, 3, new int[]{0, 1}, new int[]{0}, new double[]{1});
+	}
+	
+	@Test(expected=NonUniformMatrixException.class)
+	public void testJagged() {
+		new CSRMatrix(new double[][]{
+			new double[]{1, 2, 3},
+			new double[]{1, 2}
+		});
+	}
+	
+	@Test(expected=MathUnsupportedOperationException.class)
+	public void testImmutable() {
+		csr.setEntry(0, 0, 1.0);
+	}
+	
+	@Test
+	public void testSparseDistancesMatchDense() {
+		final double[][] Y = randomSparse(8, 12, 0.5, new Random(13));
+		final CSRMatrix sy = new CSRMatrix(Y);
+		final PrecomputedRowStatistics dy = new PrecomputedRowStatistics(Y);
+		final PrecomputedRowStatistics dx = new PrecomputedRowStatistics(X);
+		
+		final GeometricallySeparable[] metrics = new GeometricallySeparable[]{
+			Distance.EUCLIDEAN, Distance.MANHATTAN, Similarity.COSINE,
+			Distance.CHEBYSHEV, new GaussianKernel() // the latter densify
+		};
+		
+		for(GeometricallySeparable metric: metrics) {
+			for(int i = 0; i < X.length; i++) {
+				for(int j = 0; j < Y.length; j++) {
+					final double expected = metric.getPartialDistance(X[i], Y[j]);
+					if(Double.isNaN(expected)) { // cosine of an all-zero row
+						assertTrue(Double.isNaN(metric.getPartialDistance(csr, i, sy, j)));
+						continue;
+					}
+					
+					assertEquals(metric.getName(), expected, metric.getPartialDistance(csr, i, sy, j), 1e-10);
+					assertEquals(metric.getName(), expected, metric.getPartialDistance(csr, i, dy, j), 1e-10);
+				}
+				
+				// Identical rows are exactly zero apart
+				if(metric instanceof Distance) {
+					assertTrue(metric.getPartialDistance(csr, i, csr, i) == 0.0);
+					assertTrue(metric.getPartialDistance(csr, i, dx, i) == 0.0);
+				}
+			}
+		}
+	}
+	
+	@Test(expected=DimensionMismatchException.class)
+	public void testDistanceDimMismatch() {
+		Distance.EUCLIDEAN.getPartialDistance(csr, 0, new CSRMatrix(new double[][]{new double[]{1, 2}}), 0);
+	}
+}
@@ -20,6 +20,7 @@ import static org.junit.Assert.*;
 import java.util.Arrays;
 import java.util.Random;
 
+import org.apache.commons.math3.exception.DimensionMismatchException;
 import org.apache.commons.math3.linear.Array2DRowRealMatrix;
 import org.apache.commons.math3.util.Precision;
 import org.junit.Test;
@@ -27,6 +28,7 @@ import org.junit.Test;
 import com.clust4j.TestSuite;
 import com.clust4j.algo.KMeansParameters;
 import com.clust4j.metrics.pairwise.Pairwise;
+import com.clust4j.metrics.pairwise.PrecomputedRowStatistics;
 import com.clust4j.utils.MatUtils;
 import com.clust4j.utils.MatrixFormatter;
 import com.clust4j.utils.VecUtils;
@@ -356,4 +358,40 @@ public class KernelTestCases {
 		d = new SphericalKernel(1000.0);
 		assertFalse(c.getSimilarity(a, b) == d.getSimilarity(a, b));
 	}
+	
+	@Test
+	public void testBlocksMatchScalar() {
+		final double[][] X = MatUtils.randomGaussian(12, 5, new Random(3));
+		final PrecomputedRowStatistics stats = new PrecomputedRowStatistics(X);
+		final double[] out = new double[X.length];
+		final int from = 2, to = 11;
+		
+		// The batched computations are bit-for-bit the scalar ones
+		for(Kernel kernel: all_kernels) {
+			final String name = kernel.getName();
+			for(int i = 0; i < X.length; i++) {
+				kernel.similarityBlock(X[i], X, from, to, out);
+				for(int k = from; k < to; k++)
+					assertTrue(name, Double.compare(kernel.getSimilarity(X[i], X[k]), out[k - from]) == 0);
+				
+				kernel.partialSimilarityBlock(X[i], X, from, to, out);
+				for(int k = from; k < to; k++)
+					assertTrue(name, Double.compare(kernel.getPartialSimilarity(X[i], X[k]), out[k - from]) == 0);
+				
+				kernel.distanceBlock(X[i], X, from, to, out);
+				for(int k = from; k < to; k++)
+					assertTrue(name, Double.compare(kernel.getDistance(X[i], X[k]), out[k - from]) == 0);
+				
+				kernel.partialDistanceBlock(stats, i, stats, from, to, out);
+				for(int k = from; k < to; k++)
+					assertTrue(name, Double.compare(kernel.getPartialDistance(stats, i, stats, k), out[k - from]) == 0);
+			}
+		}
+	}
+	
+	@Test(expected=DimensionMismatchException.class)
+	public void testBlockDimMismatch() {
+		new RadialBasisKernel().similarityBlock(new double[]{1,2}, 
+			new double[][]{new double[]{1,2}, new double[]{1,2,3}}, 0, 2, new double[2]);
+	}
 }
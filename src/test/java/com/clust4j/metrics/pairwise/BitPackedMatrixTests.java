@@ -0,0 +1,128 @@
+/*******************************************************************************
+ *    Copyright 2015, 2016 Taylor G Smith
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *******************************************************************************/
+package com.clust4j.metrics.pairwise;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.apache.commons.math3.exception.DimensionMismatchException;
+import org.junit.Test;
+
+import com.clust4j.utils.MatUtils;
+
+public class BitPackedMatrixTests {
+	final static Random rand = new Random(11);
+
+	/** Random binary matrix, with n chosen to straddle word boundaries */
+	static double[][] binary(int m, int n) {
+		final double[][] a = new double[m][n];
+		for(int i = 0; i < m; i++)
+			for(int j = 0; j < n; j++)
+				a[i][j] = rand.nextDouble() < 0.3 ? 1.0 : 0.0;
+		return a;
+	}
+
+	@Test
+	public void testPack() {
+		final double[][] a = binary(10, 130);
+		final BitPackedMatrix p = new BitPackedMatrix(a);
+
+		assertTrue(p.getRowDimension() == 10);
+		assertTrue(p.getColumnDimension() == 130);
+		assertTrue(p.bits[0].length == 3);
+		assertTrue(MatUtils.equalsExactly(a, p.toArray()));
+
+		// Non-zero elements are true
+		final BitPackedMatrix q = new BitPackedMatrix(new double[][]{
+			new double[]{0.0, -2.0, 0.5, Double.NaN}
+		});
+		assertFalse(q.get(0, 0));
+		assertTrue(q.get(0, 1));
+		assertTrue(q.get(0, 2));
+		assertTrue(q.get(0, 3));
+	}
+
+	@Test(expected=IndexOutOfBoundsException.class)
+	public void testGetOOB() {
+		new BitPackedMatrix(binary(2, 5)).get(0, 5);
+	}
+
+	@Test
+	public void testIsBinary() {
+		assertTrue(BitPackedMatrix.isBinary(binary(5, 5)));
+		assertFalse(BitPackedMatrix.isBinary(new double[][]{new double[]{0, 1, 2}}));
+		assertFalse(BitPackedMatrix.isBinary(new double[][]{new double[]{0, Double.NaN}}));
+	}
+
+	@Test
+	public void testMatchesDoubles() {
+		final double[][] a = binary(30, 130);
+		final double[][] b = binary(20, 130);
+		final BitPackedMatrix pb = new BitPackedMatrix(b);
+
+		// All zeros and all ones exercise the corner cases
+		a[0] = new double[130];
+		a[1] = new double[130];
+		java.util.Arrays.fill(a[1], 1.0);
+		final BitPackedMatrix pz = new BitPackedMatrix(a);
+
+		for(Distance d: Distance.binaryDistances()) {
+			for(int i = 0; i < a.length; i++) {
+				for(int j = 0; j < b.length; j++) {
+					assertTrue(d.getName(), Double.compare(d.getPartialDistance(a[i], b[j]),
+						d.getPartialDistance(pz, i, pb, j)) == 0);
+				}
+
+				assertTrue(Double.compare(d.getPartialDistance(a[i], a[i]),
+					d.getPartialDistance(pz, i, pz, i)) == 0);
+			}
+		}
+	}
+
+	@Test(expected=UnsupportedOperationException.class)
+	public void testNotBinary() {
+		final BitPackedMatrix p = new BitPackedMatrix(binary(2, 3));
+		Distance.EUCLIDEAN.getPartialDistance(p, 0, p, 1);
+	}
+
+	@Test(expected=DimensionMismatchException.class)
+	public void testDimMismatch() {
+		Distance.DICE.getPartialDistance(new BitPackedMatrix(binary(2, 3)), 0,
+			new BitPackedMatrix(binary(2, 4)), 0);
+	}
+
+	@Test
+	public void testPairwise() {
+		final double[][] a = binary(75, 70);
+		for(Distance d: Distance.binaryDistances()) {
+			assertTrue(Pairwise.BlockKernel.of(a, a, d, true, 1.0) instanceof Pairwise.BinaryKernel);
+
+			final double[][] packed = Pairwise.getDistance(a, d, false, false);
+			final double[][] direct = new double[a.length][a.length];
+			for(int i = 0; i < a.length; i++)
+				for(int j = 0; j < a.length; j++)
+					direct[i][j] = d.getDistance(a[i], a[j]);
+
+			assertTrue(d.getName(), MatUtils.equalsExactly(direct, packed));
+		}
+
+		// Hamming compares values, so cannot pack non-binary data
+		a[0][0] = 2.0;
+		assertFalse(Pairwise.BlockKernel.of(a, a, Distance.HAMMING, true, 1.0) instanceof Pairwise.BinaryKernel);
+		assertTrue(Pairwise.BlockKernel.of(a, a, Distance.DICE, true, 1.0) instanceof Pairwise.BinaryKernel);
+	}
+}
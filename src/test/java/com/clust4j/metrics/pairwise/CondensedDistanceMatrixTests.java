@@ -0,0 +1,223 @@
+/*******************************************************************************
+ *    Copyright 2015, 2016 Taylor G Smith
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *******************************************************************************/
+package com.clust4j.metrics.pairwise;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.clust4j.kernel.GaussianKernel;
+import com.clust4j.metrics.pairwise.CondensedDistanceMatrix.Storage;
+import com.clust4j.utils.MatUtils;
+import com.clust4j.utils.VecUtils;
+
+public class CondensedDistanceMatrixTests {
+	final static Random rand = new Random(42);
+
+	static double[][] random(int m, int n) {
+		final double[][] a = new double[m][n];
+		for(int i = 0; i < m; i++)
+			for(int j = 0; j < n; j++)
+				a[i][j] = rand.nextGaussian();
+		return a;
+	}
+
+	@Test
+	public void testIndex() {
+		assertTrue(CondensedDistanceMatrix.index(4, 0, 3) == 2);
+		assertTrue(CondensedDistanceMatrix.index(4, 3, 0) == 2);
+		assertTrue(CondensedDistanceMatrix.index(4, 2, 3) == 5);
+		assertTrue(CondensedDistanceMatrix.index(10, 3, 4) == 24);
+
+		// Must not overflow for very large m
+		final int m = 100000;
+		assertTrue(CondensedDistanceMatrix.index(m, m - 2, m - 1) == (long)m * (m - 1) / 2 - 1);
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testIndexDiagonal() {
+		CondensedDistanceMatrix.index(5, 2, 2);
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testGetRowBufferLength() {
+		new CondensedDistanceMatrix(5).getRow(0, new double[4]);
+	}
+
+	@Test
+	public void testRoundTrip() {
+		final double[][] full = Pairwise.getDistance(random(25, 3), Distance.MANHATTAN, false, false);
+		final CondensedDistanceMatrix c = new CondensedDistanceMatrix(full);
+
+		assertTrue(c.getRowDimension() == 25);
+		assertTrue(c.size() == 300);
+		assertTrue(MatUtils.equalsExactly(full, c.toArray(false)));
+
+		final double[] buf = new double[25];
+		for(int i = 0; i < 25; i++) {
+			assertTrue(VecUtils.equalsExactly(full[i], c.getRow(i)));
+			assertTrue(VecUtils.equalsExactly(full[i], c.getColumn(i)));
+			assertTrue(c.getRow(i, buf) == buf && VecUtils.equalsExactly(full[i], buf));
+
+			for(int j = 0; j < 25; j++)
+				assertTrue(full[i][j] == c.get(i, j));
+		}
+
+		final double[][] upper = c.toArray(true);
+		for(int i = 0; i < 25; i++)
+			for(int j = 0; j <= i; j++)
+				assertTrue(upper[i][j] == 0.0);
+	}
+
+	@Test
+	public void testMatchesDense() {
+		final double[][] a = random(300, 5);
+		final GeometricallySeparable[] metrics = new GeometricallySeparable[]{
+			Distance.EUCLIDEAN, Distance.CANBERRA, new MinkowskiDistance(1.5), new GaussianKernel()
+		};
+
+		for(GeometricallySeparable geo: metrics) {
+			for(boolean partial: new boolean[]{true, false}) {
+				final double[][] full = Pairwise.getDistance(a, geo, false, partial, false);
+				final double[][] upper = Pairwise.getDistance(a, geo, true, partial, false);
+
+				assertTrue(MatUtils.equalsExactly(full,
+					Pairwise.getCondensedDistance(a, geo, true, partial, false).toArray(false)));
+				assertTrue(MatUtils.equalsExactly(upper,
+					Pairwise.getCondensedDistance(a, geo, false, partial, false).toArray(true)));
+			}
+		}
+
+		// Kernel similarity has a non-zero diagonal
+		final CondensedDistanceMatrix sim = Pairwise.getCondensedSimilarity(a, new GaussianKernel(), true, false);
+		assertTrue(sim.getDiagonal(0) == 1.0);
+		assertTrue(MatUtils.equalsExactly(sim.toArray(false),
+			Pairwise.getSimilarity(a, new GaussianKernel(), false, false, false)));
+	}
+
+	@Test
+	public void testParallelMatchesSerial() {
+		final double[][] a = random(531, 4);
+		final CondensedDistanceMatrix serial = Pairwise.getCondensedDistance(a, Distance.EUCLIDEAN, false, false, false);
+		final CondensedDistanceMatrix parallel = Pairwise.getCondensedDistance(a, Distance.EUCLIDEAN, false, false, true);
+		assertEquals(serial, parallel);
+	}
+
+	@Test
+	public void testSpansPages() {
+		// Enough records that the triangle exceeds one page
+		final int m = 1500;
+		final CondensedDistanceMatrix c = new CondensedDistanceMatrix(m);
+		assertTrue(c.size() > CondensedDistanceMatrix.PAGE_SIZE);
+
+		for(int i = 0; i < m; i++)
+			for(int j = i + 1; j < m; j++)
+				c.set(i, j, i * m + j);
+
+		for(int i = 0; i < m; i += 97) {
+			final double[] row = c.getRow(i);
+			for(int j = 0; j < m; j++)
+				assertTrue(row[j] == (i == j ? 0.0 : Math.min(i, j) * m + Math.max(i, j)));
+		}
+
+		// Contiguous copy across the page boundary
+		final double[] src = VecUtils.rep(-1.0, 10);
+		c.setRange(CondensedDistanceMatrix.PAGE_SIZE - 5, src, 0, 10);
+		for(long idx = CondensedDistanceMatrix.PAGE_SIZE - 5; idx < CondensedDistanceMatrix.PAGE_SIZE + 5; idx++)
+			assertTrue(c.get(idx) == -1.0);
+	}
+
+	@Test
+	public void testCopy() {
+		final CondensedDistanceMatrix c = Pairwise.getCondensedSimilarity(random(20, 2), new GaussianKernel(), true, false);
+		final CondensedDistanceMatrix copy = c.copy();
+		assertEquals(c, copy);
+
+		copy.set(3, 4, 100.0);
+		copy.setDiagonal(0, 100.0);
+		assertFalse(c.get(3, 4) == 100.0);
+		assertFalse(c.getDiagonal(0) == 100.0);
+		assertFalse(c.equals(copy));
+	}
+
+	@Test
+	public void testStorageMatchesHeap() {
+		final double[][] a = random(200, 4);
+		final CondensedDistanceMatrix heap = Pairwise.getCondensedDistance(a, Distance.EUCLIDEAN, false, false, false);
+
+		for(Storage storage: Storage.values()) {
+			for(boolean parallel: new boolean[]{true, false}) {
+				final CondensedDistanceMatrix c = Pairwise
+					.getCondensedDistance(a, Distance.EUCLIDEAN, false, false, parallel, storage);
+
+				assertTrue(c.getStorage().equals(storage));
+				assertEquals(heap, c);
+				assertEquals(heap.hashCode(), c.hashCode());
+				assertEquals(c, c.copy());
+				assertTrue(c.copy().getStorage().equals(storage));
+			}
+		}
+	}
+
+	@Test
+	public void testOffHeapSpansPages() {
+		final int m = 1500;
+		final double[] src = VecUtils.rep(-1.0, 10);
+
+		for(Storage storage: new Storage[]{Storage.DIRECT, Storage.MAPPED}) {
+			final CondensedDistanceMatrix c = new CondensedDistanceMatrix(m, storage);
+			c.set(3, 1000, 12.0);
+			c.setDiagonal(7, 1.5);
+
+			c.setRange(CondensedDistanceMatrix.PAGE_SIZE - 5, src, 0, 10);
+			for(long idx = CondensedDistanceMatrix.PAGE_SIZE - 5; idx < CondensedDistanceMatrix.PAGE_SIZE + 5; idx++)
+				assertTrue(c.get(idx) == -1.0);
+
+			assertTrue(c.get(1000, 3) == 12.0);
+			assertTrue(c.get(7, 7) == 1.5);
+			assertTrue(c.getRow(3)[1000] == 12.0);
+		}
+	}
+
+	@Test
+	public void testSerialization() throws Exception {
+		final double[][] a = random(50, 3);
+
+		for(Storage storage: Storage.values()) {
+			final CondensedDistanceMatrix c = Pairwise
+				.getCondensedSimilarity(a, new GaussianKernel(), true, false, storage);
+
+			final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			try(ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+				out.writeObject(c);
+			}
+
+			final CondensedDistanceMatrix read;
+			try(ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+				read = (CondensedDistanceMatrix)in.readObject();
+			}
+
+			assertEquals(c, read);
+			assertTrue(read.getStorage().equals(storage));
+		}
+	}
+}
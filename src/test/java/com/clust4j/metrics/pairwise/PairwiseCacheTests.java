@@ -0,0 +1,248 @@
+/*******************************************************************************
+ *    Copyright 2015, 2016 Taylor G Smith
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *******************************************************************************/
+package com.clust4j.metrics.pairwise;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.clust4j.kernel.GaussianKernel;
+import com.clust4j.kernel.Kernel;
+import com.clust4j.metrics.pairwise.CondensedDistanceMatrix.Storage;
+
+public class PairwiseCacheTests {
+	final static double[][] X = CondensedDistanceMatrixTests.random(30, 4);
+	final static Kernel kernel = new GaussianKernel();
+
+	@Test
+	public void testFullWithinBudget() {
+		final PairwiseCache cache = PairwiseCache.of(X, kernel, true, Long.MAX_VALUE, Storage.HEAP);
+		assertTrue(cache.isFull());
+		assertTrue(cache.getRowDimension() == 30);
+
+		final CondensedDistanceMatrix expected = Pairwise.getCondensedDistance(X, kernel, true, false);
+		for(int i = 0; i < X.length; i++) {
+			assertTrue(cache.get(i, i) == expected.getDiagonal(i));
+			for(int j = i + 1; j < X.length; j++) {
+				assertTrue(cache.get(i, j) == expected.get(i, j));
+				assertTrue(cache.get(j, i) == expected.get(i, j));
+			}
+		}
+
+		assertTrue(cache.getRowsComputed() == 0);
+	}
+
+	@Test
+	public void testRowsMatchFull() {
+		final long budget = PairwiseCache.fullBytes(X.length, true) - 1;
+		for(GeometricallySeparable geo: new GeometricallySeparable[]{
+				kernel, Distance.EUCLIDEAN, Distance.MANHATTAN}) {
+			final PairwiseCache full = PairwiseCache.of(X, geo, true, Long.MAX_VALUE, Storage.HEAP);
+			final PairwiseCache rows = PairwiseCache.of(X, geo, true, budget, Storage.HEAP);
+			assertFalse(rows.isFull());
+
+			for(int i = 0; i < X.length; i++)
+				for(int j = 0; j < X.length; j++)
+					assertEquals(full.get(i, j), rows.get(i, j), 1e-12);
+		}
+	}
+
+	@Test
+	public void testEviction() {
+		// Room for exactly three rows
+		final PairwiseCache.RowLRU cache = (PairwiseCache.RowLRU)
+			PairwiseCache.of(X, kernel, false, 3 * 30 * 8, Storage.HEAP);
+		assertTrue(cache.getCapacity() == 3);
+
+		// The diagonal is not computed
+		assertTrue(cache.get(4, 4) == 0.0);
+		assertTrue(cache.getRowsComputed() == 0);
+
+		cache.get(0, 5);
+		cache.get(1, 5);
+		cache.get(2, 5);
+		assertTrue(cache.getRowsComputed() == 3);
+
+		// Served from the cached rows, including by symmetry
+		cache.get(0, 29);
+		cache.get(7, 1);
+		assertTrue(cache.getRowsComputed() == 3);
+
+		// 2 is least recently used, so is evicted by 3
+		cache.get(3, 5);
+		assertTrue(cache.getRowsComputed() == 4);
+		cache.get(0, 6);
+		cache.get(1, 6);
+		assertTrue(cache.getRowsComputed() == 4);
+		cache.get(2, 6);
+		assertTrue(cache.getRowsComputed() == 5);
+	}
+
+	@Test
+	public void testMinimumRows() {
+		final PairwiseCache.RowLRU cache = (PairwiseCache.RowLRU)
+			PairwiseCache.of(X, kernel, false, 1, Storage.HEAP);
+		assertTrue(cache.getCapacity() == PairwiseCache.MIN_ROWS);
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testBadBudget() {
+		PairwiseCache.of(X, kernel, false, 0, Storage.HEAP);
+	}
+
+	@Test(expected=IndexOutOfBoundsException.class)
+	public void testBadIndex() {
+		PairwiseCache.of(X, kernel, false, 1, Storage.HEAP).get(0, 30);
+	}
+
+	@Test
+	public void testLazyMatchesFull() {
+		for(GeometricallySeparable geo: new GeometricallySeparable[]{
+				kernel, Distance.EUCLIDEAN, Distance.MANHATTAN}) {
+			for(boolean diagonal: new boolean[]{true, false}) {
+				final PairwiseCache full = PairwiseCache.of(X, geo, diagonal, Long.MAX_VALUE, Storage.HEAP);
+				final PairwiseCache lazy = PairwiseCache.lazy(X, geo, diagonal, Long.MAX_VALUE);
+				assertFalse(lazy.isFull());
+				assertTrue(lazy.getRowDimension() == 30);
+				assertTrue(lazy.getEntriesComputed() == 0);
+
+				for(int i = 0; i < X.length; i++)
+					for(int j = 0; j < X.length; j++)
+						assertEquals(full.get(i, j), lazy.get(i, j), 1e-12);
+
+				// Each pair is computed once, whichever order it is requested in
+				assertTrue(lazy.getEntriesComputed() == 30 * 29 / 2 + (diagonal ? 30 : 0));
+			}
+		}
+	}
+
+	@Test
+	public void testLazyComputesOnlyWhatIsRead() {
+		final PairwiseCache.Lazy cache = (PairwiseCache.Lazy)PairwiseCache.lazy(X, kernel, false, Long.MAX_VALUE);
+
+		// The diagonal is not computed
+		assertTrue(cache.get(4, 4) == 0.0);
+		assertTrue(cache.getEntriesComputed() == 0);
+
+		cache.get(0, 5);
+		cache.get(5, 0);
+		cache.get(2, 7);
+		assertTrue(cache.getEntriesComputed() == 2);
+		assertTrue(cache.size() == 2);
+		assertTrue(cache.getRowsComputed() == 0);
+	}
+
+	@Test
+	public void testLazyBounded() {
+		final PairwiseCache.Lazy cache = (PairwiseCache.Lazy)PairwiseCache.lazy(X, kernel, true, 1);
+		assertTrue(cache.getCapacity() == PairwiseCache.Lazy.STRIPES * PairwiseCache.Lazy.MIN_TABLE / 2);
+
+		final PairwiseCache full = PairwiseCache.of(X, kernel, true, Long.MAX_VALUE, Storage.HEAP);
+		for(int pass = 0; pass < 3; pass++) {
+			for(int i = 0; i < X.length; i++) {
+				for(int j = 0; j < X.length; j++) {
+					assertEquals(full.get(i, j), cache.get(i, j), 1e-12);
+					assertTrue(cache.size() <= cache.getCapacity());
+				}
+			}
+		}
+
+		// Full stripes were cleared, so some pairs were computed again
+		assertTrue(cache.getEntriesComputed() > 30 * 29 / 2 + 30);
+	}
+
+	@Test
+	public void testLazyConcurrentReads() throws InterruptedException {
+		final PairwiseCache full = PairwiseCache.of(X, Distance.EUCLIDEAN, false, Long.MAX_VALUE, Storage.HEAP);
+		final PairwiseCache lazy = PairwiseCache.lazy(X, Distance.EUCLIDEAN, false, 1);
+		final boolean[] ok = new boolean[4];
+
+		final Thread[] threads = new Thread[ok.length];
+		for(int t = 0; t < threads.length; t++) {
+			final int offset = t;
+			threads[t] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					boolean matched = true;
+					for(int pass = 0; pass < 50; pass++)
+						for(int i = 0; i < X.length; i++)
+							for(int j = 0; j < X.length; j++) {
+								final int a = (i + offset) % X.length;
+								matched &= full.get(a, j) == lazy.get(a, j);
+							}
+					ok[offset] = matched;
+				}
+			});
+			threads[t].start();
+		}
+
+		for(Thread thread: threads)
+			thread.join();
+		for(boolean matched: ok)
+			assertTrue(matched);
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testLazyBadBudget() {
+		PairwiseCache.lazy(X, kernel, false, 0);
+	}
+
+	@Test(expected=IndexOutOfBoundsException.class)
+	public void testLazyBadIndex() {
+		PairwiseCache.lazy(X, kernel, false, 1).get(-1, 3);
+	}
+
+	@Test
+	public void testGetRowMatchesGet() {
+		final long budget = 3 * 30 * 8;
+		final double[] row = new double[X.length];
+		for(boolean diagonal: new boolean[]{true, false}) {
+			for(PairwiseCache cache: new PairwiseCache[]{
+					PairwiseCache.of(X, kernel, diagonal, Long.MAX_VALUE, Storage.HEAP),
+					PairwiseCache.of(X, kernel, diagonal, budget, Storage.HEAP),
+					PairwiseCache.lazy(X, kernel, diagonal, budget)}) {
+
+				// Twice, so the row cache serves held rows as well
+				for(int pass = 0; pass < 2; pass++) {
+					for(int i = 0; i < X.length; i += 7) {
+						assertTrue(row == cache.getRow(i, row));
+						for(int j = 0; j < X.length; j++)
+							assertEquals(cache.get(i, j), row[j], 1e-12);
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testGetRowKeepsRow() {
+		final PairwiseCache.RowLRU cache = (PairwiseCache.RowLRU)
+			PairwiseCache.of(X, kernel, false, 3 * 30 * 8, Storage.HEAP);
+
+		cache.getRow(4, new double[X.length]);
+		assertTrue(cache.getRowsComputed() == 1);
+
+		// Held, so neither read computes another row
+		cache.get(4, 9);
+		cache.getRow(4, new double[X.length]);
+		assertTrue(cache.getRowsComputed() == 1);
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testGetRowBadLength() {
+		PairwiseCache.of(X, kernel, false, 3 * 30 * 8, Storage.HEAP).getRow(0, new double[3]);
+	}
+}
@@ -385,9 +385,147 @@ public class PairwiseTests {
 		}
 	}
 	
+	/**
+	 * Computes the pairwise matrix the naive way, one pair at a time
+	 */
+	static double[][] naivePairwise(double[][] a, GeometricallySeparable geo, boolean partial) {
+		final int m = a.length;
+		final double[][] out = new double[m][m];
+		for(int i = 0; i < m; i++)
+			for(int j = 0; j < m; j++)
+				out[i][j] = partial ? geo.getPartialDistance(a[i], a[j]) : geo.getDistance(a[i], a[j]);
+		return out;
+	}
+	
+	@Test
+	public void testTiledParallelMatchesNaive() {
+		// Large enough to span multiple tiles, with an odd remainder
+		final double[][] x = MatUtils.randomGaussian(531, 4, new java.util.Random(42));
+		
+		for(DistanceMetric metric: distances()) {
+			for(boolean partial: new boolean[]{true, false}) {
+				final double[][] naive = naivePairwise(x, metric, partial);
+				final double[][] serial = Pairwise.getDistance(x, metric, false, partial, false);
+				final double[][] parallel = Pairwise.getDistance(x, metric, false, partial, true);
+				
+				assertTrue(metric.getName(), MatUtils.equalsWithTolerance(naive, serial, 1e-8));
+				assertTrue(metric.getName(), MatUtils.equalsExactly(serial, parallel));
+			}
+		}
+		
+		for(SimilarityMetric kernel: similarities()) {
+			final double[][] naive = MatUtils.negative(naivePairwise(x, kernel, false));
+			final double[][] serial = Pairwise.getSimilarity(x, kernel, false, false, false);
+			final double[][] parallel = Pairwise.getSimilarity(x, kernel, false, false, true);
+			
+			assertTrue(kernel.getName(), MatUtils.equalsWithTolerance(naive, serial, 1e-8));
+			assertTrue(kernel.getName(), MatUtils.equalsExactly(serial, parallel));
+		}
+	}
+	
+	@Test
+	public void testTiledUpperTriangular() {
+		final double[][] x = MatUtils.randomGaussian(300, 3, new java.util.Random(7));
+		final double[][] upper = Pairwise.getDistance(x, Distance.EUCLIDEAN, true, false, true);
+		final double[][] full = Pairwise.getDistance(x, Distance.EUCLIDEAN, false, false, true);
+		
+		for(int i = 0; i < x.length; i++) {
+			for(int j = 0; j < x.length; j++) {
+				if(j > i)
+					assertTrue(upper[i][j] == full[i][j]);
+				else
+					assertTrue(upper[i][j] == 0.0);
+			}
+		}
+	}
+	
+	@Test
+	public void testEuclideanExpansionNearPoints() {
+		// Far from the origin, the norm expansion alone would lose most digits
+		final double[][] x = new double[][]{
+			new double[]{1e6, 1e6 + 1e-3, 1e6},
+			new double[]{1e6, 1e6, 1e6},
+			new double[]{1e6, 1e6, 1e6},
+			new double[]{1e6 + 2, 1e6, 1e6}
+		};
+		
+		final double[][] d = Pairwise.getDistance(x, Distance.EUCLIDEAN, false, false);
+		assertTrue(d[1][2] == 0.0);
+		assertTrue(Precision.equals(d[0][1], 1e-3, 1e-9));
+		assertTrue(Precision.equals(d[1][3], 2.0, 1e-12));
+	}
+	
 	@Test
 	public void testCosinePartial() {
 		final double[] d = new double[]{1,2,3,4,5};
 		assertTrue(Similarity.COSINE.getPartialSimilarity(d, d) == Similarity.COSINE.getSimilarity(d, d));
 	}
+	
+	@Test
+	public void testCdistChunked() {
+		final double[][] a = MatUtils.randomGaussian(53, 4, new java.util.Random(3));
+		final double[][] b = MatUtils.randomGaussian(29, 4, new java.util.Random(4));
+		final GeometricallySeparable[] metrics = new GeometricallySeparable[]{
+			Distance.EUCLIDEAN, Distance.MANHATTAN, Similarity.COSINE, new GaussianKernel()
+		};
+		
+		for(GeometricallySeparable geo: metrics) {
+			for(int blockRows: new int[]{1, 7, 53, 100}) {
+				for(boolean parallel: new boolean[]{false, true}) {
+					final double[][] out = new double[a.length][];
+					Pairwise.cdistChunked(a, b, geo, false, blockRows, parallel, new Pairwise.BlockConsumer() {
+						@Override
+						public void accept(int rowStart, int rows, double[] block) {
+							assertTrue(rows <= blockRows);
+							for(int r = 0; r < rows; r++) {
+								assertNull(out[rowStart + r]); // each row exactly once
+								out[rowStart + r] = java.util.Arrays.copyOfRange(block, r * b.length, (r + 1) * b.length);
+							}
+						}
+					});
+					
+					for(int i = 0; i < a.length; i++)
+						for(int j = 0; j < b.length; j++)
+							assertEquals(geo.getName(), geo.getDistance(a[i], b[j]), out[i][j], 1e-10);
+				}
+			}
+		}
+	}
+	
+	@Test
+	public void testCdistChunkedSameMatrix() {
+		// Unlike getDistance, every cell is computed -- including the diagonal
+		final double[][] a = MatUtils.randomGaussian(40, 3, new java.util.Random(5));
+		final double[][] full = Pairwise.getDistance(a, Distance.EUCLIDEAN, false, false);
+		final double[] sums = new double[a.length];
+		
+		Pairwise.cdistChunked(a, a, Distance.EUCLIDEAN, 6, new Pairwise.BlockConsumer() {
+			@Override
+			public void accept(int rowStart, int rows, double[] block) {
+				for(int r = 0; r < rows; r++) {
+					assertTrue(block[r * a.length + rowStart + r] == 0.0);
+					for(int j = 0; j < a.length; j++) {
+						assertTrue(block[r * a.length + j] == full[rowStart + r][j]);
+						sums[rowStart + r] += block[r * a.length + j];
+					}
+				}
+			}
+		});
+		
+		assertTrue(VecUtils.equalsExactly(sums, MatUtils.rowSums(full)));
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void testCdistChunkedBadBlockRows() {
+		Pairwise.cdistChunked(X, X, Distance.EUCLIDEAN, 0, new Pairwise.BlockConsumer() {
+			@Override public void accept(int rowStart, int rows, double[] block) {}
+		});
+	}
+	
+	@Test(expected=org.apache.commons.math3.exception.DimensionMismatchException.class)
+	public void testCdistChunkedDimMismatch() {
+		Pairwise.cdistChunked(X, Xh, Distance.EUCLIDEAN, 2, new Pairwise.BlockConsumer() {
+			@Override public void accept(int rowStart, int rows, double[] block) {}
+		});
+	}
 }
@@ -0,0 +1,136 @@
+/*******************************************************************************
+ *    Copyright 2015, 2016 Taylor G Smith
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *******************************************************************************/
+package com.clust4j.metrics.pairwise;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.apache.commons.math3.exception.DimensionMismatchException;
+import org.apache.commons.math3.util.FastMath;
+import org.junit.Test;
+
+import com.clust4j.kernel.ANOVAKernel;
+import com.clust4j.kernel.CauchyKernel;
+import com.clust4j.kernel.CircularKernel;
+import com.clust4j.kernel.ExponentialKernel;
+import com.clust4j.kernel.GaussianKernel;
+import com.clust4j.kernel.InverseMultiquadricKernel;
+import com.clust4j.kernel.Kernel;
+import com.clust4j.kernel.LaplacianKernel;
+import com.clust4j.kernel.LinearKernel;
+import com.clust4j.kernel.LogKernel;
+import com.clust4j.kernel.MultiquadricKernel;
+import com.clust4j.kernel.PolynomialKernel;
+import com.clust4j.kernel.PowerKernel;
+import com.clust4j.kernel.RadialBasisKernel;
+import com.clust4j.kernel.RationalQuadraticKernel;
+import com.clust4j.kernel.SphericalKernel;
+import com.clust4j.utils.MatUtils;
+import com.clust4j.utils.VecUtils;
+
+public class PrecomputedRowStatisticsTests {
+	final static Random rand = new Random(7);
+	final static double[][] X = CondensedDistanceMatrixTests.random(40, 4);
+	final static double[][] Y = CondensedDistanceMatrixTests.random(15, 4);
+	final static PrecomputedRowStatistics sx = new PrecomputedRowStatistics(X);
+	final static PrecomputedRowStatistics sy = new PrecomputedRowStatistics(Y);
+
+	@Test
+	public void testNorms() {
+		assertTrue(sx.getRowDimension() == 40);
+		assertTrue(sx.getColumnDimension() == 4);
+		assertTrue(sx.getDataRef() == X);
+
+		for(int i = 0; i < X.length; i++) {
+			assertTrue(sx.getRow(i) == X[i]);
+			assertTrue(sx.getSquaredNorm(i) == VecUtils.innerProduct(X[i], X[i]));
+			assertEquals(VecUtils.l2Norm(X[i]), sx.getNorm(i), 1e-12);
+			assertEquals(VecUtils.l1Norm(X[i]), sx.getL1Norm(i), 1e-12);
+		}
+	}
+
+	@Test(expected=DimensionMismatchException.class)
+	public void testJagged() {
+		new PrecomputedRowStatistics(new double[][]{
+			new double[]{1,2,3},
+			new double[]{1,2}
+		});
+	}
+
+	@Test(expected=DimensionMismatchException.class)
+	public void testDimMismatch() {
+		Distance.EUCLIDEAN.getPartialDistance(sx, 0,
+			new PrecomputedRowStatistics(MatUtils.randomGaussian(2, 3, rand)), 0);
+	}
+
+	@Test
+	public void testKernelsMatchDirect() {
+		final Kernel[] kernels = new Kernel[]{
+			new RadialBasisKernel(0.5), new GaussianKernel(), new ExponentialKernel(),
+			new LaplacianKernel(0.2), new CauchyKernel(), new CircularKernel(50.0),
+			new SphericalKernel(50.0), new ANOVAKernel(), new MultiquadricKernel(),
+			new InverseMultiquadricKernel(), new RationalQuadraticKernel(), new PowerKernel(2),
+			new LogKernel(2), new LinearKernel(), new PolynomialKernel()
+		};
+
+		// The Hilbert space projection is bit-for-bit the same with the cached norms
+		for(Kernel kernel: kernels) {
+			for(int i = 0; i < X.length; i++) {
+				for(int j = 0; j < Y.length; j++) {
+					final double direct = kernel.getPartialSimilarity(X[i], Y[j]);
+					final double cached = kernel.getPartialSimilarity(sx, i, sy, j);
+					assertTrue(kernel.getName(), Double.compare(direct, cached) == 0);
+					assertTrue(Double.compare(-direct, kernel.getPartialDistance(sx, i, sy, j)) == 0);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testEuclideanAndCosineMatchDirect() {
+		for(int i = 0; i < X.length; i++) {
+			for(int j = 0; j < Y.length; j++) {
+				assertEquals(Distance.EUCLIDEAN.getPartialDistance(X[i], Y[j]),
+					Distance.EUCLIDEAN.getPartialDistance(sx, i, sy, j), 1e-10);
+				assertEquals(Similarity.COSINE.getPartialSimilarity(X[i], Y[j]),
+					Similarity.COSINE.getPartialSimilarity(sx, i, sy, j), 1e-12);
+				assertEquals(Similarity.COSINE.getPartialDistance(X[i], Y[j]),
+					Similarity.COSINE.getPartialDistance(sx, i, sy, j), 1e-12);
+			}
+
+			// Exact for identical rows thanks to the cancellation guard
+			assertTrue(Distance.EUCLIDEAN.getPartialDistance(sx, i, sx, i) == 0.0);
+		}
+
+		// Metrics without norms fall back to the rows
+		assertTrue(Distance.MANHATTAN.getPartialDistance(sx, 1, sy, 2)
+			== Distance.MANHATTAN.getPartialDistance(X[1], Y[2]));
+	}
+
+	@Test
+	public void testLargeOffset() {
+		// Large norms relative to the distance trigger the direct computation
+		final double[][] a = new double[][]{
+			new double[]{1e8, 1e8 + 1},
+			new double[]{1e8 + 1, 1e8}
+		};
+
+		final PrecomputedRowStatistics s = new PrecomputedRowStatistics(a);
+		assertTrue(Distance.EUCLIDEAN.getPartialDistance(s, 0, s, 1) == 2.0);
+		assertEquals(FastMath.sqrt(2.0), Distance.EUCLIDEAN.getDistance(a[0], a[1]), 0.0);
+	}
+}
@@ -17,6 +17,9 @@ package com.clust4j.metrics.pairwise;
 
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
+import java.util.Random;
+
 import org.junit.Test;
 import org.apache.commons.math3.exception.DimensionMismatchException;
 
@@ -274,4 +277,69 @@ public class TestDistanceEnums {
 		final double[] b = new double[]{0,2,5,1};
 		assertTrue(Distance.MINKOWSKI(1.5).getDistance(a, b) == new MinkowskiDistance(1.5).getDistance(a, b));
 	}
+	
+	@Test
+	public void testBoundedPartialDistance() {
+		final Random rand = new Random(7);
+		final int n = 50;
+		
+		final ArrayList<DistanceMetric> metrics = new ArrayList<>();
+		for(Distance d: Distance.values())
+			metrics.add(d);
+		metrics.add(new MinkowskiDistance(1.5));
+		
+		for(int trial = 0; trial < 100; trial++) {
+			final double[] a = new double[n], b = new double[n];
+			for(int i = 0; i < n; i++) {
+				// sparse, so the binary metrics see all four cases
+				a[i] = rand.nextDouble() < 0.5 ? 0 : rand.nextGaussian();
+				b[i] = rand.nextDouble() < 0.5 ? 0 : rand.nextGaussian();
+			}
+			
+			for(DistanceMetric metric: metrics) {
+				final double exact = metric.getPartialDistance(a, b);
+				
+				// A bound at or above the exact value must not change the result
+				assertTrue(metric.getName(), metric.getPartialDistance(a, b, exact) == exact);
+				assertTrue(metric.getName(), metric.getPartialDistance(a, b, Double.POSITIVE_INFINITY) == exact);
+				
+				// A bound below it must yield something beyond the bound
+				final double bound = exact * 0.25;
+				if(exact > 0)
+					assertTrue(metric.getName(), metric.getPartialDistance(a, b, bound) > bound);
+			}
+		}
+		
+		// Haversine only ever has two features
+		final double[] a = new double[]{40.7, -74.0}, b = new double[]{51.5, -0.1};
+		final double exact = Distance.HAVERSINE.KM.getPartialDistance(a, b);
+		assertTrue(Distance.HAVERSINE.KM.getPartialDistance(a, b, 1.0) == exact);
+	}
+	
+	@Test
+	public void testBlocksMatchScalar() {
+		final Random rand = new Random(11);
+		final double[][] X = new double[9][6];
+		for(double[] row: X)
+			for(int f = 0; f < row.length; f++)
+				row[f] = rand.nextInt(3) - 1 + rand.nextDouble() * (f % 2);
+		
+		final ArrayList<DistanceMetric> metrics = new ArrayList<>();
+		for(Distance d: Distance.values())
+			metrics.add(d);
+		metrics.add(new MinkowskiDistance(3.0));
+		
+		final double[] out = new double[X.length];
+		for(DistanceMetric metric: metrics) {
+			for(int i = 0; i < X.length; i++) {
+				metric.partialDistanceBlock(X[i], X, 1, X.length, out);
+				for(int k = 1; k < X.length; k++)
+					assertTrue(metric.getName(), Double.compare(metric.getPartialDistance(X[i], X[k]), out[k - 1]) == 0);
+				
+				metric.distanceBlock(X[i], X, 1, X.length, out);
+				for(int k = 1; k < X.length; k++)
+					assertTrue(metric.getName(), Double.compare(metric.getDistance(X[i], X[k]), out[k - 1]) == 0);
+			}
+		}
+	}
 }
@@ -19,6 +19,7 @@ import static org.junit.Assert.*;
 
 import org.apache.commons.math3.exception.DimensionMismatchException;
 import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+import org.apache.commons.math3.util.Precision;
 import org.junit.Test;
 
 import com.clust4j.TestSuite;
@@ -45,7 +46,7 @@ public class TestMetrics {
 		
 		double silhouette = SILHOUETTE
 			.evaluate(X, labels);
-		assertTrue(silhouette == 0.5032506980665507);
+		assertTrue(Precision.equals(silhouette, 0.5032506980665507, 1e-12));
 	}
 	
 	@Test(expected=DimensionMismatchException.class)